@@ -0,0 +1,86 @@
+package us.holsopple.jsonschema2immutable.benchmark;
+
+import com.sun.codemodel.JCodeModel;
+import org.jsonschema2pojo.*;
+import org.openjdk.jmh.annotations.*;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+import us.holsopple.jsonschema2immutable.rules.ImmutableRuleFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many schemas per second the rule chain turns into a code model, and how many are generated and
+ * rendered to source by a {@link SchemaCompiler}. The {@code schemas} aux counter reports the schema throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+    @Param({"10", "100"})
+    public int schemas;
+
+    @Param({"10", "50"})
+    public int properties;
+
+    @Param({"1", "3"})
+    public int depth;
+
+    @Param({"0", "4"})
+    public int refFanOut;
+
+    @Param({"5", "50"})
+    public int enumSize;
+
+    private final GenerationConfig config = new DefaultGenerationConfig();
+    private SchemaCorpus corpus;
+    private List<URL> urls;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long schemas;
+    }
+
+    @Setup(Level.Trial)
+    public void createCorpus() throws IOException {
+        corpus = new SchemaCorpus(schemas, properties, depth, refFanOut, enumSize);
+        urls = new ArrayList<>();
+        for (Path schema : corpus.schemas()) {
+            urls.add(schema.toUri().toURL());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public JCodeModel ruleChain(Counters counters) {
+        JCodeModel codeModel = new JCodeModel();
+        SchemaMapper mapper = new SchemaMapper(
+                new ImmutableRuleFactory(config, new Jackson2Annotator(config), new SchemaStore()),
+                new SchemaGenerator());
+        for (URL url : urls) {
+            mapper.generate(codeModel, "ClassName", "com.example", url);
+        }
+        counters.schemas += urls.size();
+        return codeModel;
+    }
+
+    @Benchmark
+    public GeneratedSources compile(Counters counters) {
+        GeneratedSources sources = new SchemaCompiler(config, "com.example", 1).compile(corpus.schemas());
+        counters.schemas += urls.size();
+        return sources;
+    }
+}
@@ -0,0 +1,98 @@
+package us.holsopple.jsonschema2immutable.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Writes a synthetic set of schemas to a temporary directory.
+ * <p>
+ * Every schema is an object with {@code properties} properties that cycle through the simple types, an enum with
+ * {@code enumSize} values, {@code refFanOut} properties referencing shared schemas in {@code common/}, and, down to
+ * {@code depth} levels, an inline {@code child} object built the same way. The inline children all share a name, so
+ * the corpus also exercises unique class naming.
+ */
+class SchemaCorpus {
+    private static final String[] TYPES = {"string", "integer", "number", "boolean", "array"};
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private final int properties;
+    private final int depth;
+    private final int refFanOut;
+    private final int enumSize;
+
+    private final Path dir;
+    private final List<Path> schemas = new ArrayList<>();
+
+    SchemaCorpus(int schemas, int properties, int depth, int refFanOut, int enumSize) throws IOException {
+        this.properties = properties;
+        this.depth = depth;
+        this.refFanOut = refFanOut;
+        this.enumSize = enumSize;
+        this.dir = Files.createTempDirectory("schema-corpus");
+
+        ObjectMapper mapper = new ObjectMapper();
+        Files.createDirectories(dir.resolve("common"));
+        for (int i = 0; i < refFanOut; i++) {
+            mapper.writeValue(dir.resolve("common/common" + i + ".json").toFile(), object(1, false));
+        }
+        for (int i = 0; i < schemas; i++) {
+            Path schema = dir.resolve("schema" + i + ".json");
+            mapper.writeValue(schema.toFile(), object(depth, true));
+            this.schemas.add(schema);
+        }
+    }
+
+    List<Path> schemas() {
+        return schemas;
+    }
+
+    void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private ObjectNode object(int level, boolean refs) {
+        ObjectNode props = NODES.objectNode();
+        for (int i = 0; i < properties; i++) {
+            String type = TYPES[i % TYPES.length];
+            ObjectNode property = props.putObject("property" + i).put("type", type);
+            if ("array".equals(type)) {
+                property.putObject("items").put("type", "string");
+            }
+            if (i % 3 == 0) {
+                property.put("required", true);
+            }
+        }
+
+        ArrayNode values = props.putObject("kind").put("type", "string").putArray("enum");
+        for (int i = 0; i < enumSize; i++) {
+            values.add("VALUE_" + i);
+        }
+
+        if (refs) {
+            for (int i = 0; i < refFanOut; i++) {
+                props.putObject("common" + i).put("$ref", "common/common" + i + ".json");
+            }
+        }
+        if (level > 1) {
+            props.set("child", object(level - 1, refs));
+        }
+
+        ObjectNode schema = NODES.objectNode().put("type", "object");
+        schema.set("properties", props);
+        return schema;
+    }
+}
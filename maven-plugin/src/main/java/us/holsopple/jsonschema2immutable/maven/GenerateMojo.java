@@ -0,0 +1,183 @@
+package us.holsopple.jsonschema2immutable.maven;
+
+import org.apache.maven.model.Resource;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.jsonschema2pojo.GenerationConfig;
+import org.jsonschema2pojo.exception.GenerationException;
+import us.holsopple.jsonschema2immutable.IncrementalCompiler;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Generates immutable definitions from the json schemas of a project, and adds them to its compile sources.
+ * <p>
+ * Only schemas that changed since the last build are regenerated, and nothing is written at all when neither the
+ * schemas nor the configuration changed. The manifest that keeps track of this is stored next to, not in, the output
+ * directory, so the output holds only the generated sources, and they are the same for every build of the same inputs.
+ * With native image metadata on, the output directory also holds the files below {@code META-INF}, and it is added to
+ * the resources of the project for them to be packaged.
+ */
+@Mojo(name = "generate", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
+public class GenerateMojo extends AbstractMojo {
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    @Parameter(defaultValue = "${project.basedir}/src/main/jsonschema")
+    private List<File> sourceDirectories;
+
+    @Parameter(defaultValue = "${project.build.directory}/generated-sources/jsonschema2immutable")
+    private File outputDirectory;
+
+    @Parameter(defaultValue = "${project.build.directory}/jsonschema2immutable/manifest.json")
+    private File manifest;
+
+    @Parameter(required = true)
+    private String targetPackage;
+
+    @Parameter(defaultValue = "1")
+    private int threads;
+
+    /**
+     * Generate a single type for structurally identical object and enum schemas.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean deduplicate;
+
+    /**
+     * Generate arrays of integers, numbers and booleans as primitive arrays.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean primitiveArrays;
+
+    /**
+     * Generate arrays as persistent lists that add, replace and remove elements in O(log n).
+     */
+    @Parameter(defaultValue = "false")
+    private boolean persistentCollections;
+
+    /**
+     * Store optional integers, numbers and booleans unboxed, with their presence in a bitmask, instead of as nullable
+     * wrappers.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean unboxedOptionals;
+
+    /**
+     * Enforce minimum/maximum, lengths, item counts, patterns and enums of the schemas in {@code @Value.Check}
+     * methods.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean checks;
+
+    /**
+     * Generate value types as final classes with builders of their own, which compile without the Immutables
+     * annotation processor. Can't be combined with unboxed optionals, the Jackson module, binary codecs, views or
+     * readers.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean finalClasses;
+
+    /**
+     * Generate streaming Jackson serializers and deserializers for all value types and a module registering them.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean jacksonModule;
+
+    /**
+     * Generate GraalVM reflection and resource configuration, a service file registering the Jackson module and an
+     * AppCDS class list. Needs {@code jacksonModule}.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean nativeImage;
+
+    /**
+     * Generate a compact binary codec with a schema fingerprint for every value type.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean binaryCodec;
+
+    /**
+     * Generate views that read value types lazily from the JSON bytes they wrap.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean views;
+
+    /**
+     * Generate readers that fill reused Modifiable instances in place from JSON tokens.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean readers;
+
+    /**
+     * Generate classes streaming the types of root schemas from NDJSON files and JSON arrays.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean streamReaders;
+
+    @Parameter(property = "jsonschema2immutable.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("skipping schema generation");
+            return;
+        }
+        project.addCompileSourceRoot(outputDirectory.getAbsolutePath());
+        if (nativeImage) {
+            Resource metadata = new Resource();
+            metadata.setDirectory(outputDirectory.getAbsolutePath());
+            metadata.addInclude("META-INF/**");
+            project.addResource(metadata);
+        }
+
+        List<Path> sourceDirs = sourceDirectories.stream()
+                .map(File::toPath)
+                .filter(Files::isDirectory)
+                .collect(Collectors.toList());
+        if (sourceDirs.isEmpty()) {
+            getLog().info("no schema directories found in " + sourceDirectories);
+            return;
+        }
+
+        GenerationConfig config = new DefaultGenerationConfig() {
+            @Override
+            public boolean isGenerateBuilders() {
+                return true;
+            }
+        };
+        SchemaCompiler compiler = new SchemaCompiler(config, targetPackage, threads);
+        compiler.setDeduplicate(deduplicate);
+        compiler.setPrimitiveArrays(primitiveArrays);
+        compiler.setPersistentCollections(persistentCollections);
+        compiler.setUnboxedOptionals(unboxedOptionals);
+        compiler.setChecks(checks);
+        compiler.setFinalClasses(finalClasses);
+        compiler.setJacksonModule(jacksonModule);
+        compiler.setNativeImage(nativeImage);
+        compiler.setBinaryCodec(binaryCodec);
+        compiler.setViews(views);
+        compiler.setReaders(readers);
+        compiler.setStreamReaders(streamReaders);
+        IncrementalCompiler incrementalCompiler = new IncrementalCompiler(compiler, compiler.getConfiguration());
+        try {
+            incrementalCompiler.generate(SchemaCompiler.findSources(sourceDirs), outputDirectory.toPath(),
+                    manifest.toPath());
+        } catch (IOException | GenerationException ex) {
+            throw new MojoExecutionException("error generating " + outputDirectory + ": "
+                    + ex.getLocalizedMessage(), ex);
+        }
+    }
+}
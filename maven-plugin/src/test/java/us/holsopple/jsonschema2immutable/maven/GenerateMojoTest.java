@@ -0,0 +1,104 @@
+package us.holsopple.jsonschema2immutable.maven;
+
+import org.apache.maven.model.Resource;
+import org.apache.maven.project.MavenProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GenerateMojoTest {
+    private static final FileTime WRITTEN = FileTime.fromMillis(1_000_000_000_000L);
+
+    @TempDir
+    Path basedir;
+
+    @Test
+    public void testGenerate() throws Exception {
+        Path schemas = Files.createDirectories(basedir.resolve("src/main/jsonschema"));
+        Files.write(schemas.resolve("address.json"), ("{\"type\": \"object\", \"properties\": "
+                + "{\"locality\": {\"type\": \"string\"}}}").getBytes(StandardCharsets.UTF_8));
+        Files.write(schemas.resolve("person.json"), ("{\"type\": \"object\", \"properties\": "
+                + "{\"name\": {\"type\": \"string\"}}}").getBytes(StandardCharsets.UTF_8));
+        Path output = basedir.resolve("target/generated-sources/jsonschema2immutable");
+
+        MavenProject project = new MavenProject();
+        execute(project);
+        assertEquals(Collections.singletonList(output.toString()), project.getCompileSourceRoots());
+        Resource metadata = (Resource) project.getResources().get(0);
+        assertEquals(output.toString(), metadata.getDirectory());
+        assertEquals(Collections.singletonList("META-INF/**"), metadata.getIncludes());
+        Map<String, FileTime> generated = files(output);
+        assertTrue(generated.containsKey("com/example/Address.java"), generated.keySet().toString());
+        assertTrue(generated.containsKey("com/example/Person.java"), generated.keySet().toString());
+        assertTrue(generated.keySet().stream().anyMatch(path -> path.startsWith("META-INF/")),
+                generated.keySet().toString());
+        // the manifest is kept out of the generated sources
+        assertTrue(Files.isRegularFile(basedir.resolve("target/jsonschema2immutable/manifest.json")));
+
+        // nothing changed, so nothing is written
+        for (String path : generated.keySet()) {
+            Files.setLastModifiedTime(output.resolve(path), WRITTEN);
+        }
+        MavenProject again = new MavenProject();
+        execute(again);
+        Map<String, FileTime> unchanged = files(output);
+        assertEquals(generated.keySet(), unchanged.keySet());
+        unchanged.forEach((path, modified) -> assertEquals(WRITTEN, modified, path));
+        assertEquals(Collections.singletonList(output.toString()), again.getCompileSourceRoots());
+
+        // the sources of a schema that is gone are deleted, the others are left alone
+        Files.delete(schemas.resolve("person.json"));
+        execute(new MavenProject());
+        Map<String, FileTime> remaining = files(output);
+        assertFalse(remaining.containsKey("com/example/Person.java"), remaining.keySet().toString());
+        assertEquals(WRITTEN, remaining.get("com/example/Address.java"));
+    }
+
+    private void execute(MavenProject project) throws Exception {
+        GenerateMojo mojo = new GenerateMojo();
+        set(mojo, "project", project);
+        set(mojo, "sourceDirectories", Collections.singletonList(basedir.resolve("src/main/jsonschema").toFile()));
+        set(mojo, "outputDirectory", basedir.resolve("target/generated-sources/jsonschema2immutable").toFile());
+        set(mojo, "manifest", new File(basedir.toFile(), "target/jsonschema2immutable/manifest.json"));
+        set(mojo, "targetPackage", "com.example");
+        set(mojo, "threads", 1);
+        set(mojo, "jacksonModule", true);
+        set(mojo, "nativeImage", true);
+        mojo.execute();
+    }
+
+    /**
+     * Sets a parameter of the mojo the way Maven injects it.
+     */
+    private static void set(GenerateMojo mojo, String name, Object value) throws Exception {
+        Field field = GenerateMojo.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+
+    private static Map<String, FileTime> files(Path output) throws Exception {
+        try (Stream<Path> paths = Files.walk(output)) {
+            Map<String, FileTime> files = new TreeMap<>();
+            for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                files.put(output.relativize(path).toString().replace(File.separatorChar, '/'),
+                        Files.getLastModifiedTime(path));
+            }
+            return files;
+        }
+    }
+}
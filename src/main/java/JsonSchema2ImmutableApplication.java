@@ -1,19 +1,21 @@
-import com.sun.codemodel.JCodeModel;
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
 import org.jsonschema2pojo.*;
-import us.holsopple.jsonschema2immutable.rules.ImmutableRuleFactory;
+import us.holsopple.jsonschema2immutable.IncrementalCompiler;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+import us.holsopple.jsonschema2immutable.SchemaWatcher;
+import us.holsopple.jsonschema2immutable.rules.FootprintReport;
+import us.holsopple.jsonschema2immutable.rules.RuleProfiler;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.stream.Collectors;
 
 public class JsonSchema2ImmutableApplication {
     public static void main(String[] args) {
@@ -22,10 +24,58 @@ public class JsonSchema2ImmutableApplication {
                 .description("Produce java immutable definitions from json schema");
         parser.addArgument("-o", "--output").setDefault("target/generated-sources");
         parser.addArgument("-p", "--package").required(true);
+        parser.addArgument("-t", "--threads").type(Integer.class).setDefault(1);
+        parser.addArgument("-i", "--incremental").action(Arguments.storeTrue());
+        parser.addArgument("-w", "--watch").action(Arguments.storeTrue());
+        parser.addArgument("-s", "--stream").action(Arguments.storeTrue())
+                .help("write each schema's classes as soon as they are generated, to bound memory use");
+        parser.addArgument("--io-threads").type(Integer.class).setDefault(2);
+        parser.addArgument("-d", "--dedupe").action(Arguments.storeTrue())
+                .help("generate a single type for structurally identical object and enum schemas");
+        parser.addArgument("--primitive-arrays").action(Arguments.storeTrue())
+                .help("generate arrays of integers, numbers and booleans as primitive arrays");
+        parser.addArgument("--persistent-collections").action(Arguments.storeTrue())
+                .help("generate arrays as persistent lists that add, replace and remove elements in O(log n)");
+        parser.addArgument("--unboxed-optionals").action(Arguments.storeTrue())
+                .help("store optional integers, numbers and booleans unboxed, with their presence in a bitmask");
+        parser.addArgument("--checks").action(Arguments.storeTrue())
+                .help("enforce minimum/maximum, lengths, item counts, patterns and enums when instances are built");
+        parser.addArgument("--final-classes").action(Arguments.storeTrue())
+                .help("generate value types as final classes with builders that need no annotation processor");
+        parser.addArgument("--jackson-module").action(Arguments.storeTrue())
+                .help("generate streaming Jackson serializers and deserializers and a module registering them");
+        parser.addArgument("--native-image").action(Arguments.storeTrue())
+                .help("generate GraalVM reflection and resource configuration, a service file for the Jackson module "
+                        + "and an AppCDS class list");
+        parser.addArgument("--binary-codec").action(Arguments.storeTrue())
+                .help("generate a compact binary codec with a schema fingerprint for every value type");
+        parser.addArgument("--views").action(Arguments.storeTrue())
+                .help("generate views that read value types lazily from the JSON bytes they wrap");
+        parser.addArgument("--readers").action(Arguments.storeTrue())
+                .help("generate readers that fill reused Modifiable instances in place from JSON tokens");
+        parser.addArgument("--ndjson-readers").action(Arguments.storeTrue())
+                .help("generate classes streaming the types of root schemas from NDJSON files and JSON arrays");
+        parser.addArgument("--debounce").type(Long.class).setDefault(100L);
+        parser.addArgument("--profile").nargs("?").setConst("jsonschema2immutable-profile.json");
+        parser.addArgument("--profile-top").type(Integer.class).setDefault(10);
+        parser.addArgument("--footprint").action(Arguments.storeTrue())
+                .help("print the estimated memory footprint of the largest generated value types");
+        parser.addArgument("--footprint-top").type(Integer.class).setDefault(20);
         parser.addArgument("sourceDir").nargs("*");
         Namespace ns;
         try {
             ns = parser.parseArgs(args);
+            if (ns.getBoolean("stream") && (ns.getBoolean("incremental") || ns.getBoolean("watch"))) {
+                throw new ArgumentParserException("--stream can't be combined with --incremental or --watch", parser);
+            }
+            if (ns.getBoolean("final_classes") && (ns.getBoolean("unboxed_optionals") || ns.getBoolean("jackson_module")
+                    || ns.getBoolean("binary_codec") || ns.getBoolean("views") || ns.getBoolean("readers"))) {
+                throw new ArgumentParserException("--final-classes can't be combined with --unboxed-optionals, "
+                        + "--jackson-module, --binary-codec, --views or --readers", parser);
+            }
+            if (ns.getBoolean("native_image") && !ns.getBoolean("jackson_module")) {
+                throw new ArgumentParserException("--native-image needs --jackson-module", parser);
+            }
         } catch (ArgumentParserException e) {
             parser.handleError(e);
             System.exit(1);
@@ -42,8 +92,6 @@ public class JsonSchema2ImmutableApplication {
         String outputPkg = ns.getString("package");
         List<String> sourceDirs = ns.getList("sourceDir");
 
-        JCodeModel codeModel = new JCodeModel();
-
         GenerationConfig config = new DefaultGenerationConfig() {
             @Override
             public boolean isGenerateBuilders() { // set config option by overriding method
@@ -51,28 +99,63 @@ public class JsonSchema2ImmutableApplication {
             }
         };
 
-        SchemaMapper mapper = new SchemaMapper(
-                new ImmutableRuleFactory(config, new Jackson2Annotator(config), new SchemaStore()),
-                new SchemaGenerator());
+        List<Path> sourcePaths = sourceDirs.stream().map(Paths::get).collect(Collectors.toList());
+        SchemaCompiler compiler = new SchemaCompiler(config, outputPkg, ns.getInt("threads"));
+        RuleProfiler profiler = ns.getString("profile") == null ? RuleProfiler.NONE : new RuleProfiler();
+        compiler.setProfiler(profiler);
+        FootprintReport footprint = ns.getBoolean("footprint") ? new FootprintReport() : null;
+        compiler.setFootprint(footprint);
+        compiler.setDeduplicate(ns.getBoolean("dedupe"));
+        compiler.setPrimitiveArrays(ns.getBoolean("primitive_arrays"));
+        compiler.setPersistentCollections(ns.getBoolean("persistent_collections"));
+        compiler.setUnboxedOptionals(ns.getBoolean("unboxed_optionals"));
+        compiler.setChecks(ns.getBoolean("checks"));
+        compiler.setFinalClasses(ns.getBoolean("final_classes"));
+        compiler.setJacksonModule(ns.getBoolean("jackson_module"));
+        compiler.setNativeImage(ns.getBoolean("native_image"));
+        compiler.setBinaryCodec(ns.getBoolean("binary_codec"));
+        compiler.setViews(ns.getBoolean("views"));
+        compiler.setReaders(ns.getBoolean("readers"));
+        compiler.setStreamReaders(ns.getBoolean("ndjson_readers"));
+        IncrementalCompiler incrementalCompiler = new IncrementalCompiler(compiler, compiler.getConfiguration());
 
-        for (String sourceDir : sourceDirs) {
-            try (Stream<Path> paths = Files.walk(Paths.get(sourceDir))) {
-                paths.filter(Files::isRegularFile).forEach(sourceFile -> {
-                    try {
-                        mapper.generate(codeModel, "ClassName", outputPkg, sourceFile.toUri().toURL());
-                    } catch (MalformedURLException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                });
+        if (ns.getBoolean("watch")) {
+            try (SchemaWatcher watcher = new SchemaWatcher(sourcePaths, output.toPath(), compiler,
+                    incrementalCompiler, ns.getLong("debounce"))) {
+                watcher.run();
             } catch (IOException ex) {
-                System.err.println("can't open source in " + sourceDir + ": " + ex.getLocalizedMessage());
+                System.err.println("error watching sources: " + ex.getLocalizedMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
             }
+            return;
         }
 
+        List<Path> sources = SchemaCompiler.findSources(sourcePaths);
         try {
-            codeModel.build(output);
+            if (ns.getBoolean("incremental")) {
+                incrementalCompiler.generate(sources, output.toPath());
+            } else if (ns.getBoolean("stream")) {
+                compiler.stream(sources, output.toPath(), ns.getInt("io_threads"));
+            } else {
+                SchemaCompiler.write(compiler.compile(sources).files(), output.toPath());
+            }
         } catch (IOException ex) {
             System.err.println("error writing code model: " + ex.getLocalizedMessage());
         }
+
+        if (footprint != null) {
+            footprint.report(System.out, ns.getInt("footprint_top"));
+        }
+
+        if (profiler.isEnabled()) {
+            System.out.println("$ref lookups: " + compiler.getRefCacheHits() + " cached, "
+                    + compiler.getRefCacheMisses() + " resolved");
+            try {
+                profiler.report(Paths.get(ns.getString("profile")), ns.getInt("profile_top"), System.out);
+            } catch (IOException ex) {
+                System.err.println("error writing profile: " + ex.getLocalizedMessage());
+            }
+        }
     }
 }
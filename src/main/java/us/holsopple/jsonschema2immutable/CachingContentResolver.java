@@ -0,0 +1,33 @@
+package us.holsopple.jsonschema2immutable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jsonschema2pojo.ContentResolver;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link ContentResolver} that parses each schema document once and shares the tree between every
+ * {@link org.jsonschema2pojo.SchemaStore} that uses it. The parsed trees are only ever read by the rules, so they
+ * can be handed to several threads at once.
+ */
+public class CachingContentResolver extends ContentResolver {
+    private final ConcurrentMap<URI, JsonNode> documents = new ConcurrentHashMap<>();
+
+    @Override
+    public JsonNode resolve(URI uri) {
+        return documents.computeIfAbsent(uri, super::resolve);
+    }
+
+    /**
+     * Drops the parsed documents of the given files, so that they are read again when next resolved.
+     */
+    public void invalidate(Collection<Path> files) {
+        documents.keySet().removeIf(uri ->
+                "file".equals(uri.getScheme()) && files.contains(Paths.get(uri).toAbsolutePath().normalize()));
+    }
+}
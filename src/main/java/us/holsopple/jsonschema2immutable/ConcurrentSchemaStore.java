@@ -0,0 +1,44 @@
+package us.holsopple.jsonschema2immutable;
+
+import com.sun.codemodel.JDefinedClass;
+import com.sun.codemodel.JType;
+import org.jsonschema2pojo.ContentResolver;
+import org.jsonschema2pojo.Schema;
+import org.jsonschema2pojo.SchemaStore;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link SchemaStore} that can be used from several threads. The base class only synchronizes
+ * {@link SchemaStore#create(URI, String)}, while {@link #create(Schema, String, String)} updates the same map.
+ * <p>
+ * A store still belongs to a single {@link com.sun.codemodel.JCodeModel}: each {@link Schema} remembers the java type
+ * generated for it, and that type is owned by one code model.
+ */
+public class ConcurrentSchemaStore extends SchemaStore {
+
+    public ConcurrentSchemaStore(ContentResolver contentResolver) {
+        super(contentResolver);
+    }
+
+    @Override
+    public synchronized Schema create(Schema parent, String path, String refFragmentPathDelimiters) {
+        return super.create(parent, path, refFragmentPathDelimiters);
+    }
+
+    /**
+     * @return the fully qualified name of each generated class, keyed by the id of the schema it was generated from
+     */
+    public synchronized Map<URI, String> generatedClasses() {
+        Map<URI, String> classes = new HashMap<>();
+        for (Map.Entry<URI, Schema> entry : schemas.entrySet()) {
+            JType type = entry.getValue().getJavaType();
+            if (type instanceof JDefinedClass) {
+                classes.put(entry.getKey(), type.fullName());
+            }
+        }
+        return classes;
+    }
+}
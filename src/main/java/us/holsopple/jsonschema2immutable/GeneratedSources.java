@@ -0,0 +1,56 @@
+package us.holsopple.jsonschema2immutable;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The output of a {@link SchemaCompiler} run.
+ */
+public class GeneratedSources {
+    private final Map<String, byte[]> files;
+    private final Map<String, URI> origins;
+    private final Set<String> moduleTypes;
+    private final Set<String> reflectedTypes;
+
+    GeneratedSources(Map<String, byte[]> files, Map<String, URI> origins, Set<String> moduleTypes,
+                     Set<String> reflectedTypes) {
+        this.files = Collections.unmodifiableMap(files);
+        this.origins = Collections.unmodifiableMap(origins);
+        this.moduleTypes = Collections.unmodifiableSet(moduleTypes);
+        this.reflectedTypes = Collections.unmodifiableSet(reflectedTypes);
+    }
+
+    /**
+     * @return the generated files, keyed by their path relative to the output directory, in path order
+     */
+    public Map<String, byte[]> files() {
+        return files;
+    }
+
+    /**
+     * @return the schema document each generated file was defined in, keyed by the file's path
+     */
+    public Map<String, URI> origins() {
+        return origins;
+    }
+
+    /**
+     * @return the fully qualified names of the value types that have generated Jackson codecs, in name order
+     */
+    public Set<String> moduleTypes() {
+        return moduleTypes;
+    }
+
+    /**
+     * @return the binary names of the classes the native image metadata lists for reflection, in name order
+     */
+    public Set<String> reflectedTypes() {
+        return reflectedTypes;
+    }
+
+    static String path(String className) {
+        return className.replace('.', '/') + ".java";
+    }
+}
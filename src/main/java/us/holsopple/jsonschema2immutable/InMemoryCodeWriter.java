@@ -0,0 +1,38 @@
+package us.holsopple.jsonschema2immutable;
+
+import com.sun.codemodel.CodeWriter;
+import com.sun.codemodel.JPackage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the files of a {@link com.sun.codemodel.JCodeModel} in memory, keyed by their path relative to the output
+ * directory. The bytes are the same as {@link com.sun.codemodel.JCodeModel#build(java.io.File)} would write.
+ */
+class InMemoryCodeWriter extends CodeWriter {
+    private final Map<String, ByteArrayOutputStream> files = new TreeMap<>();
+
+    @Override
+    public OutputStream openBinary(JPackage pkg, String fileName) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        files.put(path(pkg, fileName), out);
+        return out;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    Map<String, byte[]> files() {
+        Map<String, byte[]> contents = new TreeMap<>();
+        files.forEach((path, out) -> contents.put(path, out.toByteArray()));
+        return contents;
+    }
+
+    static String path(JPackage pkg, String fileName) {
+        return pkg.isUnnamed() ? fileName : pkg.name().replace('.', '/') + '/' + fileName;
+    }
+}
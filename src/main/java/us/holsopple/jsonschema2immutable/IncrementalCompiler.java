@@ -0,0 +1,289 @@
+package us.holsopple.jsonschema2immutable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.StringUtils.removeStart;
+import static org.apache.commons.lang3.StringUtils.substringBefore;
+
+/**
+ * Runs a {@link SchemaCompiler} over only the sources that changed since the last run.
+ * <p>
+ * A source is regenerated when it is new, or when it or any document in its transitive {@code $ref} closure has a
+ * different content hash than recorded in the {@link Manifest}. Files that were generated from the regenerated
+ * documents and aren't produced any more are deleted, unless a source that didn't change still needs them. If a
+ * regenerated schema claims a file that belongs to a document that wasn't regenerated, class names may have been made
+ * unique differently than in a full run, so everything is regenerated. Everything is also regenerated when a file the
+ * manifest lists is missing from the output directory. When the compiler deduplicates schemas, a type may be shared by
+ * documents that don't reference each other, so any change regenerates everything.
+ */
+public class IncrementalCompiler {
+    private final SchemaCompiler compiler;
+    private final String configuration;
+
+    /**
+     * @param configuration describes the generator settings; a change forces all sources to be regenerated
+     */
+    public IncrementalCompiler(SchemaCompiler compiler, String configuration) {
+        this.compiler = compiler;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Brings the output directory up to date with the sources.
+     *
+     * @return the number of sources that were regenerated
+     */
+    public int generate(List<Path> sources, Path output) throws IOException {
+        return generate(sources, output, output.resolve(Manifest.FILE_NAME));
+    }
+
+    /**
+     * Brings the output directory up to date with the sources, keeping the manifest in the given file. With the
+     * manifest outside of it, the output directory holds nothing but generated sources.
+     *
+     * @return the number of sources that were regenerated
+     */
+    public int generate(List<Path> sources, Path output, Path manifest) throws IOException {
+        Manifest previous = Manifest.read(manifest);
+        if (previous == null) {
+            return generate(sources, output, manifest, new Manifest(), true);
+        }
+        boolean full = !configuration.equals(previous.configuration) || !complete(previous, output);
+        return generate(sources, output, manifest, previous, full);
+    }
+
+    private int generate(List<Path> sources, Path output, Path manifestFile, Manifest previous, boolean full)
+            throws IOException {
+        Map<URI, Path> sourceDocuments = new LinkedHashMap<>();
+        for (Path source : sources) {
+            sourceDocuments.put(Manifest.document(source.toUri()), source);
+        }
+
+        Map<String, Manifest.Document> documents = scan(sourceDocuments.keySet(), previous);
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, Manifest.Document> document : documents.entrySet()) {
+            Manifest.Document recorded = previous.documents.get(document.getKey());
+            if (full || recorded == null || !recorded.hash.equals(document.getValue().hash)) {
+                changed.add(document.getKey());
+            }
+        }
+
+        List<Path> dirty = new ArrayList<>();
+        Set<String> regenerated = new HashSet<>();
+        Set<String> kept = new HashSet<>();
+        for (Map.Entry<URI, Path> source : sourceDocuments.entrySet()) {
+            String uri = source.getKey().toString();
+            Set<String> closure = closure(uri, documents);
+            if (!previous.sources.contains(uri) || !Collections.disjoint(closure, changed)) {
+                dirty.add(source.getValue());
+                regenerated.addAll(closure);
+            } else {
+                kept.addAll(closure);
+            }
+        }
+        kept.removeAll(regenerated);
+
+        Set<String> removed = new HashSet<>(previous.documents.keySet());
+        removed.removeAll(documents.keySet());
+        if (dirty.isEmpty() && removed.isEmpty()) {
+            System.out.println("all " + sources.size() + " schemas are up to date");
+            return 0;
+        }
+        if (compiler.isDeduplicate() && !full) {
+            return generate(sources, output, manifestFile, previous, true);
+        }
+
+        Map<String, String> keptFiles = new HashMap<>();
+        for (String document : kept) {
+            for (String file : previous.documents.get(document).files) {
+                keptFiles.put(file, document);
+            }
+        }
+
+        GeneratedSources generated = compiler.compile(dirty);
+        Set<String> sharedPaths = new HashSet<>(compiler.getSharedPaths());
+        Map<String, List<String>> filesByDocument = new HashMap<>();
+        for (String file : generated.files().keySet()) {
+            if (sharedPaths.contains(file)) {
+                continue;
+            }
+            URI origin = generated.origins().get(file);
+            String document = origin == null ? null : Manifest.document(origin).toString();
+            if (keptFiles.containsKey(file) && !keptFiles.get(file).equals(document)) {
+                System.err.println(file + " was generated from " + keptFiles.get(file) + " before, "
+                        + "regenerating all schemas");
+                return generate(sources, output, manifestFile, previous, true);
+            }
+            filesByDocument.computeIfAbsent(document, d -> new ArrayList<>()).add(file);
+        }
+
+        Set<String> stale = new TreeSet<>();
+        for (Map.Entry<String, Manifest.Document> document : previous.documents.entrySet()) {
+            if (!kept.contains(document.getKey())) {
+                stale.addAll(document.getValue().files);
+            }
+        }
+        for (String file : previous.shared) {
+            if (!sharedPaths.contains(file)) {
+                stale.add(file);
+            }
+        }
+        stale.removeAll(generated.files().keySet());
+        stale.removeAll(keptFiles.keySet());
+        for (String file : stale) {
+            Files.deleteIfExists(output.resolve(file));
+        }
+
+        // the module registers the types of the kept documents too, so it is regenerated from all of them
+        Map<String, List<String>> moduleTypesByDocument = new HashMap<>();
+        Set<String> moduleTypes = new TreeSet<>(generated.moduleTypes());
+        for (String type : generated.moduleTypes()) {
+            URI origin = generated.origins().get(GeneratedSources.path(type));
+            if (origin != null) {
+                moduleTypesByDocument.computeIfAbsent(Manifest.document(origin).toString(), d -> new ArrayList<>())
+                        .add(type);
+            }
+        }
+        Map<String, List<String>> reflectedTypesByDocument = new HashMap<>();
+        Set<String> reflectedTypes = new TreeSet<>(generated.reflectedTypes());
+        for (String type : generated.reflectedTypes()) {
+            URI origin = origin(generated, type);
+            if (origin != null) {
+                reflectedTypesByDocument.computeIfAbsent(Manifest.document(origin).toString(), d -> new ArrayList<>())
+                        .add(type);
+            }
+        }
+        for (String document : kept) {
+            moduleTypes.addAll(previous.documents.get(document).moduleTypes);
+            reflectedTypes.addAll(previous.documents.get(document).reflectedTypes);
+        }
+        Map<String, byte[]> files = new TreeMap<>(generated.files());
+        files.putAll(compiler.shared(moduleTypes, reflectedTypes));
+        SchemaCompiler.write(files, output);
+
+        Manifest manifest = new Manifest();
+        manifest.configuration = configuration;
+        manifest.sources = sourceDocuments.keySet().stream().map(URI::toString).sorted().collect(Collectors.toList());
+        manifest.shared = new ArrayList<>(new TreeSet<>(sharedPaths));
+        for (Map.Entry<String, Manifest.Document> entry : documents.entrySet()) {
+            Manifest.Document document = entry.getValue();
+            if (kept.contains(entry.getKey())) {
+                document.files = previous.documents.get(entry.getKey()).files;
+                document.moduleTypes = previous.documents.get(entry.getKey()).moduleTypes;
+                document.reflectedTypes = previous.documents.get(entry.getKey()).reflectedTypes;
+            } else {
+                document.files = filesByDocument.getOrDefault(entry.getKey(), Collections.emptyList());
+                Collections.sort(document.files);
+                document.moduleTypes = moduleTypesByDocument.getOrDefault(entry.getKey(), Collections.emptyList());
+                Collections.sort(document.moduleTypes);
+                document.reflectedTypes = reflectedTypesByDocument.getOrDefault(entry.getKey(),
+                        Collections.emptyList());
+                Collections.sort(document.reflectedTypes);
+            }
+            manifest.documents.put(entry.getKey(), document);
+        }
+        manifest.write(manifestFile);
+
+        System.out.println("regenerated " + dirty.size() + " of " + sources.size() + " schemas, removed "
+                + stale.size() + " stale files");
+        return dirty.size();
+    }
+
+    /**
+     * @return the schema document the class of a reflected type was generated from, or null if it isn't known. Nested
+     * classes belong to their top level class, and the {@code ImmutableX} classes to their value type.
+     */
+    private static URI origin(GeneratedSources generated, String reflectedType) {
+        String topLevel = substringBefore(reflectedType, "$");
+        URI origin = generated.origins().get(GeneratedSources.path(topLevel));
+        if (origin != null) {
+            return origin;
+        }
+        int simpleName = topLevel.lastIndexOf('.') + 1;
+        String valueType = topLevel.substring(0, simpleName) + removeStart(topLevel.substring(simpleName), "Immutable");
+        return generated.origins().get(GeneratedSources.path(valueType));
+    }
+
+    private static boolean complete(Manifest manifest, Path output) {
+        List<String> files = new ArrayList<>();
+        manifest.documents.values().forEach(document -> files.addAll(document.files));
+        files.addAll(manifest.shared);
+        for (String file : files) {
+            if (!Files.isRegularFile(output.resolve(file))) {
+                System.err.println(file + " is missing from " + output + ", regenerating all schemas");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes every document reachable from the sources. Documents that didn't change keep the references recorded in
+     * the previous manifest, so only changed documents need to be parsed.
+     */
+    private Map<String, Manifest.Document> scan(Collection<URI> sources, Manifest previous) throws IOException {
+        Map<String, Manifest.Document> documents = new TreeMap<>();
+        Deque<URI> pending = new ArrayDeque<>(sources);
+        while (!pending.isEmpty()) {
+            URI uri = pending.pop();
+            if (documents.containsKey(uri.toString())) {
+                continue;
+            }
+
+            Manifest.Document document = new Manifest.Document();
+            document.hash = Manifest.hash(read(uri));
+            Manifest.Document recorded = previous.documents.get(uri.toString());
+            if (recorded != null && recorded.hash.equals(document.hash)) {
+                document.refs = recorded.refs;
+            } else {
+                Set<String> refs = new TreeSet<>();
+                collectRefs(compiler.getContentResolver().resolve(uri), uri, refs);
+                document.refs = new ArrayList<>(refs);
+            }
+            documents.put(uri.toString(), document);
+
+            for (String ref : document.refs) {
+                pending.push(URI.create(ref));
+            }
+        }
+        return documents;
+    }
+
+    private byte[] read(URI uri) throws IOException {
+        if ("file".equals(uri.getScheme())) {
+            return Files.readAllBytes(Paths.get(uri));
+        }
+        return compiler.getContentResolver().resolve(uri).toString().getBytes("UTF-8");
+    }
+
+    private static void collectRefs(JsonNode node, URI document, Set<String> refs) {
+        JsonNode ref = node.get("$ref");
+        if (ref != null && ref.isTextual() && !ref.asText().startsWith("#")) {
+            refs.add(Manifest.document(document.resolve(ref.asText())).toString());
+        }
+        for (JsonNode child : node) {
+            collectRefs(child, document, refs);
+        }
+    }
+
+    private static Set<String> closure(String source, Map<String, Manifest.Document> documents) {
+        Set<String> closure = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(source);
+        while (!pending.isEmpty()) {
+            String uri = pending.pop();
+            if (closure.add(uri)) {
+                pending.addAll(documents.get(uri).refs);
+            }
+        }
+        return closure;
+    }
+}
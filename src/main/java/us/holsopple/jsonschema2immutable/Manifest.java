@@ -0,0 +1,108 @@
+package us.holsopple.jsonschema2immutable;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.commons.lang3.StringUtils.substringBefore;
+
+/**
+ * Records what a generator run read and wrote, so that the next run can tell which schemas changed. The manifest is
+ * kept in the output directory unless the caller chooses another place; every schema document that was read is listed
+ * with a hash of its content, the documents it references through {@code $ref} and the files generated from it.
+ */
+class Manifest {
+    static final String FILE_NAME = "jsonschema2immutable-manifest.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    @JsonProperty
+    String configuration;
+
+    @JsonProperty
+    List<String> sources = new ArrayList<>();
+
+    @JsonProperty
+    Map<String, Document> documents = new TreeMap<>();
+
+    /**
+     * The files generated for all documents together, like the Jackson module, which aren't listed with any of them.
+     */
+    @JsonProperty
+    List<String> shared = new ArrayList<>();
+
+    static class Document {
+        @JsonProperty
+        String hash;
+
+        @JsonProperty
+        List<String> refs = new ArrayList<>();
+
+        @JsonProperty
+        List<String> files = new ArrayList<>();
+
+        @JsonProperty
+        List<String> moduleTypes = new ArrayList<>();
+
+        @JsonProperty
+        List<String> reflectedTypes = new ArrayList<>();
+    }
+
+    /**
+     * @return the manifest in the given file, or null if there is none that can be read
+     */
+    static Manifest read(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(file.toFile(), Manifest.class);
+        } catch (IOException ex) {
+            System.err.println("ignoring unreadable manifest " + file + ": " + ex.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        MAPPER.writeValue(file.toFile(), this);
+    }
+
+    /**
+     * Normalizes a schema id to the document it is defined in, so that ids of the same file compare equal however
+     * they were written.
+     */
+    static URI document(URI id) {
+        URI uri = URI.create(substringBefore(id.toString(), "#"));
+        if ("file".equals(uri.getScheme())) {
+            return Paths.get(uri).toAbsolutePath().normalize().toUri();
+        }
+        return uri;
+    }
+
+    static String hash(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
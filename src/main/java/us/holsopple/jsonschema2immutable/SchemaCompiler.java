@@ -0,0 +1,673 @@
+package us.holsopple.jsonschema2immutable;
+
+import com.sun.codemodel.JCodeModel;
+import com.sun.codemodel.JDefinedClass;
+import com.sun.codemodel.JPackage;
+import org.jsonschema2pojo.GenerationConfig;
+import org.jsonschema2pojo.Jackson2Annotator;
+import org.jsonschema2pojo.SchemaGenerator;
+import org.jsonschema2pojo.SchemaMapper;
+import org.jsonschema2pojo.SchemaStore;
+import us.holsopple.jsonschema2immutable.binary.BinaryCodecGenerator;
+import us.holsopple.jsonschema2immutable.binary.BinaryIOGenerator;
+import us.holsopple.jsonschema2immutable.jackson.DeserializerGenerator;
+import us.holsopple.jsonschema2immutable.jackson.JsonRecordsGenerator;
+import us.holsopple.jsonschema2immutable.jackson.ModuleGenerator;
+import us.holsopple.jsonschema2immutable.jackson.NativeImageGenerator;
+import us.holsopple.jsonschema2immutable.jackson.ReaderGenerator;
+import us.holsopple.jsonschema2immutable.jackson.RecordsGenerator;
+import us.holsopple.jsonschema2immutable.jackson.SerializerGenerator;
+import us.holsopple.jsonschema2immutable.jackson.ViewGenerator;
+import us.holsopple.jsonschema2immutable.rules.FootprintReport;
+import us.holsopple.jsonschema2immutable.rules.ImmutableRuleFactory;
+import us.holsopple.jsonschema2immutable.rules.PersistentListGenerator;
+import us.holsopple.jsonschema2immutable.rules.RuleProfiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates the immutable definitions for a set of schema files.
+ * <p>
+ * With more than one thread the sources are split into contiguous partitions which are generated concurrently, each
+ * into its own {@link JCodeModel}. Schemas reached through {@code $ref} from several partitions are generated in each
+ * of them, so their files are identical and are written once. If two partitions claim the same class name for
+ * different schemas the sequential run would have made one of the names unique instead, so the whole set is
+ * regenerated sequentially to keep the output identical to a single-threaded run.
+ * <p>
+ * With deduplication on, which schema names a shared type depends on everything generated before it, so the sources are
+ * always generated sequentially.
+ * <p>
+ * With the Jackson module on, every value type gets a streaming serializer and deserializer, and a module registering
+ * all of them is generated into the target package once all sources are done. With native image metadata on, the
+ * GraalVM configuration, a service file for the module and an AppCDS class list are generated along with it. With the
+ * binary codec on, value types get a compact binary encoding, and the classes reading and writing it are generated into
+ * the target package. With stream readers on, the types of the root schemas of documents can be streamed from NDJSON files
+ * and JSON arrays through a class generated into the target package. With persistent collections on, arrays are
+ * generated as a persistent list that is generated into the target package too. With final classes on, value types are
+ * complete classes of their own instead of abstract classes for the Immutables annotation processor to implement.
+ */
+public class SchemaCompiler {
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    private final GenerationConfig config;
+    private final String targetPackage;
+    private final int threads;
+    private final CachingContentResolver contentResolver = new CachingContentResolver();
+    private final AtomicLong refCacheHits = new AtomicLong();
+    private final AtomicLong refCacheMisses = new AtomicLong();
+    private RuleProfiler profiler = RuleProfiler.NONE;
+    private FootprintReport footprint;
+    private boolean deduplicate;
+    private boolean primitiveArrays;
+    private boolean persistentCollections;
+    private boolean unboxedOptionals;
+    private boolean checks;
+    private boolean finalClasses;
+    private boolean jacksonModule;
+    private boolean nativeImage;
+    private boolean binaryCodec;
+    private boolean views;
+    private boolean readers;
+    private boolean streamReaders;
+
+    public SchemaCompiler(GenerationConfig config, String targetPackage, int threads) {
+        this.config = config;
+        this.targetPackage = targetPackage;
+        this.threads = threads;
+    }
+
+    /**
+     * Counts the time and allocations of the rules, and of rendering the code models, in the given profiler.
+     */
+    public void setProfiler(RuleProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Records the estimated memory footprint of the generated value types in the given report, or nothing if it is
+     * null.
+     */
+    public void setFootprint(FootprintReport footprint) {
+        this.footprint = footprint;
+    }
+
+    /**
+     * Generates a single type for structurally identical object and enum schemas.
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * Generates arrays of integers, numbers and booleans as primitive arrays.
+     */
+    public void setPrimitiveArrays(boolean primitiveArrays) {
+        this.primitiveArrays = primitiveArrays;
+    }
+
+    /**
+     * Generates arrays as persistent lists whose updates take O(log n), and the list class into the target package.
+     */
+    public void setPersistentCollections(boolean persistentCollections) {
+        this.persistentCollections = persistentCollections;
+    }
+
+    /**
+     * Stores optional integers, numbers and booleans unboxed, with their presence in a bitmask.
+     */
+    public void setUnboxedOptionals(boolean unboxedOptionals) {
+        this.unboxedOptionals = unboxedOptionals;
+    }
+
+    /**
+     * Generates {@code @Value.Check} methods that enforce the validation keywords of the schemas.
+     */
+    public void setChecks(boolean checks) {
+        this.checks = checks;
+    }
+
+    /**
+     * Generates value types as final classes with a builder of their own, which need no annotation processor. They
+     * can't be combined with the features that build on the classes Immutables generates: unboxed optionals, the
+     * Jackson module, binary codecs, views and readers.
+     */
+    public void setFinalClasses(boolean finalClasses) {
+        this.finalClasses = finalClasses;
+    }
+
+    /**
+     * Generates a streaming Jackson serializer and deserializer for every value type, and a module that registers them.
+     */
+    public void setJacksonModule(boolean jacksonModule) {
+        this.jacksonModule = jacksonModule;
+    }
+
+    /**
+     * Generates GraalVM reflection and resource configuration for the generated types, a service file that registers
+     * the Jackson module and an AppCDS class list. Needs the Jackson module.
+     */
+    public void setNativeImage(boolean nativeImage) {
+        this.nativeImage = nativeImage;
+    }
+
+    /**
+     * Generates a compact binary codec for every value type whose properties can all be encoded.
+     */
+    public void setBinaryCodec(boolean binaryCodec) {
+        this.binaryCodec = binaryCodec;
+    }
+
+    /**
+     * Generates a view for every value type that reads it lazily from the JSON bytes it wraps.
+     */
+    public void setViews(boolean views) {
+        this.views = views;
+    }
+
+    /**
+     * Generates a reader for every value type that fills a reused {@code Modifiable} instance in place.
+     */
+    public void setReaders(boolean readers) {
+        this.readers = readers;
+    }
+
+    /**
+     * Generates a class for every type of a root schema that streams its instances from NDJSON files and JSON arrays.
+     */
+    public void setStreamReaders(boolean streamReaders) {
+        this.streamReaders = streamReaders;
+    }
+
+    /**
+     * @return a description of the generator and the settings that affect the generated sources, for the
+     * {@link IncrementalCompiler}
+     */
+    public String getConfiguration() {
+        return "generator=" + GeneratorHash.VALUE
+                + ";package=" + targetPackage
+                + (deduplicate ? ";dedupe" : "")
+                + (primitiveArrays ? ";primitive-arrays" : "")
+                + (persistentCollections ? ";persistent-collections" : "")
+                + (unboxedOptionals ? ";unboxed-optionals" : "")
+                + (checks ? ";checks" : "")
+                + (finalClasses ? ";final-classes" : "")
+                + (jacksonModule ? ";jackson-module" : "")
+                + (nativeImage ? ";native-image" : "")
+                + (binaryCodec ? ";binary-codec" : "")
+                + (views ? ";views" : "")
+                + (readers ? ";readers" : "")
+                + (streamReaders ? ";stream-readers" : "");
+    }
+
+    public GeneratedSources compile(List<Path> sources) {
+        checkOptions();
+        GeneratedSources generated = generateAll(sources);
+        if (getSharedPaths().isEmpty()) {
+            return generated;
+        }
+        Map<String, byte[]> files = new TreeMap<>(generated.files());
+        files.putAll(shared(generated.moduleTypes(), generated.reflectedTypes()));
+        return new GeneratedSources(files, generated.origins(), generated.moduleTypes(), generated.reflectedTypes());
+    }
+
+    /**
+     * @return the path of the generated Jackson module relative to the output directory, or null if there is none
+     */
+    public String getModulePath() {
+        return jacksonModule ? GeneratedSources.path(ModuleGenerator.moduleName(targetPackage)) : null;
+    }
+
+    /**
+     * @return the paths relative to the output directory of the files that aren't generated from any one schema, but
+     * for all of them together, like the Jackson module
+     */
+    public List<String> getSharedPaths() {
+        List<String> paths = new ArrayList<>();
+        if (jacksonModule) {
+            paths.add(getModulePath());
+        }
+        if (nativeImage) {
+            paths.addAll(NativeImageGenerator.paths(targetPackage));
+        }
+        if (binaryCodec) {
+            for (String className : BinaryIOGenerator.classNames(targetPackage)) {
+                paths.add(GeneratedSources.path(className));
+            }
+        }
+        if (persistentCollections) {
+            paths.add(GeneratedSources.path(PersistentListGenerator.className(targetPackage)));
+        }
+        if (streamReaders) {
+            paths.add(GeneratedSources.path(JsonRecordsGenerator.className(targetPackage)));
+        }
+        return paths;
+    }
+
+    /**
+     * @param moduleTypes    the value types the Jackson module registers
+     * @param reflectedTypes the classes the native image metadata lists for reflection
+     * @return the files that aren't generated from any one schema, keyed by their paths
+     */
+    public Map<String, byte[]> shared(Collection<String> moduleTypes, Collection<String> reflectedTypes) {
+        InMemoryCodeWriter writer = new InMemoryCodeWriter();
+        try {
+            for (JCodeModel codeModel : sharedModels(moduleTypes)) {
+                codeModel.build(writer);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (!nativeImage) {
+            return writer.files();
+        }
+        Map<String, byte[]> files = new TreeMap<>(writer.files());
+        files.putAll(NativeImageGenerator.generate(targetPackage, moduleTypes, reflectedTypes));
+        return files;
+    }
+
+    private List<JCodeModel> sharedModels(Collection<String> moduleTypes) {
+        List<JCodeModel> codeModels = new ArrayList<>();
+        if (jacksonModule) {
+            codeModels.add(ModuleGenerator.generate(targetPackage, moduleTypes));
+        }
+        if (binaryCodec) {
+            codeModels.add(BinaryIOGenerator.generate(targetPackage));
+        }
+        if (persistentCollections) {
+            codeModels.add(PersistentListGenerator.generate(targetPackage));
+        }
+        if (streamReaders) {
+            codeModels.add(JsonRecordsGenerator.generate(targetPackage));
+        }
+        return codeModels;
+    }
+
+    private GeneratedSources generateAll(List<Path> sources) {
+        if (threads <= 1 || sources.size() <= 1 || deduplicate) {
+            return count(generate(sources));
+        }
+
+        List<List<Path>> partitions = partition(sources, threads * PARTITIONS_PER_THREAD);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<Partition> results;
+        try {
+            results = pool.submit(() -> partitions.parallelStream()
+                    .map(this::generate)
+                    .collect(Collectors.toList()))
+                    .get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while generating schemas", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        GeneratedSources merged = merge(results);
+        if (merged == null) {
+            // the partitions are thrown away, so only the sequential run is counted
+            return count(generate(sources));
+        }
+        results.forEach(this::count);
+        return merged;
+    }
+
+    /**
+     * @return the regular files below each of the source directories, sorted within each directory
+     */
+    public static List<Path> findSources(List<Path> sourceDirs) {
+        List<Path> sources = new ArrayList<>();
+        for (Path sourceDir : sourceDirs) {
+            try (Stream<Path> paths = Files.walk(sourceDir)) {
+                sources.addAll(paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+            } catch (IOException ex) {
+                System.err.println("can't open source in " + sourceDir + ": " + ex.getLocalizedMessage());
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * @return how many {@code $ref} lookups were answered from the {@link us.holsopple.jsonschema2immutable.rules.RefResolver}
+     * caches, over all runs of this compiler
+     */
+    public long getRefCacheHits() {
+        return refCacheHits.get();
+    }
+
+    /**
+     * @return how many {@code $ref} lookups had to go to the schema store, over all runs of this compiler
+     */
+    public long getRefCacheMisses() {
+        return refCacheMisses.get();
+    }
+
+    public CachingContentResolver getContentResolver() {
+        return contentResolver;
+    }
+
+    public static void write(Map<String, byte[]> files, Path output) throws IOException {
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            Path target = output.resolve(file.getKey());
+            Files.createDirectories(target.getParent());
+            Files.write(target, file.getValue());
+        }
+    }
+
+    /**
+     * Generates the sources into a single code model like a sequential {@link #compile(List)}, but writes the
+     * classes of each source as soon as it is done, and then drops their bodies from the model. Only names and
+     * signatures the rules need for later schemas stay in memory. The output is the same as that of
+     * {@link #compile(List)}, except that a {@code oneOf} with a discriminator fails if one of its subtypes was
+     * written for an earlier source.
+     */
+    public void stream(List<Path> sources, Path output, int ioThreads) throws IOException {
+        checkOptions();
+        JCodeModel codeModel = new JCodeModel();
+        ImmutableRuleFactory ruleFactory = newRuleFactory(new ConcurrentSchemaStore(contentResolver), profiler);
+        SchemaMapper mapper = new SchemaMapper(ruleFactory, new SchemaGenerator());
+        StreamingCodeWriter writer = new StreamingCodeWriter(output, ioThreads);
+        Set<String> moduleTypes = new TreeSet<>();
+        Set<String> reflectedTypes = new TreeSet<>();
+
+        try {
+            for (Path source : sources) {
+                mapper.generate(codeModel, "ClassName", targetPackage, source.toUri().toURL());
+                decorate(ruleFactory, codeModel, moduleTypes, reflectedTypes);
+                try (RuleProfiler.Section ignored = profiler.enter("JCodeModel.build", null)) {
+                    codeModel.build(writer);
+                }
+                release(codeModel);
+            }
+            for (JCodeModel shared : sharedModels(moduleTypes)) {
+                shared.build(writer);
+            }
+            if (nativeImage) {
+                write(NativeImageGenerator.generate(targetPackage, moduleTypes, reflectedTypes), output);
+            }
+        } finally {
+            writer.finish();
+        }
+        refCacheHits.addAndGet(ruleFactory.getRefResolver().getHits());
+        refCacheMisses.addAndGet(ruleFactory.getRefResolver().getMisses());
+    }
+
+    private ImmutableRuleFactory newRuleFactory(SchemaStore schemaStore, RuleProfiler profiler) {
+        ImmutableRuleFactory ruleFactory = new ImmutableRuleFactory(config, new Jackson2Annotator(config), schemaStore);
+        ruleFactory.setProfiler(profiler);
+        ruleFactory.setDeduplicate(deduplicate);
+        ruleFactory.setPrimitiveArrays(primitiveArrays);
+        ruleFactory.setPersistentList(persistentCollections ? PersistentListGenerator.className(targetPackage) : null);
+        ruleFactory.setUnboxedOptionals(unboxedOptionals);
+        ruleFactory.setChecks(checks);
+        ruleFactory.setFinalClasses(finalClasses);
+        return ruleFactory;
+    }
+
+    /**
+     * Adds what the options ask for to the value types the rules generated into the code model.
+     *
+     * @param moduleTypes gets the value types the Jackson module registers
+     * @param reflectedTypes gets the types native image metadata lists
+     */
+    private void decorate(ImmutableRuleFactory ruleFactory, JCodeModel codeModel, Set<String> moduleTypes,
+                          Set<String> reflectedTypes) {
+        if (jacksonModule) {
+            moduleTypes.addAll(codecs(ruleFactory, codeModel));
+        }
+        if (binaryCodec) {
+            new BinaryCodecGenerator(ruleFactory, targetPackage).generate(codeModel);
+        }
+        if (views) {
+            new ViewGenerator(ruleFactory).generate(codeModel);
+        }
+        if (readers) {
+            new ReaderGenerator(ruleFactory).generate(codeModel);
+        }
+        if (streamReaders) {
+            new RecordsGenerator(ruleFactory, targetPackage).generate(codeModel);
+        }
+        if (nativeImage) {
+            reflectedTypes.addAll(NativeImageGenerator.reflectedTypes(ruleFactory, codeModel));
+        }
+        if (footprint != null) {
+            footprint.add(ruleFactory, codeModel);
+        }
+    }
+
+    private void checkOptions() {
+        if (finalClasses && (unboxedOptionals || jacksonModule || binaryCodec || views || readers)) {
+            throw new IllegalStateException("final classes can't be combined with unboxed optionals, the Jackson "
+                    + "module, binary codecs, views or readers");
+        }
+        if (nativeImage && !jacksonModule) {
+            throw new IllegalStateException("native image metadata needs the Jackson module");
+        }
+    }
+
+    /**
+     * Adds the streaming serializers and deserializers to the value types of the code model.
+     *
+     * @return the fully qualified names of the value types that got them
+     */
+    private static List<String> codecs(ImmutableRuleFactory ruleFactory, JCodeModel codeModel) {
+        List<String> types = new DeserializerGenerator(ruleFactory).generate(codeModel);
+        new SerializerGenerator(ruleFactory).generate(codeModel);
+        return types;
+    }
+
+    /**
+     * Excludes the classes that were written from later builds and drops everything but their declarations.
+     * The classes stay in their packages so that their names remain taken.
+     */
+    private static void release(JCodeModel codeModel) {
+        for (Iterator<JPackage> packages = codeModel.packages(); packages.hasNext(); ) {
+            for (Iterator<JDefinedClass> classes = packages.next().classes(); classes.hasNext(); ) {
+                JDefinedClass cls = classes.next();
+                if (!cls.isHidden()) {
+                    cls.hide();
+                    cls.methods().clear();
+                    cls.javadoc().clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates the sources into a code model of their own. The rules are profiled and the {@code $ref} lookups
+     * counted for the partition alone, and only added to those of this compiler by {@link #count(Partition)}.
+     */
+    private Partition generate(List<Path> sources) {
+        JCodeModel codeModel = new JCodeModel();
+        ConcurrentSchemaStore schemaStore = new ConcurrentSchemaStore(contentResolver);
+        RuleProfiler profiler = this.profiler.isEnabled() ? new RuleProfiler() : RuleProfiler.NONE;
+        ImmutableRuleFactory ruleFactory = newRuleFactory(schemaStore, profiler);
+        SchemaMapper mapper = new SchemaMapper(ruleFactory, new SchemaGenerator());
+
+        for (Path source : sources) {
+            try {
+                mapper.generate(codeModel, "ClassName", targetPackage, source.toUri().toURL());
+            } catch (MalformedURLException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        Set<String> moduleTypes = new TreeSet<>();
+        Set<String> reflectedTypes = new TreeSet<>();
+        decorate(ruleFactory, codeModel, moduleTypes, reflectedTypes);
+
+        InMemoryCodeWriter writer = new InMemoryCodeWriter();
+        try (RuleProfiler.Section ignored = profiler.enter("JCodeModel.build", null)) {
+            codeModel.build(writer);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        Map<String, URI> origins = new TreeMap<>();
+        ruleFactory.getClassSources().forEach((className, uri) -> origins.put(GeneratedSources.path(className), uri));
+        return new Partition(new GeneratedSources(writer.files(), origins, moduleTypes, reflectedTypes),
+                classNames(codeModel), schemaStore.generatedClasses(), profiler,
+                ruleFactory.getRefResolver().getHits(), ruleFactory.getRefResolver().getMisses());
+    }
+
+    /**
+     * Adds the profile and the {@code $ref} lookups of a partition whose output is kept to those of this compiler.
+     *
+     * @return the sources of the partition
+     */
+    private GeneratedSources count(Partition partition) {
+        profiler.add(partition.profiler);
+        refCacheHits.addAndGet(partition.refCacheHits);
+        refCacheMisses.addAndGet(partition.refCacheMisses);
+        return partition.sources;
+    }
+
+    /**
+     * Combines the partitions in source order.
+     *
+     * @return the merged files, or null if the partitions don't agree on the classes they generated
+     */
+    private static GeneratedSources merge(List<Partition> partitions) {
+        Map<String, byte[]> files = new TreeMap<>();
+        Map<String, URI> origins = new TreeMap<>();
+        Map<String, URI> classSources = new HashMap<>();
+        Map<URI, String> schemaClasses = new HashMap<>();
+        Set<String> moduleTypes = new TreeSet<>();
+        Set<String> reflectedTypes = new TreeSet<>();
+
+        for (Partition partition : partitions) {
+            Map<String, URI> partitionSources = new HashMap<>();
+            partition.schemaClasses.forEach((uri, className) -> partitionSources.put(className, uri));
+
+            for (String className : partition.classNames) {
+                URI source = partitionSources.get(className);
+                if (classSources.containsKey(className)
+                        && (source == null || !source.equals(classSources.get(className)))) {
+                    System.err.println("class " + className + " is generated from more than one schema, "
+                            + "falling back to sequential generation");
+                    return null;
+                }
+                classSources.put(className, source);
+            }
+
+            for (Map.Entry<URI, String> schemaClass : partition.schemaClasses.entrySet()) {
+                String existing = schemaClasses.putIfAbsent(schemaClass.getKey(), schemaClass.getValue());
+                if (existing != null && !existing.equals(schemaClass.getValue())) {
+                    System.err.println("schema " + schemaClass.getKey() + " is generated under more than one name, "
+                            + "falling back to sequential generation");
+                    return null;
+                }
+            }
+
+            partition.sources.origins().forEach(origins::putIfAbsent);
+            moduleTypes.addAll(partition.sources.moduleTypes());
+            reflectedTypes.addAll(partition.sources.reflectedTypes());
+            for (Map.Entry<String, byte[]> file : partition.sources.files().entrySet()) {
+                byte[] existing = files.putIfAbsent(file.getKey(), file.getValue());
+                if (existing != null && !Arrays.equals(existing, file.getValue())) {
+                    System.err.println(file.getKey() + " differs between schemas, "
+                            + "falling back to sequential generation");
+                    return null;
+                }
+            }
+        }
+        return new GeneratedSources(files, origins, moduleTypes, reflectedTypes);
+    }
+
+    private static List<List<Path>> partition(List<Path> sources, int count) {
+        int size = Math.max(1, (sources.size() + count - 1) / count);
+        List<List<Path>> partitions = new ArrayList<>();
+        for (int start = 0; start < sources.size(); start += size) {
+            partitions.add(sources.subList(start, Math.min(start + size, sources.size())));
+        }
+        return partitions;
+    }
+
+    private static Set<String> classNames(JCodeModel codeModel) {
+        Set<String> names = new HashSet<>();
+        for (Iterator<JPackage> packages = codeModel.packages(); packages.hasNext(); ) {
+            for (Iterator<JDefinedClass> classes = packages.next().classes(); classes.hasNext(); ) {
+                JDefinedClass cls = classes.next();
+                if (!cls.isHidden()) {
+                    names.add(cls.fullName());
+                }
+            }
+        }
+        return names;
+    }
+
+    private static class Partition {
+        private final GeneratedSources sources;
+        private final Set<String> classNames;
+        private final Map<URI, String> schemaClasses;
+        private final RuleProfiler profiler;
+        private final long refCacheHits;
+        private final long refCacheMisses;
+
+        private Partition(GeneratedSources sources, Set<String> classNames, Map<URI, String> schemaClasses,
+                          RuleProfiler profiler, long refCacheHits, long refCacheMisses) {
+            this.sources = sources;
+            this.classNames = classNames;
+            this.schemaClasses = schemaClasses;
+            this.profiler = profiler;
+            this.refCacheHits = refCacheHits;
+            this.refCacheMisses = refCacheMisses;
+        }
+    }
+
+    /**
+     * A hash of the generator's own classes, which are those of the jar it was loaded from, or the class files below
+     * the directory it runs from in a build. Sources generated by a different build of the generator are regenerated,
+     * even when it has the same version.
+     */
+    private static final class GeneratorHash {
+        static final String VALUE = compute();
+
+        private static String compute() {
+            CodeSource source = SchemaCompiler.class.getProtectionDomain().getCodeSource();
+            if (source == null) {
+                return "unknown";
+            }
+            try {
+                Path location = Paths.get(source.getLocation().toURI());
+                if (!Files.isDirectory(location)) {
+                    return Manifest.hash(Files.readAllBytes(location)).substring(0, 16);
+                }
+                ByteArrayOutputStream classes = new ByteArrayOutputStream();
+                try (Stream<Path> files = Files.walk(location)) {
+                    for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                        classes.write(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                        classes.write(Files.readAllBytes(file));
+                    }
+                }
+                return Manifest.hash(classes.toByteArray()).substring(0, 16);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } catch (URISyntaxException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
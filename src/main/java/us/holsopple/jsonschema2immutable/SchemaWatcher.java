@@ -0,0 +1,113 @@
+package us.holsopple.jsonschema2immutable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps the output directory up to date while the source directories change.
+ * <p>
+ * Changes are collected until the source directories have been quiet for the debounce interval, so that a bulk
+ * checkout causes a single run of the {@link IncrementalCompiler}. The parsed schema documents stay cached between
+ * runs, only the changed files are parsed again.
+ * <p>
+ * A batch that fails, because a file was saved halfway or a schema can't be generated, is reported and leaves the
+ * output and the manifest as they were, so the next change generates the failed schemas again.
+ */
+public class SchemaWatcher implements Closeable {
+    private final List<Path> sourceDirs;
+    private final Path output;
+    private final SchemaCompiler compiler;
+    private final IncrementalCompiler incrementalCompiler;
+    private final long debounceMillis;
+    private final WatchService watchService;
+
+    public SchemaWatcher(List<Path> sourceDirs, Path output, SchemaCompiler compiler,
+                         IncrementalCompiler incrementalCompiler, long debounceMillis) throws IOException {
+        this.sourceDirs = sourceDirs;
+        this.output = output;
+        this.compiler = compiler;
+        this.incrementalCompiler = incrementalCompiler;
+        this.debounceMillis = debounceMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Generates the sources and then regenerates them after every batch of changes, until interrupted.
+     */
+    public void run() throws IOException, InterruptedException {
+        for (Path sourceDir : sourceDirs) {
+            register(sourceDir);
+        }
+        generate();
+        System.out.println("watching " + sourceDirs.size() + " source directories");
+
+        while (!Thread.currentThread().isInterrupted()) {
+            Set<Path> changed = new TreeSet<>();
+            WatchKey key = watchService.take();
+            while (key != null) {
+                collect(key, changed);
+                key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+            }
+
+            long start = System.nanoTime();
+            compiler.getContentResolver().invalidate(changed);
+            if (generate()) {
+                System.out.println(changed.size() + " changed files processed in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+        }
+    }
+
+    /**
+     * @return whether the sources were generated, the error is reported otherwise
+     */
+    private boolean generate() {
+        try {
+            incrementalCompiler.generate(SchemaCompiler.findSources(sourceDirs), output);
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("error generating sources, waiting for the next change: " + ex.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) throws IOException {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // events were lost, so none of the parsed sources can be trusted
+                for (Path source : SchemaCompiler.findSources(sourceDirs)) {
+                    changed.add(source.toAbsolutePath().normalize());
+                }
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context()).toAbsolutePath().normalize();
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                register(path);
+            }
+            changed.add(path);
+        }
+        key.reset();
+    }
+
+    private void register(Path root) throws IOException {
+        try (Stream<Path> dirs = Files.walk(root)) {
+            for (Path dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        }
+    }
+}
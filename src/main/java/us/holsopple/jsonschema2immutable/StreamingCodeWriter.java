@@ -0,0 +1,86 @@
+package us.holsopple.jsonschema2immutable;
+
+import com.sun.codemodel.CodeWriter;
+import com.sun.codemodel.JPackage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Writes the files of a {@link com.sun.codemodel.JCodeModel} on a small pool of I/O threads, so that generation can
+ * go on while they are written. At most a fixed number of files wait to be written; beyond that the generating thread
+ * writes the file itself.
+ * <p>
+ * {@link #close()} is called at the end of every {@link com.sun.codemodel.JCodeModel#build(CodeWriter)} and does
+ * nothing, {@link #finish()} waits for all files to be written.
+ */
+class StreamingCodeWriter extends CodeWriter {
+    private static final int PENDING_FILES = 64;
+
+    private final Path output;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentLinkedQueue<Future<?>> writes = new ConcurrentLinkedQueue<>();
+
+    StreamingCodeWriter(Path output, int threads) {
+        this.output = output;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(PENDING_FILES), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    public OutputStream openBinary(JPackage pkg, String fileName) {
+        Path target = output.resolve(InMemoryCodeWriter.path(pkg, fileName));
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                byte[] content = toByteArray();
+                writes.add(executor.submit(() -> {
+                    writeFile(target, content);
+                    return null;
+                }));
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Waits for all files to be written and stops the I/O threads.
+     */
+    void finish() throws IOException {
+        executor.shutdown();
+        try {
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing " + output, ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    private static void writeFile(Path target, byte[] content) throws IOException {
+        Files.createDirectories(target.getParent());
+        try (FileChannel channel = FileChannel.open(target, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package us.holsopple.jsonschema2immutable.binary;
+
+import com.sun.codemodel.*;
+import us.holsopple.jsonschema2immutable.rules.AbsentBits;
+import us.holsopple.jsonschema2immutable.rules.GeneratedProperty;
+import us.holsopple.jsonschema2immutable.rules.ImmutableRuleFactory;
+import us.holsopple.jsonschema2immutable.rules.ImmutablesTypes;
+import us.holsopple.jsonschema2immutable.rules.NestedClassGenerator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Adds a {@code BinaryCodec} class to every value type of a code model whose properties all have a binary encoding.
+ * <p>
+ * A payload starts with the fingerprint of the schema, so that a reader rejects data written for a different shape
+ * before reading any of it. The properties follow in schema order, preceded by a bitmap telling which of the nullable
+ * ones and of the optional primitives stored unboxed are present. Integers are varints, enums their ordinal, UUIDs
+ * their two halves, nested value types their own encoding without the fingerprint and collections and primitive arrays
+ * their size followed by the elements. A value type with a property of any other type, or referring to a value type
+ * that can't be encoded, doesn't get a codec, and neither does one with a collection of value types that can be
+ * encoded to no bytes at all, as the size of the collection couldn't be checked against the payload.
+ * <p>
+ * The fingerprint covers the JSON names, encodings and nullability of the properties, the values of the enums and the
+ * shape of the nested value types, but not the names of the Java types, so renaming a schema keeps its payloads
+ * readable.
+ */
+public class BinaryCodecGenerator extends NestedClassGenerator {
+    public static final String CLASS_NAME = "BinaryCodec";
+
+    private final String targetPackage;
+    private final Set<JDefinedClass> encodable = new HashSet<>();
+    private JClass output;
+    private JClass input;
+
+    public BinaryCodecGenerator(ImmutableRuleFactory ruleFactory, String targetPackage) {
+        super(ruleFactory, CLASS_NAME);
+        this.targetPackage = targetPackage;
+    }
+
+    @Override
+    public List<String> generate(JCodeModel codeModel) {
+        String[] classNames = BinaryIOGenerator.classNames(targetPackage);
+        output = stub(codeModel, classNames[0]);
+        input = stub(codeModel, classNames[1]);
+        if (output == null || input == null) {
+            System.err.println("not generating binary codecs, " + String.join(" or ", classNames)
+                    + " is taken by another class");
+            return Collections.emptyList();
+        }
+
+        // a type is encodable when all its properties are, which may depend on types that refer back to it, so start
+        // from all candidates and drop the ones that refer to something else until nothing changes
+        encodable.clear();
+        for (JDefinedClass cls : classes(codeModel)) {
+            if (getRuleFactory().getProperties(cls) != null && !cls.isHidden()
+                    && ImmutablesTypes.nested(cls, CLASS_NAME) == null && ImmutablesTypes.immutable(cls) != null
+                    && (!targetPackage.isEmpty() || cls._package().isUnnamed())) {
+                encodable.add(cls);
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = encodable.removeIf(cls -> getRuleFactory().getProperties(cls).stream()
+                    .anyMatch(property -> !isEncodable(property.getType())));
+        }
+        return super.generate(codeModel);
+    }
+
+    @Override
+    protected boolean accepts(JDefinedClass cls) {
+        return encodable.contains(cls);
+    }
+
+    @Override
+    protected void generate(JDefinedClass cls, JDefinedClass immutable, List<GeneratedProperty> allProperties,
+                            JDefinedClass codec) {
+        JCodeModel codeModel = cls.owner();
+        List<GeneratedProperty> properties = distinct(allProperties);
+        codec.mods().setFinal(true);
+        codec.javadoc().add("Encodes {@link " + cls.name() + "} in a compact binary form.");
+        codec.constructor(JMod.PRIVATE);
+        JFieldVar fingerprint = codec.field(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, long.class, "FINGERPRINT",
+                JExpr.lit(fingerprint(cls)));
+        fingerprint.javadoc().add("Identifies the shape of the schema the encoding follows.");
+
+        JMethod encode = codec.method(JMod.PUBLIC | JMod.STATIC, byte[].class, "encode");
+        JVar encodeValue = encode.param(cls, "value");
+        JVar encodeOut = encode.body().decl(output, "out", JExpr._new(output));
+        encode.body().add(encodeOut.invoke("writeLong").arg(fingerprint));
+        encode.body().add(codec.staticInvoke("write").arg(encodeValue).arg(encodeOut));
+        encode.body()._return(encodeOut.invoke("toByteArray"));
+
+        JMethod decode = codec.method(JMod.PUBLIC | JMod.STATIC, cls, "decode");
+        decode.javadoc().addThrows(IllegalArgumentException.class)
+                .add("if the payload was written for a different schema");
+        JVar decodeIn = decode.param(ByteBuffer.class, "in");
+        decode.body().add(input.staticInvoke("checkFingerprint").arg(decodeIn).arg(fingerprint).arg(cls.dotclass()));
+        decode.body()._return(codec.staticInvoke("read").arg(decodeIn));
+
+        List<GeneratedProperty> nullable = new ArrayList<>();
+        for (GeneratedProperty property : properties) {
+            if (property.isNullable() || property.getPresence() != null) {
+                nullable.add(property);
+            }
+        }
+
+        JMethod write = codec.method(JMod.PUBLIC | JMod.STATIC, codeModel.VOID, "write");
+        write.javadoc().add("Writes the properties of the value without the fingerprint.");
+        JVar value = write.param(cls, "value");
+        JVar out = write.param(output, "out");
+        Map<GeneratedProperty, JVar> present = new HashMap<>();
+        for (GeneratedProperty property : nullable) {
+            if (property.isNullable()) {
+                present.put(property, write.body().decl(property.getType(), property.getAttributeName() + "Value",
+                        value.invoke(property.getGetter())));
+            }
+        }
+        for (int i = 0; i < nullable.size(); i += 8) {
+            JExpression bitmap = JExpr.lit(0);
+            for (int bit = 0; bit < 8 && i + bit < nullable.size(); bit++) {
+                JExpression set = JOp.cond(isPresent(nullable.get(i + bit), value, present),
+                        JExpr.lit(1 << bit), JExpr.lit(0));
+                bitmap = bit == 0 ? set : bitmap.bor(set);
+            }
+            write.body().add(out.invoke("writeByte").arg(bitmap));
+        }
+        for (GeneratedProperty property : properties) {
+            JBlock block = write.body();
+            JExpression attribute = present.get(property);
+            if (attribute == null) {
+                attribute = value.invoke(property.getGetter());
+            }
+            if (nullable.contains(property)) {
+                block = block._if(isPresent(property, value, present))._then();
+            }
+            write(block, property.getType(), attribute, out, property.getAttributeName());
+        }
+
+        JMethod read = codec.method(JMod.PUBLIC | JMod.STATIC, cls, "read");
+        read.javadoc().add("Reads the properties of a value written without the fingerprint.");
+        JVar in = read.param(ByteBuffer.class, "in");
+        List<JVar> bitmaps = new ArrayList<>();
+        for (int i = 0; i < nullable.size(); i += 8) {
+            bitmaps.add(read.body().decl(codeModel.INT, "present" + i / 8, in.invoke("get")));
+        }
+        JVar builder = read.body().decl(ImmutablesTypes.builder(immutable), "builder",
+                immutable.staticInvoke("builder"));
+        AbsentBits absentBits = new AbsentBits(read.body(), properties);
+        for (GeneratedProperty property : properties) {
+            JBlock block = read.body();
+            int index = nullable.indexOf(property);
+            if (index >= 0) {
+                block = block._if(bitmaps.get(index / 8).band(JExpr.lit(1 << index % 8)).ne(JExpr.lit(0)))._then();
+            }
+            block.add(builder.invoke(property.getAttributeName())
+                    .arg(read(block, codec, property.getType(), in, property.getAttributeName())));
+            absentBits.present(block, property);
+        }
+        absentBits.initialize(read.body(), builder);
+        read.body()._return(builder.invoke("build"));
+    }
+
+    private static JExpression isPresent(GeneratedProperty property, JVar value, Map<GeneratedProperty, JVar> locals) {
+        return property.isNullable()
+                ? locals.get(property).ne(JExpr._null())
+                : value.invoke(property.getPresence());
+    }
+
+    private void write(JBlock block, JType type, JExpression value, JVar out, String name) {
+        JCodeModel codeModel = type.owner();
+        JType element = elementType(type);
+        if (element != null) {
+            block.add(out.invoke("writeVarint").arg(type.isArray() ? value.ref("length") : value.invoke("size")));
+            JForEach elements = block.forEach(element, name + "Element", value);
+            write(elements.body(), element, elements.var(), out, name);
+            return;
+        }
+        JType unboxed = type.unboxify();
+        if (type.fullName().equals(String.class.getName())) {
+            block.add(out.invoke("writeString").arg(value));
+        } else if (unboxed == codeModel.INT || unboxed == codeModel.LONG) {
+            block.add(out.invoke("writeSigned").arg(value));
+        } else if (unboxed == codeModel.DOUBLE) {
+            block.add(out.invoke("writeDouble").arg(value));
+        } else if (unboxed == codeModel.FLOAT) {
+            block.add(out.invoke("writeFloat").arg(value));
+        } else if (unboxed == codeModel.BOOLEAN) {
+            block.add(out.invoke("writeBoolean").arg(value));
+        } else if (type.fullName().equals(UUID.class.getName())) {
+            block.add(out.invoke("writeLong").arg(value.invoke("getMostSignificantBits")));
+            block.add(out.invoke("writeLong").arg(value.invoke("getLeastSignificantBits")));
+        } else if (isEnum(type)) {
+            block.add(out.invoke("writeVarint").arg(value.invoke("ordinal")));
+        } else {
+            block.add(ImmutablesTypes.nested((JDefinedClass) type, CLASS_NAME).staticInvoke("write").arg(value)
+                    .arg(out));
+        }
+    }
+
+    private JExpression read(JBlock block, JDefinedClass codec, JType type, JVar in, String name) {
+        JCodeModel codeModel = type.owner();
+        JType element = elementType(type);
+        if (type.isArray()) {
+            JVar array = block.decl(type, name + "Values",
+                    JExpr.newArray(element, input.staticInvoke("readLength").arg(in)));
+            JForLoop elements = block._for();
+            JVar i = elements.init(codeModel.INT, "i", JExpr.lit(0));
+            elements.test(i.lt(array.ref("length")));
+            elements.update(i.incr());
+            elements.body().assign(array.component(i), read(elements.body(), codec, element, in, name));
+            return array;
+        } else if (element != null) {
+            JVar size = block.decl(codeModel.INT, name + "Size", input.staticInvoke("readLength").arg(in));
+            JVar list = block.decl(codeModel.ref(List.class).narrow(element), name + "Values",
+                    JExpr._new(codeModel.ref(ArrayList.class).narrow(element)).arg(size));
+            JForLoop elements = block._for();
+            JVar i = elements.init(codeModel.INT, "i", JExpr.lit(0));
+            elements.test(i.lt(size));
+            elements.update(i.incr());
+            elements.body().add(list.invoke("add").arg(read(elements.body(), codec, element, in, name)));
+            return list;
+        }
+        JType unboxed = type.unboxify();
+        if (type.fullName().equals(String.class.getName())) {
+            return input.staticInvoke("readString").arg(in);
+        } else if (unboxed == codeModel.INT) {
+            return JExpr.cast(codeModel.INT, input.staticInvoke("readSigned").arg(in));
+        } else if (unboxed == codeModel.LONG) {
+            return input.staticInvoke("readSigned").arg(in);
+        } else if (unboxed == codeModel.DOUBLE) {
+            return input.staticInvoke("readDouble").arg(in);
+        } else if (unboxed == codeModel.FLOAT) {
+            return input.staticInvoke("readFloat").arg(in);
+        } else if (unboxed == codeModel.BOOLEAN) {
+            return in.invoke("get").ne(JExpr.lit(0));
+        } else if (type.fullName().equals(UUID.class.getName())) {
+            return JExpr._new(type).arg(input.staticInvoke("readLong").arg(in))
+                    .arg(input.staticInvoke("readLong").arg(in));
+        } else if (isEnum(type)) {
+            JFieldVar values = enumValues(codec, (JDefinedClass) type);
+            return values.component(input.staticInvoke("readOrdinal").arg(in).arg(values.ref("length")));
+        }
+        return ImmutablesTypes.nested((JDefinedClass) type, CLASS_NAME).staticInvoke("read").arg(in);
+    }
+
+    /**
+     * @return a constant holding the constants of the enum, which {@code values()} would copy on every call
+     */
+    private static JFieldVar enumValues(JDefinedClass codec, JDefinedClass enumType) {
+        String name = enumType.name().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase() + "_VALUES";
+        JFieldVar values = codec.fields().get(name);
+        if (values == null) {
+            values = codec.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, enumType.array(), name,
+                    enumType.staticInvoke("values"));
+        }
+        return values;
+    }
+
+    private boolean isEncodable(JType type) {
+        JType element = elementType(type);
+        if (element != null) {
+            return elementType(element) == null && isEncodable(element) && !canBeEmpty(element, new HashSet<>());
+        }
+        JCodeModel codeModel = type.owner();
+        JType unboxed = type.unboxify();
+        if (type.fullName().equals(String.class.getName()) || unboxed == codeModel.INT || unboxed == codeModel.LONG
+                || unboxed == codeModel.DOUBLE || unboxed == codeModel.FLOAT || unboxed == codeModel.BOOLEAN
+                || type.fullName().equals(UUID.class.getName()) || isEnum(type)) {
+            return true;
+        }
+        return type instanceof JDefinedClass && (encodable.contains(type)
+                || ImmutablesTypes.nested((JDefinedClass) type, CLASS_NAME) != null);
+    }
+
+    /**
+     * @return whether a value of {@code type} may be encoded to no bytes at all, which would let a collection of them
+     * be larger than what is left of the payload
+     */
+    private boolean canBeEmpty(JType type, Set<JDefinedClass> visited) {
+        List<GeneratedProperty> properties = type instanceof JDefinedClass
+                ? getRuleFactory().getProperties((JDefinedClass) type)
+                : null;
+        if (properties == null || !visited.add((JDefinedClass) type)) {
+            return false;
+        }
+        for (GeneratedProperty property : distinct(properties)) {
+            if (property.isNullable() || property.getPresence() != null || elementType(property.getType()) != null
+                    || !canBeEmpty(property.getType(), visited)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isEnum(JType type) {
+        return type instanceof JDefinedClass && getRuleFactory().getEnumValues((JDefinedClass) type) != null;
+    }
+
+    /**
+     * @return the element type of a list, set or primitive array, or null if {@code type} isn't one
+     */
+    private static JType elementType(JType type) {
+        if (type.isArray()) {
+            return type.elementType().isPrimitive() ? type.elementType() : null;
+        }
+        if (type instanceof JClass && ((JClass) type).isParameterized()) {
+            String collection = ((JClass) type).erasure().fullName();
+            if (collection.equals(List.class.getName()) || collection.equals(Set.class.getName())) {
+                return ((JClass) type).getTypeParameters().get(0);
+            }
+        }
+        return null;
+    }
+
+    private long fingerprint(JDefinedClass cls) {
+        StringBuilder shape = new StringBuilder();
+        describe(cls, new ArrayDeque<>(), shape);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return ByteBuffer.wrap(digest.digest(shape.toString().getBytes(StandardCharsets.UTF_8))).getLong();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void describe(JDefinedClass cls, Deque<JDefinedClass> path, StringBuilder shape) {
+        if (path.contains(cls)) {
+            // refer to the enclosing type by how far out it is, which doesn't depend on its name
+            int depth = 0;
+            for (JDefinedClass enclosing : path) {
+                if (enclosing == cls) {
+                    break;
+                }
+                depth++;
+            }
+            shape.append('^').append(depth);
+            return;
+        }
+        path.push(cls);
+        shape.append('{');
+        for (GeneratedProperty property : distinct(getRuleFactory().getProperties(cls))) {
+            shape.append(property.getJsonName()).append(':');
+            describe(property.getType(), path, shape);
+            shape.append(property.isNullable() || property.getPresence() != null ? "?;" : ";");
+        }
+        shape.append('}');
+        path.pop();
+    }
+
+    private void describe(JType type, Deque<JDefinedClass> path, StringBuilder shape) {
+        JType element = elementType(type);
+        if (element != null) {
+            shape.append(type.isArray() ? "array" : ((JClass) type).erasure().name().toLowerCase()).append('<');
+            describe(element, path, shape);
+            shape.append('>');
+        } else if (type.fullName().equals(String.class.getName())) {
+            shape.append("string");
+        } else if (type.fullName().equals(UUID.class.getName())) {
+            shape.append("uuid");
+        } else if (type.unboxify().isPrimitive()) {
+            shape.append(type.unboxify().name());
+        } else if (isEnum(type)) {
+            shape.append("enum").append(getRuleFactory().getEnumValues((JDefinedClass) type));
+        } else {
+            describe((JDefinedClass) type, path, shape);
+        }
+    }
+
+    /**
+     * @return the properties with the first of each JSON name
+     */
+    private static List<GeneratedProperty> distinct(List<GeneratedProperty> properties) {
+        Set<String> jsonNames = new HashSet<>();
+        List<GeneratedProperty> distinct = new ArrayList<>();
+        for (GeneratedProperty property : properties) {
+            if (jsonNames.add(property.getJsonName())) {
+                distinct.add(property);
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * @return a hidden class standing in for one of the shared classes, or null if a generated class has its name
+     */
+    private static JClass stub(JCodeModel codeModel, String fullName) {
+        JDefinedClass existing = codeModel._getClass(fullName);
+        if (existing != null) {
+            return existing.isHidden() ? existing : null;
+        }
+        try {
+            JDefinedClass stub = codeModel._class(fullName);
+            stub.hide();
+            return stub;
+        } catch (JClassAlreadyExistsException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package us.holsopple.jsonschema2immutable.binary;
+
+import com.sun.codemodel.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Generates the classes the binary codecs of all value types share: {@code BinaryOutput}, a growable buffer the
+ * codecs write to, and {@code BinaryInput}, which reads the same encodings from a {@link ByteBuffer}.
+ * <p>
+ * Integers are written as varints, zigzag-encoded when they are signed, and floating point numbers and the fingerprint
+ * as big-endian IEEE 754 bits whatever the byte order of the buffer. Strings are their UTF-8 bytes, preceded by their
+ * length.
+ */
+public class BinaryIOGenerator {
+    public static final String OUTPUT_CLASS_NAME = "BinaryOutput";
+    public static final String INPUT_CLASS_NAME = "BinaryInput";
+
+    private BinaryIOGenerator() {
+    }
+
+    /**
+     * @return the fully qualified names of the classes generated into {@code targetPackage}
+     */
+    public static String[] classNames(String targetPackage) {
+        String prefix = targetPackage.isEmpty() ? "" : targetPackage + ".";
+        return new String[]{prefix + OUTPUT_CLASS_NAME, prefix + INPUT_CLASS_NAME};
+    }
+
+    public static JCodeModel generate(String targetPackage) {
+        JCodeModel codeModel = new JCodeModel();
+        try {
+            generateOutput(codeModel._class(classNames(targetPackage)[0]));
+            generateInput(codeModel._class(classNames(targetPackage)[1]));
+        } catch (JClassAlreadyExistsException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return codeModel;
+    }
+
+    private static void generateOutput(JDefinedClass output) {
+        JCodeModel codeModel = output.owner();
+        output.mods().setFinal(true);
+        output.javadoc().add("Collects the bytes written by the generated binary codecs.");
+        JFieldVar buffer = output.field(JMod.PRIVATE, byte[].class, "buffer", JExpr.newArray(codeModel.BYTE, 64));
+        JFieldVar size = output.field(JMod.PRIVATE, int.class, "size");
+        JClass arrays = codeModel.ref(Arrays.class);
+        JClass math = codeModel.ref(Math.class);
+
+        JMethod ensure = output.method(JMod.PRIVATE, codeModel.VOID, "ensure");
+        JVar extra = ensure.param(int.class, "extra");
+        ensure.body()._if(size.plus(extra).gt(buffer.ref("length")))._then()
+                .assign(buffer, arrays.staticInvoke("copyOf").arg(buffer).arg(math.staticInvoke("max")
+                        .arg(buffer.ref("length").mul(JExpr.lit(2))).arg(size.plus(extra))));
+
+        JMethod writeByte = output.method(JMod.PUBLIC, codeModel.VOID, "writeByte");
+        JVar byteValue = writeByte.param(int.class, "value");
+        writeByte.body().invoke(ensure).arg(JExpr.lit(1));
+        writeByte.body().assign(buffer.component(size.incr()), JExpr.cast(codeModel.BYTE, byteValue));
+
+        JMethod writeBoolean = output.method(JMod.PUBLIC, codeModel.VOID, "writeBoolean");
+        JVar booleanValue = writeBoolean.param(boolean.class, "value");
+        writeBoolean.body().invoke(writeByte).arg(JOp.cond(booleanValue, JExpr.lit(1), JExpr.lit(0)));
+
+        JMethod writeVarint = output.method(JMod.PUBLIC, codeModel.VOID, "writeVarint");
+        writeVarint.javadoc().add("Writes seven bits per byte, least significant first, with the high bit set on all "
+                + "but the last byte.");
+        JVar varint = writeVarint.param(long.class, "value");
+        writeVarint.body().invoke(ensure).arg(JExpr.lit(10));
+        JWhileLoop more = writeVarint.body()._while(varint.band(JExpr.lit(~0x7FL)).ne(JExpr.lit(0)));
+        more.body().assign(buffer.component(size.incr()),
+                JExpr.cast(codeModel.BYTE, varint.band(JExpr.lit(0x7F)).bor(JExpr.lit(0x80))));
+        more.body().assign(varint, varint.shrz(JExpr.lit(7)));
+        writeVarint.body().assign(buffer.component(size.incr()), JExpr.cast(codeModel.BYTE, varint));
+
+        JMethod writeSigned = output.method(JMod.PUBLIC, codeModel.VOID, "writeSigned");
+        writeSigned.javadoc().add("Writes a zigzag-encoded varint, so that small negative numbers stay short.");
+        JVar signed = writeSigned.param(long.class, "value");
+        writeSigned.body().invoke(writeVarint).arg(signed.shl(JExpr.lit(1)).xor(signed.shr(JExpr.lit(63))));
+
+        JMethod writeLong = output.method(JMod.PUBLIC, codeModel.VOID, "writeLong");
+        writeBigEndian(codeModel, writeLong, ensure, buffer, size, long.class, 56);
+        JMethod writeInt = output.method(JMod.PUBLIC, codeModel.VOID, "writeInt");
+        writeBigEndian(codeModel, writeInt, ensure, buffer, size, int.class, 24);
+
+        JMethod writeDouble = output.method(JMod.PUBLIC, codeModel.VOID, "writeDouble");
+        JVar doubleValue = writeDouble.param(double.class, "value");
+        writeDouble.body().invoke(writeLong)
+                .arg(codeModel.ref(Double.class).staticInvoke("doubleToLongBits").arg(doubleValue));
+
+        JMethod writeFloat = output.method(JMod.PUBLIC, codeModel.VOID, "writeFloat");
+        JVar floatValue = writeFloat.param(float.class, "value");
+        writeFloat.body().invoke(writeInt)
+                .arg(codeModel.ref(Float.class).staticInvoke("floatToIntBits").arg(floatValue));
+
+        JMethod writeString = output.method(JMod.PUBLIC, codeModel.VOID, "writeString");
+        JVar string = writeString.param(String.class, "value");
+        JVar bytes = writeString.body().decl(codeModel.BYTE.array(), "bytes",
+                string.invoke("getBytes").arg(codeModel.ref(StandardCharsets.class).staticRef("UTF_8")));
+        writeString.body().invoke(writeVarint).arg(bytes.ref("length"));
+        writeString.body().invoke(ensure).arg(bytes.ref("length"));
+        writeString.body().add(codeModel.ref(System.class).staticInvoke("arraycopy")
+                .arg(bytes).arg(JExpr.lit(0)).arg(buffer).arg(size).arg(bytes.ref("length")));
+        writeString.body().assignPlus(size, bytes.ref("length"));
+
+        JMethod toByteArray = output.method(JMod.PUBLIC, byte[].class, "toByteArray");
+        toByteArray.body()._return(arrays.staticInvoke("copyOf").arg(buffer).arg(size));
+    }
+
+    private static void writeBigEndian(JCodeModel codeModel, JMethod method, JMethod ensure, JFieldVar buffer,
+                                       JFieldVar size, Class<?> type, int highestShift) {
+        JVar value = method.param(type, "value");
+        method.body().invoke(ensure).arg(JExpr.lit(highestShift / 8 + 1));
+        JForLoop bytes = method.body()._for();
+        JVar shift = bytes.init(codeModel.INT, "shift", JExpr.lit(highestShift));
+        bytes.test(shift.gte(JExpr.lit(0)));
+        bytes.update(JExpr.assign(shift, shift.minus(JExpr.lit(8))));
+        bytes.body().assign(buffer.component(size.incr()), JExpr.cast(codeModel.BYTE, value.shrz(shift)));
+    }
+
+    private static void generateInput(JDefinedClass input) {
+        JCodeModel codeModel = input.owner();
+        input.mods().setFinal(true);
+        input.javadoc().add("Reads the values written by {@code BinaryOutput} from a buffer, starting at its "
+                + "position.");
+        input.constructor(JMod.PRIVATE);
+        JClass byteBuffer = codeModel.ref(ByteBuffer.class);
+        JClass illegalArgument = codeModel.ref(IllegalArgumentException.class);
+        JExpression bigEndian = codeModel.ref(ByteOrder.class).staticRef("BIG_ENDIAN");
+
+        JMethod readVarint = input.method(JMod.PUBLIC | JMod.STATIC, long.class, "readVarint");
+        JVar varintIn = readVarint.param(byteBuffer, "in");
+        JVar varint = readVarint.body().decl(codeModel.LONG, "value", JExpr.lit(0L));
+        JForLoop groups = readVarint.body()._for();
+        JVar shift = groups.init(codeModel.INT, "shift", JExpr.lit(0));
+        groups.test(shift.lt(JExpr.lit(64)));
+        groups.update(JExpr.assign(shift, shift.plus(JExpr.lit(7))));
+        JVar group = groups.body().decl(codeModel.BYTE, "group", varintIn.invoke("get"));
+        JExpression bits = JExpr.cast(codeModel.LONG, group.band(JExpr.lit(0x7F)));
+        groups.body().assign(varint, varint.bor(bits.shl(shift)));
+        groups.body()._if(group.gte(JExpr.lit(0)))._then()._return(varint);
+        readVarint.body()._throw(JExpr._new(illegalArgument).arg("malformed varint"));
+
+        JMethod readSigned = input.method(JMod.PUBLIC | JMod.STATIC, long.class, "readSigned");
+        JVar signedIn = readSigned.param(byteBuffer, "in");
+        JVar signed = readSigned.body().decl(codeModel.LONG, "value", JExpr.invoke(readVarint).arg(signedIn));
+        readSigned.body()._return(signed.shrz(JExpr.lit(1)).xor(JOp.minus(signed.band(JExpr.lit(1L)))));
+
+        JMethod readLength = input.method(JMod.PUBLIC | JMod.STATIC, int.class, "readLength");
+        readLength.javadoc().add("Reads the length of a string, primitive array or collection, which can't be longer "
+                + "than the rest of the buffer as all their elements take at least a byte.");
+        JVar lengthIn = readLength.param(byteBuffer, "in");
+        JVar length = readLength.body().decl(codeModel.LONG, "length", JExpr.invoke(readVarint).arg(lengthIn));
+        readLength.body()._if(length.lt(JExpr.lit(0)).cor(length.gt(lengthIn.invoke("remaining"))))._then()
+                ._throw(JExpr._new(illegalArgument).arg(JExpr.lit("length ").plus(length)
+                        .plus(JExpr.lit(" exceeds the remaining ")).plus(lengthIn.invoke("remaining"))
+                        .plus(JExpr.lit(" bytes"))));
+        readLength.body()._return(JExpr.cast(codeModel.INT, length));
+
+        JMethod readOrdinal = input.method(JMod.PUBLIC | JMod.STATIC, int.class, "readOrdinal");
+        readOrdinal.javadoc().add("Reads the ordinal of one of {@code count} enum constants.");
+        JVar ordinalIn = readOrdinal.param(byteBuffer, "in");
+        JVar count = readOrdinal.param(int.class, "count");
+        JVar ordinal = readOrdinal.body().decl(codeModel.LONG, "ordinal", JExpr.invoke(readVarint).arg(ordinalIn));
+        readOrdinal.body()._if(ordinal.lt(JExpr.lit(0)).cor(ordinal.gte(count)))._then()
+                ._throw(JExpr._new(illegalArgument).arg(JExpr.lit("ordinal ").plus(ordinal)
+                        .plus(JExpr.lit(" is out of range for ")).plus(count).plus(JExpr.lit(" constants"))));
+        readOrdinal.body()._return(JExpr.cast(codeModel.INT, ordinal));
+
+        JMethod readLong = input.method(JMod.PUBLIC | JMod.STATIC, long.class, "readLong");
+        JVar longIn = readLong.param(byteBuffer, "in");
+        JVar longValue = readLong.body().decl(codeModel.LONG, "value", longIn.invoke("getLong"));
+        readLong.body()._return(JOp.cond(longIn.invoke("order").eq(bigEndian), longValue,
+                codeModel.ref(Long.class).staticInvoke("reverseBytes").arg(longValue)));
+
+        JMethod readInt = input.method(JMod.PUBLIC | JMod.STATIC, int.class, "readInt");
+        JVar intIn = readInt.param(byteBuffer, "in");
+        JVar intValue = readInt.body().decl(codeModel.INT, "value", intIn.invoke("getInt"));
+        readInt.body()._return(JOp.cond(intIn.invoke("order").eq(bigEndian), intValue,
+                codeModel.ref(Integer.class).staticInvoke("reverseBytes").arg(intValue)));
+
+        JMethod readDouble = input.method(JMod.PUBLIC | JMod.STATIC, double.class, "readDouble");
+        JVar doubleIn = readDouble.param(byteBuffer, "in");
+        readDouble.body()._return(codeModel.ref(Double.class).staticInvoke("longBitsToDouble")
+                .arg(JExpr.invoke(readLong).arg(doubleIn)));
+
+        JMethod readFloat = input.method(JMod.PUBLIC | JMod.STATIC, float.class, "readFloat");
+        JVar floatIn = readFloat.param(byteBuffer, "in");
+        readFloat.body()._return(codeModel.ref(Float.class).staticInvoke("intBitsToFloat")
+                .arg(JExpr.invoke(readInt).arg(floatIn)));
+
+        JMethod readString = input.method(JMod.PUBLIC | JMod.STATIC, String.class, "readString");
+        JVar stringIn = readString.param(byteBuffer, "in");
+        JVar stringLength = readString.body().decl(codeModel.INT, "length", JExpr.invoke(readLength).arg(stringIn));
+        JExpression utf8 = codeModel.ref(StandardCharsets.class).staticRef("UTF_8");
+        JConditional heap = readString.body()._if(stringIn.invoke("hasArray"));
+        JVar string = heap._then().decl(codeModel.ref(String.class), "value", JExpr._new(codeModel.ref(String.class))
+                .arg(stringIn.invoke("array"))
+                .arg(stringIn.invoke("arrayOffset").plus(stringIn.invoke("position")))
+                .arg(stringLength).arg(utf8));
+        heap._then().add(stringIn.invoke("position").arg(stringIn.invoke("position").plus(stringLength)));
+        heap._then()._return(string);
+        JVar bytes = readString.body().decl(codeModel.BYTE.array(), "bytes",
+                JExpr.newArray(codeModel.BYTE, stringLength));
+        readString.body().add(stringIn.invoke("get").arg(bytes));
+        readString.body()._return(JExpr._new(codeModel.ref(String.class)).arg(bytes).arg(utf8));
+
+        JMethod checkFingerprint = input.method(JMod.PUBLIC | JMod.STATIC, codeModel.VOID, "checkFingerprint");
+        checkFingerprint.javadoc().add("Reads the schema fingerprint a payload starts with and rejects it if it was "
+                + "written for a different schema.");
+        JVar fingerprintIn = checkFingerprint.param(byteBuffer, "in");
+        JVar expected = checkFingerprint.param(long.class, "expected");
+        JVar type = checkFingerprint.param(codeModel.ref(Class.class).narrow(codeModel.wildcard()), "type");
+        JVar actual = checkFingerprint.body().decl(codeModel.LONG, "actual",
+                JExpr.invoke(readLong).arg(fingerprintIn));
+        JClass hex = codeModel.ref(Long.class);
+        checkFingerprint.body()._if(actual.ne(expected))._then()._throw(JExpr._new(illegalArgument)
+                .arg(JExpr.lit("payload fingerprint ").plus(hex.staticInvoke("toHexString").arg(actual))
+                        .plus(JExpr.lit(" doesn't match ")).plus(type.invoke("getName"))
+                        .plus(JExpr.lit(" (")).plus(hex.staticInvoke("toHexString").arg(expected))
+                        .plus(JExpr.lit(")"))));
+    }
+}
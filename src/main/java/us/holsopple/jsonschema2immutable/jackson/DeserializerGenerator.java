@@ -0,0 +1,141 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.sun.codemodel.*;
+import us.holsopple.jsonschema2immutable.rules.AbsentBits;
+import us.holsopple.jsonschema2immutable.rules.GeneratedProperty;
+import us.holsopple.jsonschema2immutable.rules.ImmutableRuleFactory;
+import us.holsopple.jsonschema2immutable.rules.NestedClassGenerator;
+import us.holsopple.jsonschema2immutable.rules.ImmutablesTypes;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Adds a {@code Deserializer} class to every value type of a code model, which reads the type from the tokens of a
+ * {@link JsonParser} straight into its Immutables builder.
+ * <p>
+ * Fields are dispatched with a switch over their names, unknown fields are skipped with
+ * {@link JsonParser#skipChildren()} and {@code null} values leave the attribute unset. Strings and primitives are read
+ * from the parser directly; every other property type uses a deserializer looked up once, when Jackson resolves the
+ * generated one. The generated deserializer is cachable, so Jackson resolves it once per type rather than again for
+ * every type that has a property of it.
+ */
+public class DeserializerGenerator extends NestedClassGenerator {
+    public static final String CLASS_NAME = "Deserializer";
+
+    public DeserializerGenerator(ImmutableRuleFactory ruleFactory) {
+        super(ruleFactory, CLASS_NAME);
+    }
+
+    @Override
+    protected void generate(JDefinedClass cls, JDefinedClass immutable, List<GeneratedProperty> properties,
+                            JDefinedClass deserializer) {
+        JCodeModel codeModel = cls.owner();
+        deserializer._extends(codeModel.ref(StdDeserializer.class).narrow(immutable));
+        deserializer._implements(ResolvableDeserializer.class);
+        deserializer.javadoc().add("Reads {@link " + cls.name() + "} from JSON tokens into its builder.");
+
+        JMethod constructor = deserializer.constructor(JMod.PUBLIC);
+        constructor.body().invoke("super").arg(immutable.dotclass());
+
+        JMethod cachable = deserializer.method(JMod.PUBLIC, codeModel.BOOLEAN, "isCachable");
+        cachable.annotate(Override.class);
+        cachable.body()._return(JExpr.TRUE);
+
+        JMethod resolve = deserializer.method(JMod.PUBLIC, codeModel.VOID, "resolve");
+        resolve.annotate(Override.class);
+        resolve._throws(JsonMappingException.class);
+        JVar resolveContext = resolve.param(DeserializationContext.class, "context");
+
+        JMethod deserialize = deserializer.method(JMod.PUBLIC, immutable, "deserialize");
+        deserialize.annotate(Override.class);
+        deserialize._throws(IOException.class);
+        JVar parser = deserialize.param(JsonParser.class, "parser");
+        JVar context = deserialize.param(DeserializationContext.class, "context");
+        JBlock body = deserialize.body();
+
+        JClass tokens = codeModel.ref(JsonToken.class);
+        JVar token = body.decl(tokens, "token", parser.invoke("getCurrentToken"));
+        JConditional start = body._if(token.eq(tokens.staticRef("START_OBJECT")));
+        start._then().assign(token, parser.invoke("nextToken"));
+        start._elseif(token.ne(tokens.staticRef("FIELD_NAME")).cand(token.ne(tokens.staticRef("END_OBJECT"))))
+                ._then()._return(JExpr.cast(immutable,
+                        context.invoke("handleUnexpectedToken").arg(immutable.dotclass()).arg(parser)));
+
+        JVar builder = body.decl(ImmutablesTypes.builder(immutable), "builder", immutable.staticInvoke("builder"));
+        AbsentBits absentBits = new AbsentBits(body, properties);
+        JForLoop loop = body._for();
+        loop.test(token.eq(tokens.staticRef("FIELD_NAME")));
+        loop.update(JExpr.assign(token, parser.invoke("nextToken")));
+        JVar field = loop.body().decl(codeModel.ref(String.class), "field", parser.invoke("getCurrentName"));
+        JBlock value = loop.body()._if(parser.invoke("nextToken").ne(tokens.staticRef("VALUE_NULL")))._then();
+        JSwitch fields = value._switch(field);
+
+        Set<String> jsonNames = new HashSet<>();
+        for (GeneratedProperty property : properties) {
+            if (!jsonNames.add(property.getJsonName())) {
+                continue;
+            }
+            JExpression read = readPrimitive(property.getType(), parser, context);
+            if (read == null) {
+                JFieldVar propertyDeserializer = deserializer.field(JMod.PRIVATE,
+                        codeModel.ref(JsonDeserializer.class).narrow(Object.class),
+                        property.getAttributeName() + "Deserializer");
+                resolve.body().assign(JExpr._this().ref(propertyDeserializer),
+                        resolveContext.invoke("findRootValueDeserializer")
+                                .arg(JacksonTypes.javaType(property.getType(), resolveContext)));
+                read = JExpr.cast(property.getType(),
+                        propertyDeserializer.invoke("deserialize").arg(parser).arg(context));
+            }
+            JBlock _case = fields._case(JExpr.lit(property.getJsonName())).body();
+            _case.add(builder.invoke(property.getAttributeName()).arg(read));
+            absentBits.present(_case, property);
+            _case._break();
+        }
+        JBlock _default = fields._default().body();
+        _default.add(parser.invoke("skipChildren"));
+        _default._break();
+        absentBits.initialize(body, builder);
+
+        JTryBlock build = body._try();
+        build.body()._return(builder.invoke("build"));
+        JCatchBlock missing = build._catch(codeModel.ref(IllegalStateException.class));
+        JVar ex = missing.param("ex");
+        missing.body()._throw(context.invoke("instantiationException").arg(immutable.dotclass()).arg(ex));
+    }
+
+    /**
+     * @return an expression reading a value of the given type with the parsing methods of {@link StdDeserializer},
+     * or null if the type needs a deserializer of its own
+     */
+    private static JExpression readPrimitive(JType type, JVar parser, JVar context) {
+        JCodeModel codeModel = type.owner();
+        String method;
+        JType unboxed = type.unboxify();
+        if (type.fullName().equals(String.class.getName())) {
+            method = "_parseString";
+        } else if (unboxed == codeModel.INT) {
+            method = "_parseIntPrimitive";
+        } else if (unboxed == codeModel.LONG) {
+            method = "_parseLongPrimitive";
+        } else if (unboxed == codeModel.DOUBLE) {
+            method = "_parseDoublePrimitive";
+        } else if (unboxed == codeModel.FLOAT) {
+            method = "_parseFloatPrimitive";
+        } else if (unboxed == codeModel.BOOLEAN) {
+            method = "_parseBooleanPrimitive";
+        } else {
+            return null;
+        }
+        return JExpr.invoke(method).arg(parser).arg(context);
+    }
+}
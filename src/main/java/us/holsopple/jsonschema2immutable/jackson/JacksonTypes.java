@@ -0,0 +1,31 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.sun.codemodel.JClass;
+import com.sun.codemodel.JExpr;
+import com.sun.codemodel.JExpression;
+import com.sun.codemodel.JType;
+
+/**
+ * Code model helpers shared by the generated serializers and deserializers.
+ */
+final class JacksonTypes {
+    private JacksonTypes() {
+    }
+
+    /**
+     * @param context a deserialization context or serializer provider
+     * @return an expression constructing the Jackson {@code JavaType} of {@code type}
+     */
+    static JExpression javaType(JType type, JExpression context) {
+        JClass cls = type.boxify();
+        JExpression typeArgument;
+        if (cls.isParameterized()) {
+            JClass reference = type.owner().ref(TypeReference.class).narrow(cls);
+            typeArgument = JExpr._new(type.owner().anonymousClass(reference));
+        } else {
+            typeArgument = cls.dotclass();
+        }
+        return context.invoke("getTypeFactory").invoke("constructType").arg(typeArgument);
+    }
+}
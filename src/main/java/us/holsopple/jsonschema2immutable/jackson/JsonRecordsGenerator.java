@@ -0,0 +1,263 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sun.codemodel.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generates {@code JsonRecords}, which the {@code Records} classes of all value types use to stream records with
+ * bounded memory.
+ * <p>
+ * NDJSON files are memory-mapped a window at a time, and each line is bound from a reused buffer. Their spliterator
+ * splits a file at the first line break after its middle, so parallel streams read disjoint ranges of lines on
+ * separate cores. Any other stream of whitespace separated values or of the elements of one top level array is read
+ * with a {@link MappingIterator}, which a parallel stream can only split into batches of records that were already
+ * read.
+ */
+public class JsonRecordsGenerator {
+    public static final String CLASS_NAME = "JsonRecords";
+
+    private static final int WINDOW = 1 << 24;
+    private static final int MIN_SPLIT = 1 << 20;
+
+    private JsonRecordsGenerator() {
+    }
+
+    /**
+     * @return the fully qualified name of the class generated into {@code targetPackage}
+     */
+    public static String className(String targetPackage) {
+        return targetPackage.isEmpty() ? CLASS_NAME : targetPackage + "." + CLASS_NAME;
+    }
+
+    public static JCodeModel generate(String targetPackage) {
+        JCodeModel codeModel = new JCodeModel();
+        try {
+            JDefinedClass records = codeModel._class(className(targetPackage));
+            JDefinedClass spliterator = records._class(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, "NdjsonSpliterator");
+            generateSpliterator(spliterator);
+            generateRecords(records, spliterator);
+        } catch (JClassAlreadyExistsException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return codeModel;
+    }
+
+    private static void generateRecords(JDefinedClass records, JDefinedClass spliterator) {
+        JCodeModel codeModel = records.owner();
+        records.mods().setFinal(true);
+        records.javadoc().add("Streams the records of NDJSON files and of JSON arrays without holding more than a few "
+                + "of them in memory.");
+        records.constructor(JMod.PRIVATE);
+        JClass streams = codeModel.ref(StreamSupport.class);
+
+        JMethod closing = records.method(JMod.PRIVATE | JMod.STATIC, Runnable.class, "closing");
+        JVar closeable = closing.param(JMod.FINAL, Closeable.class, "closeable");
+        JDefinedClass closer = codeModel.anonymousClass(Runnable.class);
+        JTryBlock close = closer.method(JMod.PUBLIC, codeModel.VOID, "run").body()._try();
+        close.body().add(closeable.invoke("close"));
+        JCatchBlock closeFailed = close._catch(codeModel.ref(IOException.class));
+        closeFailed.body()._throw(JExpr._new(codeModel.ref(UncheckedIOException.class)).arg(closeFailed.param("ex")));
+        closing.body()._return(JExpr._new(closer));
+
+        JMethod ndjsonChannel = records.method(JMod.PUBLIC | JMod.STATIC, codeModel.VOID, "ndjson");
+        JTypeVar channelType = ndjsonChannel.generify("T");
+        ndjsonChannel.type(codeModel.ref(Stream.class).narrow(channelType));
+        ndjsonChannel.javadoc().add("Streams the lines of a file from the current position of {@code channel} on, "
+                + "each holding one JSON value. Blank lines are skipped. Closing the stream leaves the channel open.");
+        ndjsonChannel._throws(IOException.class);
+        JVar channel = ndjsonChannel.param(FileChannel.class, "channel");
+        JVar channelReader = ndjsonChannel.param(ObjectReader.class, "reader");
+        ndjsonChannel.body()._return(streams.staticInvoke("stream")
+                .arg(JExpr._new(spliterator.narrow(channelType)).arg(channel).arg(channelReader)
+                        .arg(channel.invoke("position")).arg(channel.invoke("size")))
+                .arg(JExpr.FALSE));
+
+        JMethod ndjsonFile = records.method(JMod.PUBLIC | JMod.STATIC, codeModel.VOID, "ndjson");
+        JTypeVar fileType = ndjsonFile.generify("T");
+        ndjsonFile.type(codeModel.ref(Stream.class).narrow(fileType));
+        ndjsonFile.javadoc().add("Streams the lines of a file, each holding one JSON value. Blank lines are skipped. "
+                + "Closing the stream closes the file.");
+        ndjsonFile._throws(IOException.class);
+        JVar file = ndjsonFile.param(Path.class, "file");
+        JVar fileReader = ndjsonFile.param(ObjectReader.class, "reader");
+        JVar opened = ndjsonFile.body().decl(codeModel.ref(FileChannel.class), "channel",
+                codeModel.ref(FileChannel.class).staticInvoke("open").arg(file)
+                        .arg(codeModel.ref(StandardOpenOption.class).staticRef("READ")));
+        JTryBlock open = ndjsonFile.body()._try();
+        JVar fileRecords = open.body().decl(codeModel.ref(Stream.class).narrow(fileType), "records",
+                JExpr.invoke(ndjsonChannel).arg(opened).arg(fileReader));
+        open.body()._return(fileRecords.invoke("onClose").arg(JExpr.invoke(closing).arg(opened)));
+        closeOnFailure(codeModel, open, opened);
+
+        JMethod valuesStream = records.method(JMod.PUBLIC | JMod.STATIC, codeModel.VOID, "values");
+        JTypeVar streamType = valuesStream.generify("T");
+        valuesStream.type(codeModel.ref(Stream.class).narrow(streamType));
+        valuesStream.javadoc().add("Streams the elements of a JSON array, or a sequence of JSON values separated by "
+                + "whitespace like NDJSON. Closing the stream closes {@code in}.");
+        valuesStream._throws(IOException.class);
+        JVar in = valuesStream.param(InputStream.class, "in");
+        JVar streamReader = valuesStream.param(ObjectReader.class, "reader");
+        JVar values = valuesStream.body().decl(codeModel.ref(MappingIterator.class).narrow(streamType), "values",
+                streamReader.invoke("readValues").arg(in));
+        JClass spliterators = codeModel.ref(Spliterator.class);
+        valuesStream.body()._return(streams.staticInvoke("stream")
+                .arg(codeModel.ref(Spliterators.class).staticInvoke("spliteratorUnknownSize").arg(values)
+                        .arg(spliterators.staticRef("ORDERED").bor(spliterators.staticRef("NONNULL"))))
+                .arg(JExpr.FALSE)
+                .invoke("onClose").arg(JExpr.invoke(closing).arg(values)));
+
+        JMethod valuesChannel = records.method(JMod.PUBLIC | JMod.STATIC, codeModel.VOID, "values");
+        JTypeVar channelValueType = valuesChannel.generify("T");
+        valuesChannel.type(codeModel.ref(Stream.class).narrow(channelValueType));
+        valuesChannel.javadoc().add("Streams the elements of a JSON array, or a sequence of JSON values separated by "
+                + "whitespace like NDJSON. Closing the stream closes {@code channel}.");
+        valuesChannel._throws(IOException.class);
+        JVar byteChannel = valuesChannel.param(ReadableByteChannel.class, "channel");
+        JVar byteChannelReader = valuesChannel.param(ObjectReader.class, "reader");
+        valuesChannel.body()._return(JExpr.invoke(valuesStream)
+                .arg(codeModel.ref(Channels.class).staticInvoke("newInputStream").arg(byteChannel))
+                .arg(byteChannelReader));
+
+        JMethod valuesFile = records.method(JMod.PUBLIC | JMod.STATIC, codeModel.VOID, "values");
+        JTypeVar fileValueType = valuesFile.generify("T");
+        valuesFile.type(codeModel.ref(Stream.class).narrow(fileValueType));
+        valuesFile.javadoc().add("Streams the elements of a JSON array, or a sequence of JSON values separated by "
+                + "whitespace like NDJSON, from a file. Closing the stream closes the file.");
+        valuesFile._throws(IOException.class);
+        JVar valueFile = valuesFile.param(Path.class, "file");
+        JVar valueFileReader = valuesFile.param(ObjectReader.class, "reader");
+        JVar fileIn = valuesFile.body().decl(codeModel.ref(InputStream.class), "in",
+                codeModel.ref(Files.class).staticInvoke("newInputStream").arg(valueFile));
+        JTryBlock read = valuesFile.body()._try();
+        read.body()._return(JExpr.invoke(valuesStream).arg(fileIn).arg(valueFileReader));
+        closeOnFailure(codeModel, read, fileIn);
+    }
+
+    private static void closeOnFailure(JCodeModel codeModel, JTryBlock _try, JVar closeable) {
+        JCatchBlock failed = _try._catch(codeModel.ref(IOException.class));
+        failed.body().add(closeable.invoke("close"));
+        failed.body()._throw(failed.param("ex"));
+    }
+
+    private static void generateSpliterator(JDefinedClass spliterator) {
+        JCodeModel codeModel = spliterator.owner();
+        JTypeVar type = spliterator.generify("T");
+        spliterator._implements(codeModel.ref(Spliterator.class).narrow(type));
+        spliterator.javadoc().add("Reads the lines of a range of a file, mapping at most " + WINDOW + " bytes of it at "
+                + "a time.");
+        JFieldVar window = spliterator.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, int.class, "WINDOW",
+                JExpr.lit(WINDOW));
+        JFieldVar minSplit = spliterator.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, int.class, "MIN_SPLIT",
+                JExpr.lit(MIN_SPLIT));
+        JFieldVar channel = spliterator.field(JMod.PRIVATE | JMod.FINAL, FileChannel.class, "channel");
+        JFieldVar reader = spliterator.field(JMod.PRIVATE | JMod.FINAL, ObjectReader.class, "reader");
+        JFieldVar end = spliterator.field(JMod.PRIVATE | JMod.FINAL, long.class, "end");
+        JFieldVar position = spliterator.field(JMod.PRIVATE, long.class, "position");
+        JFieldVar mapped = spliterator.field(JMod.PRIVATE, MappedByteBuffer.class, "mapped");
+        JFieldVar mappedStart = spliterator.field(JMod.PRIVATE, long.class, "mappedStart");
+        JFieldVar line = spliterator.field(JMod.PRIVATE, byte[].class, "line", JExpr.newArray(codeModel.BYTE, 1024));
+
+        JMethod constructor = spliterator.constructor(JMod.NONE);
+        JVar constructorChannel = constructor.param(FileChannel.class, "channel");
+        JVar constructorReader = constructor.param(ObjectReader.class, "reader");
+        JVar constructorPosition = constructor.param(long.class, "position");
+        JVar constructorEnd = constructor.param(long.class, "end");
+        constructor.body().assign(JExpr._this().ref(channel), constructorChannel);
+        constructor.body().assign(JExpr._this().ref(reader), constructorReader);
+        constructor.body().assign(JExpr._this().ref(position), constructorPosition);
+        constructor.body().assign(JExpr._this().ref(end), constructorEnd);
+
+        JMethod byteAt = spliterator.method(JMod.PRIVATE, codeModel.BYTE, "byteAt");
+        byteAt._throws(IOException.class);
+        JVar offset = byteAt.param(long.class, "offset");
+        byteAt.body()._if(mapped.eq(JExpr._null()).cor(offset.lt(mappedStart))
+                .cor(offset.gte(mappedStart.plus(mapped.invoke("limit")))))._then()
+                .assign(mappedStart, offset)
+                .assign(mapped, channel.invoke("map")
+                        .arg(codeModel.ref(FileChannel.MapMode.class).staticRef("READ_ONLY")).arg(offset)
+                        .arg(codeModel.ref(Math.class).staticInvoke("min").arg(JExpr.cast(codeModel.LONG, window))
+                                .arg(end.minus(offset))));
+        byteAt.body()._return(mapped.invoke("get").arg(JExpr.cast(codeModel.INT, offset.minus(mappedStart))));
+
+        JClass unchecked = codeModel.ref(UncheckedIOException.class);
+        JMethod tryAdvance = spliterator.method(JMod.PUBLIC, codeModel.BOOLEAN, "tryAdvance");
+        tryAdvance.annotate(Override.class);
+        // codemodel has no lower bounded wildcards, so the type argument is spelled out
+        JVar action = tryAdvance.param(codeModel.ref(Consumer.class).narrow(codeModel.directClass("? super T")),
+                "action");
+        JTryBlock advance = tryAdvance.body()._try();
+        JWhileLoop lines = advance.body()._while(position.lt(end));
+        JVar start = lines.body().decl(codeModel.LONG, "start", position);
+        JVar length = lines.body().decl(codeModel.INT, "length", JExpr.lit(0));
+        JVar blank = lines.body().decl(codeModel.BOOLEAN, "blank", JExpr.TRUE);
+        JWhileLoop bytes = lines.body()._while(position.lt(end));
+        JVar b = bytes.body().decl(codeModel.BYTE, "b", JExpr.invoke(byteAt).arg(position.incr()));
+        bytes.body()._if(b.eq(JExpr.lit('\n')))._then()._break();
+        bytes.body()._if(length.eq(line.ref("length")))._then()
+                .assign(line, codeModel.ref(Arrays.class).staticInvoke("copyOf").arg(line)
+                        .arg(length.mul(JExpr.lit(2))));
+        bytes.body().assign(line.component(length.incr()), b);
+        bytes.body().assign(blank, blank.cand(b.eq(JExpr.lit(' ')).cor(b.eq(JExpr.lit('\t')))
+                .cor(b.eq(JExpr.lit('\r')))));
+        JBlock record = lines.body()._if(blank.not())._then();
+        JVar value = record.decl(type, "value");
+        JTryBlock bind = record._try();
+        bind.body().assign(value, reader.invoke("readValue").arg(line).arg(JExpr.lit(0)).arg(length));
+        JCatchBlock invalid = bind._catch(codeModel.ref(IOException.class));
+        invalid.body()._throw(JExpr._new(unchecked).arg(JExpr.lit("can't read the record at byte ").plus(start))
+                .arg(invalid.param("ex")));
+        record.add(action.invoke("accept").arg(value));
+        record._return(JExpr.TRUE);
+        advance.body()._return(JExpr.FALSE);
+        JCatchBlock advanceFailed = advance._catch(codeModel.ref(IOException.class));
+        advanceFailed.body()._throw(JExpr._new(unchecked).arg(advanceFailed.param("ex")));
+
+        JMethod trySplit = spliterator.method(JMod.PUBLIC, codeModel.ref(Spliterator.class).narrow(type), "trySplit");
+        trySplit.annotate(Override.class);
+        trySplit.javadoc().add("Splits off the lines before the first line break after the middle of the range.");
+        trySplit.body()._if(end.minus(position).lt(minSplit))._then()._return(JExpr._null());
+        JTryBlock split = trySplit.body()._try();
+        JVar middle = split.body().decl(codeModel.LONG, "middle",
+                position.plus(end.minus(position).div(JExpr.lit(2))));
+        split.body()._while(middle.lt(end).cand(JExpr.invoke(byteAt).arg(middle).ne(JExpr.lit('\n'))))
+                .body().assign(middle, middle.plus(JExpr.lit(1)));
+        split.body()._if(middle.gte(end.minus(JExpr.lit(1))))._then()._return(JExpr._null());
+        JVar prefix = split.body().decl(spliterator.narrow(type), "prefix",
+                JExpr._new(spliterator.narrow(type)).arg(channel).arg(reader).arg(position)
+                        .arg(middle.plus(JExpr.lit(1))));
+        split.body().assign(position, middle.plus(JExpr.lit(1)));
+        split.body()._return(prefix);
+        JCatchBlock splitFailed = split._catch(codeModel.ref(IOException.class));
+        splitFailed.body()._throw(JExpr._new(unchecked).arg(splitFailed.param("ex")));
+
+        JMethod estimateSize = spliterator.method(JMod.PUBLIC, codeModel.LONG, "estimateSize");
+        estimateSize.annotate(Override.class);
+        estimateSize.javadoc().add("@return the number of bytes left, which the stream only compares between ranges");
+        estimateSize.body()._return(end.minus(position));
+
+        JMethod characteristics = spliterator.method(JMod.PUBLIC, codeModel.INT, "characteristics");
+        characteristics.annotate(Override.class);
+        JClass spliterators = codeModel.ref(Spliterator.class);
+        characteristics.body()._return(spliterators.staticRef("ORDERED").bor(spliterators.staticRef("NONNULL"))
+                .bor(spliterators.staticRef("IMMUTABLE")));
+    }
+}
@@ -0,0 +1,104 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.sun.codemodel.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.apache.commons.lang3.StringUtils.substringAfterLast;
+import static org.apache.commons.lang3.StringUtils.substringBeforeLast;
+
+/**
+ * Generates a Jackson module that registers the generated serializers and deserializers of all value types. The
+ * deserializer is registered under both the abstract type and its {@code ImmutableX} implementation, the serializer
+ * under the abstract type, which covers every implementation. Value types in the default package can't be referred to from a named
+ * package; they are listed in the module's javadoc to be registered by hand.
+ * <p>
+ * A static {@code preload} method registers the module with a mapper and has the mapper look up the serializer and
+ * deserializer of every value type right away, so that their introspection happens at startup rather than on the
+ * first request that uses the type.
+ */
+public class ModuleGenerator {
+    public static final String CLASS_NAME = "JsonSchemaModule";
+
+    private ModuleGenerator() {
+    }
+
+    /**
+     * @return the fully qualified name of the module generated into {@code targetPackage}
+     */
+    public static String moduleName(String targetPackage) {
+        return targetPackage.isEmpty() ? CLASS_NAME : targetPackage + "." + CLASS_NAME;
+    }
+
+    /**
+     * @param types the fully qualified names of the value types to register
+     */
+    public static JCodeModel generate(String targetPackage, Collection<String> types) {
+        JCodeModel codeModel = new JCodeModel();
+        JDefinedClass module;
+        try {
+            module = codeModel._class(moduleName(targetPackage));
+        } catch (JClassAlreadyExistsException ex) {
+            throw new IllegalStateException(ex);
+        }
+        module._extends(SimpleModule.class);
+        module.javadoc().add("Registers the generated Jackson serializers and deserializers of all value types.");
+
+        JMethod add = module.method(JMod.PRIVATE, codeModel.VOID, "addValueType");
+        JTypeVar t = add.generify("T");
+        JTypeVar i = add.generify("I", t);
+        JVar type = add.param(codeModel.ref(Class.class).narrow(t), "type");
+        JVar immutable = add.param(codeModel.ref(Class.class).narrow(i), "immutable");
+        JVar deserializer = add.param(codeModel.ref(JsonDeserializer.class).narrow(i), "deserializer");
+        JVar serializer = add.param(codeModel.ref(JsonSerializer.class).narrow(t), "serializer");
+        add.body().invoke("addDeserializer").arg(type).arg(deserializer);
+        add.body().invoke("addDeserializer").arg(immutable).arg(deserializer);
+        add.body().invoke("addSerializer").arg(type).arg(serializer);
+
+        JMethod constructor = module.constructor(JMod.PUBLIC);
+        constructor.body().invoke("super").arg(CLASS_NAME);
+
+        JMethod preload = module.method(JMod.PUBLIC | JMod.STATIC, ObjectMapper.class, "preload");
+        preload.javadoc().add("Registers this module with {@code mapper} and looks up the serializers and deserializers"
+                + " of all value types it registers, so that the first use of a type doesn't have to.");
+        preload.javadoc().addReturn().add("{@code mapper}");
+        JVar mapper = preload.param(ObjectMapper.class, "mapper");
+        preload.body().invoke(mapper, "registerModule").arg(JExpr._new(module));
+        List<String> unregistered = new ArrayList<>();
+        for (String valueType : new TreeSet<>(types)) {
+            boolean defaultPackage = !valueType.contains(".");
+            if (defaultPackage && !targetPackage.isEmpty()) {
+                unregistered.add(valueType);
+                continue;
+            }
+            String immutableName = defaultPackage
+                    ? "Immutable" + valueType
+                    : substringBeforeLast(valueType, ".") + ".Immutable" + substringAfterLast(valueType, ".");
+            JClass typeClass = codeModel.directClass(valueType);
+            JClass immutableClass = codeModel.directClass(immutableName);
+            constructor.body().invoke(add)
+                    .arg(typeClass.dotclass())
+                    .arg(immutableClass.dotclass())
+                    .arg(JExpr._new(codeModel.directClass(valueType + "." + DeserializerGenerator.CLASS_NAME)))
+                    .arg(JExpr._new(codeModel.directClass(valueType + "." + SerializerGenerator.CLASS_NAME)));
+            // readers and writers fetch their root (de)serializer eagerly, into caches they share with the mapper
+            for (JClass cls : new JClass[]{typeClass, immutableClass}) {
+                preload.body().invoke(mapper, "readerFor").arg(cls.dotclass());
+                preload.body().invoke(mapper, "writerFor").arg(cls.dotclass());
+            }
+        }
+        preload.body()._return(mapper);
+        if (!unregistered.isEmpty()) {
+            module.javadoc().add("\n<p>\nThese types are in the default package and have to be registered separately: "
+                    + String.join(", ", unregistered));
+        }
+        return codeModel;
+    }
+}
@@ -0,0 +1,146 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.codemodel.JCodeModel;
+import com.sun.codemodel.JDefinedClass;
+import com.sun.codemodel.JPackage;
+import us.holsopple.jsonschema2immutable.rules.ImmutableRuleFactory;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the metadata that lets the value types and the Jackson module start up without surprises: the GraalVM
+ * {@code reflect-config.json} and {@code resource-config.json} that a native image needs for Jackson to introspect the
+ * types, a service file that has {@link ObjectMapper#findAndRegisterModules()} find the module, and a class list for
+ * {@code -XX:SharedClassListFile} that puts all generated classes into an AppCDS archive.
+ * <p>
+ * The metadata is written next to the sources, below {@code META-INF}, so that it ends up in the jar when the output
+ * directory is also a resource directory. Native image reads the configuration from there on its own.
+ */
+public class NativeImageGenerator {
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final String SERVICES = "META-INF/services/" + Module.class.getName();
+
+    private NativeImageGenerator() {
+    }
+
+    /**
+     * @return the binary names of the classes Jackson introspects for the value types, enums and discriminated base
+     * types of the code model that are going to be written, including the classes Immutables generates for them
+     */
+    public static List<String> reflectedTypes(ImmutableRuleFactory ruleFactory, JCodeModel codeModel) {
+        List<String> types = new ArrayList<>();
+        for (Iterator<JPackage> packages = codeModel.packages(); packages.hasNext(); ) {
+            for (Iterator<JDefinedClass> classes = packages.next().classes(); classes.hasNext(); ) {
+                JDefinedClass cls = classes.next();
+                if (cls.isHidden()) {
+                    continue;
+                }
+                if (ruleFactory.getProperties(cls) != null) {
+                    String immutable = immutableName(cls.binaryName());
+                    types.add(cls.binaryName());
+                    types.add(immutable);
+                    types.add(immutable + "$Builder");
+                    // Immutables reads JSON into this class before it builds the immutable instance
+                    types.add(immutable + "$Json");
+                } else if (ruleFactory.getEnumValues(cls) != null) {
+                    types.add(cls.binaryName());
+                } else if (ruleFactory.getDiscriminator(cls) != null) {
+                    types.add(cls.binaryName());
+                    types.add(cls.binaryName() + "$" + DeserializerGenerator.CLASS_NAME);
+                }
+            }
+        }
+        Collections.sort(types);
+        return types;
+    }
+
+    /**
+     * @return the paths of the generated metadata relative to the output directory
+     */
+    public static List<String> paths(String targetPackage) {
+        return Arrays.asList(reflectConfigPath(targetPackage), resourceConfigPath(targetPackage), SERVICES,
+                classListPath(targetPackage));
+    }
+
+    static String reflectConfigPath(String targetPackage) {
+        return "META-INF/native-image/" + directory(targetPackage) + "/reflect-config.json";
+    }
+
+    static String resourceConfigPath(String targetPackage) {
+        return "META-INF/native-image/" + directory(targetPackage) + "/resource-config.json";
+    }
+
+    static String classListPath(String targetPackage) {
+        return "META-INF/appcds/" + directory(targetPackage) + ".classlist";
+    }
+
+    /**
+     * @param moduleTypes    the fully qualified names of the value types the module registers
+     * @param reflectedTypes the binary names returned by {@link #reflectedTypes(ImmutableRuleFactory, JCodeModel)}
+     * @return the metadata files, keyed by their paths
+     */
+    public static Map<String, byte[]> generate(String targetPackage, Collection<String> moduleTypes,
+                                               Collection<String> reflectedTypes) {
+        Map<String, byte[]> files = new TreeMap<>();
+        String module = ModuleGenerator.moduleName(targetPackage);
+
+        ArrayNode reflectConfig = MAPPER.createArrayNode();
+        for (String type : new TreeSet<>(reflectedTypes)) {
+            ObjectNode entry = reflectConfig.addObject();
+            entry.put("name", type);
+            entry.put("allDeclaredConstructors", true);
+            entry.put("allPublicConstructors", true);
+            entry.put("allDeclaredMethods", true);
+            entry.put("allPublicMethods", true);
+            entry.put("allDeclaredFields", true);
+            entry.put("allPublicFields", true);
+        }
+        files.put(reflectConfigPath(targetPackage), json(reflectConfig));
+
+        ObjectNode resourceConfig = MAPPER.createObjectNode();
+        resourceConfig.putObject("resources").putArray("includes").addObject()
+                .put("pattern", Pattern.quote(SERVICES));
+        files.put(resourceConfigPath(targetPackage), json(resourceConfig));
+
+        files.put(SERVICES, (module + "\n").getBytes(StandardCharsets.UTF_8));
+
+        Set<String> classes = new TreeSet<>(reflectedTypes);
+        classes.add(module);
+        for (String type : moduleTypes) {
+            classes.add(type + "$" + DeserializerGenerator.CLASS_NAME);
+            classes.add(type + "$" + SerializerGenerator.CLASS_NAME);
+        }
+        StringBuilder classList = new StringBuilder();
+        for (String cls : classes) {
+            classList.append(cls.replace('.', '/')).append('\n');
+        }
+        files.put(classListPath(targetPackage), classList.toString().getBytes(StandardCharsets.UTF_8));
+        return files;
+    }
+
+    private static String immutableName(String binaryName) {
+        int simpleName = binaryName.lastIndexOf('.') + 1;
+        return binaryName.substring(0, simpleName) + "Immutable" + binaryName.substring(simpleName);
+    }
+
+    private static String directory(String targetPackage) {
+        return targetPackage.isEmpty() ? "default" : targetPackage.replace('.', '/');
+    }
+
+    private static byte[] json(Object tree) {
+        try {
+            return MAPPER.writeValueAsBytes(tree);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
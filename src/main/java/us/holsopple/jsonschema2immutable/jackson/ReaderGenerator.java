@@ -0,0 +1,285 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sun.codemodel.*;
+import us.holsopple.jsonschema2immutable.rules.GeneratedProperty;
+import us.holsopple.jsonschema2immutable.rules.ImmutableRuleFactory;
+import us.holsopple.jsonschema2immutable.rules.ImmutablesTypes;
+import us.holsopple.jsonschema2immutable.rules.NestedClassGenerator;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Adds a {@code Reader} class to every value type of a code model, which clears an existing {@code ModifiableX} and
+ * fills it in place from the tokens of a {@link JsonParser}.
+ * <p>
+ * A reader keeps the {@code Modifiable} instances of nested objects, including the elements of arrays of objects, and
+ * refills them on the next read, while the {@code Modifiable} keeps its collections and only clears them. Reading
+ * the same shape of records over and over thus allocates nothing but strings, boxed numbers of optional properties
+ * and primitive arrays. Everything read into an instance is overwritten by the next read with the same reader, so
+ * values that have to be kept are copied with the reader's {@code toImmutable}, which also copies the nested instances
+ * and reports missing required properties.
+ * <p>
+ * Strings, primitives, enums of strings and value types with a reader of their own are read from the parser
+ * directly; every other property type is read with an {@link ObjectReader} of the mapper the reader was created with.
+ */
+public class ReaderGenerator extends NestedClassGenerator {
+    public static final String CLASS_NAME = "Reader";
+
+    public ReaderGenerator(ImmutableRuleFactory ruleFactory) {
+        super(ruleFactory, CLASS_NAME);
+    }
+
+    @Override
+    protected boolean accepts(JDefinedClass cls) {
+        if (ImmutablesTypes.modifiable(cls) == null) {
+            System.err.println("not generating a reader for " + cls.fullName() + ", Modifiable" + cls.name()
+                    + " is taken by another class");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected void generate(JDefinedClass cls, JDefinedClass immutable, List<GeneratedProperty> properties,
+                            JDefinedClass reader) {
+        JCodeModel codeModel = cls.owner();
+        JDefinedClass modifiable = ImmutablesTypes.modifiable(cls);
+        reader.javadoc().add("Reads {@link " + cls.name() + "} from JSON tokens into a reused {@code Modifiable"
+                + cls.name() + "}.");
+
+        JFieldVar mapper = reader.field(JMod.PRIVATE | JMod.FINAL, ObjectMapper.class, "mapper");
+        JMethod constructor = reader.constructor(JMod.PUBLIC);
+        JVar constructorMapper = constructor.param(ObjectMapper.class, "mapper");
+        constructor.body().assign(JExpr._this().ref(mapper), constructorMapper);
+
+        JMethod read = reader.method(JMod.PUBLIC, modifiable, "read");
+        read.javadoc().add("Clears {@code instance} and fills it from the object at the current token of "
+                + "{@code parser}, leaving the parser at the end of the object.");
+        read._throws(IOException.class);
+        JVar parser = read.param(JsonParser.class, "parser");
+        JVar instance = read.param(modifiable, "instance");
+        JBlock body = read.body();
+        // the Modifiable has the optional primitives stored unboxed present whose setters the reader calls
+        body.add(instance.invoke("clear"));
+
+        JClass tokens = codeModel.ref(JsonToken.class);
+        JVar token = body.decl(tokens, "token", parser.invoke("getCurrentToken"));
+        JConditional start = body._if(token.eq(tokens.staticRef("START_OBJECT")));
+        start._then().assign(token, parser.invoke("nextToken"));
+        start._elseif(token.ne(tokens.staticRef("FIELD_NAME")).cand(token.ne(tokens.staticRef("END_OBJECT"))))
+                ._then()._throw(mappingException(codeModel, parser, cls.name() + " is read from a JSON object"));
+
+        JForLoop loop = body._for();
+        loop.test(token.eq(tokens.staticRef("FIELD_NAME")));
+        loop.update(JExpr.assign(token, parser.invoke("nextToken")));
+        JVar field = loop.body().decl(codeModel.ref(String.class), "field", parser.invoke("getCurrentName"));
+        JBlock value = loop.body()._if(parser.invoke("nextToken").ne(tokens.staticRef("VALUE_NULL")))._then();
+        JSwitch fields = value._switch(field);
+
+        Set<String> jsonNames = new HashSet<>();
+        for (GeneratedProperty property : properties) {
+            if (!jsonNames.add(property.getJsonName())) {
+                continue;
+            }
+            JBlock _case = fields._case(JExpr.lit(property.getJsonName())).body();
+            readProperty(cls, reader, constructor, property, parser, instance, _case);
+            _case._break();
+        }
+        JBlock _default = fields._default().body();
+        _default.add(parser.invoke("skipChildren"));
+        _default._break();
+        body._return(instance);
+
+        toImmutable(cls, immutable, modifiable, properties, reader);
+    }
+
+    /**
+     * Generates the method that copies an instance the reader filled, replacing the nested instances the reader is
+     * going to refill with copies of their own.
+     */
+    private static void toImmutable(JDefinedClass cls, JDefinedClass immutable, JDefinedClass modifiable,
+                                    List<GeneratedProperty> properties, JDefinedClass reader) {
+        JCodeModel codeModel = cls.owner();
+        JMethod method = reader.method(JMod.PUBLIC, immutable, "toImmutable");
+        method.javadoc().add("@return a copy of an instance this reader filled that the next read leaves as it is");
+        JVar instance = method.param(modifiable, "instance");
+        JVar copy = method.body().decl(immutable, "copy", instance.invoke("toImmutable"));
+        // the with-ers of a value type with optional primitives stored unboxed are its own, and return the value type
+        boolean unboxed = properties.stream().anyMatch(property -> property.getPresence() != null);
+
+        Set<String> jsonNames = new HashSet<>();
+        for (GeneratedProperty property : properties) {
+            if (!jsonNames.add(property.getJsonName())) {
+                continue;
+            }
+            String attribute = property.getAttributeName();
+            String accessor = Character.toUpperCase(attribute.charAt(0)) + attribute.substring(1);
+            JInvocation nestedReader = JExpr.invoke(attribute + "Reader");
+            JClass elementType = elementType(property.getType());
+            if (elementType != null && nestedReader(elementType) != null) {
+                JDefinedClass elementModifiable = ImmutablesTypes.modifiable((JDefinedClass) elementType);
+                JVar elements = method.body().decl(codeModel.ref(List.class).narrow(elementType),
+                        attribute + "Copy", JExpr._new(codeModel.ref(ArrayList.class).narrow(elementType))
+                                .arg(copy.invoke(property.getGetter()).invoke("size")));
+                JForEach each = method.body().forEach(elementType, "element", copy.invoke(property.getGetter()));
+                JExpression cast = JExpr.cast(elementModifiable, each.var());
+                each.body().add(elements.invoke("add").arg(JOp.cond(each.var()._instanceof(elementModifiable),
+                        nestedReader.invoke("toImmutable").arg(cast), each.var())));
+                JExpression with = copy.invoke("with" + accessor).arg(elements);
+                method.body().assign(copy, unboxed ? JExpr.cast(immutable, with) : with);
+            } else if (nestedReader(property.getType()) != null) {
+                JDefinedClass nestedModifiable = ImmutablesTypes.modifiable((JDefinedClass) property.getType());
+                JExpression nested = copy.invoke(property.getGetter());
+                JExpression cast = JExpr.cast(nestedModifiable, nested);
+                JExpression with = copy.invoke("with" + accessor).arg(nestedReader.invoke("toImmutable").arg(cast));
+                method.body()._if(nested._instanceof(nestedModifiable))._then()
+                        .assign(copy, unboxed ? JExpr.cast(immutable, with) : with);
+            }
+        }
+        method.body()._return(copy);
+    }
+
+    private void readProperty(JDefinedClass cls, JDefinedClass reader, JMethod constructor,
+                              GeneratedProperty property, JVar parser, JVar instance, JBlock block) {
+        JCodeModel codeModel = cls.owner();
+        JClass tokens = codeModel.ref(JsonToken.class);
+        JType type = property.getType();
+        String attribute = property.getAttributeName();
+        String accessor = Character.toUpperCase(attribute.charAt(0)) + attribute.substring(1);
+
+        JClass elementType = elementType(type);
+        if (elementType != null && (readInPlace(elementType) || nestedReader(elementType) != null)) {
+            block._if(parser.invoke("getCurrentToken").ne(tokens.staticRef("START_ARRAY")))._then()
+                    ._throw(mappingException(codeModel, parser, cls.name() + "." + property.getJsonName()
+                            + " is read from a JSON array"));
+            JDefinedClass nestedReader = nestedReader(elementType);
+            if (nestedReader == null) {
+                JWhileLoop elements = block._while(parser.invoke("nextToken").ne(tokens.staticRef("END_ARRAY")));
+                elements.body().add(instance.invoke("add" + accessor).arg(readInPlace(elementType, parser)));
+                return;
+            }
+
+            // the elements read last time are refilled, and only the ones beyond them are created
+            JDefinedClass elementModifiable = ImmutablesTypes.modifiable((JDefinedClass) elementType);
+            JFieldVar pool = reader.field(JMod.PRIVATE | JMod.FINAL,
+                    codeModel.ref(List.class).narrow(elementModifiable), attribute + "Elements",
+                    JExpr._new(codeModel.ref(ArrayList.class).narrow(elementModifiable)));
+            JForLoop elements = block._for();
+            JVar i = elements.init(codeModel.INT, "i", JExpr.lit(0));
+            elements.test(parser.invoke("nextToken").ne(tokens.staticRef("END_ARRAY")));
+            elements.update(i.incr());
+            elements.body()._if(i.eq(pool.invoke("size")))._then()
+                    .add(pool.invoke("add").arg(elementModifiable.staticInvoke("create")));
+            JFieldVar elementReader = nestedReaderField(reader, nestedReader, attribute);
+            elements.body().add(instance.invoke("add" + accessor).arg(JExpr.invoke(elementReader.name())
+                    .invoke("read").arg(parser).arg(pool.invoke("get").arg(i))));
+            return;
+        }
+
+        JDefinedClass nestedReader = nestedReader(type);
+        if (nestedReader != null) {
+            JDefinedClass nestedModifiable = ImmutablesTypes.modifiable((JDefinedClass) type);
+            JFieldVar scratch = reader.field(JMod.PRIVATE, nestedModifiable, attribute);
+            block._if(scratch.eq(JExpr._null()))._then().assign(scratch, nestedModifiable.staticInvoke("create"));
+            JFieldVar fieldReader = nestedReaderField(reader, nestedReader, attribute);
+            block.add(instance.invoke("set" + accessor).arg(JExpr.invoke(fieldReader.name())
+                    .invoke("read").arg(parser).arg(scratch)));
+        } else if (readInPlace(type)) {
+            block.add(instance.invoke("set" + accessor).arg(readInPlace(type, parser)));
+        } else {
+            JFieldVar objectReader = reader.field(JMod.PRIVATE | JMod.FINAL, ObjectReader.class, attribute + "Reader");
+            JVar mapper = constructor.params().get(0);
+            constructor.body().assign(JExpr._this().ref(objectReader),
+                    mapper.invoke("readerFor").arg(JacksonTypes.javaType(type, mapper)));
+            JExpression cast = JExpr.cast(type, objectReader.invoke("readValue").arg(parser));
+            block.add(instance.invoke("set" + accessor).arg(cast));
+        }
+    }
+
+    /**
+     * Adds a lazily created reader for a nested value type, so that readers of recursive types end where the data
+     * does.
+     *
+     * @return the field, which is read through a method of the same name
+     */
+    private static JFieldVar nestedReaderField(JDefinedClass reader, JDefinedClass nestedReader, String attribute) {
+        JFieldVar field = reader.field(JMod.PRIVATE, nestedReader, attribute + "Reader");
+        JMethod getter = reader.method(JMod.PRIVATE, nestedReader, field.name());
+        getter.body()._if(field.eq(JExpr._null()))._then()
+                .assign(field, JExpr._new(nestedReader).arg(JExpr.ref("mapper")));
+        getter.body()._return(field);
+        return field;
+    }
+
+    private static JDefinedClass nestedReader(JType type) {
+        if (!(type instanceof JDefinedClass) || ImmutablesTypes.modifiable((JDefinedClass) type) == null) {
+            return null;
+        }
+        return ImmutablesTypes.nested((JDefinedClass) type, CLASS_NAME);
+    }
+
+    /**
+     * @return the element type of a list or set, or null if {@code type} isn't one
+     */
+    private static JClass elementType(JType type) {
+        if (!(type instanceof JClass) || ((JClass) type).getTypeParameters().size() != 1) {
+            return null;
+        }
+        String erasure = ((JClass) type).erasure().fullName();
+        if (!erasure.equals(List.class.getName()) && !erasure.equals(Set.class.getName())) {
+            return null;
+        }
+        return ((JClass) type).getTypeParameters().get(0);
+    }
+
+    private boolean readInPlace(JType type) {
+        return parserMethod(type) != null || isStringEnum(type);
+    }
+
+    /**
+     * @return an expression reading the current value of {@code parser} for a type that {@link #readInPlace(JType)}
+     */
+    private JExpression readInPlace(JType type, JVar parser) {
+        String method = parserMethod(type);
+        if (method != null) {
+            return parser.invoke(method);
+        }
+        return ((JClass) type).staticInvoke("fromValue").arg(parser.invoke("getText"));
+    }
+
+    private static String parserMethod(JType type) {
+        JCodeModel codeModel = type.owner();
+        JType unboxed = type.unboxify();
+        if (type.fullName().equals(String.class.getName())) {
+            return "getText";
+        } else if (unboxed == codeModel.INT) {
+            return "getIntValue";
+        } else if (unboxed == codeModel.LONG) {
+            return "getLongValue";
+        } else if (unboxed == codeModel.DOUBLE) {
+            return "getDoubleValue";
+        } else if (unboxed == codeModel.FLOAT) {
+            return "getFloatValue";
+        } else if (unboxed == codeModel.BOOLEAN) {
+            return "getBooleanValue";
+        }
+        return null;
+    }
+
+    private boolean isStringEnum(JType type) {
+        List<String> values = type instanceof JDefinedClass
+                ? getRuleFactory().getEnumValues((JDefinedClass) type)
+                : null;
+        return values != null && values.stream().allMatch(value -> value.startsWith("\""));
+    }
+
+    private static JExpression mappingException(JCodeModel codeModel, JVar parser, String message) {
+        return codeModel.ref(JsonMappingException.class).staticInvoke("from").arg(parser).arg(JExpr.lit(message));
+    }
+}
@@ -0,0 +1,95 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.codemodel.*;
+import us.holsopple.jsonschema2immutable.rules.GeneratedProperty;
+import us.holsopple.jsonschema2immutable.rules.ImmutableRuleFactory;
+import us.holsopple.jsonschema2immutable.rules.NestedClassGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Adds a {@code Records} class to every value type generated from the root schema of a document, which streams
+ * instances of the type from NDJSON files and JSON arrays through the {@code JsonRecords} class generated by
+ * {@link JsonRecordsGenerator}.
+ */
+public class RecordsGenerator extends NestedClassGenerator {
+    public static final String CLASS_NAME = "Records";
+
+    private final String targetPackage;
+    private JClass jsonRecords;
+
+    public RecordsGenerator(ImmutableRuleFactory ruleFactory, String targetPackage) {
+        super(ruleFactory, CLASS_NAME);
+        this.targetPackage = targetPackage;
+    }
+
+    @Override
+    public List<String> generate(JCodeModel codeModel) {
+        jsonRecords = stub(codeModel, JsonRecordsGenerator.className(targetPackage));
+        if (jsonRecords == null) {
+            System.err.println("not generating records, " + JsonRecordsGenerator.className(targetPackage)
+                    + " is taken by another class");
+            return Collections.emptyList();
+        }
+        return super.generate(codeModel);
+    }
+
+    @Override
+    protected boolean accepts(JDefinedClass cls) {
+        // classes in the unnamed package can't be imported elsewhere
+        return getRuleFactory().isDocumentType(cls) && (!targetPackage.isEmpty() || cls._package().isUnnamed());
+    }
+
+    @Override
+    protected void generate(JDefinedClass cls, JDefinedClass immutable, List<GeneratedProperty> properties,
+                            JDefinedClass records) {
+        JCodeModel codeModel = cls.owner();
+        records.mods().setFinal(true);
+        records.javadoc().add("Streams {@link " + cls.name() + "} records with bounded memory.");
+        records.constructor(JMod.PRIVATE);
+
+        stream(records, cls, "ndjson", Path.class, "file", "Streams a file with one record per line, which a "
+                + "parallel stream splits at line breaks. Closing the stream closes the file.");
+        stream(records, cls, "ndjson", FileChannel.class, "channel", "Streams a file with one record per line from "
+                + "the current position of {@code channel} on, which a parallel stream splits at line breaks.");
+        stream(records, cls, "values", Path.class, "file", "Streams the elements of a JSON array in a file, or its "
+                + "records separated by whitespace. Closing the stream closes the file.");
+        stream(records, cls, "values", InputStream.class, "in", "Streams the elements of a JSON array, or records "
+                + "separated by whitespace. Closing the stream closes {@code in}.");
+        stream(records, cls, "values", ReadableByteChannel.class, "channel", "Streams the elements of a JSON array, "
+                + "or records separated by whitespace. Closing the stream closes {@code channel}.");
+    }
+
+    private void stream(JDefinedClass records, JDefinedClass cls, String name, Class<?> sourceType, String sourceName,
+                        String javadoc) {
+        JMethod method = records.method(JMod.PUBLIC | JMod.STATIC, cls.owner().ref(Stream.class).narrow(cls), name);
+        method.javadoc().add(javadoc);
+        method._throws(IOException.class);
+        JVar source = method.param(sourceType, sourceName);
+        JVar mapper = method.param(ObjectMapper.class, "mapper");
+        method.body()._return(jsonRecords.staticInvoke(name).arg(source)
+                .arg(mapper.invoke("readerFor").arg(JExpr.dotclass(cls))));
+    }
+
+    private static JClass stub(JCodeModel codeModel, String fullName) {
+        JDefinedClass existing = codeModel._getClass(fullName);
+        if (existing != null) {
+            return existing.isHidden() ? existing : null;
+        }
+        try {
+            JDefinedClass stub = codeModel._class(fullName);
+            stub.hide();
+            return stub;
+        } catch (JClassAlreadyExistsException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.sun.codemodel.*;
+import org.jsonschema2pojo.InclusionLevel;
+import us.holsopple.jsonschema2immutable.rules.Discriminator;
+import us.holsopple.jsonschema2immutable.rules.GeneratedProperty;
+import us.holsopple.jsonschema2immutable.rules.ImmutableRuleFactory;
+import us.holsopple.jsonschema2immutable.rules.NestedClassGenerator;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Adds a {@code Serializer} class to every value type of a code model, which writes the attributes of the type to a
+ * {@link JsonGenerator} in the order of the schema's properties.
+ * <p>
+ * Field names are encoded once, into {@link SerializedString} constants. Whether a field can be {@code null} is known
+ * from the schema: attributes that are required, have a default or are collections are written unconditionally, the
+ * others are skipped when {@code null} unless the inclusion level is {@link InclusionLevel#ALWAYS}. Strings, numbers,
+ * booleans and primitive arrays are written to the generator directly; every other property type uses a serializer
+ * looked up once, when Jackson resolves the generated one. Property annotations such as {@code @JsonFormat} aren't
+ * applied to those serializers.
+ * <p>
+ * Subtypes of a {@code oneOf} with a discriminator write it first unless they declare it as a property, also when
+ * Jackson asks them to write a type id. Properties of the base type are written with the serializer of the subtype.
+ */
+public class SerializerGenerator extends NestedClassGenerator {
+    public static final String CLASS_NAME = "Serializer";
+
+    public SerializerGenerator(ImmutableRuleFactory ruleFactory) {
+        super(ruleFactory, CLASS_NAME);
+    }
+
+    @Override
+    protected void generate(JDefinedClass cls, JDefinedClass immutable, List<GeneratedProperty> properties,
+                            JDefinedClass serializer) {
+        JCodeModel codeModel = cls.owner();
+        serializer._extends(codeModel.ref(StdSerializer.class).narrow(cls));
+        serializer._implements(ResolvableSerializer.class);
+        serializer.javadoc().add("Writes {@link " + cls.name() + "} to JSON tokens in schema order.");
+
+        JMethod constructor = serializer.constructor(JMod.PUBLIC);
+        constructor.body().invoke("super").arg(cls.dotclass());
+
+        JMethod resolve = serializer.method(JMod.PUBLIC, codeModel.VOID, "resolve");
+        resolve.annotate(Override.class);
+        resolve._throws(JsonMappingException.class);
+        JVar resolveProvider = resolve.param(SerializerProvider.class, "provider");
+
+        JMethod serialize = serializer.method(JMod.PUBLIC, codeModel.VOID, "serialize");
+        serialize.annotate(Override.class);
+        serialize._throws(IOException.class);
+        JVar value = serialize.param(cls, "value");
+        JVar generator = serialize.param(JsonGenerator.class, "generator");
+        JVar provider = serialize.param(SerializerProvider.class, "provider");
+        JBlock body = serialize.body();
+        body.add(generator.invoke("writeStartObject").arg(value));
+
+        Discriminator discriminator = getRuleFactory().getSubtypeDiscriminator(cls);
+        if (discriminator != null) {
+            if (!discriminator.isDeclared(cls)) {
+                body.add(generator.invoke("writeStringField").arg(discriminator.getPropertyName())
+                        .arg(discriminator.getName(cls)));
+            }
+            JMethod serializeWithType = serializer.method(JMod.PUBLIC, codeModel.VOID, "serializeWithType");
+            serializeWithType.annotate(Override.class);
+            serializeWithType._throws(IOException.class);
+            serializeWithType.javadoc().add("Writes the discriminator of {@link " + discriminator.getBase().name()
+                    + "} as part of the object rather than with Jackson's type id handling.");
+            JVar typedValue = serializeWithType.param(cls, "value");
+            JVar typedGenerator = serializeWithType.param(JsonGenerator.class, "generator");
+            JVar typedProvider = serializeWithType.param(SerializerProvider.class, "provider");
+            serializeWithType.param(TypeSerializer.class, "typeSerializer");
+            serializeWithType.body().invoke(serialize).arg(typedValue).arg(typedGenerator).arg(typedProvider);
+        }
+
+        boolean writeNulls = getRuleFactory().getGenerationConfig().getInclusionLevel() == InclusionLevel.ALWAYS;
+        Map<GeneratedProperty, JFieldVar> names = new LinkedHashMap<>();
+        Set<String> jsonNames = new HashSet<>();
+        Set<String> constants = new HashSet<>();
+        for (GeneratedProperty property : properties) {
+            if (!jsonNames.add(property.getJsonName())) {
+                continue;
+            }
+            String constant = constantName(property.getAttributeName());
+            for (int i = 2; !constants.add(constant); i++) {
+                constant = constantName(property.getAttributeName()) + "_" + i;
+            }
+            JExpression encoded = JExpr._new(codeModel.ref(SerializedString.class))
+                    .arg(JExpr.lit(property.getJsonName()));
+            names.put(property, serializer.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, SerializedString.class,
+                    constant, encoded));
+        }
+
+        for (Map.Entry<GeneratedProperty, JFieldVar> entry : names.entrySet()) {
+            GeneratedProperty property = entry.getKey();
+            JFieldVar name = entry.getValue();
+            JType type = property.getType();
+            JBlock write = body;
+            JExpression attribute = value.invoke(property.getGetter());
+            JConditional present = null;
+            if (property.isNullable()) {
+                JVar local = body.decl(type, property.getAttributeName() + "Value", attribute);
+                attribute = local;
+                present = body._if(local.ne(JExpr._null()));
+            } else if (property.getPresence() != null) {
+                present = body._if(value.invoke(property.getPresence()));
+            }
+            if (present != null) {
+                write = present._then();
+                if (writeNulls) {
+                    JBlock absent = present._else();
+                    absent.add(generator.invoke("writeFieldName").arg(name));
+                    absent.add(generator.invoke("writeNull"));
+                }
+            }
+            write.add(generator.invoke("writeFieldName").arg(name));
+
+            JInvocation writeValue = writePrimitive(type, attribute, generator);
+            if (writeValue == null && getRuleFactory().getDiscriminator(type) != null) {
+                // the base type of a oneOf has no serializer of its own, only its subtypes do
+                if (!(attribute instanceof JVar)) {
+                    attribute = write.decl(type, property.getAttributeName() + "Value", attribute);
+                }
+                writeValue = provider.invoke("findTypedValueSerializer").arg(attribute.invoke("getClass"))
+                        .arg(JExpr.TRUE).arg(JExpr._null()).invoke("serialize").arg(attribute).arg(generator)
+                        .arg(provider);
+            } else if (writeValue == null) {
+                JFieldVar propertySerializer = serializer.field(JMod.PRIVATE,
+                        codeModel.ref(JsonSerializer.class).narrow(Object.class),
+                        property.getAttributeName() + "Serializer");
+                resolve.body().assign(JExpr._this().ref(propertySerializer),
+                        resolveProvider.invoke("findValueSerializer")
+                                .arg(JacksonTypes.javaType(type, resolveProvider)));
+                writeValue = propertySerializer.invoke("serialize").arg(attribute).arg(generator).arg(provider);
+            }
+            write.add(writeValue);
+        }
+        body.add(generator.invoke("writeEndObject"));
+    }
+
+    /**
+     * @return an invocation writing a value of the given type with the methods of {@link JsonGenerator}, or null if
+     * the type needs a serializer of its own
+     */
+    private static JInvocation writePrimitive(JType type, JExpression attribute, JVar generator) {
+        JCodeModel codeModel = type.owner();
+        JType unboxed = type.unboxify();
+        if (type.fullName().equals(String.class.getName())) {
+            return generator.invoke("writeString").arg(attribute);
+        } else if (unboxed == codeModel.INT || unboxed == codeModel.LONG || unboxed == codeModel.DOUBLE
+                || unboxed == codeModel.FLOAT) {
+            return generator.invoke("writeNumber").arg(attribute);
+        } else if (unboxed == codeModel.BOOLEAN) {
+            return generator.invoke("writeBoolean").arg(attribute);
+        } else if (type.isArray() && (type.elementType() == codeModel.INT || type.elementType() == codeModel.LONG
+                || type.elementType() == codeModel.DOUBLE)) {
+            return generator.invoke("writeArray").arg(attribute).arg(JExpr.lit(0)).arg(attribute.ref("length"));
+        }
+        return null;
+    }
+
+    private static String constantName(String attributeName) {
+        StringBuilder constant = new StringBuilder();
+        for (char c : attributeName.toCharArray()) {
+            if (Character.isUpperCase(c) && constant.length() > 0) {
+                constant.append('_');
+            }
+            constant.append(Character.isJavaIdentifierPart(c) ? Character.toUpperCase(c) : '_');
+        }
+        return constant.toString();
+    }
+}
@@ -0,0 +1,402 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.codemodel.*;
+import org.immutables.value.Value;
+import us.holsopple.jsonschema2immutable.rules.GeneratedProperty;
+import us.holsopple.jsonschema2immutable.rules.ImmutableRuleFactory;
+import us.holsopple.jsonschema2immutable.rules.ImmutablesTypes;
+import us.holsopple.jsonschema2immutable.rules.NestedClassGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Adds a {@code View} class to every value type of a code model, which extends the value type and reads it lazily
+ * from the UTF-8 JSON bytes it wraps.
+ * <p>
+ * The first getter call tokenizes the object once, skipping over the values, to index where the value of every known
+ * field starts. Each getter then parses only its own value, the first time it is called, and keeps it. Objects with a
+ * view of their own become views over the same bytes, so nothing is copied until a getter returns a string, number or
+ * collection. The wrapped bytes can be written out again as they are, which is what a view that is only partly read
+ * is for; {@code toImmutable()} binds all attributes and runs the {@code @Value.Check} methods, which views skip.
+ * <p>
+ * A view is equal to another view or an immutable instance with equal attributes, compared and hashed the way
+ * Immutables does, which reads them all. The immutable class only accepts its own instances, though, so an immutable
+ * instance is never equal to a view; {@code toImmutable()} makes it one that is.
+ * <p>
+ * Getters read with the {@link ObjectMapper} the view was created with, and report malformed JSON as an
+ * {@link UncheckedIOException} and missing required properties as an {@link IllegalStateException}. Views can be
+ * shared between threads; a getter that races with another one may parse its value twice.
+ */
+public class ViewGenerator extends NestedClassGenerator {
+    public static final String CLASS_NAME = "View";
+
+    public ViewGenerator(ImmutableRuleFactory ruleFactory) {
+        super(ruleFactory, CLASS_NAME);
+    }
+
+    @Override
+    protected void generate(JDefinedClass cls, JDefinedClass immutable, List<GeneratedProperty> properties,
+                            JDefinedClass view) {
+        JCodeModel codeModel = cls.owner();
+        view._extends(cls);
+        view.javadoc().add("Reads {@link " + cls.name() + "} lazily from the UTF-8 JSON bytes it wraps.");
+
+        JFieldVar bytes = view.field(JMod.PRIVATE | JMod.FINAL, byte[].class, "bytes");
+        JFieldVar offset = view.field(JMod.PRIVATE | JMod.FINAL, codeModel.INT, "offset");
+        JFieldVar length = view.field(JMod.PRIVATE | JMod.FINAL, codeModel.INT, "length");
+        JFieldVar mapper = view.field(JMod.PRIVATE | JMod.FINAL, ObjectMapper.class, "mapper");
+        JFieldVar index = view.field(JMod.PRIVATE | JMod.VOLATILE, int[].class, "index");
+
+        constructors(view, bytes, offset, length, mapper);
+        JMethod parser = parserMethod(view, bytes, mapper);
+        JMethod close = closeMethod(view);
+
+        Map<String, Integer> fields = new LinkedHashMap<>();
+        for (GeneratedProperty property : properties) {
+            fields.putIfAbsent(property.getJsonName(), fields.size());
+        }
+        JMethod indexMethod = indexMethod(cls, view, fields, index, offset, length, parser, close);
+
+        for (GeneratedProperty property : properties) {
+            getter(cls, view, property, fields.get(property.getJsonName()), indexMethod, parser, close, bytes,
+                    mapper);
+        }
+
+        // the bits start out set like the default of the value type, and the index tells which properties are there
+        Map<JMethod, List<GeneratedProperty>> words = new LinkedHashMap<>();
+        for (GeneratedProperty property : properties) {
+            if (property.getPresence() != null) {
+                words.computeIfAbsent(property.getAbsentBits(), word -> new ArrayList<>()).add(property);
+            }
+        }
+        for (Map.Entry<JMethod, List<GeneratedProperty>> word : words.entrySet()) {
+            JMethod absentBits = view.method(JMod.PROTECTED, codeModel.LONG, word.getKey().name());
+            absentBits.annotate(Override.class);
+            JVar fieldIndex = absentBits.body().decl(codeModel.INT.array(), "index", JExpr.invoke(indexMethod));
+            JVar bits = absentBits.body().decl(codeModel.LONG, "bits", JExpr.lit(-1L));
+            for (GeneratedProperty property : word.getValue()) {
+                JExpression start = fieldIndex.component(JExpr.lit(fields.get(property.getJsonName()) * 2));
+                absentBits.body()._if(start.gte(JExpr.lit(0)))._then()
+                        .assign(bits, bits.band(JExpr.lit(~property.getAbsentBit())));
+            }
+            absentBits.body()._return(bits);
+        }
+
+        JMethod writeTo = view.method(JMod.PUBLIC, codeModel.VOID, "writeTo");
+        writeTo.javadoc().add("Writes the wrapped JSON as it is.");
+        writeTo._throws(IOException.class);
+        JVar out = writeTo.param(OutputStream.class, "out");
+        writeTo.body().add(out.invoke("write").arg(bytes).arg(offset).arg(length));
+
+        JMethod toByteBuffer = view.method(JMod.PUBLIC, ByteBuffer.class, "toByteBuffer");
+        toByteBuffer.javadoc().add("@return the wrapped JSON, without copying it");
+        toByteBuffer.body()._return(codeModel.ref(ByteBuffer.class).staticInvoke("wrap").arg(bytes).arg(offset)
+                .arg(length).invoke("slice").invoke("asReadOnlyBuffer"));
+
+        JMethod toImmutable = view.method(JMod.PUBLIC, immutable, "toImmutable");
+        toImmutable.javadoc().add("@return a copy with all attributes read and checked");
+        JVar builder = toImmutable.body().decl(ImmutablesTypes.builder(immutable), "builder",
+                immutable.staticInvoke("builder").invoke("from").arg(JExpr._this()));
+        for (GeneratedProperty property : properties) {
+            JDefinedClass nestedView = nestedView(property.getType());
+            if (nestedView != null) {
+                // the copy holds no views, so that it is equal to the bound instance
+                JInvocation nested = JExpr.invoke(property.getGetter());
+                JExpression cast = JExpr.cast(nestedView, nested);
+                toImmutable.body()._if(nested._instanceof(nestedView))._then()
+                        .add(builder.invoke(property.getAttributeName()).arg(cast.invoke("toImmutable")));
+            }
+        }
+        toImmutable.body()._return(builder.invoke("build"));
+
+        equalsMethods(cls, immutable, view);
+
+        JMethod toString = view.method(JMod.PUBLIC, String.class, "toString");
+        toString.annotate(Override.class);
+        toString.body()._return(JExpr._new(codeModel.ref(String.class)).arg(bytes).arg(offset).arg(length)
+                .arg(codeModel.ref(StandardCharsets.class).staticRef("UTF_8")));
+    }
+
+    /**
+     * Generates {@code equals} and {@code hashCode} over the attributes of the value type, in the order and with the
+     * comparisons of the immutable class, so that a view has the hash code of the instance it is equal to.
+     */
+    private static void equalsMethods(JDefinedClass cls, JDefinedClass immutable, JDefinedClass view) {
+        JCodeModel codeModel = cls.owner();
+        List<JMethod> attributes = new ArrayList<>();
+        for (JMethod method : cls.methods()) {
+            if (method.params().isEmpty() && method.type() != codeModel.VOID
+                    && (method.mods().getValue() & (JMod.STATIC | JMod.PRIVATE)) == 0
+                    && ((method.mods().getValue() & JMod.ABSTRACT) != 0 || annotated(method, Value.Default.class))) {
+                attributes.add(method);
+            }
+        }
+
+        JMethod equals = view.method(JMod.PUBLIC, codeModel.BOOLEAN, "equals");
+        equals.annotate(Override.class);
+        JVar another = equals.param(Object.class, "another");
+        equals.body()._if(JExpr._this().eq(another))._then()._return(JExpr.TRUE);
+        equals.body()._if(another._instanceof(immutable).not().cand(another._instanceof(view).not()))._then()
+                ._return(JExpr.FALSE);
+        JVar that = equals.body().decl(cls, "that", JExpr.cast(cls, another));
+        JExpression equal = JExpr.TRUE;
+        for (int i = 0; i < attributes.size(); i++) {
+            JExpression attribute = equalTo(attributes.get(i), JExpr.invoke(attributes.get(i)),
+                    that.invoke(attributes.get(i)));
+            equal = i == 0 ? attribute : equal.cand(attribute);
+        }
+        equals.body()._return(equal);
+
+        JMethod hashCode = view.method(JMod.PUBLIC, codeModel.INT, "hashCode");
+        hashCode.annotate(Override.class);
+        JVar h = hashCode.body().decl(codeModel.INT, "h", JExpr.lit(5381));
+        for (JMethod attribute : attributes) {
+            hashCode.body().assignPlus(h, h.shl(JExpr.lit(5)).plus(hash(attribute, JExpr.invoke(attribute))));
+        }
+        hashCode.body()._return(h);
+    }
+
+    private static JExpression equalTo(JMethod attribute, JExpression value, JExpression other) {
+        JCodeModel codeModel = attribute.type().owner();
+        JType type = attribute.type();
+        if (type == codeModel.DOUBLE) {
+            JClass doubles = codeModel.ref(Double.class);
+            return doubles.staticInvoke("doubleToLongBits").arg(value)
+                    .eq(doubles.staticInvoke("doubleToLongBits").arg(other));
+        } else if (type == codeModel.FLOAT) {
+            JClass floats = codeModel.ref(Float.class);
+            return floats.staticInvoke("floatToIntBits").arg(value)
+                    .eq(floats.staticInvoke("floatToIntBits").arg(other));
+        } else if (type.isPrimitive()) {
+            return value.eq(other);
+        } else if (type.isArray()) {
+            return codeModel.ref(Arrays.class).staticInvoke("equals").arg(value).arg(other);
+        }
+        // the value of this view first, so that nested views compare with their own equals
+        return codeModel.ref(Objects.class).staticInvoke("equals").arg(value).arg(other);
+    }
+
+    private static JExpression hash(JMethod attribute, JExpression value) {
+        JCodeModel codeModel = attribute.type().owner();
+        JType type = attribute.type();
+        if (type == codeModel.INT) {
+            return value;
+        } else if (type.isPrimitive()) {
+            return type.boxify().staticInvoke("hashCode").arg(value);
+        } else if (type.isArray()) {
+            return codeModel.ref(Arrays.class).staticInvoke("hashCode").arg(value);
+        }
+        return codeModel.ref(Objects.class).staticInvoke("hashCode").arg(value);
+    }
+
+    private static boolean annotated(JMethod method, Class<?> annotationClass) {
+        for (JAnnotationUse annotation : method.annotations()) {
+            if (annotation.getAnnotationClass().fullName().equals(annotationClass.getCanonicalName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void constructors(JDefinedClass view, JFieldVar bytes, JFieldVar offset, JFieldVar length,
+                                     JFieldVar mapper) {
+        JCodeModel codeModel = view.owner();
+        JMethod all = view.constructor(JMod.PUBLIC);
+        JVar allBytes = all.param(byte[].class, "bytes");
+        JVar allOffset = all.param(codeModel.INT, "offset");
+        JVar allLength = all.param(codeModel.INT, "length");
+        JVar allMapper = all.param(ObjectMapper.class, "mapper");
+        all.body().assign(JExpr._this().ref(bytes), allBytes);
+        all.body().assign(JExpr._this().ref(offset), allOffset);
+        all.body().assign(JExpr._this().ref(length), allLength);
+        all.body().assign(JExpr._this().ref(mapper), allMapper);
+
+        JMethod whole = view.constructor(JMod.PUBLIC);
+        JVar wholeBytes = whole.param(byte[].class, "bytes");
+        JVar wholeMapper = whole.param(ObjectMapper.class, "mapper");
+        whole.body().invoke("this").arg(wholeBytes).arg(JExpr.lit(0)).arg(wholeBytes.ref("length")).arg(wholeMapper);
+
+        JMethod of = view.method(JMod.PUBLIC | JMod.STATIC, view, "of");
+        of.javadoc().add("Wraps the remaining bytes of {@code buffer}, which are copied only if it isn't backed by an "
+                + "array.");
+        JVar buffer = of.param(ByteBuffer.class, "buffer");
+        JVar ofMapper = of.param(ObjectMapper.class, "mapper");
+        of.body()._if(buffer.invoke("hasArray"))._then()._return(JExpr._new(view).arg(buffer.invoke("array"))
+                .arg(buffer.invoke("arrayOffset").plus(buffer.invoke("position"))).arg(buffer.invoke("remaining"))
+                .arg(ofMapper));
+        JVar copy = of.body().decl(codeModel.BYTE.array(), "bytes",
+                JExpr.newArray(codeModel.BYTE, buffer.invoke("remaining")));
+        of.body().add(buffer.invoke("duplicate").invoke("get").arg(copy));
+        of.body()._return(JExpr._new(view).arg(copy).arg(ofMapper));
+    }
+
+    private static JMethod parserMethod(JDefinedClass view, JFieldVar bytes, JFieldVar mapper) {
+        JMethod parserMethod = view.method(JMod.PRIVATE, JsonParser.class, "parser");
+        JVar start = parserMethod.param(view.owner().INT, "start");
+        JVar end = parserMethod.param(view.owner().INT, "end");
+        JTryBlock _try = parserMethod.body()._try();
+        JVar parser = _try.body().decl(view.owner().ref(JsonParser.class), "parser", mapper.invoke("getFactory")
+                .invoke("createParser").arg(bytes).arg(start).arg(end.minus(start)));
+        _try.body().add(parser.invoke("nextToken"));
+        _try.body()._return(parser);
+        uncheck(view.owner(), _try);
+        return parserMethod;
+    }
+
+    private static JMethod closeMethod(JDefinedClass view) {
+        JMethod close = view.method(JMod.PRIVATE | JMod.STATIC, view.owner().VOID, "close");
+        JVar parser = close.param(JsonParser.class, "parser");
+        JTryBlock _try = close.body()._try();
+        _try.body().add(parser.invoke("close"));
+        uncheck(view.owner(), _try);
+        return close;
+    }
+
+    /**
+     * Generates the method that indexes the start and end offset of every field's value, or -1 if the field is
+     * missing or {@code null}. The parser doesn't read strings it skips, so their values end with the object instead,
+     * while a number has to end where it does to be read on its own.
+     */
+    private static JMethod indexMethod(JDefinedClass cls, JDefinedClass view, Map<String, Integer> fields,
+                                       JFieldVar indexField, JFieldVar offset, JFieldVar length,
+                                       JMethod parserMethod, JMethod close) {
+        JCodeModel codeModel = view.owner();
+        JClass tokens = codeModel.ref(JsonToken.class);
+        JMethod method = view.method(JMod.PRIVATE, int[].class, "index");
+        JVar index = method.body().decl(codeModel.INT.array(), "index", JExpr._this().ref(indexField));
+        JBlock build = method.body()._if(index.eq(JExpr._null()))._then();
+        build.assign(index, JExpr.newArray(codeModel.INT, JExpr.lit(fields.size() * 2)));
+        build.add(codeModel.ref(Arrays.class).staticInvoke("fill").arg(index).arg(JExpr.lit(-1)));
+        JVar parser = build.decl(codeModel.ref(JsonParser.class), "parser",
+                JExpr.invoke(parserMethod).arg(offset).arg(offset.plus(length)));
+
+        JTryBlock _try = build._try();
+        _try.body()._if(parser.invoke("getCurrentToken").ne(tokens.staticRef("START_OBJECT")))._then()
+                ._throw(JExpr._new(codeModel.ref(IllegalStateException.class))
+                        .arg(JExpr.lit(cls.name() + " is read from a JSON object")));
+        JForLoop loop = _try.body()._for();
+        JVar token = loop.init(tokens, "token", parser.invoke("nextToken"));
+        loop.test(token.eq(tokens.staticRef("FIELD_NAME")));
+        loop.update(JExpr.assign(token, parser.invoke("nextToken")));
+        JVar field = loop.body().decl(codeModel.INT, "field", JExpr.lit(-1));
+        JSwitch names = loop.body()._switch(parser.invoke("getCurrentName"));
+        for (Map.Entry<String, Integer> entry : fields.entrySet()) {
+            JBlock _case = names._case(JExpr.lit(entry.getKey())).body();
+            _case.assign(field, JExpr.lit(entry.getValue()));
+            _case._break();
+        }
+        JVar value = loop.body().decl(tokens, "value", parser.invoke("nextToken"));
+        JConditional known = loop.body()._if(value.ne(tokens.staticRef("VALUE_NULL")).cand(field.gte(JExpr.lit(0))));
+        known._then().assign(index.component(field.mul(JExpr.lit(2))),
+                offset.plus(JExpr.cast(codeModel.INT, parser.invoke("getTokenLocation").invoke("getByteOffset"))));
+        known._then().add(parser.invoke("skipChildren"));
+        known._then().assign(index.component(field.mul(JExpr.lit(2)).plus(JExpr.lit(1))),
+                JOp.cond(value.eq(tokens.staticRef("VALUE_STRING")), offset.plus(length), offset.plus(
+                        JExpr.cast(codeModel.INT, parser.invoke("getCurrentLocation").invoke("getByteOffset")))));
+        known._else().add(parser.invoke("skipChildren"));
+        uncheck(codeModel, _try);
+        _try._finally().invoke(close).arg(parser);
+
+        build.assign(JExpr._this().ref(indexField), index);
+        method.body()._return(index);
+        return method;
+    }
+
+    private void getter(JDefinedClass cls, JDefinedClass view, GeneratedProperty property, int field,
+                        JMethod indexMethod, JMethod parserMethod, JMethod close, JFieldVar bytes, JFieldVar mapper) {
+        JCodeModel codeModel = view.owner();
+        JType type = property.getType();
+        String attribute = property.getAttributeName();
+        JFieldVar value = view.field(JMod.PRIVATE, type, attribute + "Value");
+        JFieldVar read = view.field(JMod.PRIVATE | JMod.VOLATILE, codeModel.BOOLEAN, attribute + "Read");
+
+        JMethod getter = view.method(JMod.PUBLIC, type, property.getGetter().name());
+        getter.annotate(Override.class);
+        JBlock body = getter.body()._if(read.not())._then();
+        JVar start = body.decl(codeModel.INT, "start", JExpr.invoke(indexMethod).component(JExpr.lit(field * 2)));
+        JConditional present = body._if(start.lt(JExpr.lit(0)));
+        absent(cls, property, present._then(), value);
+
+        JBlock parse = present._else();
+        JExpression end = JExpr.invoke(indexMethod).component(JExpr.lit(field * 2 + 1));
+        JDefinedClass nestedView = nestedView(type);
+        if (nestedView != null) {
+            parse.assign(value, JExpr._new(nestedView).arg(bytes).arg(start).arg(end.minus(start)).arg(mapper));
+        } else {
+            JVar parser = parse.decl(codeModel.ref(JsonParser.class), "parser",
+                    JExpr.invoke(parserMethod).arg(start).arg(end));
+            JTryBlock _try = parse._try();
+            _try.body().assign(value, readValue(type, parser, mapper));
+            uncheck(codeModel, _try);
+            _try._finally().invoke(close).arg(parser);
+        }
+        body.assign(read, JExpr.TRUE);
+        getter.body()._return(value);
+    }
+
+    private static JDefinedClass nestedView(JType type) {
+        return type instanceof JDefinedClass ? ImmutablesTypes.nested((JDefinedClass) type, CLASS_NAME) : null;
+    }
+
+    private static void absent(JDefinedClass cls, GeneratedProperty property, JBlock block, JFieldVar value) {
+        JCodeModel codeModel = cls.owner();
+        JType type = property.getType();
+        String erasure = type instanceof JClass ? ((JClass) type).erasure().fullName() : "";
+        if ((property.getGetter().mods().getValue() & JMod.ABSTRACT) == 0) {
+            block.assign(value, JExpr._super().invoke(property.getGetter()));
+        } else if (property.isNullable()) {
+            block.assign(value, JExpr._null());
+        } else if (erasure.equals(List.class.getName())) {
+            block.assign(value, codeModel.ref(Collections.class).staticInvoke("emptyList"));
+        } else if (erasure.equals(Set.class.getName())) {
+            block.assign(value, codeModel.ref(Collections.class).staticInvoke("emptySet"));
+        } else {
+            block._throw(JExpr._new(codeModel.ref(IllegalStateException.class))
+                    .arg(JExpr.lit(cls.name() + "." + property.getJsonName() + " is missing")));
+        }
+    }
+
+    /**
+     * @return an expression reading the current value of {@code parser}; collections are wrapped to be unmodifiable
+     * like the ones Immutables keeps
+     */
+    private static JExpression readValue(JType type, JVar parser, JFieldVar mapper) {
+        JCodeModel codeModel = type.owner();
+        JType unboxed = type.unboxify();
+        if (type.fullName().equals(String.class.getName())) {
+            return parser.invoke("getText");
+        } else if (unboxed == codeModel.INT) {
+            return parser.invoke("getIntValue");
+        } else if (unboxed == codeModel.LONG) {
+            return parser.invoke("getLongValue");
+        } else if (unboxed == codeModel.DOUBLE) {
+            return parser.invoke("getDoubleValue");
+        } else if (unboxed == codeModel.FLOAT) {
+            return parser.invoke("getFloatValue");
+        } else if (unboxed == codeModel.BOOLEAN) {
+            return parser.invoke("getBooleanValue");
+        }
+        JExpression read = mapper.invoke("readValue").arg(parser).arg(JacksonTypes.javaType(type, mapper));
+        String erasure = type instanceof JClass ? ((JClass) type).erasure().fullName() : "";
+        if (erasure.equals(List.class.getName())) {
+            return codeModel.ref(Collections.class).staticInvoke("unmodifiableList").arg(read);
+        } else if (erasure.equals(Set.class.getName())) {
+            return codeModel.ref(Collections.class).staticInvoke("unmodifiableSet").arg(read);
+        }
+        return read;
+    }
+
+    private static void uncheck(JCodeModel codeModel, JTryBlock _try) {
+        JCatchBlock _catch = _try._catch(codeModel.ref(IOException.class));
+        JVar ex = _catch.param("ex");
+        _catch.body()._throw(JExpr._new(codeModel.ref(UncheckedIOException.class)).arg(ex));
+    }
+}
@@ -0,0 +1,60 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.JBlock;
+import com.sun.codemodel.JExpr;
+import com.sun.codemodel.JExpression;
+import com.sun.codemodel.JMethod;
+import com.sun.codemodel.JVar;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code absentBits} attributes of a value type with optional primitives stored unboxed, kept in local variables
+ * of a generated method that builds an instance.
+ * <p>
+ * Every bit starts out set, like the default of the attributes, and is cleared when the method reads a property, so
+ * that the instance it builds has exactly the properties present that it was given, zeros included.
+ */
+public final class AbsentBits {
+    private final Map<JMethod, JVar> words = new LinkedHashMap<>();
+
+    /**
+     * Declares a variable in {@code block} for every {@code absentBits} attribute of {@code properties}.
+     */
+    public AbsentBits(JBlock block, List<GeneratedProperty> properties) {
+        for (GeneratedProperty property : properties) {
+            if (property.getPresence() != null && !words.containsKey(property.getAbsentBits())) {
+                words.put(property.getAbsentBits(), block.decl(property.getAbsentBits().type(),
+                        property.getAbsentBits().name(), JExpr.lit(-1L)));
+            }
+        }
+    }
+
+    /**
+     * Clears the bit of {@code property} in {@code block}, if it is an optional primitive stored unboxed.
+     */
+    public void present(JBlock block, GeneratedProperty property) {
+        if (property.getPresence() != null) {
+            JVar word = words.get(property.getAbsentBits());
+            block.assign(word, word.band(JExpr.lit(~property.getAbsentBit())));
+        }
+    }
+
+    /**
+     * Passes the variables to the initializers of the attributes of {@code builder}, an {@code ImmutableX.Builder}.
+     */
+    public void initialize(JBlock block, JExpression builder) {
+        for (Map.Entry<JMethod, JVar> word : words.entrySet()) {
+            block.add(builder.invoke(word.getKey().name()).arg(word.getValue()));
+        }
+    }
+
+    /**
+     * @return the variables, by the attributes they are kept for
+     */
+    public Map<JMethod, JVar> words() {
+        return words;
+    }
+}
@@ -0,0 +1,97 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.codemodel.JClass;
+import com.sun.codemodel.JCodeModel;
+import com.sun.codemodel.JDefinedClass;
+import com.sun.codemodel.JPackage;
+import com.sun.codemodel.JPrimitiveType;
+import org.jsonschema2pojo.GenerationConfig;
+import org.jsonschema2pojo.Schema;
+
+import java.util.List;
+
+/**
+ * Generates arrays of integers, numbers and booleans as primitive arrays when primitive arrays are switched on in the
+ * {@link ImmutableRuleFactory} or the array schema has {@code "javaPrimitiveArray": true}. Immutables copies array
+ * attributes when it builds an instance and when they are read, and Jackson reads and writes primitive arrays without
+ * boxing their elements.
+ * <p>
+ * Arrays with unique items stay sets, and items that need {@code BigInteger}/{@code BigDecimal} or carry a
+ * {@code javaType} stay lists.
+ * <p>
+ * When persistent collections are switched on, arrays that would be lists are generated as a
+ * {@link PersistentListGenerator persistent list} instead, unless the array schema has {@code "x-persistent": false}.
+ * Immutables treats the persistent list like any other value, so {@code withX} keeps it rather than copying it, and an
+ * element is added, replaced or removed in O(log n) with its {@code plus}, {@code with} and {@code minus} methods.
+ */
+public class ArrayRule extends org.jsonschema2pojo.rules.ArrayRule {
+    static final String PRIMITIVE_ARRAY = "javaPrimitiveArray";
+    static final String PERSISTENT = "x-persistent";
+
+    private final ImmutableRuleFactory ruleFactory;
+
+    protected ArrayRule(ImmutableRuleFactory ruleFactory) {
+        super(ruleFactory);
+        this.ruleFactory = ruleFactory;
+    }
+
+    @Override
+    public JClass apply(String nodeName, JsonNode node, JPackage jpackage, Schema schema) {
+        JPrimitiveType elementType = primitiveElementType(node, jpackage.owner());
+        if (elementType != null) {
+            return elementType.array();
+        }
+        JClass type = super.apply(nodeName, node, jpackage, schema);
+        if (ruleFactory.getPersistentList() != null && node.path(PERSISTENT).asBoolean(true)
+                && type.erasure().fullName().equals(List.class.getName())) {
+            return persistentList(jpackage, type.getTypeParameters().get(0), type);
+        } else if (ruleFactory.getPersistentList() == null && node.path(PERSISTENT).asBoolean()) {
+            System.err.println("ignoring " + PERSISTENT + " of " + nodeName + ", persistent collections are off");
+        }
+        return type;
+    }
+
+    private JClass persistentList(JPackage jpackage, JClass elementType, JClass list) {
+        String className = ruleFactory.getPersistentList();
+        // classes in the unnamed package can't be imported elsewhere
+        if (!className.contains(".") && !jpackage.isUnnamed()) {
+            return list;
+        }
+        JDefinedClass persistentList = PersistentListGenerator.stub(jpackage.owner(), className);
+        if (persistentList == null) {
+            System.err.println("not generating persistent lists, " + className + " is taken by another class");
+            return list;
+        }
+        return persistentList.narrow(elementType);
+    }
+
+    private JPrimitiveType primitiveElementType(JsonNode node, JCodeModel codeModel) {
+        boolean enabled = node.has(PRIMITIVE_ARRAY)
+                ? node.get(PRIMITIVE_ARRAY).asBoolean()
+                : ruleFactory.isPrimitiveArrays();
+        JsonNode items = node.get("items");
+        if (!enabled || items == null || !items.isObject() || node.path("uniqueItems").asBoolean()
+                || items.has("$ref") || items.has("javaType") || items.has("existingJavaType")) {
+            return null;
+        }
+
+        GenerationConfig config = ruleFactory.getGenerationConfig();
+        switch (items.path("type").asText()) {
+            case "integer":
+                if (config.isUseBigIntegers()) {
+                    return null;
+                }
+                return config.isUseLongIntegers() ? codeModel.LONG : codeModel.INT;
+            case "number":
+                if (config.isUseBigDecimals()) {
+                    return null;
+                }
+                return config.isUseDoubleNumbers() ? codeModel.DOUBLE : codeModel.FLOAT;
+            case "boolean":
+                return codeModel.BOOLEAN;
+            default:
+                return null;
+        }
+    }
+}
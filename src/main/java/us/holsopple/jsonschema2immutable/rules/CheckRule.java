@@ -0,0 +1,247 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.codemodel.*;
+import org.immutables.value.Value;
+import org.jsonschema2pojo.Schema;
+import org.jsonschema2pojo.rules.Rule;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Enforces the validation keywords of a property in a {@code @Value.Check} method of its value type, which Immutables
+ * calls whenever it builds an instance, or in a method the constructor of a final class calls. The method has one
+ * straight-line block per property that compares the attribute with literals and throws an
+ * {@link IllegalStateException} naming the property when a constraint is violated, so checking a valid instance
+ * allocates nothing but the matcher of a {@code pattern}.
+ * <p>
+ * Numbers are checked against {@code minimum} and {@code maximum}, including the boolean {@code exclusiveMinimum} and
+ * {@code exclusiveMaximum} of draft 4 and their numeric form of later drafts. Strings are checked against
+ * {@code minLength} and {@code maxLength} in code points, against a {@code pattern} compiled once into a static
+ * {@link Pattern}. Collections and primitive arrays are checked against {@code minItems} and {@code maxItems}.
+ * <p>
+ * Nothing cascades: properties that are value types are checked when they are built, and {@code enum} schemas become
+ * enums whose {@code fromValue} rejects other values.
+ */
+public class CheckRule implements Rule<JDefinedClass, JDefinedClass> {
+    private final ImmutableRuleFactory ruleFactory;
+
+    protected CheckRule(ImmutableRuleFactory ruleFactory) {
+        this.ruleFactory = ruleFactory;
+    }
+
+    @Override
+    public JDefinedClass apply(String nodeName, JsonNode node, JDefinedClass cls, Schema schema) {
+        GeneratedProperty property = property(cls, nodeName);
+        if (property == null) {
+            return cls;
+        }
+
+        List<Constraint> constraints = new ArrayList<>();
+        JType type = property.getType();
+        JCodeModel codeModel = cls.owner();
+        JType unboxed = type.unboxify();
+        if (unboxed == codeModel.INT || unboxed == codeModel.LONG || unboxed == codeModel.DOUBLE
+                || unboxed == codeModel.FLOAT || isType(type, BigInteger.class) || isType(type, BigDecimal.class)) {
+            bound(constraints, cls, property, node, true);
+            bound(constraints, cls, property, node, false);
+        } else if (isType(type, String.class)) {
+            strings(constraints, cls, property, node);
+        } else if (type.isArray()) {
+            items(constraints, node, value -> value.ref("length"));
+        } else if (type instanceof JClass
+                && codeModel.ref(Collection.class).isAssignableFrom(((JClass) type).erasure())) {
+            items(constraints, node, value -> value.invoke("size"));
+        }
+        if (constraints.isEmpty()) {
+            return cls;
+        }
+
+        JBlock body = checkMethod(cls, ruleFactory.isFinalClasses()).body();
+        JExpression attribute = property.getField() != null
+                ? JExpr._this().ref(property.getField())
+                : JExpr.invoke(property.getGetter());
+        JVar value = body.decl(type, property.getAttributeName(), attribute);
+        if (property.isNullable()) {
+            body = body._if(value.ne(JExpr._null()))._then();
+        } else if (property.getPresence() != null) {
+            body = body._if(JExpr.invoke(property.getPresence()))._then();
+        }
+        String prefix = cls.name() + "." + property.getJsonName() + " ";
+        for (Constraint constraint : constraints) {
+            JExpression message = JExpr.lit(prefix + constraint.message);
+            if (constraint.showValue) {
+                message = message.plus(JExpr.lit(", was ")).plus(value);
+            }
+            body._if(constraint.violated.apply(value))._then()
+                    ._throw(JExpr._new(codeModel.ref(IllegalStateException.class)).arg(message));
+        }
+        return cls;
+    }
+
+    private GeneratedProperty property(JDefinedClass cls, String jsonName) {
+        List<GeneratedProperty> properties = ruleFactory.getProperties(cls);
+        if (properties == null) {
+            return null;
+        }
+        for (int i = properties.size() - 1; i >= 0; i--) {
+            if (properties.get(i).getJsonName().equals(jsonName)) {
+                return properties.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the {@code @Value.Check} method of {@code cls}, named after the class so that the check of a subtype
+     * doesn't override the one of its parent, or the private method the constructor of a final class calls
+     */
+    static JMethod checkMethod(JDefinedClass cls, boolean finalClass) {
+        String name = "check" + cls.name();
+        JMethod method = cls.getMethod(name, new JType[0]);
+        if (method == null && finalClass) {
+            method = cls.method(JMod.PRIVATE, cls.owner().VOID, name);
+        } else if (method == null) {
+            method = cls.method(JMod.PROTECTED, cls.owner().VOID, name);
+            method.annotate(Value.Check.class);
+        }
+        // keep it after the getters of the properties that are still being added
+        cls.methods().remove(method);
+        cls.methods().add(method);
+        return method;
+    }
+
+    private static void bound(List<Constraint> constraints, JDefinedClass cls, GeneratedProperty property,
+                              JsonNode node, boolean lower) {
+        JsonNode limit = node.get(lower ? "minimum" : "maximum");
+        JsonNode exclusiveNode = node.get(lower ? "exclusiveMinimum" : "exclusiveMaximum");
+        boolean exclusive = false;
+        if (exclusiveNode != null && exclusiveNode.isNumber()) {
+            limit = exclusiveNode;
+            exclusive = true;
+        } else if (exclusiveNode != null) {
+            exclusive = exclusiveNode.asBoolean();
+        }
+        if (limit == null || !limit.isNumber()) {
+            return;
+        }
+
+        JType type = property.getType();
+        Function<JExpression, JExpression> compared;
+        JExpression threshold;
+        if (type.unboxify().isPrimitive()) {
+            compared = value -> value;
+            threshold = literal(type.unboxify(), limit);
+        } else {
+            // big numbers are compared with a constant, so that checking doesn't parse the limit every time
+            JFieldVar constant = cls.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, type,
+                    constantName(property.getAttributeName()) + (lower ? "_MINIMUM" : "_MAXIMUM"),
+                    JExpr._new(type).arg(JExpr.lit(limit.asText())));
+            compared = value -> value.invoke("compareTo").arg(constant);
+            threshold = JExpr.lit(0);
+        }
+
+        boolean isExclusive = exclusive;
+        if (lower) {
+            constraints.add(new Constraint((exclusive ? "must be greater than " : "must be at least ") + limit, true,
+                    value -> isExclusive
+                            ? compared.apply(value).lte(threshold)
+                            : compared.apply(value).lt(threshold)));
+        } else {
+            constraints.add(new Constraint((exclusive ? "must be less than " : "must be at most ") + limit, true,
+                    value -> isExclusive
+                            ? compared.apply(value).gte(threshold)
+                            : compared.apply(value).gt(threshold)));
+        }
+    }
+
+    private static JExpression literal(JType type, JsonNode limit) {
+        JCodeModel codeModel = type.owner();
+        if (limit.isIntegralNumber() && limit.canConvertToInt() && type == codeModel.INT) {
+            return JExpr.lit(limit.asInt());
+        } else if (limit.isIntegralNumber() && limit.canConvertToLong()
+                && (type == codeModel.INT || type == codeModel.LONG)) {
+            return JExpr.lit(limit.asLong());
+        }
+        return JExpr.lit(limit.asDouble());
+    }
+
+    private static void strings(List<Constraint> constraints, JDefinedClass cls, GeneratedProperty property,
+                                JsonNode node) {
+        // lengths count code points, which are at least half and at most all of the chars, so a string is only
+        // scanned when its length alone doesn't decide
+        if (node.path("minLength").canConvertToInt() && node.path("minLength").asInt() > 0) {
+            int minLength = node.get("minLength").asInt();
+            int surrogateLength = minLength > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : 2 * minLength;
+            constraints.add(new Constraint("must be at least " + minLength + " characters long", false,
+                    value -> value.invoke("length").lt(JExpr.lit(minLength))
+                            .cor(value.invoke("length").lt(JExpr.lit(surrogateLength))
+                                    .cand(codePoints(value).lt(JExpr.lit(minLength))))));
+        }
+        if (node.has("maxLength") && node.get("maxLength").canConvertToInt()) {
+            int maxLength = node.get("maxLength").asInt();
+            constraints.add(new Constraint("must be at most " + maxLength + " characters long", false,
+                    value -> value.invoke("length").gt(JExpr.lit(maxLength))
+                            .cand(codePoints(value).gt(JExpr.lit(maxLength)))));
+        }
+        if (node.path("pattern").isTextual()) {
+            String pattern = node.get("pattern").asText();
+            JFieldVar constant = cls.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, Pattern.class,
+                    constantName(property.getAttributeName()) + "_PATTERN",
+                    cls.owner().ref(Pattern.class).staticInvoke("compile").arg(JExpr.lit(pattern)));
+            // JSON Schema patterns aren't anchored
+            constraints.add(new Constraint("must match " + pattern, false,
+                    value -> constant.invoke("matcher").arg(value).invoke("find").not()));
+        }
+    }
+
+    private static void items(List<Constraint> constraints, JsonNode node, Function<JExpression, JExpression> size) {
+        if (node.path("minItems").canConvertToInt() && node.path("minItems").asInt() > 0) {
+            int minItems = node.get("minItems").asInt();
+            constraints.add(new Constraint("must have at least " + minItems + " items", false,
+                    value -> size.apply(value).lt(JExpr.lit(minItems))));
+        }
+        if (node.has("maxItems") && node.get("maxItems").canConvertToInt()) {
+            int maxItems = node.get("maxItems").asInt();
+            constraints.add(new Constraint("must have at most " + maxItems + " items", false,
+                    value -> size.apply(value).gt(JExpr.lit(maxItems))));
+        }
+    }
+
+    private static JExpression codePoints(JExpression string) {
+        return string.invoke("codePointCount").arg(JExpr.lit(0)).arg(string.invoke("length"));
+    }
+
+    private static boolean isType(JType type, Class<?> cls) {
+        return type.fullName().equals(cls.getName());
+    }
+
+    private static String constantName(String attributeName) {
+        StringBuilder constant = new StringBuilder();
+        for (char c : attributeName.toCharArray()) {
+            if (Character.isUpperCase(c) && constant.length() > 0) {
+                constant.append('_');
+            }
+            constant.append(Character.isJavaIdentifierPart(c) ? Character.toUpperCase(c) : '_');
+        }
+        return constant.toString();
+    }
+
+    private static final class Constraint {
+        private final String message;
+        private final boolean showValue;
+        private final Function<JExpression, JExpression> violated;
+
+        private Constraint(String message, boolean showValue, Function<JExpression, JExpression> violated) {
+            this.message = message;
+            this.showValue = showValue;
+            this.violated = violated;
+        }
+    }
+}
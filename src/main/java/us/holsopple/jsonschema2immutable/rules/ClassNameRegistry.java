@@ -0,0 +1,49 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.JClassAlreadyExistsException;
+import com.sun.codemodel.JPackage;
+import org.jsonschema2pojo.util.MakeUniqueClassName;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hands out unique class names per package for the rules of one {@link ImmutableRuleFactory}.
+ * <p>
+ * Names are made unique the way {@link MakeUniqueClassName} does, by counting up a {@code __n} suffix. For every name
+ * that was asked for, the registry remembers the last name it handed out, so a name that many schemas share is resolved
+ * by checking the next suffix instead of every suffix from the start. Classes are never removed from a code model while
+ * it is generated, so names below the remembered one stay taken.
+ */
+public class ClassNameRegistry {
+    private final ConcurrentMap<JPackage, ConcurrentMap<String, String>> packages = new ConcurrentHashMap<>();
+
+    ClassNameRegistry() {
+    }
+
+    /**
+     * @return {@code className}, or the first of its suffixed variants, that isn't yet taken in the package
+     */
+    public String makeUnique(String className, JPackage _package) {
+        ConcurrentMap<String, String> names = packages.computeIfAbsent(_package, p -> new ConcurrentHashMap<>());
+        String candidate = names.getOrDefault(className, className);
+        while (!isFree(candidate, _package)) {
+            candidate = MakeUniqueClassName.makeUnique(candidate);
+        }
+        names.put(className, candidate);
+        return candidate;
+    }
+
+    private static boolean isFree(String className, JPackage _package) {
+        if (_package._getClass(className) != null) {
+            return false;
+        }
+        // on a case-insensitive file system the package also refuses names that differ only in case
+        try {
+            _package.remove(_package._class(className));
+            return true;
+        } catch (JClassAlreadyExistsException e) {
+            return false;
+        }
+    }
+}
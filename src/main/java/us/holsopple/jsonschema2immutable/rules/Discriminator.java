@@ -0,0 +1,61 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.JDefinedClass;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Describes the base type the {@link OneOfRule} generated for a {@code oneOf} schema with a {@code discriminator}:
+ * the property that names the subtype of an instance and the value types it can name.
+ */
+public class Discriminator {
+    private final JDefinedClass base;
+    private final String propertyName;
+    private final Map<String, JDefinedClass> subtypes;
+    private final Set<JDefinedClass> declaring;
+
+    Discriminator(JDefinedClass base, String propertyName, Map<String, JDefinedClass> subtypes,
+                  Set<JDefinedClass> declaring) {
+        this.base = base;
+        this.propertyName = propertyName;
+        this.subtypes = Collections.unmodifiableMap(subtypes);
+        this.declaring = Collections.unmodifiableSet(declaring);
+    }
+
+    public JDefinedClass getBase() {
+        return base;
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+    /**
+     * @return the subtypes by the name the discriminator property has for them, in the order of the {@code oneOf}
+     */
+    public Map<String, JDefinedClass> getSubtypes() {
+        return subtypes;
+    }
+
+    /**
+     * @return the name the discriminator property has for {@code subtype}, or null if it isn't one of the subtypes
+     */
+    public String getName(JDefinedClass subtype) {
+        for (Map.Entry<String, JDefinedClass> entry : subtypes.entrySet()) {
+            if (entry.getValue() == subtype) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether {@code subtype} has the discriminator as a property of its own, rather than it only being
+     * written and read for the base type
+     */
+    public boolean isDeclared(JDefinedClass subtype) {
+        return declaring.contains(subtype);
+    }
+}
@@ -2,17 +2,37 @@ package us.holsopple.jsonschema2immutable.rules;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.sun.codemodel.JClassContainer;
+import com.sun.codemodel.JDefinedClass;
 import com.sun.codemodel.JType;
 import org.jsonschema2pojo.Schema;
-import org.jsonschema2pojo.rules.RuleFactory;
 
 public class EnumRule extends org.jsonschema2pojo.rules.EnumRule {
-    protected EnumRule(RuleFactory ruleFactory) {
+    private final ImmutableRuleFactory ruleFactory;
+
+    protected EnumRule(ImmutableRuleFactory ruleFactory) {
         super(ruleFactory);
+        this.ruleFactory = ruleFactory;
     }
 
     @Override
     public JType apply(String nodeName, JsonNode node, JClassContainer container, Schema schema) {
-        return super.apply(nodeName, node, container.getPackage(), schema);
+        String fingerprint = ruleFactory.fingerprint("enum", node, container.getPackage(), schema);
+        if (fingerprint != null) {
+            JType existing = ruleFactory.getDeduplicator().find(fingerprint);
+            if (existing != null) {
+                schema.setJavaTypeIfEmpty(existing);
+                return existing;
+            }
+        }
+
+        JType type = super.apply(nodeName, node, container.getPackage(), schema);
+        if (type instanceof JDefinedClass) {
+            ruleFactory.classGenerated((JDefinedClass) type, schema);
+            ruleFactory.enumGenerated((JDefinedClass) type, node.path("enum"));
+            if (fingerprint != null) {
+                ruleFactory.getDeduplicator().register(fingerprint, type);
+            }
+        }
+        return type;
     }
 }
@@ -0,0 +1,247 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.sun.codemodel.*;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Completes a value type generated as a final class rather than as an abstract class for Immutables to implement, so
+ * that compiling it needs no annotation processor and it is a single class with a builder at runtime.
+ * <p>
+ * The class is shaped like a record: the {@link PropertyRule} backs each getter with a final field, and the canonical
+ * constructor takes the properties in schema order. The constructor applies the defaults of the schema, copies
+ * collections into unmodifiable ones that are empty when absent, rejects null for required properties and calls the
+ * method of the {@link CheckRule}, if there is one. {@code equals}, {@code hashCode} and {@code toString} compare, hash
+ * and print the fields like Immutables does. Jackson reads the class through its nested {@code Builder}, whose
+ * {@code build()} reports required properties that weren't set with an {@link IllegalStateException}.
+ * <p>
+ * Immutables features beyond that, such as with-ers, {@code Modifiable} classes, interning and prehashing, aren't
+ * generated, and neither are the generators that rely on them.
+ */
+public final class FinalClassGenerator {
+    static final String BUILDER = "Builder";
+
+    private FinalClassGenerator() {
+    }
+
+    /**
+     * Declares the builder of a final class, before its properties are added, and has Jackson read the class through
+     * it.
+     */
+    static void declare(JDefinedClass cls) {
+        JDefinedClass builder;
+        try {
+            builder = cls._class(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, BUILDER);
+        } catch (JClassAlreadyExistsException ex) {
+            throw new IllegalStateException(ex);
+        }
+        builder.annotate(JsonPOJOBuilder.class).param("withPrefix", "");
+        builder.javadoc().add("Builds {@link " + cls.name() + "} instances, and reads them from JSON.");
+        cls.annotate(JsonDeserialize.class).param("builder", builder);
+    }
+
+    /**
+     * Adds the constructor, the object methods and the builder methods of a final class once all of its properties
+     * were added.
+     */
+    static void generate(JDefinedClass cls, List<GeneratedProperty> generated) {
+        Map<String, GeneratedProperty> distinct = new LinkedHashMap<>();
+        for (GeneratedProperty property : generated) {
+            distinct.putIfAbsent(property.getAttributeName(), property);
+        }
+        List<GeneratedProperty> properties = new ArrayList<>(distinct.values());
+
+        constructor(cls, properties);
+        equalsMethod(cls, properties);
+        hashCodeMethod(cls, properties);
+        toStringMethod(cls, properties);
+        builder(cls, properties);
+    }
+
+    private static void constructor(JDefinedClass cls, List<GeneratedProperty> properties) {
+        JCodeModel codeModel = cls.owner();
+        JMethod constructor = cls.constructor(JMod.PUBLIC);
+        JBlock body = constructor.body();
+        for (GeneratedProperty property : properties) {
+            JType type = property.getType();
+            JVar param = constructor.param(type, property.getAttributeName());
+            if (property.isNullable()) {
+                param.annotate(Nullable.class);
+            }
+            JExpression value;
+            if (property.getDefaultValue() != null) {
+                value = JOp.cond(param.ne(JExpr._null()), type.isArray() ? param.invoke("clone") : param,
+                        property.getDefaultValue());
+            } else if (collection(type) != null) {
+                value = JOp.cond(param.ne(JExpr._null()), copy(collection(type), param),
+                        codeModel.ref(Collections.class).staticInvoke(isSet(type) ? "emptySet" : "emptyList"));
+            } else if (property.isRequired() && !type.isPrimitive()) {
+                value = codeModel.ref(Objects.class).staticInvoke("requireNonNull").arg(param)
+                        .arg(JExpr.lit(property.getJsonName()));
+            } else {
+                value = param;
+            }
+            body.assign(JExpr._this().ref(property.getField()), value);
+        }
+        JMethod check = cls.getMethod("check" + cls.name(), new JType[0]);
+        if (check != null) {
+            body.invoke(check);
+        }
+    }
+
+    /**
+     * @return the element type of a list or set, or null if {@code type} isn't one
+     */
+    private static JClass collection(JType type) {
+        if (!(type instanceof JClass) || ((JClass) type).getTypeParameters().size() != 1) {
+            return null;
+        }
+        String erasure = ((JClass) type).erasure().fullName();
+        if (!erasure.equals(List.class.getName()) && !erasure.equals(Set.class.getName())
+                && !erasure.equals(Collection.class.getName())) {
+            return null;
+        }
+        return ((JClass) type).getTypeParameters().get(0);
+    }
+
+    private static boolean isSet(JType type) {
+        return ((JClass) type).erasure().fullName().equals(Set.class.getName());
+    }
+
+    private static JExpression copy(JClass element, JVar collection) {
+        JCodeModel codeModel = element.owner();
+        JClass collections = codeModel.ref(Collections.class);
+        if (isSet(collection.type())) {
+            return collections.staticInvoke("unmodifiableSet")
+                    .arg(JExpr._new(codeModel.ref(LinkedHashSet.class).narrow(element)).arg(collection));
+        }
+        return collections.staticInvoke("unmodifiableList")
+                .arg(JExpr._new(codeModel.ref(ArrayList.class).narrow(element)).arg(collection));
+    }
+
+    private static void equalsMethod(JDefinedClass cls, List<GeneratedProperty> properties) {
+        JCodeModel codeModel = cls.owner();
+        JMethod method = cls.method(JMod.PUBLIC, codeModel.BOOLEAN, "equals");
+        method.annotate(Override.class);
+        JVar other = method.param(Object.class, "other");
+        JBlock body = method.body();
+        body._if(JExpr._this().eq(other))._then()._return(JExpr.TRUE);
+        body._if(other._instanceof(cls).not())._then()._return(JExpr.FALSE);
+        JVar that = body.decl(cls, "that", JExpr.cast(cls, other));
+        JExpression equal = JExpr.TRUE;
+        for (int i = 0; i < properties.size(); i++) {
+            JFieldVar field = properties.get(i).getField();
+            JExpression same = equal(field, that.ref(field));
+            equal = i == 0 ? same : equal.cand(same);
+        }
+        body._return(equal);
+    }
+
+    private static JExpression equal(JFieldVar field, JExpression other) {
+        JCodeModel codeModel = field.type().owner();
+        JType type = field.type();
+        if (type == codeModel.DOUBLE) {
+            JClass doubles = codeModel.ref(Double.class);
+            return doubles.staticInvoke("doubleToLongBits").arg(field)
+                    .eq(doubles.staticInvoke("doubleToLongBits").arg(other));
+        } else if (type == codeModel.FLOAT) {
+            JClass floats = codeModel.ref(Float.class);
+            return floats.staticInvoke("floatToIntBits").arg(field)
+                    .eq(floats.staticInvoke("floatToIntBits").arg(other));
+        } else if (type.isPrimitive()) {
+            return field.eq(other);
+        } else if (type.isArray()) {
+            return codeModel.ref(Arrays.class).staticInvoke("equals").arg(field).arg(other);
+        }
+        return codeModel.ref(Objects.class).staticInvoke("equals").arg(field).arg(other);
+    }
+
+    private static void hashCodeMethod(JDefinedClass cls, List<GeneratedProperty> properties) {
+        JCodeModel codeModel = cls.owner();
+        JMethod method = cls.method(JMod.PUBLIC, codeModel.INT, "hashCode");
+        method.annotate(Override.class);
+        JBlock body = method.body();
+        JVar hash = body.decl(codeModel.INT, "h", JExpr.lit(5381));
+        for (GeneratedProperty property : properties) {
+            JFieldVar field = property.getField();
+            JType type = field.type();
+            JExpression fieldHash;
+            if (type.isPrimitive()) {
+                fieldHash = type.boxify().staticInvoke("hashCode").arg(field);
+            } else if (type.isArray()) {
+                fieldHash = codeModel.ref(Arrays.class).staticInvoke("hashCode").arg(field);
+            } else {
+                fieldHash = codeModel.ref(Objects.class).staticInvoke("hashCode").arg(field);
+            }
+            body.assign(hash, hash.plus(hash.shl(JExpr.lit(5)).plus(fieldHash)));
+        }
+        body._return(hash);
+    }
+
+    private static void toStringMethod(JDefinedClass cls, List<GeneratedProperty> properties) {
+        JCodeModel codeModel = cls.owner();
+        JMethod method = cls.method(JMod.PUBLIC, String.class, "toString");
+        method.annotate(Override.class);
+        JExpression string = JExpr.lit(cls.name() + "{");
+        for (int i = 0; i < properties.size(); i++) {
+            JFieldVar field = properties.get(i).getField();
+            string = string.plus(JExpr.lit((i == 0 ? "" : ", ") + properties.get(i).getAttributeName() + "="))
+                    .plus(field.type().isArray() ? codeModel.ref(Arrays.class).staticInvoke("toString").arg(field)
+                            : field);
+        }
+        method.body()._return(string.plus(JExpr.lit("}")));
+    }
+
+    private static void builder(JDefinedClass cls, List<GeneratedProperty> properties) {
+        JCodeModel codeModel = cls.owner();
+        JDefinedClass builder = ImmutablesTypes.nested(cls, BUILDER);
+
+        JMethod create = cls.method(JMod.PUBLIC | JMod.STATIC, builder, "builder");
+        create.body()._return(JExpr._new(builder));
+        JMethod toBuilder = cls.method(JMod.PUBLIC, builder, "toBuilder");
+        toBuilder.javadoc().addReturn().add("a builder with the properties of this instance");
+        JExpression copy = JExpr._new(builder);
+
+        JMethod build = builder.method(JMod.PUBLIC, cls, "build");
+        JInvocation instance = JExpr._new(cls);
+        for (GeneratedProperty property : properties) {
+            String name = property.getAttributeName();
+            JType type = property.getType();
+            // primitives are boxed, so that required ones that weren't set can be told apart
+            JFieldVar field = builder.field(JMod.PRIVATE, type.boxify(), name);
+
+            JMethod setter = builder.method(JMod.PUBLIC, builder, name);
+            setter.annotate(JsonProperty.class).param("value", property.getJsonName());
+            JVar value = setter.param(type, name);
+            if (property.isNullable()) {
+                value.annotate(Nullable.class);
+            }
+            setter.body().assign(JExpr._this().ref(field), value);
+            setter.body()._return(JExpr._this());
+            copy = copy.invoke(setter).arg(property.getField());
+
+            if (property.isRequired() && property.getDefaultValue() == null && collection(type) == null) {
+                build.body()._if(field.eq(JExpr._null()))._then()
+                        ._throw(JExpr._new(codeModel.ref(IllegalStateException.class))
+                                .arg(JExpr.lit("Cannot build " + cls.name() + ", " + property.getJsonName()
+                                        + " is required")));
+            }
+            instance.arg(field);
+        }
+        toBuilder.body()._return(copy);
+        build.body()._return(instance);
+    }
+}
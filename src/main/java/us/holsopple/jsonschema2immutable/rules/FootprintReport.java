@@ -0,0 +1,344 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.*;
+import org.immutables.value.Value;
+
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Estimates how much heap an instance of each generated value type takes, so that the cost of a schema is visible
+ * before it ships. One report can be shared by rule factories on several threads; types are resolved by name when the
+ * report is printed, so types generated in different partitions can refer to each other.
+ * <p>
+ * The estimate assumes a 64 bit HotSpot JVM with compressed oops: 12 byte headers, 4 byte references and objects
+ * padded to 8 bytes. The shallow size is that of the instance Immutables creates, with a field per attribute in the
+ * type the {@link PropertyRule} chose for it, so optional integers, numbers and booleans are boxed unless they are
+ * stored unboxed. Immutables adds an {@code initShim} reference to types with more than one default and an
+ * {@code int} to prehashed ones. For final classes it is the instance of the class itself.
+ * <p>
+ * The typical retained size adds what the instance refers to, assuming strings of {@value #TYPICAL_STRING_LENGTH}
+ * Latin-1 characters and collections of {@value #TYPICAL_ELEMENTS} elements, copied into an unmodifiable
+ * {@code ArrayList} or {@code LinkedHashSet} like Immutables does. Collections are always initialized, so absent ones
+ * are the shared empty collection and cost only their reference; enums and {@code Boolean}s are shared, too. A
+ * discriminated base type retains the average of its subtypes. Every type of a cycle of references is counted once,
+ * so the types of a cycle retain each other whichever of them the instance is.
+ * <p>
+ * The classes column counts the generated classes loaded for the type: the value type with its nested classes and the
+ * {@code ImmutableX} class with its {@code Builder} and {@code Json} companions, the {@code ModifiableX} class and the
+ * {@code InitShim} of types with more than one default.
+ */
+public class FootprintReport {
+    static final int TYPICAL_STRING_LENGTH = 16;
+    static final int TYPICAL_ELEMENTS = 4;
+
+    private static final int HEADER = 12;
+    private static final int REFERENCE = 4;
+    private static final int ARRAY_HEADER = 16;
+    private static final int OBJECT = 16;
+    private static final int STRING = align(HEADER + REFERENCE + 4 + 1 + 1)
+            + align(ARRAY_HEADER + TYPICAL_STRING_LENGTH);
+    private static final int UNMODIFIABLE_LIST = align(HEADER + 2 * REFERENCE);
+    private static final int ARRAY_LIST = align(HEADER + 4 + 4 + REFERENCE);
+    private static final int UNMODIFIABLE_SET = align(HEADER + REFERENCE);
+    private static final int LINKED_HASH_SET = align(HEADER + REFERENCE);
+    private static final int LINKED_HASH_MAP = align(HEADER + 6 * REFERENCE + 4 * 4 + 1);
+    private static final int HASH_TABLE = align(ARRAY_HEADER + 16 * REFERENCE);
+    private static final int LINKED_HASH_ENTRY = align(HEADER + 4 + 5 * REFERENCE);
+    private static final int PERSISTENT_LIST = align(HEADER + REFERENCE);
+    private static final int PERSISTENT_NODE = align(HEADER + 3 * REFERENCE + 4);
+    private static final Map<String, Integer> SIZES = new HashMap<>();
+
+    static {
+        SIZES.put(String.class.getName(), STRING);
+        SIZES.put(Boolean.class.getName(), 0);
+        SIZES.put(BigDecimal.class.getName(), align(HEADER + 2 * REFERENCE + 2 * 4 + 8));
+        SIZES.put(BigInteger.class.getName(), align(HEADER + REFERENCE + 6 * 4) + align(ARRAY_HEADER + 8));
+        SIZES.put(UUID.class.getName(), align(HEADER + 2 * 8));
+        SIZES.put(Date.class.getName(), align(HEADER + 8 + REFERENCE));
+    }
+
+    private final ConcurrentMap<String, Layout> layouts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<String>> bases = new ConcurrentHashMap<>();
+
+    /**
+     * Records the value types and discriminated base types of the code model that are going to be written.
+     */
+    public void add(ImmutableRuleFactory ruleFactory, JCodeModel codeModel) {
+        for (Iterator<JPackage> packages = codeModel.packages(); packages.hasNext(); ) {
+            for (Iterator<JDefinedClass> classes = packages.next().classes(); classes.hasNext(); ) {
+                JDefinedClass cls = classes.next();
+                if (cls.isHidden()) {
+                    continue;
+                }
+                if (ruleFactory.getProperties(cls) != null) {
+                    layouts.put(cls.fullName(), layout(ruleFactory, cls));
+                }
+                Discriminator discriminator = ruleFactory.getDiscriminator(cls);
+                if (discriminator != null) {
+                    List<String> subtypes = new ArrayList<>();
+                    discriminator.getSubtypes().values().forEach(subtype -> subtypes.add(subtype.fullName()));
+                    bases.put(cls.fullName(), subtypes);
+                }
+            }
+        }
+    }
+
+    private static Layout layout(ImmutableRuleFactory ruleFactory, JDefinedClass cls) {
+        Layout layout = new Layout();
+        List<JType> fields = new ArrayList<>();
+        for (JFieldVar field : cls.fields().values()) {
+            if ((field.mods().getValue() & JMod.STATIC) == 0) {
+                fields.add(field.type());
+            }
+        }
+        boolean initShim = false;
+        if (!ruleFactory.isFinalClasses()) {
+            int defaults = 0;
+            for (JMethod method : cls.methods()) {
+                boolean isDefault = annotated(method, Value.Default.class);
+                if (isDefault) {
+                    defaults++;
+                }
+                if (method.params().isEmpty() && (isDefault || (method.mods().getValue() & JMod.ABSTRACT) != 0)) {
+                    fields.add(method.type());
+                }
+            }
+            // Immutables only needs the shim when defaults can observe each other
+            initShim = defaults > 1;
+            if (initShim) {
+                fields.add(cls.owner().ref(Object.class));
+            }
+            if (prehashed(cls)) {
+                fields.add(cls.owner().INT);
+            }
+        }
+
+        int longs = 0;
+        int small = 0;
+        for (JType type : fields) {
+            int size = fieldSize(type);
+            if (size == 8) {
+                longs++;
+            } else {
+                small += size;
+            }
+            if (type.isReference() && type.unboxify() != type) {
+                layout.boxed++;
+            }
+            if (type.isReference()) {
+                layout.references.add(reference(ruleFactory, type));
+            }
+        }
+        // with a long the gap after the header takes a field of at most 4 bytes or stays empty
+        int gap = longs > 0 ? Math.max(0, REFERENCE - small) : 0;
+        layout.shallow = align(HEADER + 8 * longs + small + gap);
+
+        for (Iterator<JDefinedClass> nested = cls.classes(); nested.hasNext(); ) {
+            nested.next();
+            layout.classes++;
+        }
+        // the value type, and ImmutableX with its Builder and Json, ModifiableX and the InitShim
+        layout.classes += ruleFactory.isFinalClasses() ? 1 : 5 + (initShim ? 1 : 0);
+        return layout;
+    }
+
+    private static boolean prehashed(JDefinedClass cls) {
+        for (JAnnotationUse annotation : cls.annotations()) {
+            if (annotation.getAnnotationClass().fullName().equals(Value.Immutable.class.getCanonicalName())) {
+                // the members of an annotation without any can't be listed, so it is rendered instead
+                StringWriter rendered = new StringWriter();
+                annotation.generate(new JFormatter(rendered));
+                return rendered.toString().contains("prehash = true");
+            }
+        }
+        return false;
+    }
+
+    private static boolean annotated(JMethod method, Class<?> annotationClass) {
+        for (JAnnotationUse annotation : method.annotations()) {
+            if (annotation.getAnnotationClass().fullName().equals(annotationClass.getCanonicalName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int fieldSize(JType type) {
+        JCodeModel codeModel = type.owner();
+        if (type == codeModel.LONG || type == codeModel.DOUBLE) {
+            return 8;
+        } else if (type == codeModel.INT || type == codeModel.FLOAT) {
+            return 4;
+        } else if (type == codeModel.SHORT || type == codeModel.CHAR) {
+            return 2;
+        } else if (type == codeModel.BYTE || type == codeModel.BOOLEAN) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    /**
+     * @return what a reference of the given type typically retains
+     */
+    private static Reference reference(ImmutableRuleFactory ruleFactory, JType type) {
+        if (type.isArray()) {
+            JType element = type.elementType();
+            int size = element.isPrimitive() ? fieldSize(element) : REFERENCE;
+            return new Reference(align(ARRAY_HEADER + TYPICAL_ELEMENTS * size), element.isPrimitive() ? null
+                    : reference(ruleFactory, element), TYPICAL_ELEMENTS);
+        }
+        if (type instanceof JClass && ((JClass) type).getTypeParameters().size() == 1) {
+            JClass cls = (JClass) type;
+            String erasure = cls.erasure().fullName();
+            Reference element = reference(ruleFactory, cls.getTypeParameters().get(0));
+            if (erasure.equals(List.class.getName()) || erasure.equals(Collection.class.getName())) {
+                int array = align(ARRAY_HEADER + TYPICAL_ELEMENTS * REFERENCE);
+                return new Reference(UNMODIFIABLE_LIST + ARRAY_LIST + array, element, TYPICAL_ELEMENTS);
+            } else if (erasure.equals(Set.class.getName())) {
+                return new Reference(UNMODIFIABLE_SET + LINKED_HASH_SET + LINKED_HASH_MAP + HASH_TABLE
+                        + TYPICAL_ELEMENTS * LINKED_HASH_ENTRY, element, TYPICAL_ELEMENTS);
+            } else if (erasure.equals(ruleFactory.getPersistentList())) {
+                return new Reference(PERSISTENT_LIST + TYPICAL_ELEMENTS * PERSISTENT_NODE, element, TYPICAL_ELEMENTS);
+            }
+        }
+        if (type instanceof JDefinedClass) {
+            JDefinedClass cls = (JDefinedClass) type;
+            if (cls.getClassType() == ClassType.ENUM) {
+                return new Reference(0, null, 0);
+            } else if (ruleFactory.getProperties(cls) != null || ruleFactory.getDiscriminator(cls) != null) {
+                return new Reference(cls.fullName());
+            }
+        }
+        if (SIZES.containsKey(type.fullName())) {
+            return new Reference(SIZES.get(type.fullName()), null, 0);
+        }
+        JType unboxed = type.unboxify();
+        if (unboxed != type) {
+            return new Reference(align(HEADER + fieldSize(unboxed)), null, 0);
+        }
+        // the initShim of Immutables, which is released once the instance is built
+        return new Reference(type.fullName().equals(Object.class.getName()) ? 0 : OBJECT, null, 0);
+    }
+
+    /**
+     * Prints the value types with the largest typical retained size.
+     */
+    public void report(PrintStream out, int top) {
+        Map<String, Long> retained = new HashMap<>();
+        Map<String, Long> sizes = new HashMap<>();
+        Set<String> cyclic = new HashSet<>();
+        List<String> types = new ArrayList<>(new TreeSet<>(layouts.keySet()));
+        for (String type : types) {
+            sizes.put(type, retained(type, retained, new LinkedHashSet<>(), cyclic));
+        }
+        types.sort(Comparator.comparingLong((String type) -> sizes.get(type)).reversed());
+
+        out.println("largest value types (estimated bytes per instance, 64 bit JVM with compressed oops):");
+        out.printf("%10s %10s %6s %8s  %s%n", "shallow", "retained", "boxed", "classes", "type");
+        for (String type : types.subList(0, Math.min(top, types.size()))) {
+            Layout layout = layouts.get(type);
+            out.printf("%10d %10d %6d %8d  %s%n", layout.shallow, sizes.get(type), layout.boxed, layout.classes,
+                    type);
+        }
+    }
+
+    /**
+     * @param retained the sizes of the types that aren't part of a cycle, which are the same wherever they are
+     *                 referred from
+     * @param visiting the types whose retained size is being computed, in the order they were entered, which are
+     *                 counted as nothing when they refer to themselves
+     * @param cyclic   the types found to be part of a cycle, whose size depends on the type the cycle was entered
+     *                 from, so they are computed again every time
+     */
+    private long retained(String type, Map<String, Long> retained, Set<String> visiting, Set<String> cyclic) {
+        if (retained.containsKey(type)) {
+            return retained.get(type);
+        }
+        if (!visiting.add(type)) {
+            // the type and all types entered since are part of the cycle
+            boolean inCycle = false;
+            for (String entered : visiting) {
+                inCycle |= entered.equals(type);
+                if (inCycle) {
+                    cyclic.add(entered);
+                }
+            }
+            return 0;
+        }
+        long size;
+        if (bases.containsKey(type)) {
+            List<String> subtypes = bases.get(type);
+            size = 0;
+            for (String subtype : subtypes) {
+                size += retained(subtype, retained, visiting, cyclic);
+            }
+            size = subtypes.isEmpty() ? 0 : size / subtypes.size();
+        } else if (layouts.containsKey(type)) {
+            Layout layout = layouts.get(type);
+            size = layout.shallow;
+            for (Reference reference : layout.references) {
+                size += retained(reference, retained, visiting, cyclic);
+            }
+        } else {
+            size = OBJECT;
+        }
+        visiting.remove(type);
+        if (!cyclic.contains(type)) {
+            retained.put(type, size);
+        }
+        return size;
+    }
+
+    private long retained(Reference reference, Map<String, Long> retained, Set<String> visiting,
+                          Set<String> cyclic) {
+        long size = reference.bytes;
+        if (reference.type != null) {
+            size += retained(reference.type, retained, visiting, cyclic);
+        }
+        if (reference.element != null) {
+            size += reference.elements * retained(reference.element, retained, visiting, cyclic);
+        }
+        return size;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    private static final class Layout {
+        private final List<Reference> references = new ArrayList<>();
+        private int shallow;
+        private int boxed;
+        private int classes;
+    }
+
+    /**
+     * What a field refers to: a number of bytes of its own, or a generated type, and a number of elements.
+     */
+    private static final class Reference {
+        private final long bytes;
+        private final String type;
+        private final Reference element;
+        private final int elements;
+
+        private Reference(long bytes, Reference element, int elements) {
+            this.bytes = bytes;
+            this.type = null;
+            this.element = element;
+            this.elements = elements;
+        }
+
+        private Reference(String type) {
+            this.bytes = 0;
+            this.type = type;
+            this.element = null;
+            this.elements = 0;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.JExpression;
+import com.sun.codemodel.JFieldVar;
+import com.sun.codemodel.JMethod;
+import com.sun.codemodel.JType;
+
+/**
+ * A property of a generated value type, as it appears in JSON and in the abstract class Immutables implements, or in
+ * the final class generated instead of it.
+ */
+public class GeneratedProperty {
+    private final String jsonName;
+    private final JMethod getter;
+    private final boolean nullable;
+    private final JMethod presence;
+    private final JMethod absentBits;
+    private final long absentBit;
+    private final JFieldVar field;
+    private final JExpression defaultValue;
+    private final boolean required;
+
+    GeneratedProperty(String jsonName, JMethod getter, boolean nullable) {
+        this(jsonName, getter, nullable, null, null, 0L);
+    }
+
+    GeneratedProperty(String jsonName, JMethod getter, boolean nullable, JFieldVar field, JExpression defaultValue,
+                      boolean required) {
+        this(jsonName, getter, nullable, null, null, 0L, field, defaultValue, required);
+    }
+
+    GeneratedProperty(String jsonName, JMethod getter, boolean nullable, JMethod presence, JMethod absentBits,
+                      long absentBit) {
+        this(jsonName, getter, nullable, presence, absentBits, absentBit, null, null, false);
+    }
+
+    private GeneratedProperty(String jsonName, JMethod getter, boolean nullable, JMethod presence, JMethod absentBits,
+                              long absentBit, JFieldVar field, JExpression defaultValue, boolean required) {
+        this.jsonName = jsonName;
+        this.getter = getter;
+        this.nullable = nullable;
+        this.presence = presence;
+        this.absentBits = absentBits;
+        this.absentBit = absentBit;
+        this.field = field;
+        this.defaultValue = defaultValue;
+        this.required = required;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    public JMethod getGetter() {
+        return getter;
+    }
+
+    public JType getType() {
+        return getter.type();
+    }
+
+    /**
+     * @return whether the attribute may be null, which is when it is neither required nor has a default, and isn't a
+     * collection
+     */
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    /**
+     * @return the {@code hasX()} method of an optional primitive that is stored unboxed, or null if the attribute
+     * isn't one
+     */
+    public JMethod getPresence() {
+        return presence;
+    }
+
+    /**
+     * @return the attribute whose {@link #getAbsentBit() bit} is set when an optional primitive stored unboxed is
+     * absent, or null if the attribute isn't one
+     */
+    public JMethod getAbsentBits() {
+        return absentBits;
+    }
+
+    public long getAbsentBit() {
+        return absentBit;
+    }
+
+    /**
+     * @return the field of a property of a final class, or null if the value type is implemented by Immutables
+     */
+    public JFieldVar getField() {
+        return field;
+    }
+
+    /**
+     * @return the value a property of a final class has when it isn't given one, or null if it has none
+     */
+    public JExpression getDefaultValue() {
+        return defaultValue;
+    }
+
+    /**
+     * @return whether a property of a final class must be given a value
+     */
+    public boolean isRequired() {
+        return required;
+    }
+
+    /**
+     * @return the name Immutables gives the attribute, which is the getter's name without {@code get}
+     */
+    public String getAttributeName() {
+        String name = getter.name();
+        if (name.length() > 3 && name.startsWith("get") && Character.isUpperCase(name.charAt(3))) {
+            return Character.toLowerCase(name.charAt(3)) + name.substring(4);
+        }
+        return name;
+    }
+}
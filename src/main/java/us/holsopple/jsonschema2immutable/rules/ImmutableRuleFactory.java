@@ -1,5 +1,6 @@
 package us.holsopple.jsonschema2immutable.rules;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.sun.codemodel.*;
 import org.jsonschema2pojo.*;
 import org.jsonschema2pojo.rules.Rule;
@@ -7,11 +8,37 @@ import org.jsonschema2pojo.rules.RuleFactory;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+import static org.apache.commons.lang3.StringUtils.substringBefore;
 
 @SuppressWarnings("WeakerAccess")
 public class ImmutableRuleFactory extends RuleFactory {
+    private final Map<String, URI> classSources = new ConcurrentHashMap<>();
+    private final Map<JDefinedClass, List<GeneratedProperty>> valueTypes = new ConcurrentHashMap<>();
+    private final Map<JDefinedClass, List<String>> enumTypes = new ConcurrentHashMap<>();
+    private final Set<JDefinedClass> documentTypes = ConcurrentHashMap.newKeySet();
+    private final Map<JDefinedClass, Discriminator> discriminators = new ConcurrentHashMap<>();
+    private final RefResolver refResolver = new RefResolver(this);
+    private final ClassNameRegistry classNames = new ClassNameRegistry();
+    private final SchemaDeduplicator deduplicator = new SchemaDeduplicator();
+    private RuleProfiler profiler = RuleProfiler.NONE;
+    private boolean deduplicate;
+    private boolean primitiveArrays;
+    private String persistentList;
+    private boolean unboxedOptionals;
+    private boolean checks;
+    private boolean finalClasses;
 
     public ImmutableRuleFactory(GenerationConfig generationConfig, Annotator annotator, SchemaStore schemaStore) {
         super(new GenerationConfig () {
@@ -297,28 +324,339 @@ public class ImmutableRuleFactory extends RuleFactory {
         }, annotator, schemaStore);
     }
 
+    public RuleProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Counts the time and allocations of every rule this factory returns in the given profiler.
+     */
+    public void setProfiler(RuleProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public RefResolver getRefResolver() {
+        return refResolver;
+    }
+
+    public ClassNameRegistry getClassNameRegistry() {
+        return classNames;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * Generates a single type for structurally identical object and enum schemas, see {@link SchemaDeduplicator}.
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * @return the fingerprint {@code node} is deduplicated by, or null if deduplication is off or doesn't apply
+     */
+    String fingerprint(String kind, JsonNode node, JPackage _package, Schema schema) {
+        return deduplicate ? deduplicator.fingerprint(kind, node, _package, schema) : null;
+    }
+
+    public SchemaDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+
+    public boolean isPrimitiveArrays() {
+        return primitiveArrays;
+    }
+
+    /**
+     * Generates arrays of integers, numbers and booleans as primitive arrays, see {@link ArrayRule}. Single array
+     * schemas can opt in or out with {@code "javaPrimitiveArray"}.
+     */
+    public void setPrimitiveArrays(boolean primitiveArrays) {
+        this.primitiveArrays = primitiveArrays;
+    }
+
+    /**
+     * @return the fully qualified name of the list arrays are generated as when persistent collections are switched
+     * on, or null
+     */
+    public String getPersistentList() {
+        return persistentList;
+    }
+
+    /**
+     * Generates arrays without unique items as the given {@link PersistentListGenerator persistent list}, see
+     * {@link ArrayRule}. Single array schemas can opt out with {@code "x-persistent": false}.
+     *
+     * @param persistentList the fully qualified name of the generated list, or null to generate arrays as lists
+     */
+    public void setPersistentList(String persistentList) {
+        this.persistentList = persistentList;
+    }
+
+    public boolean isUnboxedOptionals() {
+        return unboxedOptionals;
+    }
+
+    /**
+     * Stores optional integers, numbers and booleans without a default unboxed, with their presence in a bitmask,
+     * see {@link PropertyRule}.
+     */
+    public void setUnboxedOptionals(boolean unboxedOptionals) {
+        this.unboxedOptionals = unboxedOptionals;
+    }
+
+    public boolean isChecks() {
+        return checks;
+    }
+
+    /**
+     * Enforces the validation keywords of the schemas when instances are built, see {@link CheckRule}.
+     */
+    public void setChecks(boolean checks) {
+        this.checks = checks;
+    }
+
+    public boolean isFinalClasses() {
+        return finalClasses;
+    }
+
+    /**
+     * Generates value types as final classes with a constructor and a builder of their own instead of abstract classes
+     * implemented by Immutables, see {@link FinalClassGenerator}.
+     */
+    public void setFinalClasses(boolean finalClasses) {
+        this.finalClasses = finalClasses;
+    }
+
+    /**
+     * @return the document each generated top level class was defined in, keyed by the class' fully qualified name
+     */
+    public Map<String, URI> getClassSources() {
+        return Collections.unmodifiableMap(classSources);
+    }
+
+    /**
+     * @return whether {@code cls} was generated from the root schema of a document rather than from a definition or
+     * a property within it
+     */
+    public boolean isDocumentType(JDefinedClass cls) {
+        return documentTypes.contains(cls);
+    }
+
+    /**
+     * @return the properties of a value type generated by the {@link ObjectRule} in declaration order, or null if
+     * {@code cls} isn't one
+     */
+    public List<GeneratedProperty> getProperties(JDefinedClass cls) {
+        return valueTypes.get(cls);
+    }
+
+    /**
+     * @return the values of an enum generated by the {@link EnumRule} in the order of its constants, or null if
+     * {@code cls} isn't one
+     */
+    public List<String> getEnumValues(JDefinedClass cls) {
+        return enumTypes.get(cls);
+    }
+
+    /**
+     * @return the discriminator of a base type generated by the {@link OneOfRule}, or null if {@code type} isn't one
+     */
+    public Discriminator getDiscriminator(JType type) {
+        return type instanceof JDefinedClass ? discriminators.get(type) : null;
+    }
+
+    /**
+     * @return the discriminator of the first base type generated by the {@link OneOfRule} that {@code cls} is a
+     * subtype of, or null if there is none
+     */
+    public Discriminator getSubtypeDiscriminator(JDefinedClass cls) {
+        for (Discriminator discriminator : discriminators.values()) {
+            if (discriminator.getName(cls) != null) {
+                return discriminator;
+            }
+        }
+        return null;
+    }
+
+    void discriminatorGenerated(Discriminator discriminator) {
+        discriminators.putIfAbsent(discriminator.getBase(), discriminator);
+    }
+
+    void valueTypeGenerated(JDefinedClass cls, JsonNode node, Schema schema) {
+        valueTypes.putIfAbsent(cls, new CopyOnWriteArrayList<>());
+        // items and other inline schemas are generated with the schema of the document they are in
+        if (schema.getContent() == node && schema.getId() != null && isEmpty(schema.getId().getFragment())) {
+            documentTypes.add(cls);
+        }
+    }
+
+    void propertyGenerated(JDefinedClass cls, String jsonName, JMethod getter, boolean nullable) {
+        List<GeneratedProperty> properties = valueTypes.get(cls);
+        if (properties != null) {
+            properties.add(new GeneratedProperty(jsonName, getter, nullable));
+        }
+    }
+
+    void unboxedOptionalGenerated(JDefinedClass cls, String jsonName, JMethod getter, JMethod presence,
+                                  JMethod absentBits, long absentBit) {
+        List<GeneratedProperty> properties = valueTypes.get(cls);
+        if (properties != null) {
+            properties.add(new GeneratedProperty(jsonName, getter, false, presence, absentBits, absentBit));
+        }
+    }
+
+    void finalPropertyGenerated(JDefinedClass cls, String jsonName, JMethod getter, boolean nullable,
+                                JFieldVar field, JExpression defaultValue, boolean required) {
+        List<GeneratedProperty> properties = valueTypes.get(cls);
+        if (properties != null) {
+            properties.add(new GeneratedProperty(jsonName, getter, nullable, field, defaultValue, required));
+        }
+    }
+
+    void enumGenerated(JDefinedClass cls, JsonNode values) {
+        List<String> constants = new ArrayList<>();
+        for (JsonNode value : values) {
+            constants.add(value.toString());
+        }
+        enumTypes.putIfAbsent(cls, Collections.unmodifiableList(constants));
+    }
+
+    void classGenerated(JDefinedClass cls, Schema schema) {
+        if (schema.getId() != null) {
+            classSources.putIfAbsent(cls.fullName(), URI.create(substringBefore(schema.getId().toString(), "#")));
+        }
+    }
+
+    @Override
+    public Rule<JPackage, JClass> getArrayRule() {
+        return profiled("ArrayRule", new ArrayRule(this));
+    }
+
+    @Override
+    public Rule<JDocCommentable, JDocComment> getDescriptionRule() {
+        return profiled("DescriptionRule", super.getDescriptionRule());
+    }
+
+    @Override
+    public Rule<JClassContainer, JType> getEnumRule() {
+        return profiled("EnumRule", new EnumRule(this));
+    }
+
+    @Override
+    public Rule<JType, JType> getFormatRule() {
+        return profiled("FormatRule", super.getFormatRule());
+    }
+
     @Override
     public Rule<JPackage, JType> getObjectRule() {
-        return new ObjectRule(this);
+        return profiled("ObjectRule", new ObjectRule(this));
+    }
+
+    @Override
+    public Rule<JDefinedClass, JDefinedClass> getRequiredArrayRule() {
+        return profiled("RequiredArrayRule", super.getRequiredArrayRule());
     }
 
     @Override
     public Rule<JDefinedClass, JDefinedClass> getPropertiesRule() {
-        return new PropertiesRule(this);
+        return profiled("PropertiesRule", new PropertiesRule(this));
     }
 
     @Override
     public Rule<JDefinedClass, JDefinedClass> getPropertyRule() {
-        return new PropertyRule(this);
+        return profiled("PropertyRule", new PropertyRule(this));
+    }
+
+    public Rule<JDefinedClass, JDefinedClass> getCheckRule() {
+        return profiled("CheckRule", new CheckRule(this));
     }
 
     @Override
     public Rule<JDocCommentable, JDocCommentable> getRequiredRule() {
-        return new RequiredRule();
+        return profiled("RequiredRule", new RequiredRule());
     }
 
     @Override
-    public Rule<JClassContainer, JType> getEnumRule() {
-        return new EnumRule(this);
+    public Rule<JDocCommentable, JDocCommentable> getNotRequiredRule() {
+        return profiled("NotRequiredRule", super.getNotRequiredRule());
+    }
+
+    @Override
+    public Rule<JClassContainer, JType> getTypeRule() {
+        Rule<JClassContainer, JType> typeRule = super.getTypeRule();
+        return profiled("TypeRule", (nodeName, node, container, schema) -> OneOfRule.isDiscriminated(node)
+                ? getOneOfRule().apply(nodeName, node, container.getPackage(), schema)
+                : typeRule.apply(nodeName, node, container, schema));
+    }
+
+    public Rule<JPackage, JType> getOneOfRule() {
+        return profiled("OneOfRule", new OneOfRule(this));
+    }
+
+    @Override
+    public Rule<JDefinedClass, JDefinedClass> getAdditionalPropertiesRule() {
+        return profiled("AdditionalPropertiesRule", super.getAdditionalPropertiesRule());
+    }
+
+    @Override
+    public Rule<JDocCommentable, JDocComment> getTitleRule() {
+        return profiled("TitleRule", super.getTitleRule());
+    }
+
+    @Override
+    public Rule<JClassContainer, JType> getSchemaRule() {
+        return profiled("SchemaRule", super.getSchemaRule());
+    }
+
+    @Override
+    public Rule<JFieldVar, JFieldVar> getDefaultRule() {
+        return profiled("DefaultRule", super.getDefaultRule());
+    }
+
+    @Override
+    public Rule<JFieldVar, JFieldVar> getMinimumMaximumRule() {
+        return profiled("MinimumMaximumRule", super.getMinimumMaximumRule());
+    }
+
+    @Override
+    public Rule<JFieldVar, JFieldVar> getMinItemsMaxItemsRule() {
+        return profiled("MinItemsMaxItemsRule", super.getMinItemsMaxItemsRule());
+    }
+
+    @Override
+    public Rule<JFieldVar, JFieldVar> getMinLengthMaxLengthRule() {
+        return profiled("MinLengthMaxLengthRule", super.getMinLengthMaxLengthRule());
+    }
+
+    @Override
+    public Rule<JFieldVar, JFieldVar> getPatternRule() {
+        return profiled("PatternRule", super.getPatternRule());
+    }
+
+    @Override
+    public Rule<JFieldVar, JFieldVar> getValidRule() {
+        return profiled("ValidRule", super.getValidRule());
+    }
+
+    @Override
+    public Rule<JType, JType> getMediaRule() {
+        return profiled("MediaRule", super.getMediaRule());
+    }
+
+    @Override
+    public Rule<JDefinedClass, JDefinedClass> getDynamicPropertiesRule() {
+        return profiled("DynamicPropertiesRule", super.getDynamicPropertiesRule());
+    }
+
+    @Override
+    public Rule<JDocCommentable, JDocComment> getJavaNameRule() {
+        return profiled("JavaNameRule", super.getJavaNameRule());
+    }
+
+    private <T, R> Rule<T, R> profiled(String name, Rule<T, R> rule) {
+        return profiler.isEnabled() ? new ProfiledRule<>(name, rule, profiler) : rule;
     }
 }
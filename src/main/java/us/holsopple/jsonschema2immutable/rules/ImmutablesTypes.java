@@ -0,0 +1,87 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.JClassAlreadyExistsException;
+import com.sun.codemodel.JDefinedClass;
+import com.sun.codemodel.JMod;
+import com.sun.codemodel.JPackage;
+
+import java.util.Iterator;
+
+/**
+ * References to the classes the Immutables annotation processor generates for a value type.
+ * <p>
+ * Those classes don't exist while the code model is built, so they are declared as hidden classes. Hidden classes
+ * aren't written, but they can be referred to like any other class, including nested ones like the builder, and they
+ * keep their names from being taken by a schema.
+ */
+public final class ImmutablesTypes {
+    private ImmutablesTypes() {
+    }
+
+    /**
+     * @return the {@code ImmutableX} class for {@code valueType}, or null if a generated class already has its name
+     */
+    public static JDefinedClass immutable(JDefinedClass valueType) {
+        JPackage _package = valueType._package();
+        String name = "Immutable" + valueType.name();
+        JDefinedClass existing = _package._getClass(name);
+        if (existing != null) {
+            return existing.isHidden() ? existing : null;
+        }
+        try {
+            JDefinedClass immutable = _package._class(JMod.PUBLIC | JMod.FINAL, name);
+            immutable.hide();
+            immutable._extends(valueType);
+            immutable._class(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, "Builder");
+            immutable._class(JMod.STATIC | JMod.FINAL, "Json");
+            return immutable;
+        } catch (JClassAlreadyExistsException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the {@code ModifiableX} class for {@code valueType}, or null if a generated class already has its name
+     */
+    public static JDefinedClass modifiable(JDefinedClass valueType) {
+        JPackage _package = valueType._package();
+        String name = "Modifiable" + valueType.name();
+        JDefinedClass existing = _package._getClass(name);
+        if (existing != null) {
+            return existing.isHidden() ? existing : null;
+        }
+        try {
+            JDefinedClass modifiable = _package._class(JMod.PUBLIC | JMod.FINAL, name);
+            modifiable.hide();
+            modifiable._extends(valueType);
+            return modifiable;
+        } catch (JClassAlreadyExistsException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the builder nested in an {@code ImmutableX} class returned by {@link #immutable(JDefinedClass)}
+     */
+    public static JDefinedClass builder(JDefinedClass immutable) {
+        return nested(immutable, "Builder");
+    }
+
+    /**
+     * @return the class nested in an {@code ImmutableX} class returned by {@link #immutable(JDefinedClass)} that
+     * Immutables has Jackson read JSON into before building an instance from it
+     */
+    public static JDefinedClass json(JDefinedClass immutable) {
+        return nested(immutable, "Json");
+    }
+
+    public static JDefinedClass nested(JDefinedClass cls, String name) {
+        for (Iterator<JDefinedClass> classes = cls.classes(); classes.hasNext(); ) {
+            JDefinedClass nested = classes.next();
+            if (nested.name().equals(name)) {
+                return nested;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,85 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.*;
+
+import java.util.*;
+
+/**
+ * Adds a nested class of the same name to every value type of a code model that is going to be written.
+ */
+public abstract class NestedClassGenerator {
+    private final ImmutableRuleFactory ruleFactory;
+    private final String className;
+
+    protected NestedClassGenerator(ImmutableRuleFactory ruleFactory, String className) {
+        this.ruleFactory = ruleFactory;
+        this.className = className;
+    }
+
+    protected ImmutableRuleFactory getRuleFactory() {
+        return ruleFactory;
+    }
+
+    /**
+     * Adds the nested class to the value types that are going to be written and don't have one yet. All nested
+     * classes are declared before any of them is filled in, so that they can refer to each other.
+     *
+     * @return the fully qualified names of those types
+     */
+    public List<String> generate(JCodeModel codeModel) {
+        // the Immutables classes are declared along the way, so the packages can't be iterated while generating
+        Map<JDefinedClass, JDefinedClass> nestedClasses = new LinkedHashMap<>();
+        for (JDefinedClass cls : classes(codeModel)) {
+            List<GeneratedProperty> properties = ruleFactory.getProperties(cls);
+            if (properties == null || cls.isHidden() || ImmutablesTypes.nested(cls, className) != null
+                    || !accepts(cls)) {
+                continue;
+            }
+            if (ImmutablesTypes.immutable(cls) == null) {
+                System.err.println("not generating a " + className.toLowerCase() + " for " + cls.fullName()
+                        + ", Immutable" + cls.name() + " is taken by another class");
+                continue;
+            }
+            try {
+                nestedClasses.put(cls, cls._class(JMod.PUBLIC | JMod.STATIC, className));
+            } catch (JClassAlreadyExistsException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        List<String> types = new ArrayList<>();
+        for (Map.Entry<JDefinedClass, JDefinedClass> entry : nestedClasses.entrySet()) {
+            JDefinedClass cls = entry.getKey();
+            generate(cls, ImmutablesTypes.immutable(cls), ruleFactory.getProperties(cls), entry.getValue());
+            types.add(cls.fullName());
+        }
+        Collections.sort(types);
+        return types;
+    }
+
+    /**
+     * @return the classes of the code model, including those that were already written
+     */
+    protected static List<JDefinedClass> classes(JCodeModel codeModel) {
+        List<JDefinedClass> classes = new ArrayList<>();
+        for (Iterator<JPackage> packages = codeModel.packages(); packages.hasNext(); ) {
+            packages.next().classes().forEachRemaining(classes::add);
+        }
+        return classes;
+    }
+
+    /**
+     * @return whether the value type should get the nested class
+     */
+    protected boolean accepts(JDefinedClass cls) {
+        return true;
+    }
+
+    /**
+     * Fills in the nested class of one value type.
+     *
+     * @param properties the properties of the value type, in schema order
+     */
+    protected abstract void generate(JDefinedClass cls, JDefinedClass immutable, List<GeneratedProperty> properties,
+                                     JDefinedClass nested);
+}
@@ -4,17 +4,16 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.sun.codemodel.*;
 import org.apache.commons.lang3.StringUtils;
-import org.codehaus.jackson.map.annotate.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import org.immutables.value.Value;
 import org.jsonschema2pojo.AnnotationStyle;
 import org.jsonschema2pojo.Schema;
 import org.jsonschema2pojo.exception.ClassAlreadyExistsException;
 import org.jsonschema2pojo.exception.GenerationException;
 import org.jsonschema2pojo.rules.Rule;
-import org.jsonschema2pojo.rules.RuleFactory;
-import org.jsonschema2pojo.util.MakeUniqueClassName;
 
 import java.lang.reflect.Modifier;
+import java.util.List;
 import java.util.Map;
 
 import static org.apache.commons.lang3.StringUtils.substringAfter;
@@ -24,10 +23,20 @@ import static org.jsonschema2pojo.rules.PrimitiveTypes.primitiveType;
 import static org.jsonschema2pojo.util.TypeUtil.resolveType;
 
 public class ObjectRule implements Rule<JPackage, JType> {
+    /**
+     * Canonicalizes equal instances of the type through a weak interner, so that duplicates share one copy and can be
+     * compared by reference.
+     */
+    static final String INTERN = "x-intern";
+
+    /**
+     * Computes the hash code of the type once, when an instance is constructed.
+     */
+    static final String PREHASH = "x-prehash";
 
-    private final RuleFactory ruleFactory;
+    private final ImmutableRuleFactory ruleFactory;
 
-    ObjectRule(RuleFactory ruleFactory) {
+    ObjectRule(ImmutableRuleFactory ruleFactory) {
         this.ruleFactory = ruleFactory;
     }
 
@@ -41,6 +50,15 @@ public class ObjectRule implements Rule<JPackage, JType> {
     @Override
     public JType apply(String nodeName, JsonNode node, JPackage _package, Schema schema) {
 
+        String fingerprint = ruleFactory.fingerprint("object", node, _package, schema);
+        if (fingerprint != null) {
+            JType existing = ruleFactory.getDeduplicator().find(fingerprint);
+            if (existing != null) {
+                schema.setJavaTypeIfEmpty(existing);
+                return existing;
+            }
+        }
+
         JType superType = getSuperType(nodeName, node, _package, schema);
 
         if (superType != null) {
@@ -54,11 +72,16 @@ public class ObjectRule implements Rule<JPackage, JType> {
         }
 
         JDefinedClass jclass;
-        try {
+        try (RuleProfiler.Section ignored = ruleFactory.getProfiler().enter("ObjectRule.createClass", schema)) {
             jclass = createClass(nodeName, node, _package);
         } catch (ClassAlreadyExistsException e) {
             return e.getExistingClass();
         }
+        ruleFactory.classGenerated(jclass, schema);
+        ruleFactory.valueTypeGenerated(jclass, node, schema);
+        if (fingerprint != null) {
+            ruleFactory.getDeduplicator().register(fingerprint, jclass);
+        }
 
         if (superType != null) {
             jclass._implements((JClass) superType);
@@ -90,6 +113,16 @@ public class ObjectRule implements Rule<JPackage, JType> {
             ruleFactory.getRequiredArrayRule().apply(nodeName, node.get("required"), jclass, schema);
         }
 
+        if (ruleFactory.isFinalClasses()) {
+            FinalClassGenerator.generate(jclass, ruleFactory.getProperties(jclass));
+        } else if (ruleFactory.isUnboxedOptionals()) {
+            addJsonDeserializeAnnotation(jclass);
+            List<GeneratedProperty> properties = ruleFactory.getProperties(jclass);
+            if (properties != null && properties.stream().anyMatch(property -> property.getPresence() != null)) {
+                UnboxedOptionalsGenerator.generate(jclass, properties);
+            }
+        }
+
         return jclass;
 
     }
@@ -145,9 +178,9 @@ public class ObjectRule implements Rule<JPackage, JType> {
                     fqn = fqn.substring(0, index) + ruleFactory.getGenerationConfig().getClassNamePrefix() + fqn.substring(index) + ruleFactory.getGenerationConfig().getClassNameSuffix();
                 }
 
-                newType = _package.owner()._class(JMod.PUBLIC | JMod.ABSTRACT, fqn, ClassType.CLASS);
+                newType = _package.owner()._class(classModifiers(), fqn, ClassType.CLASS);
             } else {
-                newType = _package._class(JMod.PUBLIC | JMod.ABSTRACT, getClassName(nodeName, node, _package), ClassType.CLASS);
+                newType = _package._class(classModifiers(), getClassName(nodeName, node, _package), ClassType.CLASS);
             }
         } catch (JClassAlreadyExistsException e) {
             throw new ClassAlreadyExistsException(e.getExistingClass());
@@ -155,16 +188,49 @@ public class ObjectRule implements Rule<JPackage, JType> {
 
         ruleFactory.getAnnotator().propertyInclusion(newType, node);
 
-        addImmutableAnnotations(newType);
+        if (ruleFactory.isFinalClasses()) {
+            FinalClassGenerator.declare(newType);
+        } else {
+            addImmutableAnnotations(newType, node);
+        }
         return newType;
 
     }
 
-    private void addImmutableAnnotations(JDefinedClass iface) {
-        iface.annotate(Value.Immutable.class);
+    private int classModifiers() {
+        return ruleFactory.isFinalClasses() ? JMod.PUBLIC | JMod.FINAL : JMod.PUBLIC | JMod.ABSTRACT;
+    }
+
+    private void addImmutableAnnotations(JDefinedClass iface, JsonNode node) {
+        JAnnotationUse immutableAnnotation = iface.annotate(Value.Immutable.class);
+        if (node.path(INTERN).asBoolean()) {
+            immutableAnnotation.param("intern", true);
+        }
+        if (node.path(PREHASH).asBoolean()) {
+            immutableAnnotation.param("prehash", true);
+        }
         iface.annotate(Value.Modifiable.class);
-        iface.annotate(JsonDeserialize.class).param("as",
-                iface.owner().ref(iface._package().name() + ".Immutable" + iface.name()));
+        if (!ruleFactory.isUnboxedOptionals()) {
+            addJsonDeserializeAnnotation(iface);
+        }
+    }
+
+    /**
+     * Has Jackson read the value type as its Immutables implementation, unless it has optional primitives stored
+     * unboxed: Jackson reads those through the creator the {@link PropertyRule} adds, which keeps their presence.
+     */
+    private void addJsonDeserializeAnnotation(JDefinedClass iface) {
+        List<GeneratedProperty> properties = ruleFactory.getProperties(iface);
+        if (properties != null && properties.stream().anyMatch(property -> property.getPresence() != null)) {
+            // still needed for Immutables to generate the class Jackson reads JSON into
+            iface.annotate(JsonDeserialize.class);
+            return;
+        }
+        JClass immutable = ImmutablesTypes.immutable(iface);
+        if (immutable == null) {
+            immutable = iface.owner().ref(iface._package().name() + ".Immutable" + iface.name());
+        }
+        iface.annotate(JsonDeserialize.class).param("as", immutable);
     }
 
     private boolean isFinal(JType superType) {
@@ -197,8 +263,7 @@ public class ObjectRule implements Rule<JPackage, JType> {
                 "#extends" :
                 "#" + schema.getId().getFragment() + "/extends";
 
-        return ruleFactory.getSchemaStore()
-                .create(schema, path, ruleFactory.getGenerationConfig().getRefFragmentPathDelimiters());
+        return ruleFactory.getRefResolver().create(schema, path);
     }
 
     private void addJsonTypeInfoAnnotation(JDefinedClass jclass, JsonNode node) {
@@ -258,7 +323,9 @@ public class ObjectRule implements Rule<JPackage, JType> {
 
         String className = ruleFactory.getNameHelper().replaceIllegalCharacters(fullFieldName);
         String normalizedName = ruleFactory.getNameHelper().normalizeName(className);
-        return makeUnique(normalizedName, _package);
+        try (RuleProfiler.Section ignored = ruleFactory.getProfiler().enter("ObjectRule.makeUnique", null)) {
+            return ruleFactory.getClassNameRegistry().makeUnique(normalizedName, _package);
+        }
     }
 
     private String createFullFieldName(String nodeName, String prefix, String suffix) {
@@ -274,16 +341,6 @@ public class ObjectRule implements Rule<JPackage, JType> {
         return returnString;
     }
 
-    private String makeUnique(String className, JPackage _package) {
-        try {
-            JDefinedClass _class = _package._class(className);
-            _package.remove(_class);
-            return className;
-        } catch (JClassAlreadyExistsException e) {
-            return makeUnique(MakeUniqueClassName.makeUnique(className), _package);
-        }
-    }
-
     private boolean usesPolymorphicDeserialization(JsonNode node) {
         if (ruleFactory.getGenerationConfig().getAnnotationStyle() == AnnotationStyle.JACKSON2) {
             return node.has("deserializationClassProperty");
@@ -0,0 +1,364 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.sun.codemodel.*;
+import org.apache.commons.lang3.StringUtils;
+import org.jsonschema2pojo.Schema;
+import org.jsonschema2pojo.rules.Rule;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a base type for a {@code oneOf} schema with a {@code discriminator}, the property whose value names which
+ * of the schemas an instance is.
+ * <p>
+ * The {@code discriminator} is either the name of the property or an object with a {@code propertyName} and an
+ * optional {@code mapping} from names to the {@code $ref} of a schema. The schemas of the {@code oneOf} must be objects
+ * and become value types implementing the base interface. A schema is named by the {@code mapping} entry of its
+ * {@code $ref}, by the single {@code const} or {@code enum} value of its discriminator property, or by its class name.
+ * <p>
+ * Interfaces can't be sealed in Java 8, so the subtypes are only closed by convention: they are listed in the
+ * {@code @JsonSubTypes} of the base type and in its static {@code subtype} method, which switches on the name. The base
+ * type is read by a generated {@code Deserializer} that switches on the name as well and hands the object to the
+ * deserializer of the subtype, rather than by Jackson's type id handling. Fields before the discriminator are buffered,
+ * so it needn't be the first. Subtypes that don't declare the property get a getter returning their name, which is
+ * written like a property but isn't an attribute.
+ */
+public class OneOfRule implements Rule<JPackage, JType> {
+    static final String DISCRIMINATOR = "discriminator";
+
+    private final ImmutableRuleFactory ruleFactory;
+
+    OneOfRule(ImmutableRuleFactory ruleFactory) {
+        this.ruleFactory = ruleFactory;
+    }
+
+    /**
+     * @return whether {@code node} is a {@code oneOf} with a discriminator, which this rule generates a base type for
+     */
+    static boolean isDiscriminated(JsonNode node) {
+        return node.path("oneOf").size() > 0 && !propertyName(node).isEmpty();
+    }
+
+    @Override
+    public JType apply(String nodeName, JsonNode node, JPackage _package, Schema schema) {
+        JDefinedClass base;
+        try {
+            base = node.has("javaType")
+                    ? _package.owner()._class(JMod.PUBLIC, node.get("javaType").asText(), ClassType.INTERFACE)
+                    : _package._class(JMod.PUBLIC, className(nodeName, node, _package), ClassType.INTERFACE);
+        } catch (JClassAlreadyExistsException e) {
+            return e.getExistingClass();
+        }
+        ruleFactory.classGenerated(base, schema);
+        schema.setJavaTypeIfEmpty(base);
+
+        if (node.has("title")) {
+            ruleFactory.getTitleRule().apply(nodeName, node.get("title"), base, schema);
+        }
+        if (node.has("description")) {
+            ruleFactory.getDescriptionRule().apply(nodeName, node.get("description"), base, schema);
+        }
+
+        String propertyName = propertyName(node);
+        Map<String, JDefinedClass> subtypes = new LinkedHashMap<>();
+        Set<JDefinedClass> declaring = new HashSet<>();
+        int index = 0;
+        for (JsonNode option : node.get("oneOf")) {
+            index++;
+            String name = subtypeName(node, option, ruleFactory.getRefResolver().resolve(option, schema));
+            JType type = ruleFactory.getSchemaRule().apply(name != null ? name : nodeName + index, option, _package,
+                    schema);
+            List<GeneratedProperty> properties = type instanceof JDefinedClass
+                    ? ruleFactory.getProperties((JDefinedClass) type) : null;
+            if (properties == null) {
+                throw new IllegalStateException(base.name() + ": the schemas of a oneOf with a discriminator must be "
+                        + "objects, " + type.fullName() + " isn't");
+            }
+            JDefinedClass subtype = (JDefinedClass) type;
+            if (subtype.isHidden()) {
+                // streamed from an earlier document, so it was written without implementing the base type
+                throw new IllegalStateException(base.name() + ": " + subtype.fullName() + " was already written, "
+                        + "the schema of the oneOf has to be streamed before those of its subtypes");
+            }
+            if (name == null) {
+                name = subtype.name();
+            }
+            if (subtypes.putIfAbsent(name, subtype) != null) {
+                throw new IllegalStateException(base.name() + ": " + propertyName + " \"" + name
+                        + "\" names more than one schema");
+            }
+            subtype._implements(base);
+            subtype.annotate(JsonTypeName.class).param("value", name);
+            if (properties.stream().anyMatch(property -> property.getJsonName().equals(propertyName))) {
+                declaring.add(subtype);
+            } else {
+                addNameGetter(subtype, propertyName, name);
+            }
+        }
+
+        Discriminator discriminator = new Discriminator(base, propertyName, subtypes, declaring);
+        ruleFactory.discriminatorGenerated(discriminator);
+        annotate(discriminator, addDeserializer(discriminator));
+        addSubtypeMethod(discriminator);
+        return base;
+    }
+
+    private static String propertyName(JsonNode node) {
+        JsonNode discriminator = node.path(DISCRIMINATOR);
+        return discriminator.isTextual() ? discriminator.asText() : discriminator.path("propertyName").asText();
+    }
+
+    /**
+     * @return the name the discriminator has for {@code option}, or null if the schema doesn't say
+     */
+    private static String subtypeName(JsonNode node, JsonNode option, JsonNode resolved) {
+        if (option.has("$ref")) {
+            String ref = option.get("$ref").asText();
+            for (Map.Entry<String, JsonNode> entry : iterable(node.path(DISCRIMINATOR).path("mapping").fields())) {
+                if (entry.getValue().asText().equals(ref)) {
+                    return entry.getKey();
+                }
+            }
+        }
+        JsonNode property = resolved.path("properties").path(propertyName(node));
+        if (property.path("const").isTextual()) {
+            return property.get("const").asText();
+        } else if (property.path("enum").size() == 1 && property.get("enum").get(0).isTextual()) {
+            return property.get("enum").get(0).asText();
+        }
+        return null;
+    }
+
+    private static <T> Iterable<T> iterable(Iterator<T> iterator) {
+        return () -> iterator;
+    }
+
+    private String className(String nodeName, JsonNode node, JPackage _package) {
+        String className = StringUtils.capitalize(ruleFactory.getNameHelper().getFieldName(nodeName, node));
+        String prefix = ruleFactory.getGenerationConfig().getClassNamePrefix();
+        String suffix = ruleFactory.getGenerationConfig().getClassNameSuffix();
+        className = (prefix == null ? "" : prefix) + className + (suffix == null ? "" : suffix);
+        className = ruleFactory.getNameHelper().normalizeName(
+                ruleFactory.getNameHelper().replaceIllegalCharacters(className));
+        return ruleFactory.getClassNameRegistry().makeUnique(className, _package);
+    }
+
+    /**
+     * Adds a getter for the discriminator to a subtype that doesn't declare it, so that Jackson writes it like the
+     * property of the subtypes that do. It isn't an attribute of the value type.
+     */
+    private void addNameGetter(JDefinedClass subtype, String propertyName, String name) {
+        JCodeModel codeModel = subtype.owner();
+        JMethod getter = subtype.method(JMod.PUBLIC, String.class, ruleFactory.getNameHelper()
+                .getGetterName(propertyName, codeModel.ref(String.class), JsonNodeFactory.instance.objectNode()));
+        getter.annotate(JsonProperty.class).param("value", propertyName)
+                .param("access", JsonProperty.Access.READ_ONLY);
+        getter.javadoc().addReturn().add("{@code \"" + name + "\"}, which names this subtype");
+        getter.body()._return(JExpr.lit(name));
+        JDefinedClass builder = ImmutablesTypes.nested(subtype, FinalClassGenerator.BUILDER);
+        if (ruleFactory.isFinalClasses() && builder != null) {
+            builder.annotate(JsonIgnoreProperties.class).param("value", propertyName);
+        }
+    }
+
+    private static void annotate(Discriminator discriminator, JDefinedClass deserializer) {
+        JDefinedClass base = discriminator.getBase();
+        // every subtype writes the discriminator as a property, so Jackson needn't write a type id
+        JAnnotationUse typeInfo = base.annotate(JsonTypeInfo.class);
+        typeInfo.param("use", JsonTypeInfo.Id.NAME);
+        typeInfo.param("include", JsonTypeInfo.As.EXISTING_PROPERTY);
+        typeInfo.param("property", discriminator.getPropertyName());
+        JAnnotationArrayMember types = base.annotate(JsonSubTypes.class).paramArray("value");
+        StringBuilder permitted = new StringBuilder();
+        for (Map.Entry<String, JDefinedClass> subtype : discriminator.getSubtypes().entrySet()) {
+            types.annotate(JsonSubTypes.Type.class).param("value", subtype.getValue()).param("name", subtype.getKey());
+            permitted.append(permitted.length() == 0 ? "" : ", ").append("{@link ").append(subtype.getValue().name())
+                    .append("}");
+        }
+        base.annotate(JsonDeserialize.class).param("using", deserializer);
+        JDocComment javadoc = base.javadoc();
+        if (!javadoc.isEmpty()) {
+            javadoc.add("\n<p>\n");
+        }
+        javadoc.add("One of " + permitted + ", as named by {@code " + discriminator.getPropertyName() + "}.");
+    }
+
+    private static void addSubtypeMethod(Discriminator discriminator) {
+        JDefinedClass base = discriminator.getBase();
+        JCodeModel codeModel = base.owner();
+        JMethod method = base.method(JMod.PUBLIC | JMod.STATIC, codeModel.ref(Class.class).narrow(base.wildcard()),
+                "subtype");
+        method.javadoc().addReturn().add("the subtype {@code name} stands for, or null if there is none");
+        JVar name = method.param(String.class, "name");
+        method.body()._if(name.eq(JExpr._null()))._then()._return(JExpr._null());
+        JSwitch names = method.body()._switch(name);
+        for (Map.Entry<String, JDefinedClass> subtype : discriminator.getSubtypes().entrySet()) {
+            names._case(JExpr.lit(subtype.getKey())).body()._return(subtype.getValue().dotclass());
+        }
+        names._default().body()._return(JExpr._null());
+    }
+
+    private static JDefinedClass addDeserializer(Discriminator discriminator) {
+        JDefinedClass base = discriminator.getBase();
+        JCodeModel codeModel = base.owner();
+        JDefinedClass deserializer;
+        try {
+            deserializer = base._class(JMod.PUBLIC | JMod.STATIC, "Deserializer");
+        } catch (JClassAlreadyExistsException e) {
+            throw new IllegalStateException(e);
+        }
+        String property = discriminator.getPropertyName();
+        String prefix = base.name() + "." + property;
+        deserializer._extends(codeModel.ref(StdDeserializer.class).narrow(base));
+        deserializer._implements(ResolvableDeserializer.class);
+        deserializer.javadoc().add("Reads {@link " + base.name() + "} as the subtype its {@code " + property
+                + "} names.");
+
+        JMethod constructor = deserializer.constructor(JMod.PUBLIC);
+        constructor.body().invoke("super").arg(base.dotclass());
+
+        JMethod resolve = deserializer.method(JMod.PUBLIC, codeModel.VOID, "resolve");
+        resolve.annotate(Override.class);
+        resolve._throws(JsonMappingException.class);
+        JVar resolveContext = resolve.param(DeserializationContext.class, "context");
+
+        JClass tokens = codeModel.ref(JsonToken.class);
+        JMethod rest = restMethod(deserializer);
+        JMethod replay = replayMethod(deserializer, property);
+
+        // reads the subtype, starting at the value of the discriminator
+        JMethod dispatch = deserializer.method(JMod.PRIVATE, base, "deserialize");
+        dispatch._throws(IOException.class);
+        JVar parser = dispatch.param(JsonParser.class, "parser");
+        JVar context = dispatch.param(DeserializationContext.class, "context");
+        JVar buffer = dispatch.param(TokenBuffer.class, "buffer");
+        dispatch.body()._if(parser.invoke("getCurrentToken").ne(tokens.staticRef("VALUE_STRING")))._then()
+                ._throw(codeModel.ref(JsonMappingException.class).staticInvoke("from").arg(parser)
+                        .arg(JExpr.lit(prefix + " must be a string")));
+        JVar name = dispatch.body().decl(codeModel.ref(String.class), "name", parser.invoke("getText"));
+        JSwitch names = dispatch.body()._switch(name);
+        for (Map.Entry<String, JDefinedClass> entry : discriminator.getSubtypes().entrySet()) {
+            JDefinedClass subtype = entry.getValue();
+            JFieldVar subtypeDeserializer = deserializer.field(JMod.PRIVATE,
+                    codeModel.ref(JsonDeserializer.class).narrow(Object.class),
+                    StringUtils.uncapitalize(subtype.name()) + "Deserializer");
+            resolve.body().assign(JExpr._this().ref(subtypeDeserializer),
+                    resolveContext.invoke("findContextualValueDeserializer")
+                            .arg(resolveContext.invoke("constructType").arg(subtype.dotclass())).arg(JExpr._null()));
+            JExpression fields = discriminator.isDeclared(subtype)
+                    ? JExpr.invoke(replay).arg(parser).arg(context).arg(buffer).arg(name)
+                    : buffer;
+            names._case(JExpr.lit(entry.getKey())).body()._return(JExpr.cast(base, subtypeDeserializer
+                    .invoke("deserialize").arg(JExpr.invoke(rest).arg(parser).arg(fields)).arg(context)));
+        }
+        names._default().body()._throw(codeModel.ref(JsonMappingException.class).staticInvoke("from").arg(parser)
+                .arg(JExpr.lit(prefix + " must be one of " + String.join(", ", discriminator.getSubtypes().keySet())
+                        + ", was ").plus(name)));
+
+        JMethod deserialize = deserializer.method(JMod.PUBLIC, base, "deserialize");
+        deserialize.annotate(Override.class);
+        deserialize._throws(IOException.class);
+        parser = deserialize.param(JsonParser.class, "parser");
+        context = deserialize.param(DeserializationContext.class, "context");
+        JBlock body = deserialize.body();
+        JVar token = body.decl(tokens, "token", parser.invoke("getCurrentToken"));
+        JConditional start = body._if(token.eq(tokens.staticRef("START_OBJECT")));
+        start._then().assign(token, parser.invoke("nextToken"));
+        start._elseif(token.ne(tokens.staticRef("FIELD_NAME")).cand(token.ne(tokens.staticRef("END_OBJECT"))))
+                ._then()._return(JExpr.cast(base,
+                        context.invoke("handleUnexpectedToken").arg(base.dotclass()).arg(parser)));
+        buffer = body.decl(codeModel.ref(TokenBuffer.class), "buffer", JExpr._null());
+        JForLoop loop = body._for();
+        loop.test(token.eq(tokens.staticRef("FIELD_NAME")));
+        loop.update(JExpr.assign(token, parser.invoke("nextToken")));
+        JVar field = loop.body().decl(codeModel.ref(String.class), "field", parser.invoke("getCurrentName"));
+        loop.body().add(parser.invoke("nextToken"));
+        loop.body()._if(field.invoke("equals").arg(JExpr.lit(property)))._then()
+                ._return(JExpr.invoke(dispatch).arg(parser).arg(context).arg(buffer));
+        JBlock create = loop.body()._if(buffer.eq(JExpr._null()))._then();
+        create.assign(buffer, JExpr._new(codeModel.ref(TokenBuffer.class)).arg(parser).arg(context));
+        create.add(buffer.invoke("writeStartObject"));
+        loop.body().add(buffer.invoke("writeFieldName").arg(field));
+        loop.body().add(buffer.invoke("copyCurrentStructure").arg(parser));
+        body._throw(codeModel.ref(JsonMappingException.class).staticInvoke("from").arg(parser)
+                .arg(JExpr.lit(prefix + " is missing")));
+
+        JMethod deserializeWithType = deserializer.method(JMod.PUBLIC, Object.class, "deserializeWithType");
+        deserializeWithType.annotate(Override.class);
+        deserializeWithType._throws(IOException.class);
+        deserializeWithType.javadoc().add("Reads the subtype by its name here rather than with Jackson's type id "
+                + "handling.");
+        parser = deserializeWithType.param(JsonParser.class, "parser");
+        context = deserializeWithType.param(DeserializationContext.class, "context");
+        deserializeWithType.param(TypeDeserializer.class, "typeDeserializer");
+        deserializeWithType.body()._return(JExpr.invoke(deserialize).arg(parser).arg(context));
+        return deserializer;
+    }
+
+    /**
+     * Generates {@code rest(parser, buffer)}, which continues with the buffered fields, if any, and then with the
+     * fields after the discriminator.
+     */
+    private static JMethod restMethod(JDefinedClass deserializer) {
+        JCodeModel codeModel = deserializer.owner();
+        JMethod rest = deserializer.method(JMod.PRIVATE | JMod.STATIC, JsonParser.class, "rest");
+        rest._throws(IOException.class);
+        JVar parser = rest.param(JsonParser.class, "parser");
+        JVar buffer = rest.param(TokenBuffer.class, "buffer");
+        JBlock unbuffered = rest.body()._if(buffer.eq(JExpr._null()))._then();
+        unbuffered.add(parser.invoke("nextToken"));
+        unbuffered._return(parser);
+        JVar sequence = rest.body().decl(codeModel.ref(JsonParser.class), "sequence",
+                codeModel.ref(JsonParserSequence.class).staticInvoke("createFlattened").arg(JExpr.FALSE)
+                        .arg(buffer.invoke("asParser").arg(parser)).arg(parser));
+        rest.body().add(sequence.invoke("nextToken"));
+        rest.body()._return(sequence);
+        return rest;
+    }
+
+    /**
+     * Generates {@code replay(parser, context, buffer, name)}, which adds the discriminator to the buffered fields for
+     * subtypes that declare it.
+     */
+    private static JMethod replayMethod(JDefinedClass deserializer, String property) {
+        JCodeModel codeModel = deserializer.owner();
+        JMethod replay = deserializer.method(JMod.PRIVATE | JMod.STATIC, TokenBuffer.class, "replay");
+        replay._throws(IOException.class);
+        JVar parser = replay.param(JsonParser.class, "parser");
+        JVar context = replay.param(DeserializationContext.class, "context");
+        JVar buffer = replay.param(TokenBuffer.class, "buffer");
+        JVar name = replay.param(String.class, "name");
+        JVar fields = replay.body().decl(codeModel.ref(TokenBuffer.class), "fields", buffer);
+        JBlock create = replay.body()._if(fields.eq(JExpr._null()))._then();
+        create.assign(fields, JExpr._new(codeModel.ref(TokenBuffer.class)).arg(parser).arg(context));
+        create.add(fields.invoke("writeStartObject"));
+        replay.body().add(fields.invoke("writeFieldName").arg(JExpr.lit(property)));
+        replay.body().add(fields.invoke("writeString").arg(name));
+        replay.body()._return(fields);
+        return replay;
+    }
+}
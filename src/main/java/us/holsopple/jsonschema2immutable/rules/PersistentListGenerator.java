@@ -0,0 +1,286 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.sun.codemodel.*;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Generates {@code PersistentList}, the list the {@link ArrayRule} generates arrays as when persistent collections are
+ * switched on.
+ * <p>
+ * The list is a weight-balanced tree of its elements in index order, with the balance parameters of Hirai and
+ * Yamamoto. Appending, inserting, replacing and removing an element copy only the path to it, so they take O(log n)
+ * time and space and the new list shares everything else with the old one. Indexed access takes O(log n) too. It is a
+ * read-only {@link java.util.List} otherwise, so it compares equal to lists with the same elements and Jackson writes
+ * it as a JSON array; Jackson reads it through a delegating creator of an array that builds a balanced tree in O(n).
+ */
+public class PersistentListGenerator {
+    public static final String CLASS_NAME = "PersistentList";
+
+    private PersistentListGenerator() {
+    }
+
+    /**
+     * @return the fully qualified name of the class generated into {@code targetPackage}
+     */
+    public static String className(String targetPackage) {
+        return targetPackage.isEmpty() ? CLASS_NAME : targetPackage + "." + CLASS_NAME;
+    }
+
+    /**
+     * Declares the list in a code model without generating it, so that the types of properties can refer to it.
+     *
+     * @return the list, or null if a generated class already has its name
+     */
+    static JDefinedClass stub(JCodeModel codeModel, String className) {
+        JDefinedClass existing = codeModel._getClass(className);
+        if (existing != null) {
+            return existing.isHidden() ? existing : null;
+        }
+        try {
+            JDefinedClass list = codeModel._class(JMod.PUBLIC | JMod.FINAL, className, ClassType.CLASS);
+            list.hide();
+            // a Collection to the rules that check sizes, but not a java.util.List with the builder methods of one
+            list._extends(codeModel.ref(AbstractList.class).narrow(list.generify("E")));
+            return list;
+        } catch (JClassAlreadyExistsException ex) {
+            return null;
+        }
+    }
+
+    public static JCodeModel generate(String targetPackage) {
+        JCodeModel codeModel = new JCodeModel();
+        try {
+            JDefinedClass list = codeModel._class(JMod.PUBLIC | JMod.FINAL, className(targetPackage),
+                    ClassType.CLASS);
+            generate(list, list._class(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, "Node"));
+        } catch (JClassAlreadyExistsException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return codeModel;
+    }
+
+    private static void generate(JDefinedClass list, JDefinedClass node) {
+        JCodeModel codeModel = list.owner();
+        JTypeVar element = list.generify("E");
+        list._extends(codeModel.ref(AbstractList.class).narrow(element));
+        list.javadoc().add("An immutable list whose updates share all but O(log n) nodes with the list they were made "
+                + "from.");
+        JFieldVar empty = list.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, list.narrow(Object.class), "EMPTY",
+                JExpr._new(list.narrow(Object.class)).arg(JExpr.cast(node, JExpr._null())));
+        JFieldVar root = list.field(JMod.PRIVATE | JMod.FINAL, node, "root");
+
+        JFieldVar left = node.field(JMod.PRIVATE | JMod.FINAL, node, "left");
+        JFieldVar value = node.field(JMod.PRIVATE | JMod.FINAL, Object.class, "value");
+        JFieldVar right = node.field(JMod.PRIVATE | JMod.FINAL, node, "right");
+        JFieldVar nodeSize = node.field(JMod.PRIVATE | JMod.FINAL, int.class, "size");
+
+        JMethod size = list.method(JMod.PRIVATE | JMod.STATIC, codeModel.INT, "size");
+        JVar sized = size.param(node, "node");
+        size.body()._return(JOp.cond(sized.eq(JExpr._null()), JExpr.lit(0), sized.ref(nodeSize)));
+
+        JMethod nodeConstructor = node.constructor(JMod.NONE);
+        JVar newLeft = nodeConstructor.param(node, "left");
+        JVar newValue = nodeConstructor.param(Object.class, "value");
+        JVar newRight = nodeConstructor.param(node, "right");
+        nodeConstructor.body().assign(JExpr._this().ref(left), newLeft);
+        nodeConstructor.body().assign(JExpr._this().ref(value), newValue);
+        nodeConstructor.body().assign(JExpr._this().ref(right), newRight);
+        nodeConstructor.body().assign(JExpr._this().ref(nodeSize),
+                JExpr.invoke(size).arg(newLeft).plus(JExpr.invoke(size).arg(newRight)).plus(JExpr.lit(1)));
+
+        JMethod rootConstructor = list.constructor(JMod.PRIVATE);
+        JVar newRoot = rootConstructor.param(node, "root");
+        rootConstructor.body().assign(JExpr._this().ref(root), newRoot);
+
+        JMethod build = list.method(JMod.PRIVATE | JMod.STATIC, node, "build");
+        JVar array = build.param(Object[].class, "elements");
+        JVar from = build.param(int.class, "from");
+        JVar to = build.param(int.class, "to");
+        build.body()._if(from.gte(to))._then()._return(JExpr._null());
+        JVar middle = build.body().decl(codeModel.INT, "middle", from.plus(to).shrz(JExpr.lit(1)));
+        build.body()._return(JExpr._new(node)
+                .arg(JExpr.invoke(build).arg(array).arg(from).arg(middle))
+                .arg(codeModel.ref(Objects.class).staticInvoke("requireNonNull").arg(array.component(middle))
+                        .arg(JExpr.lit("element")))
+                .arg(JExpr.invoke(build).arg(array).arg(middle.plus(JExpr.lit(1))).arg(to)));
+
+        JMethod elementsConstructor = list.constructor(JMod.PRIVATE);
+        elementsConstructor.javadoc().add("Builds a balanced tree of {@code elements}.");
+        JVar elements = elementsConstructor.param(codeModel.ref(Collection.class).narrow(element.wildcard()),
+                "elements");
+        JVar copied = elementsConstructor.body().decl(codeModel.ref(Object.class).array(), "array",
+                elements.invoke("toArray"));
+        elementsConstructor.body().assign(JExpr._this().ref(root),
+                JExpr.invoke(build).arg(copied).arg(JExpr.lit(0)).arg(copied.ref("length")));
+
+        // Jackson 2.9 takes a creator of a collection for an array delegate, which it ignores for lists of strings
+        JMethod arrayConstructor = list.constructor(JMod.PRIVATE);
+        arrayConstructor.javadoc().add("Builds a balanced tree of {@code elements}, which is how Jackson reads the "
+                + "list from a JSON array.");
+        arrayConstructor.annotate(JsonCreator.class).param("mode", JsonCreator.Mode.DELEGATING);
+        JVar arrayElements = arrayConstructor.param(element.array(), "elements");
+        arrayConstructor.body().assign(JExpr._this().ref(root),
+                JExpr.invoke(build).arg(arrayElements).arg(JExpr.lit(0)).arg(arrayElements.ref("length")));
+
+        JMethod emptyList = list.method(JMod.PUBLIC | JMod.STATIC, codeModel.VOID, "empty");
+        JTypeVar emptyElement = emptyList.generify("E");
+        emptyList.type(list.narrow(emptyElement));
+        emptyList.annotate(SuppressWarnings.class).param("value", "unchecked");
+        emptyList.body()._return(JExpr.cast(list.narrow(emptyElement), empty));
+
+        JMethod fromElements = list.method(JMod.PUBLIC | JMod.STATIC, codeModel.VOID, "from");
+        JTypeVar fromElement = fromElements.generify("E");
+        fromElements.type(list.narrow(fromElement));
+        fromElements.javadoc().add("@return a list of {@code elements} in iteration order, which must not be null");
+        JVar source = fromElements.param(codeModel.ref(Collection.class).narrow(fromElement.wildcard()), "elements");
+        fromElements.body()._return(JExpr._new(list.narrow(fromElement)).arg(source));
+
+        JMethod valueAt = list.method(JMod.PRIVATE | JMod.STATIC, Object.class, "valueAt");
+        JVar current = valueAt.param(node, "node");
+        JVar position = valueAt.param(int.class, "index");
+        JWhileLoop descend = valueAt.body()._while(JExpr.TRUE);
+        JVar leftSize = descend.body().decl(codeModel.INT, "leftSize", JExpr.invoke(size).arg(current.ref(left)));
+        JConditional side = descend.body()._if(position.lt(leftSize));
+        side._then().assign(current, current.ref(left));
+        side._elseif(position.eq(leftSize))._then()._return(current.ref(value));
+        JBlock toRight = side._else();
+        toRight.assign(position, position.minus(leftSize.plus(JExpr.lit(1))));
+        toRight.assign(current, current.ref(right));
+
+        JMethod balance = list.method(JMod.PRIVATE | JMod.STATIC, node, "balance");
+        balance.javadoc().add("Joins two trees that were balanced before one element was added to or removed from "
+                + "either of them, rotating once or twice if one side has become more than three times as heavy.");
+        JVar l = balance.param(node, "left");
+        JVar v = balance.param(Object.class, "value");
+        JVar r = balance.param(node, "right");
+        JVar leftWeight = balance.body().decl(codeModel.INT, "leftWeight",
+                JExpr.invoke(size).arg(l).plus(JExpr.lit(1)));
+        JVar rightWeight = balance.body().decl(codeModel.INT, "rightWeight",
+                JExpr.invoke(size).arg(r).plus(JExpr.lit(1)));
+        JBlock rightHeavy = balance.body()._if(rightWeight.gt(JExpr.lit(3).mul(leftWeight)))._then();
+        rightHeavy._if(weight(size, r.ref(left)).lt(JExpr.lit(2).mul(weight(size, r.ref(right)))))._then()
+                ._return(JExpr._new(node).arg(JExpr._new(node).arg(l).arg(v).arg(r.ref(left)))
+                        .arg(r.ref(value)).arg(r.ref(right)));
+        rightHeavy._return(JExpr._new(node).arg(JExpr._new(node).arg(l).arg(v).arg(r.ref(left).ref(left)))
+                .arg(r.ref(left).ref(value))
+                .arg(JExpr._new(node).arg(r.ref(left).ref(right)).arg(r.ref(value)).arg(r.ref(right))));
+        JBlock leftHeavy = balance.body()._if(leftWeight.gt(JExpr.lit(3).mul(rightWeight)))._then();
+        leftHeavy._if(weight(size, l.ref(right)).lt(JExpr.lit(2).mul(weight(size, l.ref(left)))))._then()
+                ._return(JExpr._new(node).arg(l.ref(left)).arg(l.ref(value))
+                        .arg(JExpr._new(node).arg(l.ref(right)).arg(v).arg(r)));
+        leftHeavy._return(JExpr._new(node).arg(JExpr._new(node).arg(l.ref(left)).arg(l.ref(value))
+                        .arg(l.ref(right).ref(left)))
+                .arg(l.ref(right).ref(value))
+                .arg(JExpr._new(node).arg(l.ref(right).ref(right)).arg(v).arg(r)));
+        balance.body()._return(JExpr._new(node).arg(l).arg(v).arg(r));
+
+        JMethod insert = list.method(JMod.PRIVATE | JMod.STATIC, node, "insert");
+        JVar insertNode = insert.param(node, "node");
+        JVar insertIndex = insert.param(int.class, "index");
+        JVar insertValue = insert.param(Object.class, "value");
+        insert.body()._if(insertNode.eq(JExpr._null()))._then()
+                ._return(JExpr._new(node).arg(JExpr._null()).arg(insertValue).arg(JExpr._null()));
+        JVar insertLeftSize = insert.body().decl(codeModel.INT, "leftSize",
+                JExpr.invoke(size).arg(insertNode.ref(left)));
+        insert.body()._if(insertIndex.lte(insertLeftSize))._then()._return(JExpr.invoke(balance)
+                .arg(JExpr.invoke(insert).arg(insertNode.ref(left)).arg(insertIndex).arg(insertValue))
+                .arg(insertNode.ref(value)).arg(insertNode.ref(right)));
+        insert.body()._return(JExpr.invoke(balance).arg(insertNode.ref(left)).arg(insertNode.ref(value))
+                .arg(JExpr.invoke(insert).arg(insertNode.ref(right))
+                        .arg(insertIndex.minus(insertLeftSize.plus(JExpr.lit(1)))).arg(insertValue)));
+
+        JMethod replace = list.method(JMod.PRIVATE | JMod.STATIC, node, "replace");
+        JVar replaceNode = replace.param(node, "node");
+        JVar replaceIndex = replace.param(int.class, "index");
+        JVar replaceValue = replace.param(Object.class, "value");
+        JVar replaceLeftSize = replace.body().decl(codeModel.INT, "leftSize",
+                JExpr.invoke(size).arg(replaceNode.ref(left)));
+        replace.body()._if(replaceIndex.lt(replaceLeftSize))._then()._return(JExpr._new(node)
+                .arg(JExpr.invoke(replace).arg(replaceNode.ref(left)).arg(replaceIndex).arg(replaceValue))
+                .arg(replaceNode.ref(value)).arg(replaceNode.ref(right)));
+        replace.body()._if(replaceIndex.eq(replaceLeftSize))._then()._return(JExpr._new(node)
+                .arg(replaceNode.ref(left)).arg(replaceValue).arg(replaceNode.ref(right)));
+        replace.body()._return(JExpr._new(node).arg(replaceNode.ref(left)).arg(replaceNode.ref(value))
+                .arg(JExpr.invoke(replace).arg(replaceNode.ref(right))
+                        .arg(replaceIndex.minus(replaceLeftSize.plus(JExpr.lit(1)))).arg(replaceValue)));
+
+        JMethod remove = list.method(JMod.PRIVATE | JMod.STATIC, node, "remove");
+        JVar removeNode = remove.param(node, "node");
+        JVar removeIndex = remove.param(int.class, "index");
+        JVar removeLeftSize = remove.body().decl(codeModel.INT, "leftSize",
+                JExpr.invoke(size).arg(removeNode.ref(left)));
+        remove.body()._if(removeIndex.lt(removeLeftSize))._then()._return(JExpr.invoke(balance)
+                .arg(JExpr.invoke(remove).arg(removeNode.ref(left)).arg(removeIndex))
+                .arg(removeNode.ref(value)).arg(removeNode.ref(right)));
+        remove.body()._if(removeIndex.gt(removeLeftSize))._then()._return(JExpr.invoke(balance)
+                .arg(removeNode.ref(left)).arg(removeNode.ref(value))
+                .arg(JExpr.invoke(remove).arg(removeNode.ref(right))
+                        .arg(removeIndex.minus(removeLeftSize.plus(JExpr.lit(1))))));
+        remove.body()._if(removeNode.ref(left).eq(JExpr._null()))._then()._return(removeNode.ref(right));
+        remove.body()._if(removeNode.ref(right).eq(JExpr._null()))._then()._return(removeNode.ref(left));
+        // the removed node is replaced by its neighbour on the heavier side
+        remove.body()._if(removeLeftSize.gt(JExpr.invoke(size).arg(removeNode.ref(right))))._then()
+                ._return(JExpr.invoke(balance)
+                        .arg(JExpr.invoke(remove).arg(removeNode.ref(left)).arg(removeLeftSize.minus(JExpr.lit(1))))
+                        .arg(JExpr.invoke(valueAt).arg(removeNode.ref(left)).arg(removeLeftSize.minus(JExpr.lit(1))))
+                        .arg(removeNode.ref(right)));
+        remove.body()._return(JExpr.invoke(balance).arg(removeNode.ref(left))
+                .arg(JExpr.invoke(valueAt).arg(removeNode.ref(right)).arg(JExpr.lit(0)))
+                .arg(JExpr.invoke(remove).arg(removeNode.ref(right)).arg(JExpr.lit(0))));
+
+        JMethod checkIndex = list.method(JMod.PRIVATE | JMod.STATIC, codeModel.VOID, "checkIndex");
+        JVar checked = checkIndex.param(int.class, "index");
+        JVar limit = checkIndex.param(int.class, "size");
+        checkIndex.body()._if(checked.lt(JExpr.lit(0)).cor(checked.gte(limit)))._then()
+                ._throw(JExpr._new(codeModel.ref(IndexOutOfBoundsException.class))
+                        .arg(JExpr.lit("Index: ").plus(checked).plus(JExpr.lit(", Size: ")).plus(limit)));
+
+        JMethod get = list.method(JMod.PUBLIC, element, "get");
+        get.annotate(Override.class);
+        get.annotate(SuppressWarnings.class).param("value", "unchecked");
+        JVar getIndex = get.param(int.class, "index");
+        get.body().invoke(checkIndex).arg(getIndex).arg(JExpr.invoke(size).arg(root));
+        get.body()._return(JExpr.cast(element, JExpr.invoke(valueAt).arg(root).arg(getIndex)));
+
+        JMethod listSize = list.method(JMod.PUBLIC, codeModel.INT, "size");
+        listSize.annotate(Override.class);
+        listSize.body()._return(JExpr.invoke(size).arg(root));
+
+        JMethod append = list.method(JMod.PUBLIC, list.narrow(element), "plus");
+        append.javadoc().add("@return this list with {@code element} appended");
+        JVar appended = append.param(element, "element");
+        append.body()._return(JExpr.invoke("plus").arg(JExpr.invoke(listSize)).arg(appended));
+
+        JMethod plus = list.method(JMod.PUBLIC, list.narrow(element), "plus");
+        plus.javadoc().add("@return this list with {@code element} inserted at {@code index}");
+        JVar plusIndex = plus.param(int.class, "index");
+        JVar plusElement = plus.param(element, "element");
+        plus.body().invoke(checkIndex).arg(plusIndex).arg(JExpr.invoke(size).arg(root).plus(JExpr.lit(1)));
+        plus.body()._return(JExpr._new(list.narrow(element)).arg(JExpr.invoke(insert).arg(root).arg(plusIndex)
+                .arg(codeModel.ref(Objects.class).staticInvoke("requireNonNull").arg(plusElement)
+                        .arg(JExpr.lit("element")))));
+
+        JMethod with = list.method(JMod.PUBLIC, list.narrow(element), "with");
+        with.javadoc().add("@return this list with the element at {@code index} replaced by {@code element}");
+        JVar withIndex = with.param(int.class, "index");
+        JVar withElement = with.param(element, "element");
+        with.body().invoke(checkIndex).arg(withIndex).arg(JExpr.invoke(size).arg(root));
+        with.body()._return(JExpr._new(list.narrow(element)).arg(JExpr.invoke(replace).arg(root).arg(withIndex)
+                .arg(codeModel.ref(Objects.class).staticInvoke("requireNonNull").arg(withElement)
+                        .arg(JExpr.lit("element")))));
+
+        JMethod minus = list.method(JMod.PUBLIC, list.narrow(element), "minus");
+        minus.javadoc().add("@return this list without the element at {@code index}");
+        JVar minusIndex = minus.param(int.class, "index");
+        minus.body().invoke(checkIndex).arg(minusIndex).arg(JExpr.invoke(size).arg(root));
+        minus.body()._return(JExpr._new(list.narrow(element)).arg(JExpr.invoke(remove).arg(root).arg(minusIndex)));
+    }
+
+    private static JExpression weight(JMethod size, JExpression node) {
+        return JExpr.invoke(size).arg(node).plus(JExpr.lit(1));
+    }
+}
@@ -0,0 +1,27 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jsonschema2pojo.Schema;
+import org.jsonschema2pojo.rules.Rule;
+
+/**
+ * Counts every application of a rule in a {@link RuleProfiler}.
+ */
+class ProfiledRule<T, R> implements Rule<T, R> {
+    private final String name;
+    private final Rule<T, R> rule;
+    private final RuleProfiler profiler;
+
+    ProfiledRule(String name, Rule<T, R> rule, RuleProfiler profiler) {
+        this.name = name;
+        this.rule = rule;
+        this.profiler = profiler;
+    }
+
+    @Override
+    public R apply(String nodeName, JsonNode node, T generatableType, Schema currentSchema) {
+        try (RuleProfiler.Section ignored = profiler.enter(name, currentSchema)) {
+            return rule.apply(nodeName, node, generatableType, currentSchema);
+        }
+    }
+}
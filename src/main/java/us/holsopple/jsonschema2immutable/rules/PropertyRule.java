@@ -1,54 +1,319 @@
 package us.holsopple.jsonschema2immutable.rules;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.sun.codemodel.*;
 import org.immutables.value.Value;
+import org.jsonschema2pojo.InclusionLevel;
 import org.jsonschema2pojo.Schema;
 import org.jsonschema2pojo.rules.Rule;
-import org.jsonschema2pojo.rules.RuleFactory;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
 
+/**
+ * Adds the getter of a property to its value type. Properties that are neither required nor have a default are
+ * {@code @Nullable}, so optional integers, numbers and booleans are boxed.
+ * <p>
+ * With unboxed optionals on, they keep their primitive type. Those without a default are {@code @Value.Default}
+ * attributes that default to zero or false, with a {@code hasX()} method telling whether they are present. Presence is
+ * kept in {@code long} attributes with a bit per property that is set while it's absent, which are ordinary attributes
+ * defaulting to all bits set. The code that builds instances from JSON or binary sets them from the properties it read,
+ * Jackson through a creator on the abstract class, and the builder, the with-ers and the {@code Modifiable} the
+ * {@link UnboxedOptionalsGenerator} completes the value type with mark the properties they set, zeros included. The
+ * with-er taking an {@code OptionalInt}, {@code OptionalLong}, {@code OptionalDouble} or {@code Optional} makes
+ * properties absent again. Jackson writes them through boxing accessors that return null when they are absent, so that
+ * absent properties stay absent in JSON and present ones keep their place in the order of the schema; the generated
+ * serializers, views and binary codecs check {@code hasX()} themselves.
+ * <p>
+ * For final classes the getter returns a field instead, and defaults are applied by the constructor the
+ * {@link FinalClassGenerator} adds.
+ */
 public class PropertyRule implements Rule<JDefinedClass, JDefinedClass> {
-    private final RuleFactory ruleFactory;
+    private final ImmutableRuleFactory ruleFactory;
 
-    public PropertyRule(RuleFactory ruleFactory) {
+    public PropertyRule(ImmutableRuleFactory ruleFactory) {
         this.ruleFactory = ruleFactory;
     }
 
     @Override
     public JDefinedClass apply(String nodeName, JsonNode originalNode, JDefinedClass cls, Schema schema) {
+        JsonNode node = ruleFactory.getRefResolver().resolve(originalNode, schema);
         JType propertyType = ruleFactory.getSchemaRule().apply(nodeName, originalNode, cls, schema);
-        JsonNode node = resolveRefs(originalNode, schema);
         boolean isRequired = isRequired(nodeName, node, originalNode, schema);
+        boolean unboxedOptionals = ruleFactory.isUnboxedOptionals() && ruleFactory.getProperties(cls) != null;
+        boolean hasDefault = getOriginalOrRefProperty(originalNode, node, "default") != null;
+        boolean unboxed = !isRequired && propertyType.isPrimitive() && unboxedOptionals && !hasDefault;
+        boolean finalClass = ruleFactory.isFinalClasses() && ruleFactory.getProperties(cls) != null;
 
-        if (!isRequired && propertyType.isPrimitive()) {
+        if (!isRequired && propertyType.isPrimitive() && !unboxedOptionals) {
             propertyType = propertyType.boxify();
         }
 
-        JExpression defaultExpression = getDefaultExpr(originalNode, node, cls, propertyType);
-        JMethod getter = addGetter(cls, propertyType, nodeName, originalNode, node, isRequired, defaultExpression);
+        JExpression defaultExpression;
+        try (RuleProfiler.Section ignored = ruleFactory.getProfiler().enter("PropertyRule.getDefaultExpr", schema)) {
+            defaultExpression = unboxed ? zero(propertyType) : getDefaultExpr(originalNode, node, cls, propertyType);
+        }
+        String nodeType = node.get("type") != null ? node.get("type").asText() : null;
+        boolean nullable = !isRequired && defaultExpression == null && !"array".equals(nodeType);
+        JMethod getter = addGetter(cls, propertyType, nodeName, node, nullable,
+                defaultExpression != null || finalClass);
         ruleFactory.getAnnotator().propertyGetter(getter, cls, nodeName);
+        if (finalClass) {
+            finalProperty(cls, nodeName, getter, nullable, defaultExpression, isRequired);
+        } else if (unboxed) {
+            unboxedOptional(cls, nodeName, getter);
+        } else {
+            ruleFactory.propertyGenerated(cls, nodeName, getter, nullable);
+        }
         propertyAnnotations(nodeName, node, originalNode, schema, getter);
 
-        if (defaultExpression != null) {
+        if (defaultExpression != null && !finalClass) {
             getter.annotate(Value.Default.class);
             getter.body()._return(defaultExpression);
         }
 
-        /*
-        ruleFactory.getMinimumMaximumRule().apply(nodeName, node, null, schema);
+        if (ruleFactory.isChecks()) {
+            ruleFactory.getCheckRule().apply(nodeName, node, cls, schema);
+        }
 
-        ruleFactory.getMinItemsMaxItemsRule().apply(nodeName, node, null, schema);
+        return cls;
+    }
 
-        ruleFactory.getMinLengthMaxLengthRule().apply(nodeName, node, null, schema);
+    /**
+     * Backs the getter of a property of a final class with a field, which its constructor assigns.
+     */
+    private void finalProperty(JDefinedClass cls, String jsonName, JMethod getter, boolean nullable,
+                               JExpression defaultExpression, boolean isRequired) {
+        JFieldVar field = cls.field(JMod.PRIVATE | JMod.FINAL, getter.type(),
+                new GeneratedProperty(jsonName, getter, nullable).getAttributeName());
+        // like Immutables, arrays are copied on the way out so that instances stay immutable
+        getter.body()._return(getter.type().isArray() ? field.invoke("clone") : field);
+        ruleFactory.finalPropertyGenerated(cls, jsonName, getter, nullable, field, defaultExpression, isRequired);
+    }
 
-        if (isObject(node) || isArray(node)) {
-            ruleFactory.getValidRule().apply(nodeName, node, null, schema);
+    private void unboxedOptional(JDefinedClass cls, String jsonName, JMethod getter) {
+        JCodeModel codeModel = cls.owner();
+        int index = 0;
+        for (GeneratedProperty property : ruleFactory.getProperties(cls)) {
+            if (property.getPresence() != null) {
+                index++;
+            }
         }
-        */
+        String suffix = index < 64 ? "" : String.valueOf(index / 64 + 1);
+        long bit = 1L << (index % 64);
 
-        return cls;
+        JMethod absentBits = cls.getMethod("absentBits" + suffix, new JType[0]);
+        if (absentBits == null) {
+            absentBits = cls.method(JMod.PROTECTED, codeModel.LONG, "absentBits" + suffix);
+            absentBits.javadoc().add("@return a bit for each optional primitive that is absent");
+            absentBits.annotate(JsonIgnore.class);
+            // the body is added by the UnboxedOptionalsGenerator, once all of the properties are known
+            absentBits.annotate(Value.Default.class);
+        }
+
+        for (JAnnotationUse annotation : getter.annotations()) {
+            if (annotation.getAnnotationClass().fullName().equals(JsonProperty.class.getName())) {
+                // written by the accessor presentValueMethod() adds instead
+                annotation.param("access", JsonProperty.Access.WRITE_ONLY);
+            }
+        }
+
+        String name = getter.name().replaceFirst("^(get|is)(?=\\p{Upper})", "");
+        JMethod presence = cls.method(JMod.PUBLIC, codeModel.BOOLEAN, "has" + name);
+        String zero = getter.type() == codeModel.BOOLEAN ? "false" : "zero";
+        presence.javadoc().add("@return whether " + jsonName + " is present, rather than being " + zero
+                + " because it is absent");
+        presence.body()._return(JExpr.invoke(absentBits).band(JExpr.lit(bit)).eq(JExpr.lit(0L)));
+
+        ruleFactory.unboxedOptionalGenerated(cls, jsonName, getter, presence, absentBits, bit);
+        optionalWither(cls, jsonName, getter, absentBits, bit);
+        normalizeMethod(cls);
+        presentValueMethod(cls, jsonName, getter, presence);
+        readJsonMethod(cls);
+    }
+
+    /**
+     * Generates the with-er that takes an optional primitive as the {@code java.util} optional of its type, which can
+     * make it absent as well as present.
+     */
+    private void optionalWither(JDefinedClass cls, String jsonName, JMethod getter, JMethod absentBits, long bit) {
+        String attribute = attributeName(jsonName, getter);
+        JClass optional = optionalType(getter.type());
+        JMethod method = cls.method(JMod.PUBLIC, cls, "with" + capitalize(attribute));
+        method.javadoc().add("@return a copy with " + jsonName + " set to the value of {@code " + attribute
+                + "}, or absent if it is empty");
+        JVar value = method.param(optional, attribute);
+        JBlock body = method.body();
+
+        String get = optional.erasure().fullName().equals(Optional.class.getName())
+                ? "get"
+                : "getAs" + capitalize(getter.type().name());
+        // the with-er taking the primitive is added by the UnboxedOptionalsGenerator
+        body._if(value.invoke("isPresent"))._then()
+                ._return(JExpr.invoke("with" + capitalize(attribute)).arg(value.invoke(get)));
+        body._return(immutableClass(cls).staticInvoke("builder").invoke("from").arg(JExpr._this())
+                .invoke(attribute).arg(zero(getter.type()))
+                .invoke(absentBits.name()).arg(JExpr.invoke(absentBits).bor(JExpr.lit(bit)))
+                .invoke("build"));
+    }
+
+    private static JClass optionalType(JType type) {
+        JCodeModel codeModel = type.owner();
+        if (type == codeModel.INT) {
+            return codeModel.ref(OptionalInt.class);
+        } else if (type == codeModel.LONG) {
+            return codeModel.ref(OptionalLong.class);
+        } else if (type == codeModel.DOUBLE) {
+            return codeModel.ref(OptionalDouble.class);
+        }
+        return codeModel.ref(Optional.class).narrow(type.boxify());
+    }
+
+    /**
+     * Generates the {@code @Value.Check} method that marks the optional primitives with a value other than zero as
+     * present, which they aren't if a {@code Modifiable} copied their absence from another instance before a setter
+     * gave them the value.
+     */
+    private void normalizeMethod(JDefinedClass cls) {
+        JCodeModel codeModel = cls.owner();
+        JMethod method = cls.getMethod("normalizeAbsentBits", new JType[0]);
+        if (method != null) {
+            cls.methods().remove(method);
+        }
+        method = cls.method(JMod.PROTECTED, cls, "normalizeAbsentBits");
+        method.annotate(Value.Check.class);
+        JBlock body = method.body();
+
+        Map<JMethod, JVar> words = new LinkedHashMap<>();
+        for (GeneratedProperty property : ruleFactory.getProperties(cls)) {
+            if (property.getPresence() == null) {
+                continue;
+            }
+            JVar word = words.get(property.getAbsentBits());
+            if (word == null) {
+                word = body.decl(codeModel.LONG, property.getAbsentBits().name(),
+                        JExpr.invoke(property.getAbsentBits()));
+                words.put(property.getAbsentBits(), word);
+            }
+            body._if(nonZero(property.getGetter()))._then()
+                    .assign(word, word.band(JExpr.lit(~property.getAbsentBit())));
+        }
+
+        JExpression unchanged = null;
+        JExpression copy = immutableClass(cls).staticInvoke("builder").invoke("from").arg(JExpr._this());
+        for (Map.Entry<JMethod, JVar> word : words.entrySet()) {
+            JExpression same = word.getValue().eq(JExpr.invoke(word.getKey()));
+            unchanged = unchanged == null ? same : unchanged.cand(same);
+            copy = copy.invoke(word.getKey().name()).arg(word.getValue());
+        }
+        body._if(unchanged)._then()._return(JExpr._this());
+        body._return(copy.invoke("build"));
+    }
+
+    private static JExpression nonZero(JMethod getter) {
+        JCodeModel codeModel = getter.type().owner();
+        JInvocation value = JExpr.invoke(getter);
+        if (getter.type() == codeModel.BOOLEAN) {
+            return value;
+        } else if (getter.type() == codeModel.DOUBLE) {
+            // so that -0.0 counts as a value, like it does for the with-ers
+            return codeModel.ref(Double.class).staticInvoke("doubleToLongBits").arg(value).ne(JExpr.lit(0L));
+        } else if (getter.type() == codeModel.FLOAT) {
+            return codeModel.ref(Float.class).staticInvoke("floatToIntBits").arg(value).ne(JExpr.lit(0));
+        }
+        return value.ne(JExpr.lit(0));
+    }
+
+    /**
+     * Generates the accessor Jackson writes an optional primitive with in place of its getter, in the order of the
+     * schema, which boxes it only to leave it out when it is absent.
+     */
+    private void presentValueMethod(JDefinedClass cls, String jsonName, JMethod getter, JMethod presence) {
+        String name = getter.name().replaceFirst("^(get|is)(?=\\p{Upper})", "");
+        JMethod method = cls.method(JMod.PROTECTED, getter.type().boxify(),
+                Character.toLowerCase(name.charAt(0)) + name.substring(1) + "IfPresent");
+        method.javadoc().add("@return " + jsonName + ", or null if it is absent");
+        method.annotate(JsonProperty.class).param("value", jsonName);
+        boolean writeNulls = ruleFactory.getGenerationConfig().getInclusionLevel() == InclusionLevel.ALWAYS;
+        method.annotate(JsonInclude.class)
+                .param("value", writeNulls ? JsonInclude.Include.ALWAYS : JsonInclude.Include.NON_NULL);
+        method.body()._return(JOp.cond(JExpr.invoke(presence), JExpr.invoke(getter), JExpr._null()));
+    }
+
+    /**
+     * Generates the delegating {@code @JsonCreator} Jackson reads the value type with, which marks the optional
+     * primitives the JSON had present, zeros included, before the builder Immutables reads it with would lose them.
+     */
+    private void readJsonMethod(JDefinedClass cls) {
+        for (JMethod method : new ArrayList<>(cls.methods())) {
+            if (method.name().equals("readJson")) {
+                cls.methods().remove(method);
+            }
+        }
+        JClass immutable = immutableClass(cls);
+        JClass json = immutable instanceof JDefinedClass
+                ? ImmutablesTypes.json((JDefinedClass) immutable)
+                : cls.owner().directClass(immutable.fullName() + ".Json");
+        JMethod method = cls.method(JMod.STATIC, cls, "readJson");
+        // the class Immutables reads JSON into is deprecated, it isn't meant to be used outside of the creator
+        method.annotate(SuppressWarnings.class).param("value", "deprecation");
+        method.annotate(JsonCreator.class).param("mode", JsonCreator.Mode.DELEGATING);
+        JVar param = method.param(json, "json");
+        JBlock body = method.body();
+
+        List<GeneratedProperty> properties = ruleFactory.getProperties(cls);
+        AbsentBits absentBits = new AbsentBits(body, properties);
+        for (GeneratedProperty property : properties) {
+            if (property.getPresence() != null) {
+                absentBits.present(body._if(param.ref(property.getAttributeName() + "IsSet"))._then(), property);
+            }
+        }
+        JClass builderType = immutable instanceof JDefinedClass
+                ? ImmutablesTypes.builder((JDefinedClass) immutable)
+                : cls.owner().directClass(immutable.fullName() + ".Builder");
+        JVar builder = body.decl(builderType, "builder", immutable.staticInvoke("builder").invoke("from")
+                .arg(immutable.staticInvoke("fromJson").arg(param)));
+        absentBits.initialize(body, builder);
+        body._return(builder.invoke("build"));
+    }
+
+    private static JClass immutableClass(JDefinedClass cls) {
+        return ImmutablesTypes.immutable(cls) != null
+                ? ImmutablesTypes.immutable(cls)
+                : cls.owner().ref(cls._package().name() + ".Immutable" + cls.name());
+    }
+
+    private static String attributeName(String jsonName, JMethod getter) {
+        return new GeneratedProperty(jsonName, getter, false).getAttributeName();
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static JExpression zero(JType type) {
+        JCodeModel codeModel = type.owner();
+        if (type == codeModel.BOOLEAN) {
+            return JExpr.FALSE;
+        } else if (type == codeModel.LONG) {
+            return JExpr.lit(0L);
+        } else if (type == codeModel.DOUBLE) {
+            return JExpr.lit(0.0D);
+        } else if (type == codeModel.FLOAT) {
+            return JExpr.lit(0.0F);
+        }
+        return JExpr.lit(0);
     }
 
     private JsonNode getOriginalOrRefProperty(JsonNode originalNode, JsonNode node, String propertyName) {
@@ -95,12 +360,11 @@ public class PropertyRule implements Rule<JDefinedClass, JDefinedClass> {
         return false;
     }
 
-    private JMethod addGetter(JDefinedClass c, JType type, String jsonPropertyName, JsonNode originalNode,
-                              JsonNode node, boolean isRequired, JExpression defaultValue) {
-        int mods = defaultValue == null ? (JMod.PUBLIC | JMod.ABSTRACT) : JMod.PUBLIC;
+    private JMethod addGetter(JDefinedClass c, JType type, String jsonPropertyName, JsonNode node, boolean nullable,
+                              boolean hasBody) {
+        int mods = hasBody ? JMod.PUBLIC : (JMod.PUBLIC | JMod.ABSTRACT);
         JMethod getter = c.method(mods, type, getGetterName(jsonPropertyName, type, node));
-        String nodeType = node.get("type") != null ? node.get("type").asText() : null;
-        if (!isRequired && defaultValue == null && !"array".equals(nodeType)) {
+        if (nullable) {
             getter.annotate(Nullable.class);
         }
         return getter;
@@ -110,21 +374,24 @@ public class PropertyRule implements Rule<JDefinedClass, JDefinedClass> {
         return ruleFactory.getNameHelper().getGetterName(propertyName, type, node);
     }
 
-    private JsonNode resolveRefs(JsonNode node, Schema parent) {
-        if (node.has("$ref")) {
-            Schema refSchema = ruleFactory.getSchemaStore()
-                    .create(parent, node.get("$ref").asText(), ruleFactory.getGenerationConfig().getRefFragmentPathDelimiters());
-            JsonNode refNode = refSchema.getContent();
-            return resolveRefs(refNode, parent);
-        } else {
-            return node;
-        }
-    }
-
     private JExpression getDefaultExpr(JsonNode originalNode, JsonNode node, JClass cls, JType type) {
         JsonNode defaultNode = getOriginalOrRefProperty(originalNode, node, "default");
 
         JCodeModel codeModel = cls.owner();
+        if (type.isArray()) {
+            // like collections, a missing primitive array is empty rather than null
+            JArray array = JExpr.newArray(type.elementType());
+            if (defaultNode != null) {
+                for (JsonNode element : defaultNode) {
+                    array.add(primitiveLiteral(type.elementType(), element));
+                }
+            }
+            return array;
+        }
+        if (type instanceof JClass && ((JClass) type).erasure().fullName().equals(ruleFactory.getPersistentList())) {
+            // Immutables doesn't know it's a collection, so it isn't empty unless it is a default
+            return ((JClass) type).erasure().staticInvoke("empty");
+        }
         if (defaultNode != null) {
             if (type.unboxify() == codeModel.BOOLEAN) {
                 return JExpr.lit(defaultNode.asBoolean());
@@ -150,4 +417,18 @@ public class PropertyRule implements Rule<JDefinedClass, JDefinedClass> {
         }
         return null;
     }
+
+    private static JExpression primitiveLiteral(JType type, JsonNode value) {
+        JCodeModel codeModel = type.owner();
+        if (type == codeModel.BOOLEAN) {
+            return JExpr.lit(value.asBoolean());
+        } else if (type == codeModel.INT) {
+            return JExpr.lit(value.asInt());
+        } else if (type == codeModel.LONG) {
+            return JExpr.lit(value.asLong());
+        } else if (type == codeModel.FLOAT) {
+            return JExpr.lit((float) value.asDouble());
+        }
+        return JExpr.lit(value.asDouble());
+    }
 }
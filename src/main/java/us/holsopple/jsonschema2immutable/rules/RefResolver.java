@@ -0,0 +1,161 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jsonschema2pojo.Schema;
+import org.jsonschema2pojo.exception.GenerationException;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Memoizes {@code $ref} resolution for the rules of one {@link ImmutableRuleFactory}.
+ * <p>
+ * Both single lookups in the {@link org.jsonschema2pojo.SchemaStore} and the schema at the end of a chain of
+ * {@code $ref}s are cached by the id of the referring schema and the reference. Chains are followed iteratively, and a
+ * chain that leads back to a schema it already passed is reported as a {@link GenerationException}.
+ * <p>
+ * Hits and misses count calls to {@link #create} and {@link #resolve}, each once, however many links of a chain a
+ * miss has to look up.
+ */
+public class RefResolver {
+    private final ImmutableRuleFactory ruleFactory;
+    private final ConcurrentMap<Key, Schema> schemas = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, Schema> targets = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    RefResolver(ImmutableRuleFactory ruleFactory) {
+        this.ruleFactory = ruleFactory;
+    }
+
+    /**
+     * Looks up the schema at {@code path} relative to {@code parent}, without following a {@code $ref} it contains.
+     */
+    public Schema create(Schema parent, String path) {
+        Key key = new Key(parent.getId(), path);
+        Schema schema = schemas.get(key);
+        if (schema != null) {
+            hits.incrementAndGet();
+            return schema;
+        }
+        misses.incrementAndGet();
+        return lookUp(key, parent);
+    }
+
+    /**
+     * Looks up a schema for {@link #create} or a link of a chain, without counting it.
+     */
+    private Schema lookUp(Key key, Schema parent) {
+        Schema schema = schemas.get(key);
+        if (schema != null) {
+            return schema;
+        }
+        try (RuleProfiler.Section ignored = ruleFactory.getProfiler().enter("SchemaStore.create", parent)) {
+            schema = ruleFactory.getSchemaStore()
+                    .create(parent, key.ref, ruleFactory.getGenerationConfig().getRefFragmentPathDelimiters());
+        }
+        schemas.putIfAbsent(key, schema);
+        return schema;
+    }
+
+    /**
+     * Follows {@code $ref}s starting at {@code node} until reaching a schema that isn't a reference.
+     *
+     * @return the content of that schema, or {@code node} itself if it isn't a reference
+     */
+    public JsonNode resolve(JsonNode node, Schema parent) {
+        if (!node.has("$ref")) {
+            return node;
+        }
+
+        Key start = new Key(parent.getId(), node.get("$ref").asText());
+        Schema target = targets.get(start);
+        if (target != null) {
+            hits.incrementAndGet();
+            return target.getContent();
+        }
+        misses.incrementAndGet();
+
+        try (RuleProfiler.Section ignored = ruleFactory.getProfiler().enter("RefResolver.resolve", parent)) {
+            return resolveChain(start, parent).getContent();
+        }
+    }
+
+    private Schema resolveChain(Key start, Schema parent) {
+        Schema target = null;
+        List<Key> chain = new ArrayList<>();
+        Key key = start;
+        while (target == null) {
+            if (chain.contains(key)) {
+                chain.add(key);
+                throw new GenerationException("circular $ref: " +
+                        chain.stream().map(Key::toString).collect(Collectors.joining(" -> ")));
+            }
+            chain.add(key);
+
+            Schema schema = lookUp(key, parent);
+            JsonNode ref = schema.getContent().get("$ref");
+            if (ref == null) {
+                target = schema;
+            } else {
+                parent = schema;
+                key = new Key(schema.getId(), ref.asText());
+                target = targets.get(key);
+            }
+        }
+
+        for (Key resolved : chain) {
+            targets.putIfAbsent(resolved, target);
+        }
+        return target;
+    }
+
+    /**
+     * @return how many calls were answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many calls had to go to the schema store
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static final class Key {
+        private final URI parent;
+        private final String ref;
+
+        private Key(URI parent, String ref) {
+            this.parent = parent;
+            this.ref = ref;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(parent, key.parent) && ref.equals(key.ref);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(parent) + ref.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return parent == null ? ref : parent + " " + ref;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jsonschema2pojo.Schema;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.lang3.StringUtils.substringBefore;
+
+/**
+ * Collects time and allocation counters for the rules of an {@link ImmutableRuleFactory}, broken down by schema
+ * document and rule.
+ * <p>
+ * Rules call each other recursively, so every section is counted both in total and by itself, excluding the nested
+ * sections it entered. Allocations are measured with the per-thread allocation counter of the JVM where it is
+ * available, otherwise they are reported as zero. One profiler can be shared by rule factories on several threads.
+ */
+public class RuleProfiler {
+    /**
+     * A profiler that doesn't count anything.
+     */
+    public static final RuleProfiler NONE = new RuleProfiler(false);
+
+    private static final String NO_SCHEMA = "(none)";
+    private static final Section NO_SECTION = () -> {
+    };
+
+    private final boolean enabled;
+    private final ConcurrentMap<String, ConcurrentMap<String, Counter>> schemas = new ConcurrentHashMap<>();
+    private final ThreadLocal<Deque<Frame>> stack = ThreadLocal.withInitial(ArrayDeque::new);
+    private final com.sun.management.ThreadMXBean allocations;
+
+    public RuleProfiler() {
+        this(true);
+    }
+
+    private RuleProfiler(boolean enabled) {
+        this.enabled = enabled;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            this.allocations = (com.sun.management.ThreadMXBean) threads;
+        } else {
+            this.allocations = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts counting a section of work on behalf of the given schema, or of the enclosing section's schema if it is
+     * null. The section ends when it is closed, which must happen on the same thread and in reverse order of entering.
+     */
+    public Section enter(String name, Schema schema) {
+        if (!enabled) {
+            return NO_SECTION;
+        }
+        Deque<Frame> frames = stack.get();
+        String document;
+        if (schema != null && schema.getId() != null) {
+            document = substringBefore(schema.getId().toString(), "#");
+        } else {
+            document = frames.isEmpty() ? NO_SCHEMA : frames.peek().document;
+        }
+        Frame frame = new Frame(document, name);
+        frames.push(frame);
+        return frame;
+    }
+
+    /**
+     * Adds the counters of another profiler to those of this one.
+     */
+    public void add(RuleProfiler other) {
+        other.schemas.forEach((document, rules) -> rules.forEach((rule, counter) ->
+                schemas.computeIfAbsent(document, d -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(rule, r -> new Counter()).add(counter)));
+    }
+
+    /**
+     * Writes all counters as JSON and prints the schemas that took the most time.
+     */
+    public void report(Path json, int top, PrintStream out) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        ObjectNode report = mapper.createObjectNode();
+
+        Map<String, Counter> rules = new TreeMap<>();
+        List<Map.Entry<String, Counter>> documents = new ArrayList<>();
+        ArrayNode schemaNodes = report.putArray("schemas");
+        for (Map.Entry<String, ConcurrentMap<String, Counter>> schema : new TreeMap<>(schemas).entrySet()) {
+            Counter schemaTotal = new Counter();
+            ObjectNode schemaNode = schemaNodes.addObject().put("schema", schema.getKey());
+            ObjectNode ruleNodes = schemaNode.putObject("rules");
+            for (Map.Entry<String, Counter> rule : new TreeMap<>(schema.getValue()).entrySet()) {
+                rule.getValue().write(ruleNodes.putObject(rule.getKey()));
+                rules.computeIfAbsent(rule.getKey(), r -> new Counter()).add(rule.getValue());
+                schemaTotal.add(rule.getValue());
+            }
+            schemaNode.put("selfMillis", millis(schemaTotal.selfNanos.sum()))
+                    .put("selfBytes", schemaTotal.selfBytes.sum());
+            documents.add(new AbstractMap.SimpleEntry<>(schema.getKey(), schemaTotal));
+        }
+
+        ObjectNode ruleNodes = report.putObject("rules");
+        rules.forEach((rule, counter) -> counter.write(ruleNodes.putObject(rule)));
+        mapper.writeValue(json.toFile(), report);
+
+        documents.sort(Comparator.comparingLong((Map.Entry<String, Counter> e) -> e.getValue().selfNanos.sum())
+                .reversed());
+        out.println("slowest schemas (profile written to " + json + "):");
+        for (Map.Entry<String, Counter> document : documents.subList(0, Math.min(top, documents.size()))) {
+            out.printf("%10.1f ms %12d bytes  %s%n", millis(document.getValue().selfNanos.sum()),
+                    document.getValue().selfBytes.sum(), document.getKey());
+        }
+    }
+
+    private long allocatedBytes() {
+        return allocations == null ? 0 : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * A section of work being counted.
+     */
+    public interface Section extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final class Frame implements Section {
+        private final String document;
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private final long startBytes = allocatedBytes();
+        private long childNanos;
+        private long childBytes;
+
+        private Frame(String document, String name) {
+            this.document = document;
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - startNanos;
+            long bytes = allocatedBytes() - startBytes;
+
+            Deque<Frame> frames = stack.get();
+            frames.pop();
+            Frame parent = frames.peek();
+            if (parent != null) {
+                parent.childNanos += nanos;
+                parent.childBytes += bytes;
+            }
+
+            Counter counter = schemas.computeIfAbsent(document, d -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(name, n -> new Counter());
+            counter.calls.increment();
+            counter.totalNanos.add(nanos);
+            counter.selfNanos.add(nanos - childNanos);
+            counter.totalBytes.add(bytes);
+            counter.selfBytes.add(bytes - childBytes);
+        }
+    }
+
+    private static final class Counter {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder selfNanos = new LongAdder();
+        private final LongAdder totalBytes = new LongAdder();
+        private final LongAdder selfBytes = new LongAdder();
+
+        private void add(Counter other) {
+            calls.add(other.calls.sum());
+            totalNanos.add(other.totalNanos.sum());
+            selfNanos.add(other.selfNanos.sum());
+            totalBytes.add(other.totalBytes.sum());
+            selfBytes.add(other.selfBytes.sum());
+        }
+
+        private void write(ObjectNode node) {
+            node.put("calls", calls.sum())
+                    .put("totalMillis", millis(totalNanos.sum()))
+                    .put("selfMillis", millis(selfNanos.sum()))
+                    .put("totalBytes", totalBytes.sum())
+                    .put("selfBytes", selfBytes.sum());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.sun.codemodel.JPackage;
+import com.sun.codemodel.JType;
+import org.jsonschema2pojo.Schema;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps structurally identical object and enum schemas to a single generated type.
+ * <p>
+ * A schema is identified by a hash of its canonical form: object keys are sorted, {@code $ref}s are made absolute
+ * against the document they appear in, and the keywords of the schema that don't shape the type are left out: those
+ * that only describe the property it is used for (title, description, default and the boolean form of required) and
+ * those that identify it ({@code id}, {@code $id} and {@code $schema}). The first schema with a given hash names the
+ * type, later ones reuse it. The root schema of a source document always gets its own type.
+ */
+public class SchemaDeduplicator {
+    private static final Set<String> PROPERTY_KEYWORDS = new HashSet<>(Arrays.asList(
+            "title", "description", "default", "id", "$id", "$schema"));
+
+    private final ConcurrentMap<String, JType> types = new ConcurrentHashMap<>();
+
+    SchemaDeduplicator() {
+    }
+
+    /**
+     * @return the fingerprint of {@code node} as a schema for a type in {@code _package}, or null if it must not be
+     * deduplicated
+     */
+    public String fingerprint(String kind, JsonNode node, JPackage _package, Schema schema) {
+        if (node.has("javaType") || node.has("existingJavaType")) {
+            return null;
+        }
+        URI document = schema.getId();
+        if (document == null || (node == schema.getContent() && document.getFragment() == null)) {
+            return null;
+        }
+
+        StringBuilder canonical = new StringBuilder(kind).append(' ').append(_package.name()).append(' ');
+        canonicalize(node, document, true, canonical);
+        return hash(canonical.toString());
+    }
+
+    /**
+     * @return the type generated for an earlier schema with the same fingerprint, or null
+     */
+    public JType find(String fingerprint) {
+        return types.get(fingerprint);
+    }
+
+    public void register(String fingerprint, JType type) {
+        types.putIfAbsent(fingerprint, type);
+    }
+
+    private static void canonicalize(JsonNode node, URI document, boolean root, StringBuilder out) {
+        if (node.isObject()) {
+            out.append('{');
+            for (String field : new TreeSet<>(toList(node.fieldNames()))) {
+                JsonNode value = node.get(field);
+                if (root && (PROPERTY_KEYWORDS.contains(field) || ("required".equals(field) && value.isBoolean()))) {
+                    continue;
+                }
+                out.append(quote(field)).append(':');
+                if ("$ref".equals(field) && value.isTextual()) {
+                    out.append(quote(document.resolve(value.asText()).toString()));
+                } else {
+                    canonicalize(value, document, false, out);
+                }
+                out.append(',');
+            }
+            out.append('}');
+        } else if (node.isArray()) {
+            out.append('[');
+            for (JsonNode element : node) {
+                canonicalize(element, document, false, out);
+                out.append(',');
+            }
+            out.append(']');
+        } else {
+            out.append(node.toString());
+        }
+    }
+
+    private static List<String> toList(Iterator<String> names) {
+        List<String> list = new ArrayList<>();
+        names.forEachRemaining(list::add);
+        return list;
+    }
+
+    private static String quote(String text) {
+        return TextNode.valueOf(text).toString();
+    }
+
+    private static String hash(String canonical) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return Base64.getEncoder().encodeToString(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,165 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.*;
+import org.immutables.value.Value;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Completes a value type with optional primitives stored unboxed once all of its properties were added, so that every
+ * way of setting one of them marks it present, zeros included.
+ * <p>
+ * The builder and the with-ers Immutables generates can't tell a zero that was set from one that is absent. The
+ * Immutables builder is therefore package-private, and Immutables generates no with-ers and no {@code copyOf}: the
+ * value type has a {@code Builder} of its own instead, which keeps the {@code absentBits} of the properties it is
+ * given, and a with-er for every attribute that copies the instance through it. A {@code ModifiableX} has the
+ * properties present whose setters were called, which the default of its {@code absentBits} attributes reads from the
+ * {@code xIsSet()} methods, unless {@code from} copied the presence of another instance into it.
+ */
+public final class UnboxedOptionalsGenerator {
+    private static final String BUILDER = "Builder";
+
+    /**
+     * The name Immutables would take a builder nested in the value type for an extension of its own by, which no
+     * class has, so that it leaves the {@link #BUILDER} alone.
+     */
+    private static final String INNER_BUILDER = "ImmutablesBuilder";
+
+    private UnboxedOptionalsGenerator() {
+    }
+
+    /**
+     * Adds the builder and the with-ers of a value type with optional primitives stored unboxed, and the bodies of its
+     * {@code absentBits} attributes, once all of its properties were added.
+     */
+    static void generate(JDefinedClass cls, List<GeneratedProperty> generated) {
+        Map<String, GeneratedProperty> distinct = new LinkedHashMap<>();
+        for (GeneratedProperty property : generated) {
+            distinct.putIfAbsent(property.getAttributeName(), property);
+        }
+        List<GeneratedProperty> properties = new ArrayList<>(distinct.values());
+
+        Map<JMethod, List<GeneratedProperty>> words = new LinkedHashMap<>();
+        for (GeneratedProperty property : properties) {
+            if (property.getPresence() != null) {
+                words.computeIfAbsent(property.getAbsentBits(), word -> new ArrayList<>()).add(property);
+            }
+        }
+
+        style(cls);
+        absentBits(cls, words);
+        JDefinedClass builder = builder(cls, properties, words.keySet());
+        withers(cls, properties, builder);
+    }
+
+    private static void style(JDefinedClass cls) {
+        for (JAnnotationUse annotation : cls.annotations()) {
+            if (annotation.getAnnotationClass().fullName().equals(Value.Immutable.class.getCanonicalName())) {
+                annotation.param("copy", false);
+            }
+        }
+        cls.annotate(Value.Style.class)
+                .param("builderVisibility", Value.Style.BuilderVisibility.PACKAGE)
+                .param("typeInnerBuilder", INNER_BUILDER);
+    }
+
+    /**
+     * Has the {@code absentBits} attributes of a {@code Modifiable} default to the properties that weren't set, and
+     * those of an immutable instance to all of them absent.
+     */
+    private static void absentBits(JDefinedClass cls, Map<JMethod, List<GeneratedProperty>> words) {
+        JCodeModel codeModel = cls.owner();
+        JDefinedClass modifiable = ImmutablesTypes.modifiable(cls);
+        for (Map.Entry<JMethod, List<GeneratedProperty>> word : words.entrySet()) {
+            JBlock body = word.getKey().body();
+            if (modifiable != null) {
+                JBlock then = body._if(JExpr._this()._instanceof(modifiable))._then();
+                JVar instance = then.decl(modifiable, "modifiable", JExpr.cast(modifiable, JExpr._this()));
+                JVar bits = then.decl(codeModel.LONG, word.getKey().name(), JExpr.lit(-1L));
+                for (GeneratedProperty property : word.getValue()) {
+                    then._if(instance.invoke(property.getAttributeName() + "IsSet"))._then()
+                            .assign(bits, bits.band(JExpr.lit(~property.getAbsentBit())));
+                }
+                then._return(bits);
+            }
+            body._return(JExpr.lit(-1L));
+        }
+    }
+
+    private static JDefinedClass builder(JDefinedClass cls, List<GeneratedProperty> properties,
+                                         Iterable<JMethod> words) {
+        JCodeModel codeModel = cls.owner();
+        JDefinedClass builder;
+        try {
+            builder = cls._class(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, BUILDER);
+        } catch (JClassAlreadyExistsException ex) {
+            throw new IllegalStateException(ex);
+        }
+        builder.javadoc().add("Builds {@link " + cls.name() + "} instances, with the optional primitives it is given "
+                + "present, zeros included.");
+        JClass immutable = ImmutablesTypes.immutable(cls) != null
+                ? ImmutablesTypes.immutable(cls)
+                : codeModel.ref(cls._package().name() + ".Immutable" + cls.name());
+        JClass immutableBuilder = immutable instanceof JDefinedClass
+                ? ImmutablesTypes.builder((JDefinedClass) immutable)
+                : codeModel.directClass(immutable.fullName() + ".Builder");
+        JFieldVar delegate = builder.field(JMod.PRIVATE | JMod.FINAL, immutableBuilder, "builder",
+                immutable.staticInvoke("builder"));
+        Map<JMethod, JFieldVar> fields = new LinkedHashMap<>();
+        for (JMethod word : words) {
+            fields.put(word, builder.field(JMod.PRIVATE, codeModel.LONG, word.name(), JExpr.lit(-1L)));
+        }
+
+        JMethod from = builder.method(JMod.PUBLIC, builder, "from");
+        from.javadoc().add("Sets the properties of {@code instance}, keeping the ones it doesn't have absent.");
+        JVar instance = from.param(cls, "instance");
+        from.body().add(delegate.invoke("from").arg(instance));
+        for (Map.Entry<JMethod, JFieldVar> field : fields.entrySet()) {
+            from.body().assign(JExpr._this().ref(field.getValue()), instance.invoke(field.getKey()));
+        }
+        from.body()._return(JExpr._this());
+
+        for (GeneratedProperty property : properties) {
+            String name = property.getAttributeName();
+            JMethod setter = builder.method(JMod.PUBLIC, builder, name);
+            JVar value = setter.param(property.getType(), name);
+            if (property.isNullable()) {
+                value.annotate(Nullable.class);
+            }
+            setter.body().add(delegate.invoke(name).arg(value));
+            if (property.getPresence() != null) {
+                JFieldVar bits = fields.get(property.getAbsentBits());
+                setter.body().assign(JExpr._this().ref(bits), bits.band(JExpr.lit(~property.getAbsentBit())));
+            }
+            setter.body()._return(JExpr._this());
+        }
+
+        JMethod build = builder.method(JMod.PUBLIC, cls, "build");
+        JExpression built = delegate;
+        for (Map.Entry<JMethod, JFieldVar> field : fields.entrySet()) {
+            built = built.invoke(field.getKey().name()).arg(field.getValue());
+        }
+        build.body()._return(built.invoke("build"));
+        return builder;
+    }
+
+    private static void withers(JDefinedClass cls, List<GeneratedProperty> properties, JDefinedClass builder) {
+        for (GeneratedProperty property : properties) {
+            String name = property.getAttributeName();
+            JMethod wither = cls.method(JMod.PUBLIC, cls,
+                    "with" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+            wither.javadoc().add("@return a copy with " + property.getJsonName()
+                    + (property.getPresence() != null ? " present and" : "") + " set to {@code " + name + "}");
+            JVar value = wither.param(property.getType(), name);
+            if (property.isNullable()) {
+                value.annotate(Nullable.class);
+            }
+            wither.body()._return(JExpr._new(builder).invoke("from").arg(JExpr._this())
+                    .invoke(name).arg(value).invoke("build"));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package us.holsopple.jsonschema2immutable;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles generated sources in-process, with the Immutables annotation processor, and loads their classes, so that
+ * tests can check what the generated code does.
+ */
+public final class GeneratedClasses implements Closeable {
+    private static final Map<Class<?>, Class<?>> BOXES = new HashMap<>();
+
+    static {
+        BOXES.put(boolean.class, Boolean.class);
+        BOXES.put(int.class, Integer.class);
+        BOXES.put(long.class, Long.class);
+        BOXES.put(float.class, Float.class);
+        BOXES.put(double.class, Double.class);
+    }
+
+    private final Path root;
+    private final URLClassLoader loader;
+
+    private GeneratedClasses(Path root, URLClassLoader loader) {
+        this.root = root;
+        this.loader = loader;
+    }
+
+    public static GeneratedClasses compile(GeneratedSources generated) throws IOException {
+        Path root = Files.createTempDirectory("generated-classes");
+        Path sources = root.resolve("sources");
+        Path classes = Files.createDirectories(root.resolve("classes"));
+        SchemaCompiler.write(generated.files(), sources);
+        List<File> files;
+        try (Stream<Path> paths = Files.walk(sources)) {
+            files = paths.filter(path -> path.toString().endsWith(".java")).map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null,
+                StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                    "-d", classes.toString(), "-nowarn");
+            if (!compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(files)).call()) {
+                throw new AssertionError("generated sources don't compile: " + diagnostics.getDiagnostics());
+            }
+        }
+        // generated resources, like service files, are found next to the classes
+        SchemaCompiler.write(generated.files().entrySet().stream()
+                .filter(file -> !file.getKey().endsWith(".java"))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)), classes);
+        return new GeneratedClasses(root, new URLClassLoader(new URL[]{classes.toUri().toURL()},
+                GeneratedClasses.class.getClassLoader()));
+    }
+
+    public ClassLoader getClassLoader() {
+        return loader;
+    }
+
+    public Class<?> load(String name) throws ClassNotFoundException {
+        return Class.forName(name, true, loader);
+    }
+
+    /**
+     * Calls the public static method of a generated class that takes the given arguments.
+     */
+    public Object invokeStatic(String className, String name, Object... args) throws Exception {
+        return invoke(load(className), null, name, args);
+    }
+
+    /**
+     * Calls the public method of {@code target} that takes the given arguments.
+     */
+    public static Object invoke(Object target, String name, Object... args) throws Exception {
+        return invoke(target.getClass(), target, name, args);
+    }
+
+    private static Object invoke(Class<?> cls, Object target, String name, Object... args) throws Exception {
+        for (Method method : cls.getMethods()) {
+            if (method.getName().equals(name) && (target == null) == Modifier.isStatic(method.getModifiers())
+                    && accepts(method.getParameterTypes(), args)) {
+                // the method may be declared by a class that isn't public, like a builder's superclass
+                method.setAccessible(true);
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException ex) {
+                    if (ex.getCause() instanceof Exception) {
+                        throw (Exception) ex.getCause();
+                    }
+                    throw ex;
+                }
+            }
+        }
+        throw new NoSuchMethodException(cls.getName() + "." + name + Arrays.toString(args));
+    }
+
+    private static boolean accepts(Class<?>[] parameterTypes, Object[] args) {
+        if (parameterTypes.length != args.length) {
+            return false;
+        }
+        for (int i = 0; i < args.length; i++) {
+            Class<?> type = BOXES.getOrDefault(parameterTypes[i], parameterTypes[i]);
+            if (args[i] == null ? parameterTypes[i].isPrimitive() : !type.isInstance(args[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        loader.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package us.holsopple.jsonschema2immutable;
+
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IncrementalCompilerTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testOnlyChangedSchemasAreRegenerated() throws Exception {
+        Path schemas = dir.resolve("schema");
+        Path output = dir.resolve("output");
+        Files.createDirectories(schemas);
+        List<Path> sources = new ArrayList<>();
+        for (Path schema : SchemaCompilerTest.schemas()) {
+            sources.add(Files.copy(schema, schemas.resolve(schema.getFileName())));
+        }
+        IncrementalCompiler compiler = new IncrementalCompiler(
+                new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1), "test");
+
+        assertEquals(sources.size(), compiler.generate(sources, output));
+        assertEquals(0, compiler.generate(sources, output));
+
+        // dirk-schema.json references address.json, so it is regenerated with it
+        Path address = schemas.resolve("address.json");
+        Files.write(address, new String(Files.readAllBytes(address), "UTF-8")
+                .replace("\"post-office-box\"", "\"poBox\"").getBytes("UTF-8"));
+        assertEquals(2, compiler.generate(sources, output));
+
+        Path product = output.resolve("Product.java");
+        assertTrue(Files.exists(product));
+        sources.remove(schemas.resolve("array.json"));
+        assertEquals(0, compiler.generate(sources, output));
+        assertFalse(Files.exists(product));
+    }
+
+    @Test
+    public void testMissingOutputIsRegenerated() throws Exception {
+        List<Path> sources = SchemaCompilerTest.schemas();
+        Path output = dir.resolve("output");
+        Path manifest = dir.resolve("state").resolve("manifest.json");
+        IncrementalCompiler compiler = new IncrementalCompiler(
+                new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1), "test");
+
+        assertEquals(sources.size(), compiler.generate(sources, output, manifest));
+        assertTrue(Files.exists(manifest));
+        assertFalse(Files.exists(output.resolve(Manifest.FILE_NAME)));
+        assertEquals(0, compiler.generate(sources, output, manifest));
+
+        Files.delete(output.resolve("Product.java"));
+        assertEquals(sources.size(), compiler.generate(sources, output, manifest));
+        assertTrue(Files.exists(output.resolve("Product.java")));
+    }
+}
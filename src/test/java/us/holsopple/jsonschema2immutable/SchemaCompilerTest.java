@@ -0,0 +1,103 @@
+package us.holsopple.jsonschema2immutable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.jsonschema2pojo.GenerationConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import us.holsopple.jsonschema2immutable.rules.RuleProfiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SchemaCompilerTest {
+    private final GenerationConfig config = new DefaultGenerationConfig();
+
+    @Test
+    public void testParallelOutputMatchesSequential() throws Exception {
+        List<Path> sources = schemas();
+
+        Map<String, byte[]> sequential = new SchemaCompiler(config, "com.example", 1).compile(sources).files();
+        Map<String, byte[]> parallel = new SchemaCompiler(config, "com.example", 4).compile(sources).files();
+
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential.keySet(), parallel.keySet());
+        for (Map.Entry<String, byte[]> file : sequential.entrySet()) {
+            assertArrayEquals(file.getValue(), parallel.get(file.getKey()), file.getKey());
+        }
+    }
+
+    @Test
+    public void testFallbackCountsTheSequentialRunOnly(@TempDir Path output) throws Exception {
+        // both documents have an inline part, which the partitions would each generate as Part
+        Path dir = Paths.get(SchemaCompilerTest.class.getResource("/clash").toURI());
+        List<Path> sources = Arrays.asList(dir.resolve("first.json"), dir.resolve("second.json"));
+
+        SchemaCompiler sequential = new SchemaCompiler(config, "com.example", 1);
+        RuleProfiler sequentialProfiler = new RuleProfiler();
+        sequential.setProfiler(sequentialProfiler);
+        Map<String, byte[]> expected = sequential.compile(sources).files();
+        SchemaCompiler parallel = new SchemaCompiler(config, "com.example", 2);
+        RuleProfiler parallelProfiler = new RuleProfiler();
+        parallel.setProfiler(parallelProfiler);
+        Map<String, byte[]> files = parallel.compile(sources).files();
+
+        assertTrue(files.containsKey("com/example/Part__1.java"), files.keySet().toString());
+        assertEquals(expected.keySet(), files.keySet());
+        assertEquals(sequential.getRefCacheHits(), parallel.getRefCacheHits());
+        assertEquals(sequential.getRefCacheMisses(), parallel.getRefCacheMisses());
+        assertEquals(calls(sequentialProfiler, output.resolve("sequential.json")),
+                calls(parallelProfiler, output.resolve("parallel.json")));
+    }
+
+    @Test
+    public void testStreamedOutputMatchesCompiled(@TempDir Path output) throws Exception {
+        List<Path> sources = schemas();
+
+        Map<String, byte[]> compiled = new SchemaCompiler(config, "com.example", 1).compile(sources).files();
+        new SchemaCompiler(config, "com.example", 1).stream(sources, output, 2);
+
+        for (Map.Entry<String, byte[]> file : compiled.entrySet()) {
+            assertArrayEquals(file.getValue(), Files.readAllBytes(output.resolve(file.getKey())), file.getKey());
+        }
+        try (Stream<Path> written = Files.walk(output)) {
+            assertEquals(compiled.size(), written.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void testConfigurationIdentifiesTheGenerator() {
+        SchemaCompiler compiler = new SchemaCompiler(config, "com.example", 1);
+        compiler.setJacksonModule(true);
+
+        // the tests run the generator from its class files, which are hashed like a jar would be
+        assertTrue(compiler.getConfiguration().matches("generator=[0-9a-f]{16};package=com\\.example;jackson-module"),
+                compiler.getConfiguration());
+    }
+
+    private static long calls(RuleProfiler profiler, Path json) throws Exception {
+        profiler.report(json, 0, new PrintStream(new ByteArrayOutputStream()));
+        return new ObjectMapper().readTree(json.toFile()).get("rules").get("PropertyRule").get("calls").asLong();
+    }
+
+    static List<Path> schemas() throws Exception {
+        Path dir = Paths.get(SchemaCompilerTest.class.getResource("/schema").toURI());
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+}
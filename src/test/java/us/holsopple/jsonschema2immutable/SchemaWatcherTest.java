@@ -0,0 +1,78 @@
+package us.holsopple.jsonschema2immutable;
+
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SchemaWatcherTest {
+    private static final String SCHEMA = "{\"type\": \"object\", \"javaType\": \"com.example.Point\", "
+            + "\"properties\": {\"x\": {\"type\": \"integer\"}}}";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testKeepsWatchingAfterAnError() throws Exception {
+        Path schemas = Files.createDirectories(dir.resolve("schema"));
+        Path output = dir.resolve("output");
+        Path schema = Files.write(schemas.resolve("point.json"), SCHEMA.getBytes("UTF-8"));
+        Path point = output.resolve("com/example/Point.java");
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+
+        PrintStream err = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errors, true, "UTF-8"));
+        try (SchemaWatcher watcher = new SchemaWatcher(Collections.singletonList(schemas), output, compiler,
+                new IncrementalCompiler(compiler, "test"), 50)) {
+            Thread thread = new Thread(() -> {
+                try {
+                    watcher.run();
+                } catch (Exception ex) {
+                    // closing the watcher ends it
+                }
+            });
+            thread.start();
+            try {
+                waitFor(() -> Files.exists(point));
+
+                Files.write(schema, "{\"type\": \"object\", ".getBytes("UTF-8"));
+                waitFor(() -> errors.toString().contains("error generating sources"));
+                assertTrue(thread.isAlive());
+
+                Files.write(schema, SCHEMA.replace("\"x\"", "\"y\"").getBytes("UTF-8"));
+                waitFor(() -> new String(read(point)).contains("getY()"));
+            } finally {
+                thread.interrupt();
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+        } finally {
+            System.setErr(err);
+        }
+    }
+
+    private static byte[] read(Path path) {
+        try {
+            return Files.readAllBytes(path);
+        } catch (Exception ex) {
+            return new byte[0];
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+}
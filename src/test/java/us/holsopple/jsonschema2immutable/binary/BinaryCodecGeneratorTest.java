@@ -0,0 +1,143 @@
+package us.holsopple.jsonschema2immutable.binary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryCodecGeneratorTest {
+    private static final Pattern FINGERPRINT = Pattern.compile("long FINGERPRINT = (-?\\d+)L;");
+
+    @Test
+    public void testCodecsAndSharedClasses() throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setBinaryCodec(true);
+        GeneratedSources generated = compiler.compile(Collections.singletonList(source("/schema/dirk-schema.json")));
+
+        assertEquals(Arrays.asList("com/example/BinaryOutput.java", "com/example/BinaryInput.java"),
+                compiler.getSharedPaths());
+        for (String path : compiler.getSharedPaths()) {
+            assertTrue(generated.files().containsKey(path), path);
+        }
+
+        String dirkSchema = new String(generated.files().get("com/example/DirkSchema.java"), "UTF-8");
+        assertTrue(dirkSchema.contains("public final static class BinaryCodec"), dirkSchema);
+        // three nullable properties share one presence byte
+        assertTrue(dirkSchema.contains("int present0 = in.get();"), dirkSchema);
+        assertFalse(dirkSchema.contains("present1"), dirkSchema);
+        assertTrue(dirkSchema.contains("builder.enumField(ENUM_FIELD_VALUES[BinaryInput.readOrdinal(in, "
+                + "ENUM_FIELD_VALUES.length)]);"), dirkSchema);
+        assertTrue(dirkSchema.contains("Person.BinaryCodec.write(peopleElement, out);"), dirkSchema);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setBinaryCodec(true);
+        try (GeneratedClasses classes = GeneratedClasses.compile(
+                compiler.compile(Collections.singletonList(source("/schema/dirk-schema.json"))))) {
+            Object dirk = new ObjectMapper().readValue(Files.readAllBytes(source("/documents/dirk.json")),
+                    classes.load("com.example.DirkSchema"));
+            byte[] payload = (byte[]) classes.invokeStatic("com.example.DirkSchema$BinaryCodec", "encode", dirk);
+
+            for (ByteBuffer in : buffers(payload)) {
+                assertEquals(dirk, classes.invokeStatic("com.example.DirkSchema$BinaryCodec", "decode", in));
+                assertFalse(in.hasRemaining(), in.toString());
+            }
+
+            byte[] address = (byte[]) classes.invokeStatic("com.example.Address$BinaryCodec", "encode",
+                    GeneratedClasses.invoke(dirk, "getHomeAddress"));
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> classes.invokeStatic(
+                    "com.example.DirkSchema$BinaryCodec", "decode", ByteBuffer.wrap(address)));
+            assertTrue(ex.getMessage().contains("doesn't match com.example.DirkSchema"), ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testSignedIntegersAndCorruptPayloads() throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setBinaryCodec(true);
+        try (GeneratedClasses classes = GeneratedClasses.compile(
+                compiler.compile(Collections.singletonList(source("/binary/tally.json"))))) {
+            Class<?> tally = classes.load("com.example.Tally");
+            String codec = "com.example.Tally$BinaryCodec";
+            ObjectMapper mapper = new ObjectMapper();
+
+            // zigzag encoding keeps -1 as short as 1: the fingerprint, the ordinal, the level and the size
+            Object small = mapper.readValue("{\"color\": \"green\", \"level\": -1}", tally);
+            byte[] payload = (byte[]) classes.invokeStatic(codec, "encode", small);
+            assertEquals(11, payload.length);
+            assertEquals(small, classes.invokeStatic(codec, "decode", ByteBuffer.wrap(payload)));
+
+            Object large = mapper.readValue("{\"color\": \"red\", \"level\": -2147483648, "
+                    + "\"deltas\": [-1, 0, 1, -64, 64, -2147483648, 2147483647]}", tally);
+            for (ByteBuffer in : buffers((byte[]) classes.invokeStatic(codec, "encode", large))) {
+                assertEquals(large, classes.invokeStatic(codec, "decode", in));
+            }
+
+            long fingerprint = classes.load(codec).getField("FINGERPRINT").getLong(null);
+            IllegalArgumentException ordinal = assertThrows(IllegalArgumentException.class,
+                    () -> classes.invokeStatic(codec, "decode", payload(fingerprint, 2, 0, 0)));
+            assertEquals("ordinal 2 is out of range for 2 constants", ordinal.getMessage());
+            IllegalArgumentException size = assertThrows(IllegalArgumentException.class,
+                    () -> classes.invokeStatic(codec, "decode", payload(fingerprint, 0, 0, 0xFF, 0xFF, 0xFF, 0xFF,
+                            0x0F)));
+            assertEquals("length 4294967295 exceeds the remaining 0 bytes", size.getMessage());
+        }
+    }
+
+    @Test
+    public void testFingerprintIsStable() throws Exception {
+        assertEquals(fingerprint("/schema/dirk-schema.json", "com/example/DirkSchema.java", "com.example"),
+                fingerprint("/schema/dirk-schema.json", "org/example/DirkSchema.java", "org.example"));
+        assertNotEquals(fingerprint("/schema/dirk-schema.json", "com/example/DirkSchema.java", "com.example"),
+                fingerprint("/schema/dirk-schema.json", "com/example/Address.java", "com.example"));
+    }
+
+    private static String fingerprint(String source, String file, String targetPackage) throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), targetPackage, 1);
+        compiler.setBinaryCodec(true);
+        GeneratedSources generated = compiler.compile(Collections.singletonList(source(source)));
+        Matcher matcher = FINGERPRINT.matcher(new String(generated.files().get(file), "UTF-8"));
+        assertTrue(matcher.find(), file);
+        return matcher.group(1);
+    }
+
+    /**
+     * @return the payload in a heap buffer, in a slice of a larger one and after other bytes in a direct buffer
+     */
+    private static List<ByteBuffer> buffers(byte[] payload) {
+        byte[] padded = new byte[payload.length + 6];
+        System.arraycopy(payload, 0, padded, 3, payload.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(payload.length + 5);
+        direct.put(new byte[5]).put(payload).flip().position(5);
+        return Arrays.asList(ByteBuffer.wrap(payload), ByteBuffer.wrap(padded, 3, payload.length).slice(), direct);
+    }
+
+    private static ByteBuffer payload(long fingerprint, int... bytes) {
+        ByteBuffer payload = ByteBuffer.allocate(8 + bytes.length).putLong(fingerprint);
+        for (int b : bytes) {
+            payload.put((byte) b);
+        }
+        payload.flip();
+        return payload;
+    }
+
+    private static Path source(String resource) throws Exception {
+        return Paths.get(BinaryCodecGeneratorTest.class.getResource(resource).toURI());
+    }
+}
@@ -0,0 +1,75 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeserializerGeneratorTest {
+    @Test
+    public void testDeserializersAndModule() throws Exception {
+        SchemaCompiler compiler = compiler();
+        GeneratedSources generated = compiler.compile(Collections.singletonList(schema()));
+
+        assertEquals(new TreeSet<>(Arrays.asList("com.example.Address", "com.example.DirkSchema",
+                "com.example.Person")), generated.moduleTypes());
+
+        String dirkSchema = new String(generated.files().get("com/example/DirkSchema.java"), "UTF-8");
+        assertTrue(dirkSchema.contains("public static class Deserializer"), dirkSchema);
+
+        String module = new String(generated.files().get(compiler.getModulePath()), "UTF-8");
+        assertTrue(module.contains("addValueType(Person.class, ImmutablePerson.class"), module);
+    }
+
+    @Test
+    public void testModuleReadsLikeJackson() throws Exception {
+        byte[] json = Files.readAllBytes(Paths.get(
+                DeserializerGeneratorTest.class.getResource("/documents/dirk.json").toURI()));
+        try (GeneratedClasses classes = GeneratedClasses.compile(compiler().compile(
+                Collections.singletonList(schema())))) {
+            Class<?> dirkSchema = classes.load("com.example.DirkSchema");
+            ObjectMapper plain = new ObjectMapper();
+            ObjectMapper module = new ObjectMapper().registerModule(
+                    (Module) classes.load("com.example.JsonSchemaModule").getConstructor().newInstance());
+
+            DefaultDeserializationContext context = ((DefaultDeserializationContext) module
+                    .getDeserializationContext()).createInstance(module.getDeserializationConfig(),
+                    module.getFactory().createParser(json), null);
+            assertEquals(classes.load("com.example.DirkSchema$Deserializer"),
+                    context.findRootValueDeserializer(module.constructType(dirkSchema)).getClass());
+
+            // nested objects and the elements of lists are read by their own deserializers
+            Object expected = plain.readValue(json, dirkSchema);
+            assertEquals(expected, module.readValue(json, dirkSchema));
+            assertEquals(plain.readValue("{\"firstName\": \"Dirk\", \"requiredNum\": 0, \"workAddress\": "
+                    + "{\"locality\": \"City\", \"region\": \"State\", \"country-name\": \"Land\"}}", dirkSchema),
+                    module.readValue("{\"firstName\": \"Dirk\", \"requiredNum\": 0, \"homeAddress\": null, "
+                            + "\"workAddress\": {\"locality\": \"City\", \"region\": \"State\", "
+                            + "\"country-name\": \"Land\"}}", dirkSchema));
+        }
+    }
+
+    private static SchemaCompiler compiler() {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setJacksonModule(true);
+        return compiler;
+    }
+
+    private static Path schema() throws Exception {
+        return Paths.get(DeserializerGeneratorTest.class.getResource("/schema/dirk-schema.json").toURI());
+    }
+}
@@ -0,0 +1,61 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NativeImageGeneratorTest {
+    @Test
+    public void testMetadata() throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setJacksonModule(true);
+        compiler.setNativeImage(true);
+        GeneratedSources generated = compiler.compile(Arrays.asList(schema("drawing"), schema("shape")));
+
+        assertTrue(generated.reflectedTypes().containsAll(Arrays.asList("com.example.Circle",
+                "com.example.ImmutableCircle", "com.example.ImmutableCircle$Builder",
+                "com.example.ImmutableCircle$Json", "com.example.Kind", "com.example.Shape",
+                "com.example.Shape$Deserializer")));
+
+        String reflectConfig = file(generated, "META-INF/native-image/com/example/reflect-config.json");
+        assertTrue(reflectConfig.contains("\"name\" : \"com.example.ImmutableDrawing$Json\",\n"
+                + "  \"allDeclaredConstructors\" : true,"), reflectConfig);
+        String resourceConfig = file(generated, "META-INF/native-image/com/example/resource-config.json");
+        assertTrue(resourceConfig.contains("\\\\QMETA-INF/services/com.fasterxml.jackson.databind.Module\\\\E"),
+                resourceConfig);
+        assertEquals("com.example.JsonSchemaModule\n",
+                file(generated, "META-INF/services/com.fasterxml.jackson.databind.Module"));
+        String classList = file(generated, "META-INF/appcds/com/example.classlist");
+        assertTrue(classList.contains("com/example/Circle$Deserializer\ncom/example/Circle$Serializer\n"), classList);
+        assertTrue(classList.contains("com/example/JsonSchemaModule\n"), classList);
+
+        String module = file(generated, compiler.getModulePath());
+        assertTrue(module.contains("mapper.registerModule(new JsonSchemaModule());\n"
+                + "        mapper.readerFor(Circle.class);\n        mapper.writerFor(Circle.class);"), module);
+    }
+
+    @Test
+    public void testNeedsJacksonModule() throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setNativeImage(true);
+        assertThrows(IllegalStateException.class, () -> compiler.compile(Collections.singletonList(schema("shape"))));
+    }
+
+    private static String file(GeneratedSources generated, String path) throws Exception {
+        return new String(generated.files().get(path), "UTF-8");
+    }
+
+    private static Path schema(String name) throws Exception {
+        return Paths.get(NativeImageGeneratorTest.class.getResource("/discriminator/" + name + ".json").toURI());
+    }
+}
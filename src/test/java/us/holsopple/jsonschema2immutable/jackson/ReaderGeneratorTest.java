@@ -0,0 +1,77 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReaderGeneratorTest {
+    private static final String SECOND = "{\"firstName\": \"Ann\", \"requiredNum\": 2, \"unknown\": {\"a\": [1]}, "
+            + "\"workAddress\": {\"locality\": \"Village\", \"region\": \"State\", \"country-name\": \"Land\"}, "
+            + "\"people\": [{\"firstName\": \"Dirk\"}]}";
+
+    @Test
+    public void testReadsIntoReusedInstances() throws Exception {
+        GeneratedSources generated = compile();
+
+        String dirkSchema = new String(generated.files().get("com/example/DirkSchema.java"), "UTF-8");
+        assertTrue(dirkSchema.contains("public ModifiableDirkSchema read(JsonParser parser, "
+                + "ModifiableDirkSchema instance)"), dirkSchema);
+        assertTrue(dirkSchema.contains("public ImmutableDirkSchema toImmutable(ModifiableDirkSchema instance)"),
+                dirkSchema);
+    }
+
+    @Test
+    public void testRefillsModifiable() throws Exception {
+        String first = new String(Files.readAllBytes(Paths.get(
+                ReaderGeneratorTest.class.getResource("/documents/dirk.json").toURI())), "UTF-8");
+        try (GeneratedClasses classes = GeneratedClasses.compile(compile())) {
+            ObjectMapper mapper = new ObjectMapper();
+            Class<?> dirkSchema = classes.load("com.example.DirkSchema");
+            Object reader = classes.load("com.example.DirkSchema$Reader").getConstructor(ObjectMapper.class)
+                    .newInstance(mapper);
+            Object instance = classes.invokeStatic("com.example.ModifiableDirkSchema", "create");
+
+            try (JsonParser parser = mapper.getFactory().createParser(first + "\n" + SECOND)) {
+                parser.nextToken();
+                assertSame(instance, GeneratedClasses.invoke(reader, "read", parser, instance));
+                Object firstCopy = GeneratedClasses.invoke(reader, "toImmutable", instance);
+                assertEquals(mapper.readValue(first, dirkSchema), firstCopy);
+                Object workAddress = GeneratedClasses.invoke(instance, "getWorkAddress");
+                Object person = ((List<?>) GeneratedClasses.invoke(instance, "getPeople")).get(0);
+
+                // the second read clears the instance, and refills the nested instances of the first
+                parser.nextToken();
+                assertSame(instance, GeneratedClasses.invoke(reader, "read", parser, instance));
+                assertSame(workAddress, GeneratedClasses.invoke(instance, "getWorkAddress"));
+                assertSame(person, ((List<?>) GeneratedClasses.invoke(instance, "getPeople")).get(0));
+                assertNull(GeneratedClasses.invoke(instance, "getHomeAddress"));
+                assertEquals(mapper.readValue(SECOND.replace("\"unknown\": {\"a\": [1]}, ", ""), dirkSchema),
+                        GeneratedClasses.invoke(reader, "toImmutable", instance));
+                // copies hold no instances the reader refills
+                assertEquals(mapper.readValue(first, dirkSchema), firstCopy);
+            }
+        }
+    }
+
+    private static GeneratedSources compile() throws Exception {
+        Path source = Paths.get(ReaderGeneratorTest.class.getResource("/schema/dirk-schema.json").toURI());
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setReaders(true);
+        return compiler.compile(Collections.singletonList(source));
+    }
+}
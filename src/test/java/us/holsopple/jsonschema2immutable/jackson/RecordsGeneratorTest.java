@@ -0,0 +1,100 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordsGeneratorTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRootSchemasGetRecords() throws Exception {
+        GeneratedSources generated = compile();
+
+        String dirkSchema = new String(generated.files().get("com/example/DirkSchema.java"), "UTF-8");
+        assertTrue(dirkSchema.contains("public static Stream<DirkSchema> ndjson(Path file, ObjectMapper mapper)"),
+                dirkSchema);
+        // referenced documents are root schemas too, the items of an array aren't
+        String address = new String(generated.files().get("com/example/Address.java"), "UTF-8");
+        assertTrue(address.contains("class Records"), address);
+        String person = new String(generated.files().get("com/example/Person.java"), "UTF-8");
+        assertFalse(person.contains("class Records"), person);
+
+        String jsonRecords = new String(generated.files().get("com/example/JsonRecords.java"), "UTF-8");
+        assertTrue(jsonRecords.contains("implements Spliterator<T>"), jsonRecords);
+    }
+
+    @Test
+    public void testStreamsRecords() throws Exception {
+        // large enough to be split into ranges that are read in parallel
+        List<String> expected = new ArrayList<>();
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            expected.add("Town " + i);
+            ndjson.append("{\"locality\": \"Town ").append(i)
+                    .append("\", \"region\": \"State\", \"country-name\": \"Land\"}\n");
+            if (i % 1000 == 0) {
+                ndjson.append("  \n");
+            }
+        }
+        Path file = Files.write(dir.resolve("addresses.ndjson"), ndjson.toString().getBytes(StandardCharsets.UTF_8));
+
+        try (GeneratedClasses classes = GeneratedClasses.compile(compile())) {
+            ObjectMapper mapper = new ObjectMapper();
+            try (Stream<?> records = (Stream<?>) classes.invokeStatic("com.example.Address$Records", "ndjson",
+                    file, mapper)) {
+                assertEquals(expected, localities(records.parallel()));
+            }
+            try (Stream<?> records = (Stream<?>) classes.invokeStatic("com.example.Address$Records", "ndjson",
+                    file, mapper)) {
+                assertEquals(expected, localities(records));
+            }
+
+            InputStream array = new ByteArrayInputStream(("[{\"locality\": \"Town 0\", \"region\": \"State\", "
+                    + "\"country-name\": \"Land\"}, {\"locality\": \"Town 1\", \"region\": \"State\", "
+                    + "\"country-name\": \"Land\"}]").getBytes(StandardCharsets.UTF_8));
+            try (Stream<?> records = (Stream<?>) classes.invokeStatic("com.example.Address$Records", "values",
+                    array, mapper)) {
+                assertEquals(expected.subList(0, 2), localities(records));
+            }
+        }
+    }
+
+    private static List<String> localities(Stream<?> records) {
+        return records.map(record -> {
+            try {
+                return (String) GeneratedClasses.invoke(record, "getLocality");
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }).collect(Collectors.toList());
+    }
+
+    private static GeneratedSources compile() throws Exception {
+        Path source = Paths.get(RecordsGeneratorTest.class.getResource("/schema/dirk-schema.json").toURI());
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setStreamReaders(true);
+        return compiler.compile(Collections.singletonList(source));
+    }
+}
@@ -0,0 +1,73 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SerializerGeneratorTest {
+    @Test
+    public void testNullChecksFollowSchema() throws Exception {
+        SchemaCompiler compiler = compiler();
+        GeneratedSources generated = compiler.compile(Collections.singletonList(schema()));
+
+        String dirkSchema = new String(generated.files().get("com/example/DirkSchema.java"), "UTF-8");
+        assertTrue(dirkSchema.contains("public static class Serializer"), dirkSchema);
+        // required and defaulted properties are never null, optional ones are skipped when they are
+        assertTrue(dirkSchema.contains("generator.writeString(value.getFirstName());"), dirkSchema);
+        assertFalse(dirkSchema.contains("firstNameValue"), dirkSchema);
+
+        String module = new String(generated.files().get(compiler.getModulePath()), "UTF-8");
+        assertTrue(module.contains("Person.Serializer()"), module);
+    }
+
+    @Test
+    public void testModuleWritesLikeJackson() throws Exception {
+        byte[] json = Files.readAllBytes(Paths.get(
+                SerializerGeneratorTest.class.getResource("/documents/dirk.json").toURI()));
+        try (GeneratedClasses classes = GeneratedClasses.compile(compiler().compile(
+                Collections.singletonList(schema())))) {
+            Class<?> dirkSchema = classes.load("com.example.DirkSchema");
+            ObjectMapper plain = new ObjectMapper();
+            ObjectMapper module = new ObjectMapper().registerModule(
+                    (Module) classes.load("com.example.JsonSchemaModule").getConstructor().newInstance());
+            Object value = plain.readValue(json, dirkSchema);
+
+            assertEquals(classes.load("com.example.DirkSchema$Serializer"),
+                    module.getSerializerProviderInstance().findValueSerializer(value.getClass()).getClass());
+            byte[] written = module.writeValueAsBytes(value);
+            assertEquals(plain.readTree(plain.writeValueAsBytes(value)), plain.readTree(written));
+            assertEquals(plain.readTree(json), plain.readTree(written));
+            assertEquals(value, plain.readValue(written, dirkSchema));
+
+            // absent optional properties stay absent
+            Object minimal = plain.readValue("{\"firstName\": \"Dirk\", \"requiredNum\": 0, \"workAddress\": "
+                    + "{\"locality\": \"City\", \"region\": \"State\", \"country-name\": \"Land\"}}", dirkSchema);
+            assertEquals(plain.readTree(plain.writeValueAsBytes(minimal)),
+                    plain.readTree(module.writeValueAsBytes(minimal)));
+            assertFalse(plain.readTree(module.writeValueAsBytes(minimal)).has("homeAddress"));
+        }
+    }
+
+    private static SchemaCompiler compiler() {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setJacksonModule(true);
+        return compiler;
+    }
+
+    private static Path schema() throws Exception {
+        return Paths.get(SerializerGeneratorTest.class.getResource("/schema/dirk-schema.json").toURI());
+    }
+}
@@ -0,0 +1,102 @@
+package us.holsopple.jsonschema2immutable.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ViewGeneratorTest {
+    @Test
+    public void testGettersReadOnlyTheirField() throws Exception {
+        GeneratedSources generated = compile("/schema/dirk-schema.json");
+
+        String dirkSchema = new String(generated.files().get("com/example/DirkSchema.java"), "UTF-8");
+        assertTrue(dirkSchema.contains("public static class View"), dirkSchema);
+        assertTrue(dirkSchema.contains("requiredNumValue = parser.getDoubleValue();"), dirkSchema);
+        assertFalse(dirkSchema.contains("class Deserializer"), dirkSchema);
+    }
+
+    @Test
+    public void testViewsReEmitTheirBytes() throws Exception {
+        byte[] document = Files.readAllBytes(Paths.get(
+                ViewGeneratorTest.class.getResource("/documents/dirk.json").toURI()));
+        // the view wraps part of a larger buffer
+        byte[] padded = new byte[document.length + 6];
+        System.arraycopy(document, 0, padded, 3, document.length);
+        try (GeneratedClasses classes = GeneratedClasses.compile(compile("/schema/dirk-schema.json"))) {
+            ObjectMapper mapper = new ObjectMapper();
+            Object view = classes.invokeStatic("com.example.DirkSchema$View", "of",
+                    ByteBuffer.wrap(padded, 3, document.length), mapper);
+
+            assertEquals("Dirk", GeneratedClasses.invoke(view, "getFirstName"));
+            assertEquals(-3.5, GeneratedClasses.invoke(view, "getRequiredNum"));
+            // nested objects are views over the same bytes
+            Object workAddress = GeneratedClasses.invoke(view, "getWorkAddress");
+            assertEquals("com.example.Address$View", workAddress.getClass().getName());
+            assertEquals("City", GeneratedClasses.invoke(workAddress, "getLocality"));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            GeneratedClasses.invoke(view, "writeTo", out);
+            assertArrayEquals(document, out.toByteArray());
+            assertEquals(ByteBuffer.wrap(document), GeneratedClasses.invoke(view, "toByteBuffer"));
+            assertEquals(mapper.readTree("{\"locality\": \"City\", \"region\": \"State\", "
+                    + "\"country-name\": \"Land\"}"), mapper.readTree(workAddress.toString()));
+            assertEquals(mapper.readValue(document, classes.load("com.example.DirkSchema")),
+                    GeneratedClasses.invoke(view, "toImmutable"));
+
+            // missing properties fall back like the builder: defaults, null, empty collections or an error
+            Object empty = classes.invokeStatic("com.example.DirkSchema$View", "of",
+                    ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8)), mapper);
+            assertEquals("Last name", GeneratedClasses.invoke(empty, "getLastName"));
+            assertNull(GeneratedClasses.invoke(empty, "getHomeAddress"));
+            assertEquals(Collections.emptyList(), GeneratedClasses.invoke(empty, "getPeople"));
+            assertThrows(IllegalStateException.class, () -> GeneratedClasses.invoke(empty, "getFirstName"));
+        }
+    }
+
+    @Test
+    public void testViewsAreEqualToTheBoundInstance() throws Exception {
+        String json = "{\"firstName\": \"Dirk\", \"requiredNum\": 1.5, \"workAddress\": {\"locality\": \"Here\", "
+                + "\"region\": \"There\", \"country-name\": \"Everywhere\"}}";
+        try (GeneratedClasses classes = GeneratedClasses.compile(compile("/schema/dirk-schema.json"))) {
+            ObjectMapper mapper = new ObjectMapper();
+            Class<?> dirkSchema = classes.load("com.example.DirkSchema");
+            Object bound = mapper.readValue(json, dirkSchema);
+            Object view = classes.load("com.example.DirkSchema$View")
+                    .getConstructor(byte[].class, ObjectMapper.class)
+                    .newInstance(json.getBytes(StandardCharsets.UTF_8), mapper);
+
+            assertEquals("com.example.ImmutableDirkSchema", bound.getClass().getName());
+            assertEquals(view, bound);
+            assertEquals(bound.hashCode(), view.hashCode());
+            assertEquals(view, GeneratedClasses.invoke(view, "toImmutable"));
+            assertEquals(bound, GeneratedClasses.invoke(view, "toImmutable"));
+            assertNotEquals(view, GeneratedClasses.invoke(bound, "withRequiredNum", 2.5));
+        }
+    }
+
+    private static GeneratedSources compile(String schema) throws Exception {
+        Path source = Paths.get(ViewGeneratorTest.class.getResource(schema).toURI());
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setViews(true);
+        return compiler.compile(Collections.singletonList(source));
+    }
+}
@@ -0,0 +1,130 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.codemodel.JCodeModel;
+import com.sun.codemodel.JDefinedClass;
+import com.sun.codemodel.JMethod;
+import org.jsonschema2pojo.*;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArrayRuleTest {
+    private final GenerationConfig config = new DefaultGenerationConfig();
+
+    @Test
+    public void testPrimitiveArrays() {
+        Map<String, String> getters = getters(true);
+        assertEquals("int[]", getters.get("getSamples"));
+        assertEquals("double[]", getters.get("getReadings"));
+        assertEquals("boolean[]", getters.get("getFlags"));
+        assertEquals("java.util.Set<java.lang.Integer>", getters.get("getIds"));
+        assertEquals("java.util.List<java.lang.String>", getters.get("getLabels"));
+        assertEquals("java.util.List<java.lang.Integer>", getters.get("getCounts"));
+    }
+
+    @Test
+    public void testListsByDefault() {
+        assertEquals("java.util.List<java.lang.Integer>", getters(false).get("getSamples"));
+    }
+
+    @Test
+    public void testPersistentLists() {
+        ImmutableRuleFactory ruleFactory =
+                new ImmutableRuleFactory(config, new Jackson2Annotator(config), new SchemaStore());
+        ruleFactory.setPersistentList("com.example.PersistentList");
+        Map<String, String> getters = getters(ruleFactory, "/persistent/ledger.json", "com.example.Ledger");
+        assertEquals("com.example.PersistentList<com.example.Entry>", getters.get("getEntries"));
+        assertEquals("java.util.Set<java.lang.String>", getters.get("getAccounts"));
+        assertEquals("java.util.List<java.lang.String>", getters.get("getNotes"));
+    }
+
+    @Test
+    public void testPersistentListBehavesLikeAList() throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(config, "com.example", 1);
+        compiler.setPersistentCollections(true);
+        try (GeneratedClasses classes = GeneratedClasses.compile(compiler.compile(Collections.singletonList(
+                Paths.get(ArrayRuleTest.class.getResource("/persistent/ledger.json").toURI()))))) {
+            Class<?> persistentList = classes.load("com.example.PersistentList");
+            Random random = new Random(42);
+            List<Integer> expected = new ArrayList<>();
+            Object list = classes.invokeStatic("com.example.PersistentList", "empty");
+            for (int step = 0; step < 2000; step++) {
+                List<Integer> before = new ArrayList<>(expected);
+                Object previous = list;
+                int operation = expected.isEmpty() ? 0 : random.nextInt(4);
+                int element = random.nextInt(100);
+                if (operation == 0) {
+                    int index = random.nextInt(expected.size() + 1);
+                    expected.add(index, element);
+                    list = GeneratedClasses.invoke(list, "plus", index, element);
+                } else if (operation == 1) {
+                    expected.add(element);
+                    list = GeneratedClasses.invoke(list, "plus", element);
+                } else if (operation == 2) {
+                    int index = random.nextInt(expected.size());
+                    expected.set(index, element);
+                    list = GeneratedClasses.invoke(list, "with", index, element);
+                } else if (random.nextInt(3) > 0) {
+                    // removing as often as inserting lets the list shrink back to empty now and then
+                    int index = random.nextInt(expected.size());
+                    expected.remove(index);
+                    list = GeneratedClasses.invoke(list, "minus", index);
+                }
+                assertEquals(expected, list);
+                assertEquals(list, expected);
+                assertEquals(expected.hashCode(), list.hashCode());
+                // updates leave the list they were made from alone
+                assertEquals(before, previous);
+            }
+            assertTrue(persistentList.isInstance(list));
+            assertThrows(IndexOutOfBoundsException.class, () -> GeneratedClasses.invoke(
+                    classes.invokeStatic("com.example.PersistentList", "empty"), "with", 0, 1));
+            assertThrows(NullPointerException.class, () -> GeneratedClasses.invoke(
+                    classes.invokeStatic("com.example.PersistentList", "empty"), "plus", (Object) null));
+
+            ObjectMapper mapper = new ObjectMapper();
+            Object strings = mapper.readValue("[\"a\", \"b\", \"c\"]",
+                    mapper.getTypeFactory().constructParametricType(persistentList, String.class));
+            assertTrue(persistentList.isInstance(strings));
+            assertEquals(Arrays.asList("a", "b", "c"), strings);
+            String json = "{\"entries\":[{\"amount\":1},{\"amount\":2}],\"accounts\":[\"cash\"],\"notes\":[]}";
+            Object ledger = mapper.readValue(json, classes.load("com.example.Ledger"));
+            assertTrue(persistentList.isInstance(GeneratedClasses.invoke(ledger, "getEntries")));
+            assertEquals(mapper.readTree(json), mapper.readTree(mapper.writeValueAsString(ledger)));
+        }
+    }
+
+    private Map<String, String> getters(boolean primitiveArrays) {
+        ImmutableRuleFactory ruleFactory =
+                new ImmutableRuleFactory(config, new Jackson2Annotator(config), new SchemaStore());
+        ruleFactory.setPrimitiveArrays(primitiveArrays);
+        return getters(ruleFactory, "/primitive/telemetry.json", "com.example.Telemetry");
+    }
+
+    private static Map<String, String> getters(ImmutableRuleFactory ruleFactory, String resource, String className) {
+        JCodeModel codeModel = new JCodeModel();
+        new SchemaMapper(ruleFactory, new SchemaGenerator()).generate(codeModel, "ClassName", "com.example",
+                ArrayRuleTest.class.getResource(resource));
+
+        Map<String, String> getters = new TreeMap<>();
+        JDefinedClass cls = codeModel._getClass(className);
+        for (JMethod method : cls.methods()) {
+            getters.put(method.name(), method.type().fullName());
+        }
+        return getters;
+    }
+}
@@ -0,0 +1,127 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CheckRuleTest {
+    @Test
+    public void testChecks() throws Exception {
+        String order = compile(true);
+
+        assertTrue(order.contains("Value.Check\n    protected void checkOrder()"));
+        assertTrue(order.contains("if (quantity< 1)"));
+        assertTrue(order.contains("if (quantity > 100)"));
+        assertTrue(order.contains("if (discount!= null) {"));
+        assertTrue(order.contains("if (discount >= 1.0D)"));
+        assertTrue(order.contains("TOTAL_MINIMUM = new BigDecimal(\"0\")"));
+        assertTrue(order.contains("if (total.compareTo(TOTAL_MINIMUM)<= 0)"));
+        assertTrue(order.contains("CODE_PATTERN = Pattern.compile(\"^[A-Z]+[0-9]*$\")"));
+        assertTrue(order.contains("if (!CODE_PATTERN.matcher(code).find())"));
+        assertTrue(order.contains("if ((code.length()> 8)&&(code.codePointCount(0, code.length())> 8))"));
+        assertTrue(order.contains("if (tags.size()< 1)"));
+        assertTrue(order.contains("if (samples.length > 4)"));
+        assertTrue(order.contains("\"Order.quantity must be at least 1\""));
+    }
+
+    @Test
+    public void testChecksRejectValuesOutOfBounds() throws Exception {
+        // one astral code point is two chars long, but a single character
+        String astral = new String(Character.toChars(0x1D400));
+        try (GeneratedClasses classes = GeneratedClasses.compile(generate(true))) {
+            build(classes);
+            build(classes, "quantity", 100);
+            fails(classes, "Order.quantity must be at least 1, was 0", "quantity", 0);
+            fails(classes, "Order.quantity must be at most 100, was 101", "quantity", 101);
+
+            build(classes, "discount", 0.0);
+            build(classes, "discount", 0.999);
+            fails(classes, "Order.discount must be at least 0, was -0.001", "discount", -0.001);
+            fails(classes, "Order.discount must be less than 1, was 1.0", "discount", 1.0);
+
+            build(classes, "total", new BigDecimal("0.01"));
+            fails(classes, "Order.total must be greater than 0, was 0", "total", BigDecimal.ZERO);
+
+            build(classes, "code", "AB");
+            build(classes, "code", "ABCDEFG8");
+            fails(classes, "Order.code must be at least 2 characters long", "code", "A");
+            fails(classes, "Order.code must be at most 8 characters long", "code", "ABCDEFGH9");
+            fails(classes, "Order.code must match ^[A-Z]+[0-9]*$", "code", "AB-1");
+            fails(classes, "Order.code must match ^[A-Z]+[0-9]*$", "code", "ab");
+            fails(classes, "Order.code must be at least 2 characters long", "code", astral);
+            // the lengths are counted in code points, so these are only rejected by the pattern
+            fails(classes, "Order.code must match ^[A-Z]+[0-9]*$", "code", astral + astral);
+            fails(classes, "Order.code must match ^[A-Z]+[0-9]*$", "code", repeat(astral, 8));
+            fails(classes, "Order.code must be at most 8 characters long", "code", repeat(astral, 9));
+
+            build(classes, "addAllTags", Arrays.asList("a", "b", "c"));
+            fails(classes, "Order.tags must have at least 1 items", "addAllTags", Collections.emptyList());
+            fails(classes, "Order.tags must have at most 3 items", "addAllTags", Arrays.asList("a", "b", "c", "d"));
+
+            build(classes, "samples", (Object) new int[4]);
+            fails(classes, "Order.samples must have at most 4 items", "samples", (Object) new int[5]);
+        }
+    }
+
+    @Test
+    public void testChecksOff() throws Exception {
+        assertFalse(compile(false).contains("Value.Check"));
+    }
+
+    /**
+     * Builds an order with a valid quantity, code and tags, unless they are among the builder methods and arguments
+     * given in pairs.
+     */
+    private static Object build(GeneratedClasses classes, Object... properties) throws Exception {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("quantity", 1);
+        values.put("code", "AB1");
+        values.put("addAllTags", Collections.singletonList("tag"));
+        for (int i = 0; i < properties.length; i += 2) {
+            values.put((String) properties[i], properties[i + 1]);
+        }
+        Object builder = classes.invokeStatic("com.example.ImmutableOrder", "builder");
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            GeneratedClasses.invoke(builder, value.getKey(), value.getValue());
+        }
+        return GeneratedClasses.invoke(builder, "build");
+    }
+
+    private static void fails(GeneratedClasses classes, String message, Object... properties) {
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> build(classes, properties));
+        assertEquals(message, ex.getMessage());
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            repeated.append(s);
+        }
+        return repeated.toString();
+    }
+
+    private static String compile(boolean checks) throws Exception {
+        return new String(generate(checks).files().get("com/example/Order.java"), "UTF-8");
+    }
+
+    private static GeneratedSources generate(boolean checks) throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setChecks(checks);
+        return compiler.compile(Collections.singletonList(
+                Paths.get(CheckRuleTest.class.getResource("/checks/order.json").toURI())));
+    }
+}
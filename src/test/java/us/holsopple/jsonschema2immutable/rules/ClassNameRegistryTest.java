@@ -0,0 +1,33 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.JCodeModel;
+import com.sun.codemodel.JPackage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ClassNameRegistryTest {
+    private final ClassNameRegistry registry = new ClassNameRegistry();
+    private final JPackage _package = new JCodeModel()._package("com.example");
+
+    @Test
+    public void testNamesAreCountedUp() throws Exception {
+        assertEquals("Item", create("Item"));
+        assertEquals("Item__1", create("Item"));
+        _package._class("Item__2");
+        assertEquals("Item__3", create("Item"));
+        assertEquals("Item__4", create("Item__1"));
+    }
+
+    @Test
+    public void testUnusedNameIsHandedOutAgain() {
+        assertEquals("Data", registry.makeUnique("Data", _package));
+        assertEquals("Data", registry.makeUnique("Data", _package));
+    }
+
+    private String create(String className) throws Exception {
+        String unique = registry.makeUnique(className, _package);
+        _package._class(unique);
+        return unique;
+    }
+}
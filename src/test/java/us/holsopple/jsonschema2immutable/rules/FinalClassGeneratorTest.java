@@ -0,0 +1,109 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FinalClassGeneratorTest {
+    @Test
+    public void testFinalClass() throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setChecks(true);
+        compiler.setFinalClasses(true);
+        Map<String, byte[]> files = compiler.compile(Collections.singletonList(schema())).files();
+        String order = new String(files.get("com/example/Order.java"), "UTF-8");
+
+        assertTrue(order.contains("@JsonDeserialize(builder = Order.Builder.class)"));
+        assertTrue(order.contains("public final class Order {"));
+        assertTrue(order.contains("this.code = Objects.requireNonNull(code, \"code\");"));
+        assertTrue(order.contains("checkOrder();"));
+        assertTrue(order.contains("private void checkOrder() {"));
+        assertTrue(order.contains("Arrays.equals(samples, that.samples)"));
+        assertTrue(order.contains("public final static class Builder {"));
+        assertTrue(order.contains("throw new IllegalStateException(\"Cannot build Order, quantity is required\");"));
+        assertFalse(order.contains("org.immutables"));
+        assertFalse(files.containsKey("com/example/ImmutableOrder.java"));
+    }
+
+    @Test
+    public void testBuilder() throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setChecks(true);
+        compiler.setFinalClasses(true);
+        try (GeneratedClasses classes = GeneratedClasses.compile(compiler.compile(Arrays.asList(schema(),
+                Paths.get(FinalClassGeneratorTest.class.getResource("/schema/dirk-schema.json").toURI()))))) {
+            Object builder = classes.invokeStatic("com.example.Order", "builder");
+            GeneratedClasses.invoke(builder, "quantity", 2);
+            GeneratedClasses.invoke(builder, "code", "AB1");
+            GeneratedClasses.invoke(builder, "tags", Collections.singletonList("gift"));
+            Object order = GeneratedClasses.invoke(builder, "build");
+            assertArrayEquals(new int[0], (int[]) GeneratedClasses.invoke(order, "getSamples"));
+            assertNull(GeneratedClasses.invoke(order, "getDiscount"));
+
+            Object incomplete = classes.invokeStatic("com.example.Order", "builder");
+            GeneratedClasses.invoke(incomplete, "code", "AB1");
+            IllegalStateException missing = assertThrows(IllegalStateException.class,
+                    () -> GeneratedClasses.invoke(incomplete, "build"));
+            assertEquals("Cannot build Order, quantity is required", missing.getMessage());
+            // the tags default to an empty list, which the check rejects
+            GeneratedClasses.invoke(incomplete, "quantity", 2);
+            IllegalStateException checked = assertThrows(IllegalStateException.class,
+                    () -> GeneratedClasses.invoke(incomplete, "build"));
+            assertEquals("Order.tags must have at least 1 items", checked.getMessage());
+            GeneratedClasses.invoke(builder, "quantity", 101);
+            IllegalStateException bounded = assertThrows(IllegalStateException.class,
+                    () -> GeneratedClasses.invoke(builder, "build"));
+            assertEquals("Order.quantity must be at most 100, was 101", bounded.getMessage());
+
+            ObjectMapper mapper = new ObjectMapper();
+            Class<?> orderClass = classes.load("com.example.Order");
+            String json = mapper.writeValueAsString(order);
+            assertEquals(mapper.readTree("{\"quantity\": 2, \"code\": \"AB1\", \"tags\": [\"gift\"], "
+                    + "\"samples\": []}"), mapper.readTree(json));
+            assertEquals(order, mapper.readValue(json, orderClass));
+            Object full = mapper.readValue("{\"quantity\": 3, \"discount\": 0.5, \"total\": 12.50, "
+                    + "\"code\": \"XY\", \"tags\": [\"a\", \"b\"], \"samples\": [1, 2]}", orderClass);
+            assertEquals(full, mapper.readValue(mapper.writeValueAsString(full), orderClass));
+            JsonMappingException required = assertThrows(JsonMappingException.class,
+                    () -> mapper.readValue("{\"quantity\": 3, \"tags\": [\"a\"]}", orderClass));
+            assertTrue(required.getMessage().contains("Cannot build Order, code is required"),
+                    required.getMessage());
+
+            // the defaults of the schema apply to what isn't set
+            Object dirk = mapper.readValue("{\"firstName\": \"Dirk\", \"requiredNum\": 0, \"workAddress\": "
+                    + "{\"locality\": \"City\", \"region\": \"State\", \"country-name\": \"Land\"}}",
+                    classes.load("com.example.DirkSchema"));
+            assertEquals("Last name", GeneratedClasses.invoke(dirk, "getLastName"));
+            assertEquals(42.0, GeneratedClasses.invoke(dirk, "getNum"));
+            assertEquals("C", GeneratedClasses.invoke(dirk, "getEnumField").toString());
+        }
+    }
+
+    @Test
+    public void testJacksonModuleRejected() throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setFinalClasses(true);
+        compiler.setJacksonModule(true);
+        assertThrows(IllegalStateException.class, () -> compiler.compile(Collections.singletonList(schema())));
+    }
+
+    private static Path schema() throws Exception {
+        return Paths.get(FinalClassGeneratorTest.class.getResource("/checks/order.json").toURI());
+    }
+}
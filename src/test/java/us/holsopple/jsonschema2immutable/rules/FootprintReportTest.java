@@ -0,0 +1,62 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FootprintReportTest {
+    @Test
+    public void testReport() throws Exception {
+        String report = report(false, "/checks/order.json", "/discriminator/drawing.json",
+                "/discriminator/shape.json");
+
+        // int quantity, five references and the header
+        assertTrue(report.contains("        40        496      1        5  com.example.Order\n"), report);
+        // double radius after the gap behind the header
+        assertTrue(report.contains("        24         24      0        5  com.example.Circle\n"), report);
+        assertTrue(report.indexOf("com.example.Order") < report.indexOf("com.example.Drawing"), report);
+        assertTrue(report.indexOf("com.example.Drawing") < report.indexOf("com.example.Circle"), report);
+    }
+
+    @Test
+    public void testUnboxedOptionals() throws Exception {
+        String report = report(true, "/checks/order.json");
+
+        // discount and the bits telling whether it is present are longs, with the initShim for the bits' default and
+        // the builder that keeps the bits
+        assertTrue(report.contains("        56        488      0        7  com.example.Order\n"), report);
+    }
+
+    @Test
+    public void testCycle() throws Exception {
+        String report = report(false, "/cycle/left.json", "/cycle/right.json");
+
+        // each retains the other and the name of the left one, with the reference back counted as nothing
+        assertTrue(report.contains("        24        104      0        5  com.example.Left\n"), report);
+        assertTrue(report.contains("        24        104      0        5  com.example.Right\n"), report);
+    }
+
+    private static String report(boolean unboxedOptionals, String... schemas) throws Exception {
+        Path[] sources = new Path[schemas.length];
+        for (int i = 0; i < schemas.length; i++) {
+            sources[i] = Paths.get(FootprintReportTest.class.getResource(schemas[i]).toURI());
+        }
+        FootprintReport footprint = new FootprintReport();
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setFootprint(footprint);
+        compiler.setUnboxedOptionals(unboxedOptionals);
+        compiler.compile(Arrays.asList(sources));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        footprint.report(new PrintStream(out, true, "UTF-8"), 10);
+        return new String(out.toByteArray(), "UTF-8").replace(System.lineSeparator(), "\n");
+    }
+}
@@ -0,0 +1,28 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ObjectRuleTest {
+    @Test
+    public void testInternAndPrehash() throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        GeneratedSources generated = compiler.compile(Collections.singletonList(
+                Paths.get(ObjectRuleTest.class.getResource("/extensions/ledger.json").toURI())));
+
+        assertTrue(source(generated, "Currency").contains("Value.Immutable(intern = true, prehash = true)"));
+        assertTrue(source(generated, "Region").contains("Value.Immutable(prehash = true)"));
+        assertTrue(source(generated, "LedgerEntry").contains("Value.Immutable\n"));
+    }
+
+    private static String source(GeneratedSources generated, String className) throws Exception {
+        return new String(generated.files().get("com/example/" + className + ".java"), "UTF-8");
+    }
+}
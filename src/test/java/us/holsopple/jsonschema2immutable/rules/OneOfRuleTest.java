@@ -0,0 +1,123 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OneOfRuleTest {
+    @Test
+    public void testDiscriminatedBaseType() throws Exception {
+        Map<String, byte[]> files = compile(false).files();
+        String shape = new String(files.get("com/example/Shape.java"), "UTF-8");
+        String circle = new String(files.get("com/example/Circle.java"), "UTF-8");
+        String square = new String(files.get("com/example/Square.java"), "UTF-8");
+
+        assertTrue(shape.contains("@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, "
+                + "include = JsonTypeInfo.As.EXISTING_PROPERTY, property = \"kind\")"));
+        assertTrue(shape.contains("@JsonSubTypes.Type(value = Circle.class, name = \"circle\")"));
+        assertTrue(shape.contains("@JsonSubTypes.Type(value = Square.class, name = \"square\")"));
+        assertTrue(shape.contains("@JsonDeserialize(using = Shape.Deserializer.class)"));
+
+        assertTrue(circle.contains("@JsonTypeName(\"circle\")"));
+        assertTrue(circle.contains("implements Shape"));
+        assertTrue(circle.contains("@JsonProperty(value = \"kind\", access = JsonProperty.Access.READ_ONLY)"));
+        assertTrue(square.contains("@JsonTypeName(\"square\")"));
+        assertFalse(square.contains("READ_ONLY"));
+    }
+
+    @Test
+    public void testReadsSubtypesByKind() throws Exception {
+        testReadsSubtypesByKind(false);
+    }
+
+    @Test
+    public void testModuleReadsSubtypesByKind() throws Exception {
+        testReadsSubtypesByKind(true);
+    }
+
+    private static void testReadsSubtypesByKind(boolean jacksonModule) throws Exception {
+        try (GeneratedClasses classes = GeneratedClasses.compile(compile(jacksonModule))) {
+            ObjectMapper mapper = new ObjectMapper();
+            if (jacksonModule) {
+                mapper.registerModule(
+                        (Module) classes.load("com.example.JsonSchemaModule").getConstructor().newInstance());
+            }
+            Class<?> drawing = classes.load("com.example.Drawing");
+
+            // the kind comes first, or after the properties that have to be replayed to the subtype
+            String json = "{\"background\": {\"kind\": \"circle\", \"radius\": 1.5}, \"shapes\": ["
+                    + "{\"kind\": \"square\", \"side\": 2}, "
+                    + "{\"radius\": 0.5, \"kind\": \"circle\"}, "
+                    + "{\"side\": 3, \"kind\": \"square\"}]}";
+            Object value = mapper.readValue(json, drawing);
+            Object background = GeneratedClasses.invoke(value, "getBackground");
+            assertTrue(classes.load("com.example.Circle").isInstance(background), background.toString());
+            assertEquals(1.5, GeneratedClasses.invoke(background, "getRadius"));
+            List<String> kinds = new ArrayList<>();
+            for (Object shape : (List<?>) GeneratedClasses.invoke(value, "getShapes")) {
+                kinds.add(classes.load("com.example.Circle").isInstance(shape) ? "circle"
+                        : classes.load("com.example.Square").isInstance(shape) ? "square" : shape.toString());
+            }
+            assertEquals(Arrays.asList("square", "circle", "square"), kinds);
+            Object last = ((List<?>) GeneratedClasses.invoke(value, "getShapes")).get(2);
+            assertEquals(3.0, GeneratedClasses.invoke(last, "getSide"));
+
+            // every shape is written with its kind, and reads back the same
+            JsonNode written = mapper.readTree(mapper.writeValueAsString(value));
+            assertEquals("circle", written.get("background").get("kind").asText());
+            assertEquals("circle", written.get("shapes").get(1).get("kind").asText());
+            assertEquals("square", written.get("shapes").get(2).get("kind").asText());
+            assertEquals(value, mapper.readValue(written.toString(), drawing));
+
+            JsonMappingException unknown = assertThrows(JsonMappingException.class, () -> mapper.readValue(
+                    "{\"shapes\": [{\"side\": 1, \"kind\": \"triangle\"}]}", drawing));
+            assertTrue(unknown.getMessage().startsWith("Shape.kind must be one of circle, square, was triangle"),
+                    unknown.getMessage());
+            JsonMappingException missing = assertThrows(JsonMappingException.class, () -> mapper.readValue(
+                    "{\"background\": {\"radius\": 1}}", drawing));
+            assertTrue(missing.getMessage().startsWith("Shape.kind is missing"), missing.getMessage());
+        }
+    }
+
+    @Test
+    public void testSerializers() throws Exception {
+        Map<String, byte[]> files = compile(true).files();
+        String circle = new String(files.get("com/example/Circle.java"), "UTF-8");
+        String square = new String(files.get("com/example/Square.java"), "UTF-8");
+        String drawing = new String(files.get("com/example/Drawing.java"), "UTF-8");
+
+        assertTrue(circle.contains("generator.writeStringField(\"kind\", \"circle\");"));
+        assertTrue(circle.contains("public void serializeWithType("));
+        assertFalse(square.contains("writeStringField"));
+        assertTrue(drawing.contains("provider.findTypedValueSerializer(backgroundValue.getClass(), true, null)"
+                + ".serialize(backgroundValue, generator, provider);"));
+    }
+
+    private static GeneratedSources compile(boolean jacksonModule) throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setJacksonModule(jacksonModule);
+        return compiler.compile(Arrays.asList(schema("drawing"), schema("shape")));
+    }
+
+    private static Path schema(String name) throws Exception {
+        return Paths.get(OneOfRuleTest.class.getResource("/discriminator/" + name + ".json").toURI());
+    }
+}
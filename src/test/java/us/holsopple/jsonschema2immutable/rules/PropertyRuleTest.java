@@ -0,0 +1,122 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.junit.jupiter.api.Test;
+import us.holsopple.jsonschema2immutable.GeneratedClasses;
+import us.holsopple.jsonschema2immutable.GeneratedSources;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static us.holsopple.jsonschema2immutable.GeneratedClasses.invoke;
+
+public class PropertyRuleTest {
+    @Test
+    public void testUnboxedOptionals() throws Exception {
+        String reading = compile(true);
+
+        assertTrue(reading.contains("@JsonProperty(value = \"count\", access = JsonProperty.Access.WRITE_ONLY)\n"
+                + "    @org.immutables.value.Value.Default\n    public int getCount() {"));
+        assertTrue(reading.contains("public double getValue() {"));
+        assertTrue(reading.contains("public boolean isCalibrated() {"));
+        assertTrue(reading.contains("public int getInterval() {"));
+        assertTrue(reading.contains("protected long absentBits() {\n        if (this instanceof ModifiableReading) {"));
+        assertTrue(reading.contains("public boolean hasValue() {\n        return ((absentBits()& 2L) == 0L);"));
+        assertTrue(reading.contains("public Reading withCount(OptionalInt count) {"));
+        assertTrue(reading.contains("@JsonCreator(mode = JsonCreator.Mode.DELEGATING)\n"
+                + "    static Reading readJson(ImmutableReading.Json json) {"));
+        assertTrue(reading.contains("if (Double.doubleToLongBits(getValue())!= 0L) {"));
+        assertTrue(reading.contains("return ImmutableReading.builder().from(this).absentBits(absentBits).build();"));
+        assertTrue(reading.contains("public final static class Builder {"));
+        assertTrue(reading.contains("public Reading withValue(double value) {"));
+        assertTrue(reading.contains("@JsonInclude(JsonInclude.Include.NON_NULL)\n"
+                + "    protected Boolean calibratedIfPresent() {\n        return (hasCalibrated()?isCalibrated():null);"));
+        assertTrue(reading.contains("if (hasCount()) {\n            if (count< 1)"));
+        assertFalse(reading.contains("hasInterval"));
+    }
+
+    @Test
+    public void testUnboxedOptionalsRoundTrip() throws Exception {
+        for (boolean jacksonModule : new boolean[]{false, true}) {
+            SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+            compiler.setUnboxedOptionals(true);
+            compiler.setJacksonModule(jacksonModule);
+            try (GeneratedClasses classes = GeneratedClasses.compile(compiler.compile(Collections.singletonList(
+                    Paths.get(PropertyRuleTest.class.getResource("/unboxed/reading.json").toURI()))))) {
+                ObjectMapper mapper = new ObjectMapper();
+                if (jacksonModule) {
+                    mapper.findAndRegisterModules();
+                }
+                Class<?> type = classes.load("com.example.Reading");
+
+                Object zero = mapper.readValue("{\"sensor\":\"s\",\"count\":0}", type);
+                assertEquals(true, invoke(zero, "hasCount"));
+                assertEquals("{\"sensor\":\"s\",\"count\":0,\"interval\":60}", mapper.writeValueAsString(zero));
+
+                // present optional primitives keep their place in the order of the schema
+                String all = "{\"sensor\":\"s\",\"count\":0,\"value\":-0.0,\"calibrated\":false,\"interval\":1}";
+                assertEquals(all, mapper.writeValueAsString(mapper.readValue(all, type)));
+
+                Object absent = mapper.readValue("{\"sensor\":\"s\"}", type);
+                assertEquals(false, invoke(absent, "hasCount"));
+                assertEquals("{\"sensor\":\"s\",\"interval\":60}", mapper.writeValueAsString(absent));
+                assertNotEquals(zero, absent);
+
+                Object given = invoke(absent, "withCount", OptionalInt.of(0));
+                assertEquals(true, invoke(given, "hasCount"));
+                assertEquals(zero, given);
+                assertEquals(absent, invoke(given, "withCount", OptionalInt.empty()));
+                assertEquals(true, invoke(invoke(absent, "withCount", 3), "hasCount"));
+                assertEquals(true, invoke(invoke(absent, "withValue", 0.0), "hasValue"));
+                assertEquals(zero, invoke(absent, "withCount", 0));
+                assertEquals(true, invoke(invoke(zero, "withSensor", "t"), "hasCount"));
+
+                Object builder = classes.load("com.example.Reading$Builder").getConstructor().newInstance();
+                Object built = invoke(invoke(invoke(builder, "sensor", "s"), "count", 0), "build");
+                assertEquals(true, invoke(built, "hasCount"));
+                assertEquals(false, invoke(built, "hasCalibrated"));
+                assertEquals(zero, built);
+                Object copied = classes.load("com.example.Reading$Builder").getConstructor().newInstance();
+                assertEquals(absent, invoke(invoke(copied, "from", absent), "build"));
+
+                Object modifiable = classes.invokeStatic("com.example.ModifiableReading", "create");
+                invoke(invoke(modifiable, "setSensor", "s"), "setCount", 0);
+                assertEquals(true, invoke(modifiable, "hasCount"));
+                assertEquals(false, invoke(modifiable, "hasCalibrated"));
+                assertEquals(zero, invoke(modifiable, "toImmutable"));
+                assertEquals("{\"sensor\":\"s\",\"count\":0,\"interval\":60}",
+                        mapper.writeValueAsString(invoke(modifiable, "toImmutable")));
+                invoke(modifiable, "clear");
+                invoke(modifiable, "setSensor", "s");
+                assertEquals(false, invoke(modifiable, "hasCount"));
+                assertEquals(absent, invoke(invoke(modifiable, "from", absent), "toImmutable"));
+            }
+        }
+    }
+
+    @Test
+    public void testBoxedByDefault() throws Exception {
+        String reading = compile(false);
+
+        assertTrue(reading.contains(
+                "@Nullable\n    @JsonProperty(\"count\")\n    public abstract Integer getCount();"));
+        assertTrue(reading.contains("public Integer getInterval() {"));
+        assertFalse(reading.contains("absentBits"));
+    }
+
+    private static String compile(boolean unboxedOptionals) throws Exception {
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setUnboxedOptionals(unboxedOptionals);
+        compiler.setChecks(true);
+        GeneratedSources generated = compiler.compile(Collections.singletonList(
+                Paths.get(PropertyRuleTest.class.getResource("/unboxed/reading.json").toURI())));
+        return new String(generated.files().get("com/example/Reading.java"), "UTF-8");
+    }
+}
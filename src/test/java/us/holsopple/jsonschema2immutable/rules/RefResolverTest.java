@@ -0,0 +1,36 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.JCodeModel;
+import org.jsonschema2pojo.*;
+import org.jsonschema2pojo.exception.GenerationException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RefResolverTest {
+    private final GenerationConfig config = new DefaultGenerationConfig();
+    private final ImmutableRuleFactory ruleFactory =
+            new ImmutableRuleFactory(config, new Jackson2Annotator(config), new SchemaStore());
+    private final SchemaMapper mapper = new SchemaMapper(ruleFactory, new SchemaGenerator());
+
+    @Test
+    public void testChainIsResolvedOnce() {
+        mapper.generate(new JCodeModel(), "ClassName", "com.example",
+                RefResolverTest.class.getResource("/schema/refChain.json"));
+
+        RefResolver refResolver = ruleFactory.getRefResolver();
+        // the chain alias -> target is looked up for the first property, and comes from the cache for the second
+        assertEquals(1, refResolver.getMisses());
+        assertEquals(1, refResolver.getHits());
+    }
+
+    @Test
+    public void testCycleIsReported() {
+        GenerationException ex = assertThrows(GenerationException.class, () ->
+                mapper.generate(new JCodeModel(), "ClassName", "com.example",
+                        RefResolverTest.class.getResource("/cycle/refCycle.json")));
+        assertTrue(ex.getMessage().startsWith("circular $ref"), ex.getMessage());
+    }
+}
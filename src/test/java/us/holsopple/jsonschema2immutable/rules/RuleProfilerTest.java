@@ -0,0 +1,92 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsonschema2pojo.DefaultGenerationConfig;
+import org.jsonschema2pojo.GenerationConfig;
+import org.jsonschema2pojo.Jackson2Annotator;
+import org.jsonschema2pojo.SchemaStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import us.holsopple.jsonschema2immutable.SchemaCompiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RuleProfilerTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testReport() throws Exception {
+        RuleProfiler profiler = new RuleProfiler();
+        SchemaCompiler compiler = new SchemaCompiler(new DefaultGenerationConfig(), "com.example", 1);
+        compiler.setProfiler(profiler);
+        compiler.compile(Arrays.asList(schema("dirk-schema.json"), schema("address.json")));
+
+        Path json = dir.resolve("profile.json");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        profiler.report(json, 1, new PrintStream(out, true, "UTF-8"));
+        JsonNode report = new ObjectMapper().readTree(json.toFile());
+
+        // counters are kept by schema document, without the fragment of the schema within it
+        Map<String, JsonNode> schemas = new HashMap<>();
+        for (JsonNode schema : report.get("schemas")) {
+            assertFalse(schema.get("schema").asText().contains("#"), schema.toString());
+            schemas.put(schema.get("schema").asText().replaceFirst(".*/", ""), schema);
+        }
+        assertTrue(schemas.keySet().containsAll(Arrays.asList("dirk-schema.json", "address.json")),
+                schemas.keySet().toString());
+        JsonNode address = schemas.get("address.json");
+        assertEquals(7, address.get("rules").get("PropertyRule").get("calls").asLong(), address.toString());
+        assertTrue(address.get("selfMillis").asDouble() > 0, address.toString());
+        // the inline item schema of people is part of the document that declares it
+        JsonNode dirkSchema = schemas.get("dirk-schema.json");
+        assertEquals(14, dirkSchema.get("rules").get("PropertyRule").get("calls").asLong(), dirkSchema.toString());
+
+        // the rules are summed up over all documents
+        JsonNode propertyRule = report.get("rules").get("PropertyRule");
+        long calls = 0;
+        for (JsonNode schema : report.get("schemas")) {
+            JsonNode counter = schema.get("rules").get("PropertyRule");
+            calls += counter == null ? 0 : counter.get("calls").asLong();
+        }
+        assertEquals(calls, propertyRule.get("calls").asLong());
+        JsonNode objectRule = report.get("rules").get("ObjectRule");
+        assertTrue(objectRule.get("calls").asLong() >= 3, objectRule.toString());
+        assertTrue(objectRule.get("totalMillis").asDouble() > 0, objectRule.toString());
+        assertTrue(objectRule.get("totalBytes").asLong() > 0, objectRule.toString());
+        // nested rules are counted in the total of the object rule, but not by itself
+        assertTrue(objectRule.get("selfMillis").asDouble() < objectRule.get("totalMillis").asDouble(),
+                objectRule.toString());
+        assertTrue(objectRule.get("selfBytes").asLong() < objectRule.get("totalBytes").asLong(),
+                objectRule.toString());
+
+        String printed = new String(out.toByteArray(), "UTF-8");
+        assertTrue(printed.startsWith("slowest schemas (profile written to " + json + "):"), printed);
+        assertEquals(2, printed.split(System.lineSeparator()).length, printed);
+    }
+
+    @Test
+    public void testRulesAreOnlyWrappedWhenProfiling() {
+        GenerationConfig config = new DefaultGenerationConfig();
+        ImmutableRuleFactory ruleFactory =
+                new ImmutableRuleFactory(config, new Jackson2Annotator(config), new SchemaStore());
+        assertFalse(ruleFactory.getPropertyRule() instanceof ProfiledRule);
+        ruleFactory.setProfiler(new RuleProfiler());
+        assertTrue(ruleFactory.getPropertyRule() instanceof ProfiledRule);
+    }
+
+    private static Path schema(String name) throws Exception {
+        return Paths.get(RuleProfilerTest.class.getResource("/schema/" + name).toURI());
+    }
+}
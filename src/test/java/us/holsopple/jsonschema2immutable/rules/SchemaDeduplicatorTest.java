@@ -0,0 +1,44 @@
+package us.holsopple.jsonschema2immutable.rules;
+
+import com.sun.codemodel.JCodeModel;
+import com.sun.codemodel.JDefinedClass;
+import org.jsonschema2pojo.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SchemaDeduplicatorTest {
+    private final GenerationConfig config = new DefaultGenerationConfig();
+
+    @Test
+    public void testIdenticalShapesShareAType() {
+        // billing and shipping only differ in property keywords and key order, total and fee in a property type
+        assertEquals(new TreeSet<>(Arrays.asList("Billing", "Currency", "Fee", "InlineShapes", "Total")),
+                generate(true));
+        assertEquals(new TreeSet<>(Arrays.asList("Billing", "Currency", "Currency_", "Fee",
+                "InlineShapes", "Shipping", "Total")), generate(false));
+    }
+
+    private Set<String> generate(boolean deduplicate) {
+        ImmutableRuleFactory ruleFactory =
+                new ImmutableRuleFactory(config, new Jackson2Annotator(config), new SchemaStore());
+        ruleFactory.setDeduplicate(deduplicate);
+        JCodeModel codeModel = new JCodeModel();
+        new SchemaMapper(ruleFactory, new SchemaGenerator()).generate(codeModel, "ClassName", "com.example",
+                SchemaDeduplicatorTest.class.getResource("/dedupe/inlineShapes.json"));
+
+        Set<String> names = new TreeSet<>();
+        for (Iterator<JDefinedClass> classes = codeModel._package("com.example").classes(); classes.hasNext(); ) {
+            JDefinedClass cls = classes.next();
+            if (!cls.isHidden()) {
+                names.add(cls.name());
+            }
+        }
+        return names;
+    }
+}